@@ -0,0 +1,35 @@
+package com.googlecode.rubex.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks with GC profiler enabled, so results include allocation 
+ * rate per operation, same as <code>-prof gc</code> command line option.
+ * 
+ * @author Mikhail Vladimirov
+ */
+public class BenchmarkMain
+{
+    private BenchmarkMain ()
+    {
+        throw new Error ("Do not instantiate me");
+    }
+    
+    /**
+     * Run benchmarks.
+     * 
+     * @param args optional regular expression that selects benchmarks to run
+     * @throws RunnerException if benchmarks failed to run
+     */
+    public static void main (String [] args) throws RunnerException
+    {
+        new Runner (
+            new OptionsBuilder ()
+                .include (args.length > 0 ? args [0] : "com\\.googlecode\\.rubex\\..*")
+                .addProfiler (GCProfiler.class)
+                .build ()).run ();
+    }
+}
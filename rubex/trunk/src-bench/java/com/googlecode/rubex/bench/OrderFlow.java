@@ -0,0 +1,130 @@
+package com.googlecode.rubex.bench;
+
+import java.util.Random;
+
+/**
+ * Seeded synthetic order flow.  Flow is generated in advance into a ring of
+ * primitive arrays, so drawing next instruction does not allocate memory and
+ * does not call random number generator in measured code.
+ * <p>
+ * Every instruction is either cancel of some resting entry or placement of 
+ * limit entry.  Limit prices are distributed around the middle price, so
+ * that some placements rest in the book and others cross the spread.
+ * 
+ * @author Mikhail Vladimirov
+ */
+public class OrderFlow
+{
+    private final int mask;
+    private final boolean [] cancels;
+    private final boolean [] bids;
+    private final long [] prices;
+    private final long [] quantities;
+    private final int [] randoms;
+    
+    private int index = -1;
+    
+    /**
+     * Create new order flow.
+     * 
+     * @param seed seed of random number generator
+     * @param size number of instructions to generate, must be power of two
+     * @param middlePrice middle price in price units
+     * @param depth number of price levels on each side of middle price to 
+     *        place passive entries at
+     * @param aggressiveRatio fraction of placements that cross the spread
+     * @param cancelRatio fraction of instructions that are cancels
+     */
+    public OrderFlow (
+        long seed, int size, long middlePrice, int depth, 
+        double aggressiveRatio, double cancelRatio)
+    {
+        if (size <= 0 || Integer.bitCount (size) != 1)
+            throw new IllegalArgumentException ("Size is not power of two");
+        
+        if (depth <= 0)
+            throw new IllegalArgumentException ("Depth <= 0");
+        
+        if (middlePrice <= depth)
+            throw new IllegalArgumentException ("Middle price <= depth");
+        
+        if (aggressiveRatio < 0.0 || aggressiveRatio > 1.0)
+            throw new IllegalArgumentException ("Invalid aggressive ratio");
+        
+        if (cancelRatio < 0.0 || cancelRatio > 1.0)
+            throw new IllegalArgumentException ("Invalid cancel ratio");
+        
+        mask = size - 1;
+        cancels = new boolean [size];
+        bids = new boolean [size];
+        prices = new long [size];
+        quantities = new long [size];
+        randoms = new int [size];
+        
+        Random random = new Random (seed);
+        
+        for (int i = 0; i < size; i++)
+        {
+            boolean bid = random.nextBoolean ();
+            int offset = 1 + random.nextInt (depth);
+            
+            if (random.nextDouble () < aggressiveRatio)
+                offset = -random.nextInt (Math.max (depth / 4, 1));
+            
+            cancels [i] = random.nextDouble () < cancelRatio;
+            bids [i] = bid;
+            prices [i] = bid ? middlePrice - offset : middlePrice + offset;
+            quantities [i] = 1 + random.nextInt (100);
+            randoms [i] = random.nextInt (Integer.MAX_VALUE);
+        }
+    }
+    
+    /**
+     * Move to the next instruction.
+     */
+    public void next ()
+    {
+        index = (index + 1) & mask;
+    }
+    
+    /**
+     * Tells whether current instruction is cancel.
+     */
+    public boolean isCancel ()
+    {
+        return cancels [index];
+    }
+    
+    /**
+     * Tells whether current placement is bid.
+     */
+    public boolean isBid ()
+    {
+        return bids [index];
+    }
+    
+    /**
+     * Return limit price of current placement in price units.
+     */
+    public long getPrice ()
+    {
+        return prices [index];
+    }
+    
+    /**
+     * Return quantity of current placement in quantity units.
+     */
+    public long getQuantity ()
+    {
+        return quantities [index];
+    }
+    
+    /**
+     * Return non-negative random number associated with current instruction,
+     * e.g. to choose entry to cancel.
+     */
+    public int getRandom ()
+    {
+        return randoms [index];
+    }
+}
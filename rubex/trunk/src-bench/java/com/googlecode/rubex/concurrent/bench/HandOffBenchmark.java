@@ -0,0 +1,179 @@
+package com.googlecode.rubex.concurrent.bench;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.googlecode.rubex.concurrent.BackoffWaitStrategy;
+import com.googlecode.rubex.concurrent.BlockingWaitStrategy;
+import com.googlecode.rubex.concurrent.BusySpinWaitStrategy;
+import com.googlecode.rubex.concurrent.RingQueue;
+import com.googlecode.rubex.concurrent.WaitStrategy;
+import com.googlecode.rubex.concurrent.YieldingWaitStrategy;
+
+/**
+ * Benchmark of runnable hand-off from submitting thread to consumer thread,
+ * as done by symbol manager for every order.  Every operation submits
+ * runnable and spins until consumer thread has run it, so sampled times
+ * are round trip latencies and their percentiles show wake-up cost of the
+ * consumer.  Consumer either takes runnables from
+ * {@link LinkedBlockingQueue} or from {@link RingQueue} with given wait
+ * strategy.
+ *
+ * @author Mikhail Vladimirov
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.SampleTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class HandOffBenchmark
+{
+    @Param ({
+        "LinkedBlockingQueue",
+        "RingQueue/Blocking", "RingQueue/Yielding", "RingQueue/Backoff",
+        "RingQueue/BusySpin"})
+    public String queueType;
+
+    @Param ({"1024"})
+    public int capacity;
+
+    private MyQueue queue;
+    private Thread consumer;
+    private Runnable runnable;
+
+    private volatile long executed = 0L;
+    private long submitted = 0L;
+
+    @Setup
+    public void setUp ()
+    {
+        if ("LinkedBlockingQueue".equals (queueType))
+            queue = new MyBlockingQueue ();
+        else if ("RingQueue/Blocking".equals (queueType))
+            queue = new MyRingQueue (new BlockingWaitStrategy ());
+        else if ("RingQueue/Yielding".equals (queueType))
+            queue = new MyRingQueue (new YieldingWaitStrategy ());
+        else if ("RingQueue/Backoff".equals (queueType))
+            queue = new MyRingQueue (new BackoffWaitStrategy ());
+        else if ("RingQueue/BusySpin".equals (queueType))
+            queue = new MyRingQueue (new BusySpinWaitStrategy ());
+        else
+            throw new IllegalArgumentException (
+                "Unknown queue type: " + queueType);
+
+        runnable = new Runnable ()
+        {
+            @Override
+            public void run ()
+            {
+                executed++;
+            }
+        };
+
+        consumer = new Thread ("Hand-off consumer")
+        {
+            @Override
+            public void run ()
+            {
+                try
+                {
+                    while (true)
+                        queue.take ().run ();
+                }
+                catch (InterruptedException ex)
+                {
+                    // Stopped
+                }
+            }
+        };
+        consumer.setDaemon (true);
+        consumer.start ();
+    }
+
+    @TearDown
+    public void tearDown () throws InterruptedException
+    {
+        consumer.interrupt ();
+        consumer.join ();
+    }
+
+    /**
+     * Submit runnable and wait until consumer thread has run it.
+     */
+    @Benchmark
+    public long handOff () throws InterruptedException
+    {
+        queue.put (runnable);
+
+        long expected = ++submitted;
+        while (executed < expected)
+        {
+            // Spin
+        }
+
+        return expected;
+    }
+
+    private interface MyQueue
+    {
+        public void put (Runnable runnable) throws InterruptedException;
+
+        public Runnable take () throws InterruptedException;
+    }
+
+    private class MyBlockingQueue implements MyQueue
+    {
+        private final BlockingQueue <Runnable> queue =
+            new LinkedBlockingQueue <Runnable> (capacity);
+
+        @Override
+        public void put (Runnable runnable) throws InterruptedException
+        {
+            queue.put (runnable);
+        }
+
+        @Override
+        public Runnable take () throws InterruptedException
+        {
+            return queue.take ();
+        }
+    }
+
+    private class MyRingQueue implements MyQueue
+    {
+        private final RingQueue <Runnable> queue;
+
+        public MyRingQueue (WaitStrategy consumerWaitStrategy)
+        {
+            queue = new RingQueue <Runnable> (
+                capacity, consumerWaitStrategy, new YieldingWaitStrategy ());
+        }
+
+        @Override
+        public void put (Runnable runnable) throws InterruptedException
+        {
+            queue.put (runnable);
+        }
+
+        @Override
+        public Runnable take () throws InterruptedException
+        {
+            return queue.take ();
+        }
+    }
+}
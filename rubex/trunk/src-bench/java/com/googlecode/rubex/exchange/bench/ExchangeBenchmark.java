@@ -0,0 +1,160 @@
+package com.googlecode.rubex.exchange.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.googlecode.rubex.exchange.Exchange;
+import com.googlecode.rubex.exchange.LimitOrder;
+import com.googlecode.rubex.exchange.Order;
+import com.googlecode.rubex.exchange.OrderCallback;
+import com.googlecode.rubex.exchange.OrderException;
+import com.googlecode.rubex.exchange.OrderSide;
+import com.googlecode.rubex.exchange.OrderTimeInForce;
+import com.googlecode.rubex.exchange.SimpleExchange;
+
+/**
+ * Benchmarks of limit order paths of {@link SimpleExchange}.  As in order 
+ * book benchmarks, every measured operation is followed by operation that
+ * restores the book.  Book initially has <code>depth</code> price levels on
+ * each side with <code>entriesPerLevel</code> orders of 100 quantity units
+ * on each level.
+ * 
+ * @author Mikhail Vladimirov
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class ExchangeBenchmark
+{
+    private final static long MIDDLE_PRICE = 1000000L;
+    private final static long ORDER_QUANTITY = 100L;
+    
+    @Param ({"10", "1000"})
+    public int depth;
+    
+    @Param ({"4"})
+    public int entriesPerLevel;
+    
+    private Exchange exchange;
+    private OrderCallback callback;
+    
+    @Setup
+    public void setUp () throws OrderException
+    {
+        exchange = new SimpleExchange ();
+        callback = new NullOrderCallback ();
+        
+        for (int level = 1; level <= depth; level++)
+        {
+            for (int i = 0; i < entriesPerLevel; i++)
+            {
+                exchange.createLimitOrder (
+                    0L, OrderSide.BUY, ORDER_QUANTITY, MIDDLE_PRICE - level, 
+                    OrderTimeInForce.DAY, callback, null);
+                exchange.createLimitOrder (
+                    0L, OrderSide.SELL, ORDER_QUANTITY, MIDDLE_PRICE + level, 
+                    OrderTimeInForce.DAY, callback, null);
+            }
+        }
+    }
+    
+    /**
+     * Create passive day order in the middle of the book and cancel it.
+     */
+    @Benchmark
+    public LimitOrder limitDay () throws OrderException
+    {
+        LimitOrder order = exchange.createLimitOrder (
+            0L, OrderSide.BUY, ORDER_QUANTITY, MIDDLE_PRICE - (depth + 1) / 2, 
+            OrderTimeInForce.DAY, callback, null);
+        order.cancel (0L);
+        
+        return order;
+    }
+    
+    /**
+     * Create immediate-or-cancel sell order that partially fills the best
+     * bid level and has its remainder canceled, and replenish the level.
+     */
+    @Benchmark
+    public LimitOrder limitImmediateOrCancel () throws OrderException
+    {
+        exchange.createLimitOrder (
+            0L, OrderSide.SELL, ORDER_QUANTITY / 2, MIDDLE_PRICE - 1, 
+            OrderTimeInForce.IOC, callback, null);
+        
+        return exchange.createLimitOrder (
+            0L, OrderSide.BUY, ORDER_QUANTITY / 2, MIDDLE_PRICE - 1, 
+            OrderTimeInForce.DAY, callback, null);
+    }
+    
+    /**
+     * Create fill-or-kill sell order that is filled at the best bid level and 
+     * replenish the level.
+     */
+    @Benchmark
+    public LimitOrder limitFillOrKillFilled () throws OrderException
+    {
+        exchange.createLimitOrder (
+            0L, OrderSide.SELL, ORDER_QUANTITY / 2, MIDDLE_PRICE - 1, 
+            OrderTimeInForce.FOK, callback, null);
+        
+        return exchange.createLimitOrder (
+            0L, OrderSide.BUY, ORDER_QUANTITY / 2, MIDDLE_PRICE - 1, 
+            OrderTimeInForce.DAY, callback, null);
+    }
+    
+    /**
+     * Create fill-or-kill sell order that cannot be filled within its limit
+     * price and is killed.
+     */
+    @Benchmark
+    public LimitOrder limitFillOrKillKilled () throws OrderException
+    {
+        return exchange.createLimitOrder (
+            0L, OrderSide.SELL, ORDER_QUANTITY * entriesPerLevel * 2, 
+            MIDDLE_PRICE - 1, OrderTimeInForce.FOK, callback, null);
+    }
+    
+    private static class NullOrderCallback implements OrderCallback
+    {
+        @Override
+        public void onFill (long timestamp, Order order, long quantity,
+            long price)
+        {
+            // Do nothing
+        }
+
+        @Override
+        public void onFilled (long timestamp, Order order)
+        {
+            // Do nothing
+        }
+
+        @Override
+        public void onCanceled (long timestamp, Order order)
+        {
+            // Do nothing
+        }
+
+        @Override
+        public void onReplaced (long timestamp, Order order, Order newOrder)
+        {
+            // Do nothing
+        }
+    }
+}
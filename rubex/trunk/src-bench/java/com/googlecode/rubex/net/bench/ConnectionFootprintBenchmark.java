@@ -0,0 +1,211 @@
+package com.googlecode.rubex.net.bench;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.googlecode.rubex.concurrent.PlatformThreadFactory;
+import com.googlecode.rubex.concurrent.VirtualThreadFactory;
+import com.googlecode.rubex.net.DataServerSocketServer;
+
+/**
+ * Benchmark of resources taken by idle client connections of server socket
+ * server, when connections run on platform threads and when they run on
+ * virtual threads.  Every operation opens <code>connectionCount</code>
+ * loopback connections and waits until server has accepted and started all
+ * of them.  Besides time, results contain number of platform threads and
+ * resident memory the connections added, as secondary
+ * <code>platformThreads</code> and <code>residentKilobytes</code> counters.
+ * Resident memory is read from <code>/proc/self/status</code> and is
+ * reported as -1 where it is not available.
+ * <p>
+ * Every connection takes two descriptors in benchmark process, so open
+ * files limit must be raised for large connection counts.  Virtual mode
+ * requires Java platform with virtual threads.
+ *
+ * @author Mikhail Vladimirov
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.SingleShotTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 1)
+@Measurement (iterations = 3)
+@Fork (1)
+public class ConnectionFootprintBenchmark
+{
+    private final static long THREAD_EXIT_TIMEOUT = 10000L;
+
+    @Param ({"Platform", "Virtual"})
+    public String threadMode;
+
+    @Param ({"1000", "10000"})
+    public int connectionCount;
+
+    private final ThreadMXBean threadMXBean =
+        ManagementFactory.getThreadMXBean ();
+
+    private final List <Socket> clients = new ArrayList <Socket> ();
+
+    private ThreadFactory threadFactory;
+    private ServerSocket serverSocket;
+    private DataServerSocketServer server;
+    private int initialThreadCount;
+    private int baseThreadCount;
+    private long baseResidentKilobytes;
+
+    @Setup
+    public void setUp ()
+    {
+        if ("Platform".equals (threadMode))
+            threadFactory = new PlatformThreadFactory ();
+        else if ("Virtual".equals (threadMode))
+        {
+            if (!VirtualThreadFactory.isSupported ())
+                throw new IllegalStateException (
+                    "Virtual threads are not supported");
+
+            threadFactory = new VirtualThreadFactory ();
+        }
+        else
+            throw new IllegalArgumentException (
+                "Unknown thread mode: " + threadMode);
+
+        initialThreadCount = threadMXBean.getThreadCount ();
+    }
+
+    @Setup (Level.Iteration)
+    public void setUpIteration () throws IOException
+    {
+        serverSocket = new ServerSocket (0, 1024, InetAddress.getByName (null));
+        server = new DataServerSocketServer (serverSocket, threadFactory);
+        server.start ();
+
+        baseThreadCount = threadMXBean.getThreadCount ();
+        baseResidentKilobytes = getResidentKilobytes ();
+    }
+
+    @TearDown (Level.Iteration)
+    public void tearDownIteration () throws Exception
+    {
+        server.shutdown ();
+
+        for (Socket client: clients)
+            client.close ();
+
+        clients.clear ();
+
+        // Next iteration should not count threads of this one
+        long deadline = System.currentTimeMillis () + THREAD_EXIT_TIMEOUT;
+        while (threadMXBean.getThreadCount () > initialThreadCount &&
+            System.currentTimeMillis () < deadline)
+            Thread.sleep (10L);
+    }
+
+    /**
+     * Open connections and wait until server has accepted all of them.
+     */
+    @Benchmark
+    public int connect (Footprint footprint)
+        throws IOException, InterruptedException
+    {
+        InetAddress address = InetAddress.getByName (null);
+        int port = serverSocket.getLocalPort ();
+
+        for (int i = 0; i < connectionCount; i++)
+            clients.add (new Socket (address, port));
+
+        int count;
+        while ((count = server.getAllConnections ().length) < connectionCount)
+            Thread.sleep (1L);
+
+        footprint.platformThreads =
+            threadMXBean.getThreadCount () - baseThreadCount;
+
+        long residentKilobytes = getResidentKilobytes ();
+        footprint.residentKilobytes =
+            residentKilobytes < 0L || baseResidentKilobytes < 0L ? -1L :
+                residentKilobytes - baseResidentKilobytes;
+
+        return count;
+    }
+
+    private static long getResidentKilobytes ()
+    {
+        try
+        {
+            BufferedReader reader =
+                new BufferedReader (new FileReader ("/proc/self/status"));
+
+            try
+            {
+                String line;
+                while ((line = reader.readLine ()) != null)
+                {
+                    // VmRSS:     123456 kB
+                    if (line.startsWith ("VmRSS:"))
+                        return Long.parseLong (
+                            line.substring (6).replace ("kB", "").trim ());
+                }
+            }
+            finally
+            {
+                reader.close ();
+            }
+        }
+        catch (IOException ex)
+        {
+            // Not available
+        }
+
+        return -1L;
+    }
+
+    /**
+     * Secondary results of the benchmark.
+     */
+    @State (Scope.Thread)
+    @AuxCounters (AuxCounters.Type.EVENTS)
+    public static class Footprint
+    {
+        /**
+         * Number of platform threads added by connections.
+         */
+        public long platformThreads;
+
+        /**
+         * Resident memory added by connections in kilobytes.
+         */
+        public long residentKilobytes;
+
+        @Setup (Level.Iteration)
+        public void reset ()
+        {
+            platformThreads = 0L;
+            residentKilobytes = 0L;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.googlecode.rubex.orderbook.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.googlecode.rubex.bench.OrderFlow;
+import com.googlecode.rubex.marketdata.SimpleOrderBookMarketDataTracker;
+import com.googlecode.rubex.orderbook.AbstractOrderBook;
+import com.googlecode.rubex.orderbook.AbstractPriceLevelOrderBook;
+import com.googlecode.rubex.orderbook.ArrayOrderBook;
+import com.googlecode.rubex.orderbook.OrderBookEntryCallback;
+import com.googlecode.rubex.orderbook.OrderBookEntryHandler;
+import com.googlecode.rubex.orderbook.OrderBookEntrySide;
+import com.googlecode.rubex.orderbook.OrderBookException;
+import com.googlecode.rubex.orderbook.PriceLevelOrderBook;
+import com.googlecode.rubex.orderbook.SimpleOrderBook;
+
+/**
+ * Benchmarks of order book operations.  Every benchmark keeps the book in
+ * steady state, i.e. measured operation is followed by operation that
+ * restores the book, so results are per pair of operations.  Book initially
+ * has <code>depth</code> price levels on each side with
+ * <code>entriesPerLevel</code> entries of 100 quantity units on each level
+ * and market data tracker attached as listener.
+ *
+ * @author Mikhail Vladimirov
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class OrderBookBenchmark
+{
+    private final static long MIDDLE_PRICE = 1000000L;
+    private final static long ENTRY_QUANTITY = 100L;
+
+    @Param ({"SimpleOrderBook", "PriceLevelOrderBook", "ArrayOrderBook"})
+    public String orderBookType;
+
+    @Param ({"10", "1000"})
+    public int depth;
+
+    @Param ({"4"})
+    public int entriesPerLevel;
+
+    @Param ({"5"})
+    public int sweepLevels;
+
+    @Param ({"0.5"})
+    public double cancelRatio;
+
+    @Param ({"12345"})
+    public long seed;
+
+    private AbstractOrderBook orderBook;
+    private OrderBookEntryCallback callback;
+    private OrderFlow flow;
+
+    private OrderBookEntryHandler [] topEntries;
+    private int topIndex;
+    private OrderBookEntryHandler [] deepEntries;
+    private int deepIndex;
+
+    private Slot [] liveSlots;
+    private int liveCount;
+    private Slot freeSlots;
+
+    @Setup
+    public void setUp () throws OrderBookException
+    {
+        if ("SimpleOrderBook".equals (orderBookType))
+            orderBook = new SimpleOrderBook ();
+        else if ("PriceLevelOrderBook".equals (orderBookType))
+            orderBook = new PriceLevelOrderBook ();
+        else if ("ArrayOrderBook".equals (orderBookType))
+            orderBook = new ArrayOrderBook ();
+        else
+            throw new IllegalArgumentException (
+                "Unknown order book type: " + orderBookType);
+
+        // Array order book reuses its slots anyway
+        if (orderBook instanceof AbstractPriceLevelOrderBook)
+            ((AbstractPriceLevelOrderBook)orderBook).setPoolEntries (true);
+
+        orderBook.setReuseEvents (true);
+        orderBook.addOrderBookListener (
+            new SimpleOrderBookMarketDataTracker ());
+
+        callback = new MyOrderBookEntryCallback ();
+        flow = new OrderFlow (
+            seed, 1 << 16, MIDDLE_PRICE, depth, 0.1, cancelRatio);
+
+        topEntries = new OrderBookEntryHandler [entriesPerLevel];
+        deepEntries = new OrderBookEntryHandler [entriesPerLevel];
+
+        for (int level = 1; level <= depth; level++)
+        {
+            for (int i = 0; i < entriesPerLevel; i++)
+            {
+                OrderBookEntryHandler bid = orderBook.placeEntry (
+                    0L, OrderBookEntrySide.BID,
+                    ENTRY_QUANTITY, MIDDLE_PRICE - level, callback, null);
+                orderBook.placeEntry (
+                    0L, OrderBookEntrySide.ASK,
+                    ENTRY_QUANTITY, MIDDLE_PRICE + level, callback, null);
+
+                if (level == 1)
+                    topEntries [i] = bid;
+
+                if (level == depth)
+                    deepEntries [i] = bid;
+            }
+        }
+
+        liveSlots = new Slot [4096];
+        liveCount = 0;
+        freeSlots = null;
+        for (int i = 0; i < liveSlots.length; i++)
+        {
+            Slot slot = new Slot ();
+            slot.next = freeSlots;
+            freeSlots = slot;
+        }
+    }
+
+    /**
+     * Place passive bid in the middle of the book and cancel it.
+     */
+    @Benchmark
+    public OrderBookEntryHandler placePassive () throws OrderBookException
+    {
+        OrderBookEntryHandler handler = orderBook.placeEntry (
+            0L, OrderBookEntrySide.BID,
+            ENTRY_QUANTITY, MIDDLE_PRICE - (depth + 1) / 2, callback, null);
+        handler.cancel (0L);
+
+        return handler;
+    }
+
+    /**
+     * Place ask that partially fills the best bid level and replenish the
+     * level with passive bid of the same quantity.
+     */
+    @Benchmark
+    public OrderBookEntryHandler aggressiveSingleLevel ()
+        throws OrderBookException
+    {
+        orderBook.placeEntry (
+            0L, OrderBookEntrySide.ASK,
+            ENTRY_QUANTITY / 2, MIDDLE_PRICE - 1, callback, null);
+
+        return orderBook.placeEntry (
+            0L, OrderBookEntrySide.BID,
+            ENTRY_QUANTITY / 2, MIDDLE_PRICE - 1, callback, null);
+    }
+
+    /**
+     * Place ask that sweeps <code>sweepLevels</code> best bid levels and
+     * restore swept levels with passive bids.
+     */
+    @Benchmark
+    public OrderBookEntryHandler multiLevelSweep () throws OrderBookException
+    {
+        int levels = Math.min (sweepLevels, depth);
+
+        OrderBookEntryHandler result = orderBook.placeEntry (
+            0L, OrderBookEntrySide.ASK,
+            ENTRY_QUANTITY * entriesPerLevel * levels, MIDDLE_PRICE - levels,
+            callback, null);
+
+        for (int level = 1; level <= levels; level++)
+        {
+            for (int i = 0; i < entriesPerLevel; i++)
+            {
+                OrderBookEntryHandler bid = orderBook.placeEntry (
+                    0L, OrderBookEntrySide.BID,
+                    ENTRY_QUANTITY, MIDDLE_PRICE - level, callback, null);
+
+                if (level == 1)
+                    topEntries [i] = bid;
+
+                if (level == depth)
+                    deepEntries [i] = bid;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Cancel the oldest entry at the best bid level and place new one at the
+     * same price.
+     */
+    @Benchmark
+    public OrderBookEntryHandler cancelTop () throws OrderBookException
+    {
+        topEntries [topIndex].cancel (0L);
+
+        OrderBookEntryHandler result = topEntries [topIndex] =
+            orderBook.placeEntry (
+                0L, OrderBookEntrySide.BID,
+                ENTRY_QUANTITY, MIDDLE_PRICE - 1, callback, null);
+
+        topIndex = (topIndex + 1) % entriesPerLevel;
+
+        return result;
+    }
+
+    /**
+     * Cancel the oldest entry at the worst bid level and place new one at the
+     * same price.
+     */
+    @Benchmark
+    public OrderBookEntryHandler cancelDeep () throws OrderBookException
+    {
+        deepEntries [deepIndex].cancel (0L);
+
+        OrderBookEntryHandler result = deepEntries [deepIndex] =
+            orderBook.placeEntry (
+                0L, OrderBookEntrySide.BID,
+                ENTRY_QUANTITY, MIDDLE_PRICE - depth, callback, null);
+
+        deepIndex = (deepIndex + 1) % entriesPerLevel;
+
+        return result;
+    }
+
+    /**
+     * Process next instruction of synthetic order flow.  Fraction of cancels
+     * is controlled by <code>cancelRatio</code>.
+     */
+    @Benchmark
+    public int flow () throws OrderBookException
+    {
+        flow.next ();
+
+        if (liveCount > 0 && (flow.isCancel () || freeSlots == null))
+        {
+            Slot slot = liveSlots [flow.getRandom () % liveCount];
+            slot.handler.cancel (0L);
+        }
+        else if (freeSlots != null)
+        {
+            Slot slot = freeSlots;
+            freeSlots = slot.next;
+            slot.next = null;
+            slot.done = false;
+
+            OrderBookEntryHandler handler = orderBook.placeEntry (
+                0L,
+                flow.isBid () ? OrderBookEntrySide.BID : OrderBookEntrySide.ASK,
+                flow.getQuantity (), flow.getPrice (), callback, slot);
+
+            if (slot.done)
+                release (slot);
+            else
+            {
+                slot.handler = handler;
+                slot.index = liveCount;
+                liveSlots [liveCount++] = slot;
+            }
+        }
+
+        return liveCount;
+    }
+
+    private void done (Object closure)
+    {
+        if (closure instanceof Slot)
+        {
+            Slot slot = (Slot)closure;
+            slot.done = true;
+
+            if (slot.index >= 0)
+            {
+                Slot last = liveSlots [--liveCount];
+                liveSlots [slot.index] = last;
+                last.index = slot.index;
+                liveSlots [liveCount] = null;
+
+                release (slot);
+            }
+        }
+    }
+
+    private void release (Slot slot)
+    {
+        slot.handler = null;
+        slot.index = -1;
+        slot.next = freeSlots;
+        freeSlots = slot;
+    }
+
+    private static class Slot
+    {
+        public OrderBookEntryHandler handler = null;
+        public int index = -1;
+        public boolean done = false;
+        public Slot next = null;
+    }
+
+    private class MyOrderBookEntryCallback implements OrderBookEntryCallback
+    {
+        @Override
+        public void onFill (long timestamp, OrderBookEntryHandler handler,
+            long quantity, long price)
+        {
+            // Do nothing
+        }
+
+        @Override
+        public void onFilled (long timestamp, OrderBookEntryHandler handler)
+        {
+            done (handler.getClosure ());
+        }
+
+        @Override
+        public void onCanceled (long timestamp, OrderBookEntryHandler handler)
+        {
+            done (handler.getClosure ());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.googlecode.rubex.orderbook.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.googlecode.rubex.orderbook.AbstractOrderBook;
+import com.googlecode.rubex.orderbook.ArrayOrderBook;
+import com.googlecode.rubex.orderbook.OrderBookEntryCallback;
+import com.googlecode.rubex.orderbook.OrderBookEntryHandler;
+import com.googlecode.rubex.orderbook.OrderBookEntrySide;
+import com.googlecode.rubex.orderbook.OrderBookException;
+import com.googlecode.rubex.orderbook.PriceLevelOrderBook;
+import com.googlecode.rubex.orderbook.SimpleOrderBook;
+
+/**
+ * Benchmark of memory taken by resting entries of order books.  Every
+ * operation places <code>entryCount</code> non-crossing entries spread over
+ * 100 price levels on each side into new order book, that was created with
+ * enough capacity for all of them.  Besides time, results contain number of
+ * bytes allocated per resting entry, including price levels and handlers, as
+ * secondary <code>bytesPerEntry</code> counter.  Allocated bytes are read
+ * from thread management bean and are reported as -1 where it does not
+ * support it.
+ *
+ * @author Mikhail Vladimirov
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.SingleShotTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 3)
+@Measurement (iterations = 5)
+@Fork (1)
+public class OrderBookFootprintBenchmark
+{
+    private final static long MIDDLE_PRICE = 1000000L;
+    private final static int LEVEL_COUNT = 100;
+
+    @Param ({"SimpleOrderBook", "PriceLevelOrderBook", "ArrayOrderBook"})
+    public String orderBookType;
+
+    @Param ({"100000"})
+    public int entryCount;
+
+    private final OrderBookEntryCallback callback =
+        new MyOrderBookEntryCallback ();
+
+    private AbstractOrderBook orderBook;
+
+    @Setup (Level.Invocation)
+    public void setUp ()
+    {
+        if ("SimpleOrderBook".equals (orderBookType))
+            orderBook = new SimpleOrderBook ();
+        else if ("PriceLevelOrderBook".equals (orderBookType))
+            orderBook = new PriceLevelOrderBook ();
+        else if ("ArrayOrderBook".equals (orderBookType))
+            orderBook = new ArrayOrderBook (entryCount);
+        else
+            throw new IllegalArgumentException (
+                "Unknown order book type: " + orderBookType);
+    }
+
+    /**
+     * Place resting entries into new order book.
+     */
+    @Benchmark
+    public AbstractOrderBook place (Footprint footprint)
+        throws OrderBookException
+    {
+        long before = getAllocatedBytes ();
+
+        for (int i = 0; i < entryCount; i++)
+        {
+            long offset = 1 + i % LEVEL_COUNT;
+
+            if (i % 2 == 0)
+                orderBook.placeEntry (
+                    0L, OrderBookEntrySide.BID, 100L,
+                    MIDDLE_PRICE - offset, callback, null);
+            else
+                orderBook.placeEntry (
+                    0L, OrderBookEntrySide.ASK, 100L,
+                    MIDDLE_PRICE + offset, callback, null);
+        }
+
+        long after = getAllocatedBytes ();
+
+        footprint.bytesPerEntry = before < 0L || after < 0L ? -1L :
+            (after - before) / entryCount;
+
+        return orderBook;
+    }
+
+    private static long getAllocatedBytes ()
+    {
+        java.lang.management.ThreadMXBean threadMXBean =
+            ManagementFactory.getThreadMXBean ();
+
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean))
+            return -1L;
+
+        return ((com.sun.management.ThreadMXBean)threadMXBean).
+            getThreadAllocatedBytes (Thread.currentThread ().getId ());
+    }
+
+    /**
+     * Secondary results of the benchmark.
+     */
+    @State (Scope.Thread)
+    @AuxCounters (AuxCounters.Type.EVENTS)
+    public static class Footprint
+    {
+        /**
+         * Bytes allocated per resting entry.
+         */
+        public long bytesPerEntry;
+
+        @Setup (Level.Iteration)
+        public void reset ()
+        {
+            bytesPerEntry = 0L;
+        }
+    }
+
+    private static class MyOrderBookEntryCallback
+        implements OrderBookEntryCallback
+    {
+        @Override
+        public void onFill (long timestamp, OrderBookEntryHandler handler,
+            long quantity, long price)
+        {
+            // Do nothing
+        }
+
+        @Override
+        public void onFilled (long timestamp, OrderBookEntryHandler handler)
+        {
+            // Do nothing
+        }
+
+        @Override
+        public void onCanceled (long timestamp, OrderBookEntryHandler handler)
+        {
+            // Do nothing
+        }
+    }
+}
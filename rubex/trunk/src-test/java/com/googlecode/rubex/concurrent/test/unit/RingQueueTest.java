@@ -0,0 +1,168 @@
+package com.googlecode.rubex.concurrent.test.unit;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.googlecode.rubex.concurrent.BlockingWaitStrategy;
+import com.googlecode.rubex.concurrent.RingQueue;
+import com.googlecode.rubex.concurrent.WaitStrategy;
+import com.googlecode.rubex.concurrent.YieldingWaitStrategy;
+
+public class RingQueueTest
+{
+    @Test
+    public void testOfferPoll () throws Exception
+    {
+        RingQueue <String> queue = new RingQueue <String> (4);
+
+        assertNull (queue.poll ());
+        assertEquals (0, queue.size ());
+
+        assertTrue (queue.offer ("A"));
+        assertTrue (queue.offer ("B"));
+        assertTrue (queue.offer ("C"));
+        assertTrue (queue.offer ("D"));
+        assertFalse (queue.offer ("E"));
+        assertEquals (4, queue.size ());
+
+        assertEquals ("A", queue.poll ());
+        assertTrue (queue.offer ("E"));
+        assertFalse (queue.offer ("F"));
+
+        assertEquals ("B", queue.poll ());
+        assertEquals ("C", queue.poll ());
+        assertEquals ("D", queue.poll ());
+        assertEquals ("E", queue.take ());
+        assertNull (queue.poll ());
+        assertEquals (0, queue.size ());
+    }
+
+    @Test
+    public void testMultipleProducers () throws Exception
+    {
+        final int producerCount = 4;
+        final int count = 100000;
+
+        final RingQueue <long []> queue = new RingQueue <long []> (
+            16, new BlockingWaitStrategy (), new YieldingWaitStrategy ());
+
+        Thread [] producers = new Thread [producerCount];
+        for (int i = 0; i < producerCount; i++)
+        {
+            final int producer = i;
+
+            producers [i] = new Thread ()
+            {
+                @Override
+                public void run ()
+                {
+                    try
+                    {
+                        for (int j = 0; j < count; j++)
+                            queue.put (new long [] {producer, j});
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread ().interrupt ();
+                    }
+                }
+            };
+            producers [i].start ();
+        }
+
+        // Elements of every producer come in the order they were added
+        long [] next = new long [producerCount];
+        for (int i = 0; i < producerCount * count; i++)
+        {
+            long [] element = queue.take ();
+            assertEquals (next [(int)element [0]]++, element [1]);
+        }
+
+        for (Thread producer: producers)
+            producer.join ();
+
+        assertNull (queue.poll ());
+        for (int i = 0; i < producerCount; i++)
+            assertEquals (count, next [i]);
+    }
+
+    @Test
+    public void testNoSignalWhileConsumerIsBusy () throws Exception
+    {
+        final AtomicInteger signalCount = new AtomicInteger ();
+
+        RingQueue <String> queue = new RingQueue <String> (
+            4, 
+            new WaitStrategy ()
+            {
+                @Override
+                public void idle (int counter)
+                {
+                    // Do nothing
+                }
+
+                @Override
+                public void signalAll ()
+                {
+                    signalCount.incrementAndGet ();
+                }
+            }, 
+            new YieldingWaitStrategy ());
+
+        assertTrue (queue.offer ("A"));
+        queue.put ("B");
+        assertEquals ("A", queue.take ());
+        assertEquals ("B", queue.take ());
+        queue.idle (0);
+
+        assertEquals (0, signalCount.get ());
+    }
+
+    @Test
+    public void testBlockedConsumerIsSignalled () throws Exception
+    {
+        // Consumer would not wake up by timeout within the test
+        final RingQueue <String> queue = new RingQueue <String> (
+            4, new BlockingWaitStrategy (TimeUnit.HOURS.toNanos (1L)),
+            new YieldingWaitStrategy ());
+
+        final AtomicReference <String> taken = new AtomicReference <String> ();
+
+        Thread consumer = new Thread ()
+        {
+            @Override
+            public void run ()
+            {
+                try
+                {
+                    for (int i = 0; i < 100; i++)
+                        taken.set (queue.take ());
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread ().interrupt ();
+                }
+            }
+        };
+        consumer.start ();
+
+        for (int i = 0; i < 100; i++)
+        {
+            // Let consumer block on empty queue from time to time
+            if (i % 10 == 0)
+                Thread.sleep (10L);
+
+            queue.put ("E" + i);
+        }
+
+        consumer.join (10000L);
+
+        assertFalse (consumer.isAlive ());
+        assertEquals ("E99", taken.get ());
+    }
+}
@@ -0,0 +1,61 @@
+package com.googlecode.rubex.concurrent.test.unit;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.googlecode.rubex.concurrent.VirtualThreadFactory;
+
+public class VirtualThreadFactoryTest
+{
+    @Test
+    public void testNewThread () throws Exception
+    {
+        final AtomicReference <Thread> runner = new AtomicReference <Thread> ();
+
+        Thread thread = new VirtualThreadFactory ().newThread (new Runnable ()
+        {
+            @Override
+            public void run ()
+            {
+                runner.set (Thread.currentThread ());
+            }
+        });
+        thread.setName ("Test");
+
+        assertEquals ("Test", thread.getName ());
+        assertNull (runner.get ());
+
+        thread.start ();
+        thread.join ();
+
+        assertSame (thread, runner.get ());
+    }
+
+    @Test
+    public void testIsSupported () throws Exception
+    {
+        boolean hasVirtualThreads;
+        try
+        {
+            Thread.class.getMethod ("ofVirtual");
+            hasVirtualThreads = true;
+        }
+        catch (NoSuchMethodException ex)
+        {
+            hasVirtualThreads = false;
+        }
+
+        // Virtual threads may still be disabled preview feature
+        if (!hasVirtualThreads)
+            assertFalse (VirtualThreadFactory.isSupported ());
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void testNullRunnable () throws Exception
+    {
+        new VirtualThreadFactory ().newThread (null);
+    }
+}
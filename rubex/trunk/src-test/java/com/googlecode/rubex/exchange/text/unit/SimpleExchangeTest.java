@@ -0,0 +1,207 @@
+package com.googlecode.rubex.exchange.text.unit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.googlecode.rubex.exchange.LimitOrder;
+import com.googlecode.rubex.exchange.LimitOrderBatch;
+import com.googlecode.rubex.exchange.Order;
+import com.googlecode.rubex.exchange.OrderCallback;
+import com.googlecode.rubex.exchange.OrderException;
+import com.googlecode.rubex.exchange.OrderSide;
+import com.googlecode.rubex.exchange.OrderTimeInForce;
+import com.googlecode.rubex.exchange.SimpleExchange;
+import com.googlecode.rubex.orderbook.PriceLevelOrderBook;
+
+public class SimpleExchangeTest
+{
+    private final List <String> events = new ArrayList <String> ();
+    private final OrderCallback callback = new MyOrderCallback ();
+
+    private SimpleExchange exchange;
+
+    @Before
+    public void setUp ()
+    {
+        exchange = new SimpleExchange (new PriceLevelOrderBook (), null);
+    }
+
+    @Test
+    public void testReplaceLimitOrder () throws Exception
+    {
+        LimitOrder bid = exchange.createLimitOrder (
+            0L, OrderSide.BUY, 100, 99, OrderTimeInForce.DAY, callback, "A");
+        LimitOrder newBid = bid.replaceWithLimitOrder (
+            0L, 60, 100, OrderTimeInForce.DAY, callback, "B");
+
+        assertEquals ("REPLACED:A:B", events.get (0));
+
+        exchange.createLimitOrder (
+            0L, OrderSide.SELL, 10, 100, OrderTimeInForce.DAY, callback, "X");
+
+        assertTrue (events.contains ("FILL:B:10:100"));
+        assertFalse (events.contains ("FILL:A:10:100"));
+        assertEquals (10, newBid.getFilledQuantity ());
+        assertEquals (0, bid.getFilledQuantity ());
+
+        // Canceling replaced order does nothing
+        bid.cancel (0L);
+        assertFalse (events.contains ("CANCELED:A"));
+        assertFalse (events.contains ("CANCELED:B"));
+    }
+
+    @Test
+    public void testCrossingReplace () throws Exception
+    {
+        exchange.createLimitOrder (
+            0L, OrderSide.SELL, 10, 100, OrderTimeInForce.DAY, callback, "X");
+        exchange.createLimitOrder (
+            0L, OrderSide.SELL, 10, 101, OrderTimeInForce.DAY, callback, "Y");
+        LimitOrder bid = exchange.createLimitOrder (
+            0L, OrderSide.BUY, 100, 99, OrderTimeInForce.DAY, callback, "A");
+
+        LimitOrder newBid = bid.replaceWithLimitOrder (
+            0L, 60, 100, OrderTimeInForce.DAY, callback, "B");
+
+        // Replace is reported before fills of the new order
+        assertEquals (
+            "[FILL:X:10:100, FILLED:X, REPLACED:A:B, FILL:B:10:100]",
+            events.toString ());
+        assertEquals (10, newBid.getFilledQuantity ());
+
+        // Fully filled new order is reported filled after the replace
+        events.clear ();
+        LimitOrder newerBid = newBid.replaceWithLimitOrder (
+            0L, 10, 101, OrderTimeInForce.DAY, callback, "C");
+
+        assertEquals (
+            "[FILL:Y:10:101, FILLED:Y, REPLACED:B:C, FILL:C:10:101, FILLED:C]",
+            events.toString ());
+        assertEquals (10, newerBid.getFilledQuantity ());
+    }
+
+    @Test
+    public void testFailedReplaceKeepsOrder () throws Exception
+    {
+        exchange.createLimitOrder (
+            0L, OrderSide.SELL, 10, 100, OrderTimeInForce.DAY, callback, "X");
+
+        final List <OrderException> errors = new ArrayList <OrderException> ();
+
+        // Replace from fill callback of entry that is being matched fails
+        LimitOrder bid = exchange.createLimitOrder (
+            0L, OrderSide.BUY, 100, 100, OrderTimeInForce.DAY,
+            new MyOrderCallback ()
+            {
+                @Override
+                public void onFill (
+                    long timestamp, Order order, long quantity, long price)
+                {
+                    super.onFill (timestamp, order, quantity, price);
+
+                    // Only first fill, that comes while entry is matched
+                    if (!errors.isEmpty ()) return;
+
+                    try
+                    {
+                        ((LimitOrder)order).replaceWithLimitOrder (
+                            timestamp, 50, 100, OrderTimeInForce.DAY,
+                            callback, "B");
+                    }
+                    catch (OrderException ex)
+                    {
+                        errors.add (ex);
+                    }
+                }
+            }, "A");
+
+        assertEquals (1, errors.size ());
+        assertFalse (events.toString (), events.contains ("REPLACED:A:B"));
+
+        // Order still owns its entry and keeps receiving fills
+        events.clear ();
+        exchange.createLimitOrder (
+            0L, OrderSide.SELL, 20, 100, OrderTimeInForce.DAY, callback, "Y");
+
+        assertTrue (events.toString (), events.contains ("FILL:A:20:100"));
+        assertEquals (30, bid.getFilledQuantity ());
+
+        bid.cancel (0L);
+        assertTrue (events.contains ("CANCELED:A"));
+    }
+
+    @Test
+    public void testMixedLimitOrderBatch () throws Exception
+    {
+        LimitOrderBatch batch = new LimitOrderBatch ();
+        batch.add (OrderSide.BUY, 10, 99, OrderTimeInForce.DAY, callback, "A");
+        batch.add (
+            OrderSide.BUY, 10, 99, OrderTimeInForce.GTD, 500L, callback, "B");
+        batch.add (OrderSide.SELL, 5, 99, OrderTimeInForce.IOC, callback, "C");
+        batch.add (
+            OrderSide.SELL, 10, 101, OrderTimeInForce.DAY, 2000L, callback, "D");
+        batch.add (OrderSide.SELL, 10, 101, OrderTimeInForce.DAY, callback, "E");
+
+        exchange.createLimitOrders (1000L, batch);
+
+        assertNotNull (batch.getOrder (0));
+        assertNull (batch.getException (0));
+        assertNull (batch.getOrder (1));
+        assertNotNull (batch.getException (1));
+        assertNotNull (batch.getOrder (2));
+        assertNull (batch.getException (2));
+        assertNull (batch.getOrder (3));
+        assertNotNull (batch.getException (3));
+        assertNotNull (batch.getOrder (4));
+        assertNull (batch.getException (4));
+
+        assertTrue (events.toString (), events.contains ("FILL:A:5:99"));
+        assertTrue (events.toString (), events.contains ("FILLED:C"));
+        assertFalse (events.toString (), events.contains ("FILL:E:5:99"));
+        assertEquals (5, batch.getOrder (0).getFilledQuantity ());
+        assertEquals (0, batch.getOrder (4).getFilledQuantity ());
+
+        // Rejected instructions leave nothing in the order book
+        events.clear ();
+        exchange.createLimitOrder (
+            1000L, OrderSide.SELL, 20, 99, OrderTimeInForce.IOC, callback, "X");
+
+        assertTrue (events.toString (), events.contains ("FILL:X:5:99"));
+        assertTrue (events.toString (), events.contains ("CANCELED:X"));
+    }
+
+    private class MyOrderCallback implements OrderCallback
+    {
+        @Override
+        public void onFill (
+            long timestamp, Order order, long quantity, long price)
+        {
+            events.add (
+                "FILL:" + order.getClosure () + ":" + quantity + ":" + price);
+        }
+
+        @Override
+        public void onFilled (long timestamp, Order order)
+        {
+            events.add ("FILLED:" + order.getClosure ());
+        }
+
+        @Override
+        public void onCanceled (long timestamp, Order order)
+        {
+            events.add ("CANCELED:" + order.getClosure ());
+        }
+
+        @Override
+        public void onReplaced (long timestamp, Order order, Order newOrder)
+        {
+            events.add (
+                "REPLACED:" + order.getClosure () + ":" +
+                newOrder.getClosure ());
+        }
+    }
+}
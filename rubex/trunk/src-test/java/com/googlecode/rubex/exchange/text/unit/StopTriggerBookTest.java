@@ -0,0 +1,102 @@
+package com.googlecode.rubex.exchange.text.unit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.googlecode.rubex.exchange.OrderSide;
+import com.googlecode.rubex.exchange.StopTriggerBook;
+import com.googlecode.rubex.exchange.StopTriggerCallback;
+
+public class StopTriggerBookTest
+{
+    private final List <String> triggered = new ArrayList <String> ();
+
+    @Test
+    public void testTrigger () throws Exception
+    {
+        StopTriggerBook book = new StopTriggerBook ();
+
+        book.add (OrderSide.BUY, 105L, new MyCallback ("buy105"));
+        book.add (OrderSide.BUY, 103L, new MyCallback ("buy103a"));
+        book.add (OrderSide.BUY, 103L, new MyCallback ("buy103b"));
+        book.add (OrderSide.SELL, 95L, new MyCallback ("sell95"));
+        book.add (OrderSide.SELL, 97L, new MyCallback ("sell97"));
+        assertEquals (5, book.size ());
+
+        assertEquals (0, book.triggerBuyStops (0L, 102L));
+        assertEquals (0, book.triggerSellStops (0L, 98L));
+
+        assertEquals (2, book.triggerBuyStops (0L, 104L));
+        assertEquals (1, book.triggerSellStops (0L, 96L));
+        assertEquals (2, book.size ());
+
+        assertEquals ("buy103a", triggered.get (0));
+        assertEquals ("buy103b", triggered.get (1));
+        assertEquals ("sell97", triggered.get (2));
+    }
+
+    @Test
+    public void testCancel () throws Exception
+    {
+        StopTriggerBook book = new StopTriggerBook ();
+
+        StopTriggerBook.Entry entry =
+            book.add (OrderSide.SELL, 95L, new MyCallback ("sell95"));
+
+        assertTrue (entry.isActive ());
+        assertTrue (entry.cancel ());
+        assertFalse (entry.isActive ());
+        assertFalse (entry.cancel ());
+        assertTrue (book.isEmpty ());
+
+        assertEquals (0, book.triggerSellStops (0L, 90L));
+        assertTrue (triggered.isEmpty ());
+    }
+
+    @Test
+    public void testChangesWhileTriggering () throws Exception
+    {
+        final StopTriggerBook book = new StopTriggerBook ();
+
+        final StopTriggerBook.Entry canceled =
+            book.add (OrderSide.BUY, 101L, new MyCallback ("canceled"));
+
+        book.add (OrderSide.BUY, 100L, new StopTriggerCallback ()
+        {
+            @Override
+            public void onTriggered (long timestamp, StopTriggerBook.Entry entry)
+            {
+                triggered.add ("first");
+                canceled.cancel ();
+                book.add (OrderSide.BUY, 101L, new MyCallback ("added"));
+                book.add (OrderSide.BUY, 110L, new MyCallback ("far"));
+            }
+        });
+
+        assertEquals (2, book.triggerBuyStops (0L, 101L));
+        assertEquals (2, triggered.size ());
+        assertEquals ("first", triggered.get (0));
+        assertEquals ("added", triggered.get (1));
+        assertEquals (1, book.size ());
+    }
+
+    private class MyCallback implements StopTriggerCallback
+    {
+        private final String name;
+
+        public MyCallback (String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public void onTriggered (long timestamp, StopTriggerBook.Entry entry)
+        {
+            assertFalse (entry.isActive ());
+            triggered.add (name);
+        }
+    }
+}
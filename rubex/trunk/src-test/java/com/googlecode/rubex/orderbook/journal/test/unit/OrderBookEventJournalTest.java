@@ -0,0 +1,359 @@
+package com.googlecode.rubex.orderbook.journal.test.unit;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.googlecode.rubex.concurrent.BlockingWaitStrategy;
+import com.googlecode.rubex.concurrent.ParkingWaitStrategy;
+import com.googlecode.rubex.concurrent.Sequence;
+import com.googlecode.rubex.concurrent.YieldingWaitStrategy;
+import com.googlecode.rubex.marketdata.SimpleOrderBookMarketDataTracker;
+import com.googlecode.rubex.orderbook.OrderBookEntryCallback;
+import com.googlecode.rubex.orderbook.OrderBookEntryHandler;
+import com.googlecode.rubex.orderbook.OrderBookEntrySide;
+import com.googlecode.rubex.orderbook.OrderBookException;
+import com.googlecode.rubex.orderbook.SimpleOrderBook;
+import com.googlecode.rubex.orderbook.event.OrderBookListener;
+import com.googlecode.rubex.orderbook.event.OrderBookQuoteEvent;
+import com.googlecode.rubex.orderbook.event.OrderBookTradeEvent;
+import com.googlecode.rubex.orderbook.journal.OrderBookEventJournal;
+
+public class OrderBookEventJournalTest
+{
+    @Test
+    public void testConsumers () throws Exception
+    {
+        final SimpleOrderBookMarketDataTracker tracker = 
+            new SimpleOrderBookMarketDataTracker ();
+        final List<Object> events = 
+            Collections.synchronizedList (new ArrayList<Object> ());
+        final List<Object> errors = 
+            Collections.synchronizedList (new ArrayList<Object> ());
+        
+        OrderBookEventJournal journal = new OrderBookEventJournal (8);
+        Sequence trackerSequence = journal.addConsumer (
+            tracker, new YieldingWaitStrategy ());
+        Sequence publisherSequence = journal.addConsumer (
+            new OrderBookListener ()
+            {
+                private long volume = 0;
+                
+                @Override
+                public void onTrade (OrderBookTradeEvent event)
+                {
+                    volume += event.getQuantity ();
+                    
+                    if (tracker.getTotalVolume () < volume)
+                        errors.add ("Tracker is behind: " + volume);
+                    
+                    events.add ("TRADE:" + event.getQuantity () + ":" + event.getPrice ());
+                }
+                
+                @Override
+                public void onQuote (OrderBookQuoteEvent event)
+                {
+                    events.add ("QUOTE:" + event.getSide () + ":" + event.getPrice () + ":" + event.getQuantityDelta ());
+                }
+            }, 
+            new ParkingWaitStrategy (), trackerSequence);
+        journal.start ();
+        
+        SimpleOrderBook orderBook = new SimpleOrderBook ();
+        orderBook.setReuseEvents (true);
+        orderBook.addOrderBookListener (journal);
+        
+        OrderBookEntryCallback callback = new NullOrderBookEntryCallback ();
+        for (int i = 0; i < 100; i++)
+        {
+            orderBook.placeEntry (0L, OrderBookEntrySide.ASK, 10, 100 + i % 3, callback, null);
+            orderBook.placeEntry (0L, OrderBookEntrySide.BID, 10, 102, callback, null);
+        }
+        orderBook.placeEntry (0L, OrderBookEntrySide.BID, 5, 99, callback, null);
+        
+        long published = journal.getPublishedSequence ();
+        for (int i = 0; i < 1000 && publisherSequence.get () < published; i++)
+            Thread.sleep (10L);
+        
+        journal.stop ();
+        
+        assertEquals (published, trackerSequence.get ());
+        assertEquals (published, publisherSequence.get ());
+        assertTrue (errors.toString (), errors.isEmpty ());
+        assertEquals (published + 1, events.size ());
+        assertEquals (1000, tracker.getTotalVolume ());
+        assertEquals (99, tracker.getBestBidPrice ());
+        assertEquals (5, tracker.getBestBidQuantity ());
+        assertEquals (0, tracker.getAskLevelCount ());
+    }
+    
+    @Test
+    public void testEventSources () throws Exception
+    {
+        final List<Object> events = 
+            Collections.synchronizedList (new ArrayList<Object> ());
+        
+        final SimpleOrderBook foo = new SimpleOrderBook ();
+        final SimpleOrderBook bar = new SimpleOrderBook ();
+        
+        OrderBookEventJournal journal = new OrderBookEventJournal (8);
+        Sequence sequence = journal.addConsumer (
+            new OrderBookListener ()
+            {
+                @Override
+                public void onTrade (OrderBookTradeEvent event)
+                {
+                    events.add ("TRADE:" + getName (event.getSource ()));
+                }
+                
+                @Override
+                public void onQuote (OrderBookQuoteEvent event)
+                {
+                    events.add ("QUOTE:" + getName (event.getSource ()));
+                }
+                
+                private String getName (Object source)
+                {
+                    return source == foo ? "FOO" : source == bar ? "BAR" : "?";
+                }
+            }, 
+            new YieldingWaitStrategy ());
+        journal.start ();
+        
+        foo.addOrderBookListener (journal);
+        bar.addOrderBookListener (journal);
+        
+        OrderBookEntryCallback callback = new NullOrderBookEntryCallback ();
+        foo.placeEntry (0L, OrderBookEntrySide.ASK, 10, 100, callback, null);
+        bar.placeEntry (0L, OrderBookEntrySide.ASK, 10, 100, callback, null);
+        bar.placeEntry (0L, OrderBookEntrySide.BID, 10, 100, callback, null);
+        foo.placeEntry (0L, OrderBookEntrySide.BID, 10, 100, callback, null);
+        
+        long published = journal.getPublishedSequence ();
+        for (int i = 0; i < 1000 && sequence.get () < published; i++)
+            Thread.sleep (10L);
+        
+        journal.stop ();
+        
+        assertEquals (
+            "[QUOTE:FOO, QUOTE:BAR, TRADE:BAR, QUOTE:BAR, TRADE:FOO, QUOTE:FOO]", 
+            events.toString ());
+    }
+    
+    @Test
+    public void testBusyConsumerIsNotSignalled () throws Exception
+    {
+        final CountDownLatch blocked = new CountDownLatch (1);
+        final CountDownLatch release = new CountDownLatch (1);
+        final AtomicInteger signals = new AtomicInteger ();
+        
+        OrderBookEventJournal journal = new OrderBookEventJournal (8);
+        Sequence sequence = journal.addConsumer (
+            new OrderBookListener ()
+            {
+                @Override
+                public void onTrade (OrderBookTradeEvent event)
+                {
+                    // Do nothing
+                }
+                
+                @Override
+                public void onQuote (OrderBookQuoteEvent event)
+                {
+                    try
+                    {
+                        blocked.countDown ();
+                        release.await ();
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread ().interrupt ();
+                    }
+                }
+            }, 
+            new BlockingWaitStrategy ()
+            {
+                @Override
+                public void signalAll ()
+                {
+                    signals.incrementAndGet ();
+                    super.signalAll ();
+                }
+            });
+        journal.start ();
+        
+        SimpleOrderBook orderBook = new SimpleOrderBook ();
+        orderBook.addOrderBookListener (journal);
+        
+        OrderBookEntryCallback callback = new NullOrderBookEntryCallback ();
+        orderBook.placeEntry (0L, OrderBookEntrySide.ASK, 10, 100, callback, null);
+        blocked.await ();
+        
+        // Consumer is delivering the first event and does not wait
+        int before = signals.get ();
+        for (int i = 1; i < 5; i++)
+            orderBook.placeEntry (0L, OrderBookEntrySide.ASK, 10, 100 + i, callback, null);
+        assertEquals (before, signals.get ());
+        
+        release.countDown ();
+        
+        long published = journal.getPublishedSequence ();
+        for (int i = 0; i < 1000 && sequence.get () < published; i++)
+            Thread.sleep (10L);
+        
+        journal.stop ();
+        
+        assertEquals (published, sequence.get ());
+    }
+    
+    @Test
+    public void testDependentConsumerIsSignalled () throws Exception
+    {
+        // Consumers would block for an hour if they were not signalled, and
+        // buffer is large enough for publisher not to wait for them
+        long timeout = TimeUnit.HOURS.toNanos (1L);
+        
+        OrderBookEventJournal journal = new OrderBookEventJournal (1024);
+        Sequence trackerSequence = journal.addConsumer (
+            new SimpleOrderBookMarketDataTracker (), 
+            new BlockingWaitStrategy (timeout));
+        Sequence dependentSequence = journal.addConsumer (
+            new SimpleOrderBookMarketDataTracker (), 
+            new BlockingWaitStrategy (timeout), trackerSequence);
+        journal.start ();
+        
+        SimpleOrderBook orderBook = new SimpleOrderBook ();
+        orderBook.addOrderBookListener (journal);
+        
+        OrderBookEntryCallback callback = new NullOrderBookEntryCallback ();
+        for (int i = 0; i < 100; i++)
+        {
+            orderBook.placeEntry (0L, OrderBookEntrySide.ASK, 10, 100, callback, null);
+            orderBook.placeEntry (0L, OrderBookEntrySide.BID, 10, 100, callback, null);
+            
+            if (i % 10 == 0)
+                Thread.sleep (1L);
+        }
+        
+        long published = journal.getPublishedSequence ();
+        for (int i = 0; i < 1000 && dependentSequence.get () < published; i++)
+            Thread.sleep (10L);
+        
+        assertEquals (published, dependentSequence.get ());
+        
+        journal.stop ();
+    }
+    
+    @Test
+    public void testStopWhileBufferIsFull () throws Exception
+    {
+        final CountDownLatch blocked = new CountDownLatch (1);
+        
+        final OrderBookEventJournal journal = new OrderBookEventJournal (2);
+        Sequence blockingSequence = journal.addConsumer (
+            new OrderBookListener ()
+            {
+                @Override
+                public void onTrade (OrderBookTradeEvent event)
+                {
+                    // Do nothing
+                }
+                
+                @Override
+                public void onQuote (OrderBookQuoteEvent event)
+                {
+                    try
+                    {
+                        // Blocks until consumer is interrupted by stop
+                        blocked.countDown ();
+                        new CountDownLatch (1).await ();
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread ().interrupt ();
+                    }
+                }
+            }, 
+            new YieldingWaitStrategy ());
+        
+        // Exits on stop without reaching events the publisher waits for
+        journal.addConsumer (
+            new SimpleOrderBookMarketDataTracker (), 
+            new YieldingWaitStrategy (), blockingSequence);
+        journal.start ();
+        
+        Thread publisher = new Thread ()
+        {
+            @Override
+            public void run ()
+            {
+                SimpleOrderBook orderBook = new SimpleOrderBook ();
+                orderBook.addOrderBookListener (journal);
+                
+                OrderBookEntryCallback callback = 
+                    new NullOrderBookEntryCallback ();
+                try
+                {
+                    for (int i = 0; i < 100; i++)
+                        orderBook.placeEntry (
+                            0L, OrderBookEntrySide.ASK, 10, 100 + i, 
+                            callback, null);
+                }
+                catch (OrderBookException ex)
+                {
+                    throw new Error (ex);
+                }
+            }
+        };
+        publisher.start ();
+        
+        blocked.await ();
+        Thread.sleep (100L);
+        
+        // Publisher waits for free slot now
+        assertTrue (publisher.isAlive ());
+        
+        journal.stop ();
+        publisher.join (10000L);
+        
+        assertFalse (publisher.isAlive ());
+    }
+    
+    @Test (expected = IllegalArgumentException.class)
+    public void testForeignDependency () throws Exception
+    {
+        new OrderBookEventJournal (8).addConsumer (
+            new SimpleOrderBookMarketDataTracker (), 
+            new YieldingWaitStrategy (), new Sequence ());
+    }
+    
+    private static class NullOrderBookEntryCallback 
+        implements OrderBookEntryCallback
+    {
+        @Override
+        public void onFill (long timestamp, OrderBookEntryHandler handler,
+            long quantity, long price)
+        {
+            // Do nothing
+        }
+
+        @Override
+        public void onFilled (long timestamp, OrderBookEntryHandler handler)
+        {
+            // Do nothing
+        }
+
+        @Override
+        public void onCanceled (long timestamp, OrderBookEntryHandler handler)
+        {
+            // Do nothing
+        }
+    }
+}
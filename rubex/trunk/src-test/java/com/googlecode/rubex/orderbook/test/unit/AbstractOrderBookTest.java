@@ -0,0 +1,882 @@
+package com.googlecode.rubex.orderbook.test.unit;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.googlecode.rubex.orderbook.AbstractOrderBook;
+import com.googlecode.rubex.orderbook.OrderBookBatch;
+import com.googlecode.rubex.orderbook.OrderBookEntryCallback;
+import com.googlecode.rubex.orderbook.OrderBookEntryHandler;
+import com.googlecode.rubex.orderbook.OrderBookEntrySide;
+import com.googlecode.rubex.orderbook.OrderBookException;
+import com.googlecode.rubex.orderbook.OrderBookSnapshot;
+import com.googlecode.rubex.orderbook.event.OrderBookListener;
+import com.googlecode.rubex.orderbook.event.OrderBookQuoteEvent;
+import com.googlecode.rubex.orderbook.event.OrderBookTradeEvent;
+import com.googlecode.rubex.utils.LongLongTreeMap;
+
+public abstract class AbstractOrderBookTest <T extends AbstractOrderBook>
+{
+    protected T orderBook;
+    protected OrderBookEntryCallback callback;
+    protected List<Object> events;
+    
+    @Before
+    public void setUp () throws Exception
+    {
+        orderBook = createOrderBook ();
+        callback = new MyOrderBookEntryCallback ();
+        events = new ArrayList<Object> ();
+    }
+
+    @After
+    public void tearDown () throws Exception
+    {
+        orderBook = null;
+        callback = null;
+        events = null;
+    }
+
+    @Test
+    public void testPlaceBidMarketEmpty () throws Exception
+    {
+        assertTrue (events.isEmpty ());
+        orderBook.placeEntry (
+            123456789L, OrderBookEntrySide.BID, 1000, 0, callback, "FOO");
+        assertEquals (1, events.size ());
+        assertContains (events, "CANCELED:123456789:FOO:0:1000");
+    }
+
+    @Test
+    public void testPlaceAskMarketEmpty () throws Exception
+    {
+        assertTrue (events.isEmpty ());
+        orderBook.placeEntry (
+            123456789L, OrderBookEntrySide.ASK, 1000, 0, callback, "FOO");
+        assertEquals (1, events.size ());
+        assertContains (events, "CANCELED:123456789:FOO:0:1000");
+    }
+
+    @Test
+    public void testPlaceBidMarketOnlyBids () throws Exception
+    {
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 1000, 100, callback, "X");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 1000, 200, callback, "Y");
+        assertTrue (events.isEmpty ());
+        orderBook.placeEntry (
+            123456789L, OrderBookEntrySide.BID, 1000, 0, callback, "FOO");
+        assertEquals (1, events.size ());
+        assertContains (events, "CANCELED:123456789:FOO:0:1000");
+    }
+
+    @Test
+    public void testPlaceBidMarketOnlyAsks () throws Exception
+    {
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 1000, 100, callback, "X");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 1000, 200, callback, "Y");
+        assertTrue (events.isEmpty ());
+        orderBook.placeEntry (
+            123456789L, OrderBookEntrySide.ASK, 1000, 0, callback, "FOO");
+        assertEquals (1, events.size ());
+        assertContains (events, "CANCELED:123456789:FOO:0:1000");
+    }
+
+    @Test
+    public void testPlaceBidMarketPartialFillOne () throws Exception
+    {
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 500, 100, callback, "X");
+        assertTrue (events.isEmpty ());
+        orderBook.placeEntry (
+            123456789L, OrderBookEntrySide.BID, 1000, 0, callback, "FOO");
+        assertEquals (4, events.size ());
+        assertContains (events, "FILL:123456789:X:100:0:500:100", "FILLED:123456789:X:100:0");
+        assertContains (events, "FILL:123456789:FOO:0:500:500:100", "CANCELED:123456789:FOO:0:500");
+    }
+
+    @Test
+    public void testPlaceAskMarketPartialFillOne () throws Exception
+    {
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 500, 100, callback, "X");
+        assertTrue (events.isEmpty ());
+        orderBook.placeEntry (
+            123456789L, OrderBookEntrySide.ASK, 1000, 0, callback, "FOO");
+        assertEquals (4, events.size ());
+        assertContains (events, "FILL:123456789:X:100:0:500:100", "FILLED:123456789:X:100:0");
+        assertContains (events, "FILL:123456789:FOO:0:500:500:100", "CANCELED:123456789:FOO:0:500");
+    }
+
+    @Test
+    public void testPlaceBidMarketFullFillOne () throws Exception
+    {
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 1000, 100, callback, "X");
+        assertTrue (events.isEmpty ());
+        orderBook.placeEntry (
+            123456789L, OrderBookEntrySide.BID, 1000, 0, callback, "FOO");
+        assertEquals (4, events.size ());
+        assertContains (events, "FILL:123456789:X:100:0:1000:100", "FILLED:123456789:X:100:0");
+        assertContains (events, "FILL:123456789:FOO:0:0:1000:100", "FILLED:123456789:FOO:0:0");
+    }
+
+    @Test
+    public void testPlaceAskMarketFullFillOne () throws Exception
+    {
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 1000, 100, callback, "X");
+        assertTrue (events.isEmpty ());
+        orderBook.placeEntry (
+            123456789L, OrderBookEntrySide.ASK, 1000, 0, callback, "FOO");
+        assertEquals (4, events.size ());
+        assertContains (events, "FILL:123456789:X:100:0:1000:100", "FILLED:123456789:X:100:0");
+        assertContains (events, "FILL:123456789:FOO:0:0:1000:100", "FILLED:123456789:FOO:0:0");
+    }
+
+    @Test
+    public void testPlaceAskMarketPartialFillMany () throws Exception
+    {
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 100, 100, callback, "X");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 200, 150, callback, "Y");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 300, 100, callback, "Z");
+        assertTrue (events.isEmpty ());
+        orderBook.placeEntry (
+            123456789L, OrderBookEntrySide.ASK, 1000, 0, callback, "FOO");
+        assertEquals (10, events.size ());
+        assertContains (events, "FILL:123456789:X:100:0:100:100", "FILLED:123456789:X:100:0");
+        assertContains (events, "FILL:123456789:Y:150:0:200:150", "FILLED:123456789:Y:150:0");
+        assertContains (events, "FILL:123456789:Z:100:0:300:100", "FILLED:123456789:Z:100:0");
+        
+        assertContains (events, "FILL:123456789:Y:150:0:200:150", "FILL:123456789:X:100:0:100:100", "FILL:123456789:Z:100:0:300:100");
+        
+        assertContains (events, "FILL:123456789:FOO:0:800:200:150", "FILL:123456789:FOO:0:700:100:100", "FILL:123456789:FOO:0:400:300:100", "CANCELED:123456789:FOO:0:400");
+    }
+
+    @Test
+    public void testPlaceBidMarketPartialFillMany () throws Exception
+    {
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 100, 100, callback, "X");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 200, 50, callback, "Y");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 300, 100, callback, "Z");
+        assertTrue (events.isEmpty ());
+        orderBook.placeEntry (
+            123456789L, OrderBookEntrySide.BID, 1000, 0, callback, "FOO");
+        assertEquals (10, events.size ());
+        assertContains (events, "FILL:123456789:X:100:0:100:100", "FILLED:123456789:X:100:0");
+        assertContains (events, "FILL:123456789:Y:50:0:200:50", "FILLED:123456789:Y:50:0");
+        assertContains (events, "FILL:123456789:Z:100:0:300:100", "FILLED:123456789:Z:100:0");
+        
+        assertContains (events, "FILL:123456789:Y:50:0:200:50", "FILL:123456789:X:100:0:100:100", "FILL:123456789:Z:100:0:300:100");
+        
+        assertContains (events, "FILL:123456789:FOO:0:800:200:50", "FILL:123456789:FOO:0:700:100:100", "FILL:123456789:FOO:0:400:300:100", "CANCELED:123456789:FOO:0:400");
+    }
+    
+    @Test
+    public void testTimePriorityWithinLevel () throws Exception
+    {
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 100, 100, callback, "X");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 100, 100, callback, "Y");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 100, 99, callback, "Z");
+        assertTrue (events.isEmpty ());
+        orderBook.placeEntry (
+            123456789L, OrderBookEntrySide.BID, 250, 100, callback, "FOO");
+        assertEquals (9, events.size ());
+        assertContains (events, "FILL:123456789:Z:99:0:100:99", "FILL:123456789:X:100:0:100:100", "FILL:123456789:Y:100:50:50:100");
+        assertContains (events, "FILL:123456789:FOO:100:150:100:99", "FILL:123456789:FOO:100:50:100:100", "FILL:123456789:FOO:100:0:50:100", "FILLED:123456789:FOO:100:0");
+    }
+
+    @Test
+    public void testCancelDeepEntry () throws Exception
+    {
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 100, 100, callback, "X");
+        OrderBookEntryHandler y = 
+            orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 100, 90, callback, "Y");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 100, 90, callback, "Z");
+        assertEquals (3, getEntryCount (OrderBookEntrySide.BID));
+        assertEquals (2, getPriceLevelCount (OrderBookEntrySide.BID));
+        
+        y.cancel (123456789L);
+        assertEquals (1, events.size ());
+        assertContains (events, "CANCELED:123456789:Y:90:100");
+        assertEquals (2, getEntryCount (OrderBookEntrySide.BID));
+        assertEquals (2, getPriceLevelCount (OrderBookEntrySide.BID));
+        
+        orderBook.placeEntry (
+            123456789L, OrderBookEntrySide.ASK, 150, 0, callback, "FOO");
+        assertContains (events, "FILL:123456789:X:100:0:100:100", "FILL:123456789:Z:90:50:50:90");
+        assertContains (events, "FILL:123456789:FOO:0:50:100:100", "FILL:123456789:FOO:0:0:50:90", "FILLED:123456789:FOO:0:0");
+        assertEquals (1, getEntryCount (OrderBookEntrySide.BID));
+        assertEquals (1, getPriceLevelCount (OrderBookEntrySide.BID));
+        assertEquals (0, getEntryCount (OrderBookEntrySide.ASK));
+    }
+    
+    @Test
+    public void testPlaceEntries () throws Exception
+    {
+        List<Object> quotes = new ArrayList<Object> ();
+        orderBook.addOrderBookListener (new MyQuoteListener (quotes));
+        
+        OrderBookBatch batch = new OrderBookBatch (1);
+        batch.add (123456789L, OrderBookEntrySide.BID, 100, 100, callback, "X");
+        batch.add (123456789L, OrderBookEntrySide.BID, 50, 100, callback, "Y");
+        batch.add (123456789L, OrderBookEntrySide.ASK, 120, 100, callback, "Z");
+        batch.add (123456789L, OrderBookEntrySide.BID, 10, 90, callback, "W");
+        
+        orderBook.placeEntries (batch);
+        
+        assertContains (events, "FILL:123456789:X:100:0:100:100", "FILLED:123456789:X:100:0", "FILL:123456789:Y:100:30:20:100");
+        assertContains (events, "FILL:123456789:Z:100:20:100:100", "FILL:123456789:Z:100:0:20:100", "FILLED:123456789:Z:100:0");
+        
+        // Quotes of entries placed before Z are numbered before its trades
+        assertEquals (3, quotes.size ());
+        assertContains (quotes, "QUOTE:BID:100:150", "QUOTE:BID:100:-120", "QUOTE:BID:90:10");
+        
+        assertEquals (4, batch.size ());
+        for (int i = 0; i < batch.size (); i++)
+        {
+            assertNotNull (batch.getEntryHandler (i));
+            assertNull (batch.getException (i));
+        }
+        assertEquals (30, batch.getEntryHandler (1).getUnfilledQuantity ());
+        
+        quotes.clear ();
+        batch.getEntryHandler (3).cancel (123456789L);
+        assertEquals (1, quotes.size ());
+        assertContains (quotes, "QUOTE:BID:90:-10");
+    }
+    
+    @Test
+    public void testCoalesceQuotes () throws Exception
+    {
+        List<Object> quotes = new ArrayList<Object> ();
+        orderBook.addOrderBookListener (new MyQuoteListener (quotes));
+        orderBook.setCoalesceQuotes (true);
+        
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 100, 100, callback, "X");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 50, 100, callback, "Y");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 30, 101, callback, "Z");
+        assertEquals (3, quotes.size ());
+        
+        quotes.clear ();
+        orderBook.placeEntry (
+            123456789L, OrderBookEntrySide.BID, 170, 101, callback, "FOO");
+        assertEquals (2, quotes.size ());
+        assertContains (quotes, "QUOTE:ASK:100:-150", "QUOTE:ASK:101:-20");
+        
+        // Handler of done entry may be released, so check its last callback
+        assertContains (events, "FILLED:123456789:FOO:101:0");
+        
+        quotes.clear ();
+        orderBook.setCoalesceQuotes (false);
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 50, 101, callback, "BAR");
+        assertEquals (2, quotes.size ());
+        assertContains (quotes, "QUOTE:ASK:101:-10", "QUOTE:BID:101:40");
+    }
+    
+    @Test
+    public void testIcebergEntry () throws Exception
+    {
+        List<Object> quotes = new ArrayList<Object> ();
+        orderBook.addOrderBookListener (new MyQuoteListener (quotes));
+        
+        OrderBookEntryHandler ice = orderBook.placeIcebergEntry (
+            123456789L, OrderBookEntrySide.ASK, 100, 100, 30, callback, "ICE");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 20, 100, callback, "X");
+        assertContains (quotes, "QUOTE:ASK:100:30", "QUOTE:ASK:100:20");
+        
+        quotes.clear ();
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 40, 0, callback, "FOO");
+        assertContains (
+            events, 
+            "FILL:123456789:FOO:0:10:30:100",
+            "FILL:123456789:ICE:100:70:30:100", 
+            "FILL:123456789:FOO:0:0:10:100",
+            "FILLED:123456789:FOO:0:0",
+            "FILL:123456789:X:100:10:10:100");
+        assertContains (
+            quotes, 
+            "QUOTE:ASK:100:-30", "QUOTE:ASK:100:30", "QUOTE:ASK:100:-10");
+        assertEquals (40, orderBook.getSnapshot (1).getAskQuantity (0));
+        
+        events.clear ();
+        quotes.clear ();
+        ice.cancel (123456789L);
+        assertContains (events, "CANCELED:123456789:ICE:100:70");
+        assertContains (quotes, "QUOTE:ASK:100:-30");
+        assertEquals (10, orderBook.getSnapshot (1).getAskQuantity (0));
+    }
+    
+    @Test
+    public void testAmendEntry () throws Exception
+    {
+        List<Object> quotes = new ArrayList<Object> ();
+        orderBook.addOrderBookListener (new MyQuoteListener (quotes));
+        
+        OrderBookEntryHandler x = orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 100, 100, callback, "X");
+        OrderBookEntryHandler y = orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 50, 100, callback, "Y");
+        
+        quotes.clear ();
+        x.amend (123456789L, 60, 100);
+        assertContains (quotes, "QUOTE:ASK:100:-40");
+        
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 70, 0, callback, "FOO");
+        assertContains (
+            events, 
+            "FILL:123456789:X:100:0:60:100",
+            "FILL:123456789:Y:100:40:10:100");
+        
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 30, 98, callback, "BAR");
+        
+        events.clear ();
+        quotes.clear ();
+        y.amend (123456789L, 40, 98);
+        assertContains (events, "FILL:123456789:Y:98:10:30:98");
+        assertContains (
+            quotes, "QUOTE:ASK:100:-40", "QUOTE:BID:98:-30", "QUOTE:ASK:98:10");
+        assertEquals (98, orderBook.getSnapshot (1).getAskPrice (0));
+        assertEquals (0, orderBook.getSnapshot (1).getBidLevelCount ());
+    }
+    
+    @Test
+    public void testFillOrKillEntry () throws Exception
+    {
+        orderBook.placeIcebergEntry (123456789L, OrderBookEntrySide.ASK, 100, 100, 10, callback, "ICE");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 20, 101, callback, "X");
+        
+        orderBook.placeFillOrKillEntry (
+            123456789L, OrderBookEntrySide.BID, 125, 101, callback, "FOO");
+        assertEquals (1, events.size ());
+        assertContains (events, "CANCELED:123456789:FOO:101:125");
+        
+        events.clear ();
+        orderBook.placeFillOrKillEntry (
+            123456789L, OrderBookEntrySide.BID, 110, 101, callback, "BAR");
+        assertContains (
+            events, 
+            "FILLED:123456789:ICE:100:0",
+            "FILLED:123456789:BAR:101:0",
+            "FILL:123456789:X:101:10:10:101");
+        assertEquals (10, orderBook.getSnapshot (1).getAskQuantity (0));
+    }
+
+    @Test
+    public void testFillOrKillEntryWhenLiquidityIsPulled () throws Exception
+    {
+        final OrderBookEntryHandler [] pulled = new OrderBookEntryHandler [1];
+
+        OrderBookEntryCallback pullingCallback = new MyOrderBookEntryCallback ()
+        {
+            @Override
+            public void onFill (long timestamp, OrderBookEntryHandler handler,
+                long quantity, long price)
+            {
+                super.onFill (timestamp, handler, quantity, price);
+
+                try
+                {
+                    pulled [0].cancel (timestamp);
+                }
+                catch (OrderBookException ex)
+                {
+                    throw new RuntimeException (ex);
+                }
+            }
+        };
+
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 10, 100, pullingCallback, "X");
+        pulled [0] = orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 10, 100, callback, "Y");
+
+        OrderBookEntryHandler foo = orderBook.placeFillOrKillEntry (
+            123456789L, OrderBookEntrySide.BID, 20, 100, callback, "FOO");
+        assertContains (
+            events,
+            "FILL:123456789:FOO:100:10:10:100",
+            "CANCELED:123456789:Y:100:10",
+            "CANCELED:123456789:FOO:100:10");
+        assertEquals (10L, foo.getUnfilledQuantity ());
+        assertEquals (0, getEntryCount (OrderBookEntrySide.BID));
+        assertEquals (0, getEntryCount (OrderBookEntrySide.ASK));
+        assertEquals (0, orderBook.getSnapshot (1).getBidLevelCount ());
+    }
+
+    @Test
+    public void testCancelEntries () throws Exception
+    {
+        List<Object> quotes = new ArrayList<Object> ();
+        orderBook.addOrderBookListener (new MyQuoteListener (quotes));
+
+        List<OrderBookEntryHandler> handlers =
+            new ArrayList<OrderBookEntryHandler> ();
+        handlers.add (orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 10, 100, callback, "X"));
+        handlers.add (orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 20, 100, callback, "Y"));
+        handlers.add (orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 30, 101, callback, "Z"));
+        OrderBookEntryHandler foo = orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 40, 99, callback, "FOO");
+        handlers.add (foo);
+        foo.cancel (123456789L);
+
+        quotes.clear ();
+        events.clear ();
+        assertEquals (3, orderBook.cancelEntries (123456789L, handlers));
+        assertEquals (3, events.size ());
+        assertContains (
+            events,
+            "CANCELED:123456789:X:100:10",
+            "CANCELED:123456789:Y:100:20",
+            "CANCELED:123456789:Z:101:30");
+        assertEquals (2, quotes.size ());
+        assertContains (quotes, "QUOTE:BID:100:-30", "QUOTE:ASK:101:-30");
+    }
+
+    @Test
+    public void testUncross () throws Exception
+    {
+        List<Object> quotes = new ArrayList<Object> ();
+        orderBook.addOrderBookListener (new MyQuoteListener (quotes));
+
+        orderBook.beginAuction ();
+        assertTrue (orderBook.isAuction ());
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 10, 102, callback, "X");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 20, 101, callback, "Y");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 30, 100, callback, "Z");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 25, 99, callback, "A");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 15, 101, callback, "B");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 30, 103, callback, "C");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 50, 0, callback, "FOO");
+        assertEquals (1, events.size ());
+        assertContains (events, "CANCELED:123456789:FOO:0:50");
+
+        quotes.clear ();
+        events.clear ();
+        assertEquals (101L, orderBook.uncross (123456790L));
+        assertTrue (orderBook.isAuction ());
+        assertContains (events, "FILL:123456790:X:102:0:10:101", "FILLED:123456790:X:102:0", "FILL:123456790:Y:101:5:15:101", "FILL:123456790:Y:101:0:5:101", "FILLED:123456790:Y:101:0");
+        assertContains (events, "FILL:123456790:A:99:15:10:101", "FILL:123456790:A:99:0:15:101", "FILLED:123456790:A:99:0", "FILL:123456790:B:101:10:5:101");
+        assertEquals (4, quotes.size ());
+        assertContains (quotes, "QUOTE:BID:102:-10");
+        assertContains (quotes, "QUOTE:BID:101:-20");
+        assertContains (quotes, "QUOTE:ASK:99:-25");
+        assertContains (quotes, "QUOTE:ASK:101:-5");
+
+        events.clear ();
+        assertEquals (0L, orderBook.endAuction (123456791L));
+        assertFalse (orderBook.isAuction ());
+        assertTrue (events.isEmpty ());
+
+        orderBook.placeEntry (123456792L, OrderBookEntrySide.ASK, 10, 100, callback, "BAR");
+        assertContains (events, "FILL:123456792:Z:100:20:10:100", "FILL:123456792:BAR:100:0:10:100", "FILLED:123456792:BAR:100:0");
+    }
+
+    @Test
+    public void testBatchCoalescesQuotes () throws Exception
+    {
+        final List<OrderBookQuoteEvent> quotes = new ArrayList<OrderBookQuoteEvent> ();
+        final List<OrderBookTradeEvent> trades = new ArrayList<OrderBookTradeEvent> ();
+        orderBook.addOrderBookListener (new OrderBookListener ()
+        {
+            @Override
+            public void onTrade (OrderBookTradeEvent event)
+            {
+                trades.add (event);
+            }
+            
+            @Override
+            public void onQuote (OrderBookQuoteEvent event)
+            {
+                quotes.add (event);
+            }
+        });
+        orderBook.setCoalesceQuotes (true);
+        
+        orderBook.beginBatch ();
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 100, 100, callback, "X");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 200, 100, callback, "Y");
+        assertTrue (quotes.isEmpty ());
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 50, 90, callback, "Z");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 70, 90, callback, "W");
+        assertTrue (quotes.isEmpty ());
+        
+        // Quotes of previous entries are numbered before the trades
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 150, 100, callback, "V");
+        assertEquals (2, quotes.size ());
+        assertEquals (2, trades.size ());
+        orderBook.endBatch ();
+        
+        assertEquals (3, quotes.size ());
+        assertEquals (2, trades.size ());
+        assertEquals (OrderBookEntrySide.BID, quotes.get (0).getSide ());
+        assertEquals (100L, quotes.get (0).getPrice ());
+        assertEquals (300L, quotes.get (0).getQuantityDelta ());
+        assertEquals (90L, quotes.get (1).getPrice ());
+        assertEquals (120L, quotes.get (1).getQuantityDelta ());
+        assertEquals (100L, quotes.get (2).getPrice ());
+        assertEquals (-150L, quotes.get (2).getQuantityDelta ());
+        assertEquals (quotes.get (1).getSequenceNumber () + 1, trades.get (0).getSequenceNumber ());
+        assertEquals (trades.get (0).getSequenceNumber () + 1, trades.get (1).getSequenceNumber ());
+        assertEquals (trades.get (1).getSequenceNumber () + 1, quotes.get (2).getSequenceNumber ());
+        
+        // Snapshot taken in the middle of a batch flushes coalesced quotes
+        orderBook.beginBatch ();
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 100, 110, callback, "T");
+        OrderBookSnapshot snapshot = orderBook.getSnapshot (10);
+        assertEquals (4, quotes.size ());
+        assertEquals (orderBook.getSequenceNumber (), snapshot.getSequenceNumber ());
+        orderBook.endBatch ();
+        assertEquals (4, quotes.size ());
+    }
+    
+    @Test
+    public void testSequenceNumberWithoutListeners () throws Exception
+    {
+        orderBook.setCoalesceQuotes (true);
+        
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 100, 100, callback, "X");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 30, 100, callback, "Y");
+        assertEquals (3, orderBook.getSequenceNumber ());
+        
+        OrderBookSnapshot snapshot = orderBook.getSnapshot (10);
+        assertEquals (3, snapshot.getSequenceNumber ());
+        
+        // Change made before listener is added leaves a gap
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 10, 90, callback, "Z");
+        
+        final List<OrderBookQuoteEvent> quotes = new ArrayList<OrderBookQuoteEvent> ();
+        orderBook.addOrderBookListener (new NullOrderBookListener ()
+        {
+            @Override
+            public void onQuote (OrderBookQuoteEvent event)
+            {
+                quotes.add (event);
+            }
+        });
+        
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 10, 80, callback, "W");
+        assertEquals (1, quotes.size ());
+        assertEquals (5, quotes.get (0).getSequenceNumber ());
+    }
+    
+    @Test
+    public void testSnapshotWithoutListenersAndDeltas () throws Exception
+    {
+        orderBook.setCoalesceQuotes (true);
+        
+        Random random = new Random (2L);
+        OrderBookEntryCallback nullCallback = new NullOrderBookEntryCallback ();
+        
+        placeRandomEntries (random, nullCallback, 1000);
+        
+        OrderBookSnapshot snapshot = orderBook.getSnapshot (Integer.MAX_VALUE);
+        assertEquals (orderBook.getSequenceNumber (), snapshot.getSequenceNumber ());
+        assertTrue (snapshot.getSequenceNumber () > 0);
+        
+        final List<OrderBookQuoteEvent> quotes = new ArrayList<OrderBookQuoteEvent> ();
+        final long [] lastSequenceNumber = new long [] {snapshot.getSequenceNumber ()};
+        orderBook.addOrderBookListener (new OrderBookListener ()
+        {
+            @Override
+            public void onTrade (OrderBookTradeEvent event)
+            {
+                assertEquals (++lastSequenceNumber [0], event.getSequenceNumber ());
+            }
+            
+            @Override
+            public void onQuote (OrderBookQuoteEvent event)
+            {
+                assertEquals (++lastSequenceNumber [0], event.getSequenceNumber ());
+                quotes.add (event);
+            }
+        });
+        
+        for (int i = 0; i < 10; i++)
+        {
+            orderBook.beginBatch ();
+            placeRandomEntries (random, nullCallback, 50);
+            orderBook.endBatch ();
+            
+            OrderBookBatch batch = new OrderBookBatch (50);
+            for (int j = 0; j < 50; j++)
+            {
+                boolean bid = random.nextBoolean ();
+                batch.add (
+                    0L, bid ? OrderBookEntrySide.BID : OrderBookEntrySide.ASK, 
+                    1 + random.nextInt (100), randomPrice (random, bid), nullCallback, null);
+            }
+            orderBook.placeEntries (batch);
+            
+            placeRandomEntries (random, nullCallback, 50);
+        }
+        
+        assertEquals (orderBook.getSequenceNumber (), lastSequenceNumber [0]);
+        assertRebuilds (snapshot, quotes);
+    }
+    
+    @Test
+    public void testSnapshotAndDeltas () throws Exception
+    {
+        checkSnapshotAndDeltas ();
+    }
+    
+    protected void checkSnapshotAndDeltas () throws Exception
+    {
+        final List<OrderBookQuoteEvent> quotes = new ArrayList<OrderBookQuoteEvent> ();
+        final long [] lastSequenceNumber = new long [1];
+        orderBook.addOrderBookListener (new OrderBookListener ()
+        {
+            @Override
+            public void onTrade (OrderBookTradeEvent event)
+            {
+                assertEquals (++lastSequenceNumber [0], event.getSequenceNumber ());
+            }
+            
+            @Override
+            public void onQuote (OrderBookQuoteEvent event)
+            {
+                assertEquals (++lastSequenceNumber [0], event.getSequenceNumber ());
+                quotes.add (event);
+            }
+        });
+        
+        Random random = new Random (1L);
+        OrderBookEntryCallback nullCallback = new NullOrderBookEntryCallback ();
+        OrderBookSnapshot snapshot = null;
+        
+        for (int i = 0; i < 2000; i++)
+        {
+            placeRandomEntries (random, nullCallback, 1);
+            
+            if (i == 1000)
+            {
+                snapshot = orderBook.getSnapshot (Integer.MAX_VALUE);
+                assertEquals (orderBook.getSequenceNumber (), snapshot.getSequenceNumber ());
+            }
+        }
+        
+        assertRebuilds (snapshot, quotes);
+        
+        OrderBookSnapshot shallowSnapshot = orderBook.getSnapshot (3);
+        OrderBookSnapshot finalSnapshot = orderBook.getSnapshot (Integer.MAX_VALUE);
+        assertEquals (3, shallowSnapshot.getBidLevelCount ());
+        assertEquals (finalSnapshot.getBidPrice (2), shallowSnapshot.getBidPrice (2));
+    }
+    
+    private void placeRandomEntries (
+        Random random, OrderBookEntryCallback callback, int count)
+        throws Exception
+    {
+        for (int i = 0; i < count; i++)
+        {
+            boolean bid = random.nextBoolean ();
+            orderBook.placeEntry (
+                0L, bid ? OrderBookEntrySide.BID : OrderBookEntrySide.ASK, 
+                1 + random.nextInt (100), randomPrice (random, bid), callback, null);
+        }
+    }
+    
+    private static long randomPrice (Random random, boolean bid)
+    {
+        return bid ? 
+            1000 - random.nextInt (100) + random.nextInt (10) : 
+            1000 + random.nextInt (100) - random.nextInt (10);
+    }
+    
+    private void assertRebuilds (
+        OrderBookSnapshot snapshot, List<OrderBookQuoteEvent> quotes)
+    {
+        LongLongTreeMap bids = new LongLongTreeMap ();
+        LongLongTreeMap asks = new LongLongTreeMap ();
+        for (int i = 0; i < snapshot.getBidLevelCount (); i++)
+            bids.add (snapshot.getBidPrice (i), snapshot.getBidQuantity (i));
+        for (int i = 0; i < snapshot.getAskLevelCount (); i++)
+            asks.add (snapshot.getAskPrice (i), snapshot.getAskQuantity (i));
+        
+        for (OrderBookQuoteEvent quote: quotes)
+        {
+            if (quote.getSequenceNumber () > snapshot.getSequenceNumber ())
+                (OrderBookEntrySide.BID.equals (quote.getSide ()) ? bids : asks).add (
+                    quote.getPrice (), quote.getQuantityDelta ());
+        }
+        
+        OrderBookSnapshot finalSnapshot = orderBook.getSnapshot (Integer.MAX_VALUE);
+        assertEquals (getPriceLevelCount (OrderBookEntrySide.BID), finalSnapshot.getBidLevelCount ());
+        assertEquals (getPriceLevelCount (OrderBookEntrySide.ASK), finalSnapshot.getAskLevelCount ());
+        assertEquals (bids.size (), finalSnapshot.getBidLevelCount ());
+        assertEquals (asks.size (), finalSnapshot.getAskLevelCount ());
+        for (int i = 0; i < finalSnapshot.getBidLevelCount (); i++)
+        {
+            assertEquals (bids.getKey (bids.size () - 1 - i), finalSnapshot.getBidPrice (i));
+            assertEquals (bids.getValue (bids.size () - 1 - i), finalSnapshot.getBidQuantity (i));
+        }
+        for (int i = 0; i < finalSnapshot.getAskLevelCount (); i++)
+        {
+            assertEquals (asks.getKey (i), finalSnapshot.getAskPrice (i));
+            assertEquals (asks.getValue (i), finalSnapshot.getAskQuantity (i));
+        }
+    }
+    
+    @Test
+    public void testSteadyStateDoesNotAllocate () throws Exception
+    {
+        setPoolEntries (true);
+        orderBook.setReuseEvents (true);
+        orderBook.addOrderBookListener (new NullOrderBookListener ());
+        
+        OrderBookEntryCallback nullCallback = new NullOrderBookEntryCallback ();
+        
+        com.sun.management.ThreadMXBean threadMXBean = 
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean ();
+        long threadID = Thread.currentThread ().getId ();
+        
+        int count = 10000;
+        
+        // Warm up pools and reusable events
+        placeFillCancel (nullCallback, count);
+        
+        long overhead = 
+            -threadMXBean.getThreadAllocatedBytes (threadID) + 
+            threadMXBean.getThreadAllocatedBytes (threadID);
+        
+        long before = threadMXBean.getThreadAllocatedBytes (threadID);
+        placeFillCancel (nullCallback, count);
+        long after = threadMXBean.getThreadAllocatedBytes (threadID);
+        
+        long allocated = after - before - overhead;
+        
+        // JIT may reallocate scalar replaced objects of its own on 
+        // deoptimization, but even one object per 16 iterations exceeds this
+        assertTrue ("Allocated " + allocated, allocated < count);
+        assertEquals (0, getEntryCount (OrderBookEntrySide.BID));
+        assertEquals (0, getEntryCount (OrderBookEntrySide.ASK));
+    }
+    
+    private void placeFillCancel (OrderBookEntryCallback callback, int count)
+        throws Exception
+    {
+        for (int i = 0; i < count; i++)
+        {
+            long price = 1000 + (i & 15);
+            
+            OrderBookEntryHandler bid = orderBook.placeEntry (
+                123456789L, OrderBookEntrySide.BID, 10, price, callback, null);
+            orderBook.placeEntry (
+                123456789L, OrderBookEntrySide.ASK, 4, price, callback, null);
+            bid.cancel (123456789L);
+        }
+    }
+    
+    protected abstract T createOrderBook ();
+    
+    protected abstract int getEntryCount (OrderBookEntrySide side);
+    
+    protected abstract int getPriceLevelCount (OrderBookEntrySide side);
+    
+    protected abstract void setPoolEntries (boolean poolEntries);
+    
+    protected static void assertContains (List<Object> list, Object ... elements)
+    {
+        int i = 0;
+        
+        for (Object item: list)
+        {
+            if (i >= elements.length) return;
+            
+            if (elements [i].equals (item)) i++;
+        }
+        
+        if (i < elements.length)
+            fail ();
+    }
+    
+    protected static class MyQuoteListener implements OrderBookListener
+    {
+        private final List<Object> quotes;
+        
+        public MyQuoteListener (List<Object> quotes)
+        {
+            this.quotes = quotes;
+        }
+        
+        @Override
+        public void onTrade (OrderBookTradeEvent event)
+        {
+            // Do nothing
+        }
+        
+        @Override
+        public void onQuote (OrderBookQuoteEvent event)
+        {
+            quotes.add (
+                "QUOTE:" + event.getSide () + ":" + event.getPrice () + ":" + 
+                event.getQuantityDelta ());
+        }
+    }
+    
+    protected class MyOrderBookEntryCallback implements OrderBookEntryCallback
+    {
+        @Override
+        public void onFill (long timestamp, OrderBookEntryHandler handler,
+            long quantity, long price)
+        {
+            events.add (
+                "FILL:" + timestamp + ":" + handler.getClosure () + ":" + 
+                handler.getLimitPrice () + ":" + handler.getUnfilledQuantity () + ":" + 
+                quantity + ":" + price);
+        }
+
+        @Override
+        public void onFilled (long timestamp, OrderBookEntryHandler handler)
+        {
+            events.add (
+                "FILLED:" + timestamp + ":" + handler.getClosure () + ":" + 
+                handler.getLimitPrice () + ":" + handler.getUnfilledQuantity ());
+        }
+
+        @Override
+        public void onCanceled (long timestamp, OrderBookEntryHandler handler)
+        {
+            events.add (
+                "CANCELED:" + timestamp + ":" + handler.getClosure () + ":" + 
+                handler.getLimitPrice () + ":" + handler.getUnfilledQuantity ());
+        }
+    }
+    
+    protected static class NullOrderBookEntryCallback 
+        implements OrderBookEntryCallback
+    {
+        @Override
+        public void onFill (long timestamp, OrderBookEntryHandler handler,
+            long quantity, long price)
+        {
+            // Do nothing
+        }
+
+        @Override
+        public void onFilled (long timestamp, OrderBookEntryHandler handler)
+        {
+            // Do nothing
+        }
+
+        @Override
+        public void onCanceled (long timestamp, OrderBookEntryHandler handler)
+        {
+            // Do nothing
+        }
+    }
+    
+    protected static class NullOrderBookListener implements OrderBookListener
+    {
+        @Override
+        public void onTrade (OrderBookTradeEvent event)
+        {
+            // Do nothing
+        }
+
+        @Override
+        public void onQuote (OrderBookQuoteEvent event)
+        {
+            // Do nothing
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.googlecode.rubex.orderbook.test.unit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.googlecode.rubex.orderbook.ArrayOrderBook;
+import com.googlecode.rubex.orderbook.OrderBookEntryHandler;
+import com.googlecode.rubex.orderbook.OrderBookEntrySide;
+import com.googlecode.rubex.orderbook.OrderBookException;
+import com.googlecode.rubex.orderbook.OrderBookSnapshot;
+
+public class ArrayOrderBookTest extends AbstractOrderBookTest <ArrayOrderBook>
+{
+    @Test
+    public void testReleasedEntry () throws Exception
+    {
+        OrderBookEntryHandler x =
+            orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 100, 100, callback, "X");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 100, 100, callback, "Y");
+
+        // Slot of X is reused by the next entry
+        OrderBookEntryHandler z =
+            orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 100, 90, callback, "Z");
+
+        assertEquals (OrderBookEntrySide.ASK, x.getEntrySide ());
+        assertEquals ("X", x.getClosure ());
+        assertEquals (0L, x.getUnfilledQuantity ());
+        assertEquals (100L, x.getLimitPrice ());
+
+        try
+        {
+            x.cancel (123456789L);
+            fail ();
+        }
+        catch (OrderBookException ex)
+        {
+            // Expected
+        }
+
+        assertEquals (100L, z.getUnfilledQuantity ());
+        assertEquals (1, orderBook.getEntryCount (OrderBookEntrySide.BID));
+    }
+
+    @Test
+    public void testReleasedCanceledEntry () throws Exception
+    {
+        OrderBookEntryHandler x =
+            orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 100, 100, callback, "X");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 30, 100, callback, "Y");
+        x.cancel (123456789L);
+
+        assertEquals (OrderBookEntrySide.BID, x.getEntrySide ());
+        assertEquals (70L, x.getUnfilledQuantity ());
+        assertEquals (100L, x.getLimitPrice ());
+    }
+
+    @Test
+    public void testPooledHandlers () throws Exception
+    {
+        orderBook.setPoolEntries (true);
+
+        OrderBookEntryHandler x =
+            orderBook.placeEntry (123456789L, OrderBookEntrySide.BID, 100, 100, callback, "X");
+        x.cancel (123456789L);
+
+        OrderBookEntryHandler y =
+            orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 50, 110, callback, "Y");
+
+        assertSame (x, y);
+        assertEquals (OrderBookEntrySide.ASK, y.getEntrySide ());
+        assertEquals (50L, y.getUnfilledQuantity ());
+        assertEquals (110L, y.getLimitPrice ());
+        assertEquals ("Y", y.getClosure ());
+
+        orderBook.setPoolEntries (false);
+        y.cancel (123456789L);
+
+        OrderBookEntryHandler z =
+            orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 50, 110, callback, "Z");
+
+        assertNotSame (y, z);
+        assertEquals (50L, y.getUnfilledQuantity ());
+    }
+
+    @Test
+    public void testGrowth () throws Exception
+    {
+        orderBook = new ArrayOrderBook (2);
+
+        for (int i = 0; i < 100; i++)
+            orderBook.placeEntry (
+                123456789L, OrderBookEntrySide.BID, 10, 1000 - i, callback, "B" + i);
+
+        assertEquals (100, orderBook.getEntryCount (OrderBookEntrySide.BID));
+        assertEquals (100, orderBook.getPriceLevelCount (OrderBookEntrySide.BID));
+        assertTrue (orderBook.getCapacity () >= 100);
+
+        OrderBookSnapshot snapshot = orderBook.getSnapshot (3);
+        assertEquals (3, snapshot.getBidLevelCount ());
+        assertEquals (1000L, snapshot.getBidPrice (0));
+        assertEquals (998L, snapshot.getBidPrice (2));
+
+        orderBook.placeEntry (
+            123456789L, OrderBookEntrySide.ASK, 995, 0, callback, "FOO");
+        assertContains (events, "FILL:123456789:B0:1000:0:10:1000", "FILL:123456789:B98:902:0:10:902", "FILL:123456789:B99:901:5:5:901");
+        assertEquals (1, orderBook.getEntryCount (OrderBookEntrySide.BID));
+        assertEquals (1, orderBook.getPriceLevelCount (OrderBookEntrySide.BID));
+    }
+
+    @Override
+    protected ArrayOrderBook createOrderBook ()
+    {
+        return new ArrayOrderBook ();
+    }
+
+    @Override
+    protected int getEntryCount (OrderBookEntrySide side)
+    {
+        return orderBook.getEntryCount (side);
+    }
+
+    @Override
+    protected int getPriceLevelCount (OrderBookEntrySide side)
+    {
+        return orderBook.getPriceLevelCount (side);
+    }
+
+    @Override
+    protected void setPoolEntries (boolean poolEntries)
+    {
+        orderBook.setPoolEntries (poolEntries);
+    }
+}
@@ -0,0 +1,59 @@
+package com.googlecode.rubex.orderbook.test.unit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.googlecode.rubex.orderbook.OrderBookEntrySide;
+import com.googlecode.rubex.orderbook.PriceLevelOrderBook;
+
+public class PriceLevelOrderBookTest 
+    extends AbstractOrderBookTest <PriceLevelOrderBook>
+{
+    @Test
+    public void testOutliers () throws Exception
+    {
+        orderBook = new PriceLevelOrderBook (16);
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 100, 100, callback, "X");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 100, 100000, callback, "Y");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 100, 3, callback, "Z");
+        orderBook.placeEntry (123456789L, OrderBookEntrySide.ASK, 100, 5000, callback, "W");
+        assertTrue (events.isEmpty ());
+        orderBook.placeEntry (
+            123456789L, OrderBookEntrySide.BID, 1000, 0, callback, "FOO");
+        assertContains (events, "FILL:123456789:Z:3:0:100:3", "FILL:123456789:X:100:0:100:100", "FILL:123456789:W:5000:0:100:5000", "FILL:123456789:Y:100000:0:100:100000");
+        assertContains (events, "CANCELED:123456789:FOO:0:600");
+    }
+    
+    @Test
+    public void testSnapshotAndDeltasOutsideLadder () throws Exception
+    {
+        orderBook = new PriceLevelOrderBook (16);
+        
+        checkSnapshotAndDeltas ();
+    }
+    
+    @Override
+    protected PriceLevelOrderBook createOrderBook ()
+    {
+        return new PriceLevelOrderBook ();
+    }
+    
+    @Override
+    protected int getEntryCount (OrderBookEntrySide side)
+    {
+        return orderBook.getEntryCount (side);
+    }
+    
+    @Override
+    protected int getPriceLevelCount (OrderBookEntrySide side)
+    {
+        return orderBook.getPriceLevelCount (side);
+    }
+    
+    @Override
+    protected void setPoolEntries (boolean poolEntries)
+    {
+        orderBook.setPoolEntries (poolEntries);
+    }
+}
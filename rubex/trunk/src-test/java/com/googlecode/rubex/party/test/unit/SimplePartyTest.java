@@ -0,0 +1,313 @@
+package com.googlecode.rubex.party.test.unit;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.googlecode.rubex.concurrent.BlockingWaitStrategy;
+import com.googlecode.rubex.concurrent.WaitStrategy;
+import com.googlecode.rubex.concurrent.WaitStrategyFactory;
+import com.googlecode.rubex.exchange.Exchange;
+import com.googlecode.rubex.exchange.OrderSide;
+import com.googlecode.rubex.exchange.OrderTimeInForce;
+import com.googlecode.rubex.exchange.OrderType;
+import com.googlecode.rubex.exchange.SimpleExchangeFactory;
+import com.googlecode.rubex.party.PartyOrder;
+import com.googlecode.rubex.party.PartyOrderState;
+import com.googlecode.rubex.party.SimpleParty;
+import com.googlecode.rubex.protocol.NewOrderProtocolMessage;
+import com.googlecode.rubex.protocol.ProtocolUtils;
+import com.googlecode.rubex.risk.RiskLimits;
+import com.googlecode.rubex.risk.SimpleRiskManager;
+import com.googlecode.rubex.symbol.SimpleSymbolManager;
+import com.googlecode.rubex.symbol.SymbolManager;
+
+public class SimplePartyTest
+{
+    private final static int QUEUE_CAPACITY = 2;
+    private final static long TIMEOUT = 10000L;
+
+    @Test
+    public void testSubmitToFullQueue () throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch (1);
+
+        // Exchange thread is blocked, so its queue fills up
+        manager.executeInSymbolThread ("FOO", new Runnable ()
+        {
+            @Override
+            public void run ()
+            {
+                try
+                {
+                    release.await ();
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread ().interrupt ();
+                }
+            }
+        });
+
+        final int count = 20;
+
+        Thread submitter = new Thread ()
+        {
+            @Override
+            public void run ()
+            {
+                for (int i = 1; i <= count; i++)
+                    party.processNewOrderMessage (
+                        ProtocolUtils.createNewOrder (
+                            i, 1L, "FOO", OrderSide.BUY, 10L,
+                            OrderType.LIMIT, OrderTimeInForce.DAY, 100L,
+                            0L, 0L));
+            }
+        };
+        submitter.setDaemon (true);
+        submitter.start ();
+
+        long deadline = System.currentTimeMillis () + TIMEOUT;
+        while (manager.getSymbolStatistics ("FOO").getQueueDepth () <
+            QUEUE_CAPACITY && System.currentTimeMillis () < deadline)
+            Thread.sleep (1L);
+
+        assertEquals (
+            QUEUE_CAPACITY,
+            manager.getSymbolStatistics ("FOO").getQueueDepth ());
+
+        // Exchange thread now takes party lock to open orders, while
+        // submitter waits for free slot in the queue
+        release.countDown ();
+
+        submitter.join (TIMEOUT);
+        assertFalse (submitter.isAlive ());
+
+        waitForState (count, PartyOrderState.OPEN);
+
+        party.processMassCancelMessage (
+            ProtocolUtils.createMassCancel (1L, "FOO", null));
+
+        waitForState (count, PartyOrderState.CANCELED);
+    }
+
+    @Test
+    public void testMixedBatch () throws Exception
+    {
+        manager.addSymbol ("BAR");
+
+        SimpleRiskManager riskManager = new SimpleRiskManager (
+            new RiskLimits (50L, 0L, 0L, 0));
+        party = new SimpleParty (manager, riskManager);
+
+        party.processNewOrderMessages (new NewOrderProtocolMessage []
+        {
+            newOrder (1L, "FOO"),
+            // Rejected by risk manager
+            ProtocolUtils.createNewOrder (
+                2L, 1L, "FOO", OrderSide.BUY, 100L, OrderType.LIMIT,
+                OrderTimeInForce.DAY, 100L, 0L, 0L),
+            newOrder (3L, "BAR"),
+            // Rejected by exchange, as expire time is not set
+            ProtocolUtils.createNewOrder (
+                4L, 1L, "FOO", OrderSide.BUY, 10L, OrderType.LIMIT,
+                OrderTimeInForce.GTD, 100L, 0L, 0L)
+        });
+
+        waitForState (2, PartyOrderState.OPEN);
+        waitForState (2, PartyOrderState.REJECTED);
+
+        assertEquals (
+            PartyOrderState.OPEN, getOrder (1L).getOrderState ());
+        assertEquals (
+            PartyOrderState.REJECTED, getOrder (2L).getOrderState ());
+        assertEquals (
+            PartyOrderState.OPEN, getOrder (3L).getOrderState ());
+        assertEquals (
+            PartyOrderState.REJECTED, getOrder (4L).getOrderState ());
+        assertEquals (10L, riskManager.getOpenQuantity (1L, "FOO"));
+        assertEquals (10L, riskManager.getOpenQuantity (1L, "BAR"));
+    }
+
+    @Test
+    public void testBatchHandOffFailure () throws Exception
+    {
+        manager.addSymbol ("BAR");
+
+        SimpleRiskManager riskManager = new SimpleRiskManager ();
+        party = new SimpleParty (
+            new MySymbolManager (manager.getSymbolID ("BAR")), riskManager);
+
+        try
+        {
+            party.processNewOrderMessages (new NewOrderProtocolMessage []
+            {
+                newOrder (1L, "FOO"),
+                newOrder (2L, "BAR"),
+                newOrder (3L, "FOO"),
+                newOrder (4L, "BAR")
+            });
+            fail ();
+        }
+        catch (IllegalStateException ex)
+        {
+            // Expected
+        }
+
+        waitForState (2, PartyOrderState.OPEN);
+        assertEquals (2, countOrders (PartyOrderState.REJECTED));
+        assertEquals (20L, riskManager.getOpenQuantity (1L, "FOO"));
+        assertEquals (0L, riskManager.getOpenQuantity (1L, "BAR"));
+    }
+
+    @Test
+    public void testBatchRegistrationFailure () throws Exception
+    {
+        SimpleRiskManager riskManager = new SimpleRiskManager ();
+        party = new SimpleParty (manager, riskManager);
+
+        try
+        {
+            party.processNewOrderMessages (new NewOrderProtocolMessage []
+            {
+                newOrder (1L, "FOO"),
+                newOrder (1L, "FOO"),
+                newOrder (2L, "FOO")
+            });
+            fail ();
+        }
+        catch (IllegalArgumentException ex)
+        {
+            // Expected
+        }
+
+        assertEquals (1, party.getAllOrders ().length);
+        assertEquals (1, countOrders (PartyOrderState.REJECTED));
+        assertEquals (0L, riskManager.getOpenQuantity (1L, "FOO"));
+    }
+
+    private static NewOrderProtocolMessage newOrder (
+        long orderID, String symbol)
+    {
+        return ProtocolUtils.createNewOrder (
+            orderID, 1L, symbol, OrderSide.BUY, 10L, OrderType.LIMIT,
+            OrderTimeInForce.DAY, 100L, 0L, 0L);
+    }
+
+    private void waitForState (int count, PartyOrderState state)
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis () + TIMEOUT;
+        while (countOrders (state) < count &&
+            System.currentTimeMillis () < deadline)
+            Thread.sleep (1L);
+
+        assertEquals (count, countOrders (state));
+    }
+
+    private PartyOrder getOrder (long orderID)
+    {
+        for (PartyOrder order: party.getAllOrders ())
+        {
+            if (order.getOrderID () == orderID)
+                return order;
+        }
+
+        throw new IllegalArgumentException ("No order with such ID: " + orderID);
+    }
+
+    private int countOrders (PartyOrderState state)
+    {
+        int result = 0;
+
+        for (PartyOrder order: party.getAllOrders ())
+        {
+            if (state.equals (order.getOrderState ()))
+                result += 1;
+        }
+
+        return result;
+    }
+
+    private class MySymbolManager implements SymbolManager
+    {
+        private final int failingSymbolID;
+
+        public MySymbolManager (int failingSymbolID)
+        {
+            this.failingSymbolID = failingSymbolID;
+        }
+
+        @Override
+        public String [] getAllSymbols ()
+        {
+            return manager.getAllSymbols ();
+        }
+
+        @Override
+        public Exchange getSymbolExchange (String symbol)
+        {
+            return manager.getSymbolExchange (symbol);
+        }
+
+        @Override
+        public int getSymbolID (String symbol)
+        {
+            return manager.getSymbolID (symbol);
+        }
+
+        @Override
+        public Exchange getSymbolExchange (int symbolID)
+        {
+            return manager.getSymbolExchange (symbolID);
+        }
+
+        @Override
+        public void executeInSymbolThread (String symbol, Runnable runnable)
+        {
+            executeInSymbolThread (manager.getSymbolID (symbol), runnable);
+        }
+
+        @Override
+        public void executeInSymbolThread (int symbolID, Runnable runnable)
+        {
+            if (symbolID == failingSymbolID)
+                throw new IllegalStateException ("Queue is closed");
+
+            manager.executeInSymbolThread (symbolID, runnable);
+        }
+    }
+
+    private SimpleSymbolManager manager;
+    private SimpleParty party;
+
+    @Before
+    public void setUp () throws Exception
+    {
+        manager = new SimpleSymbolManager (
+            new SimpleExchangeFactory (), 1, QUEUE_CAPACITY,
+            new WaitStrategyFactory ()
+            {
+                @Override
+                public WaitStrategy createWaitStrategy ()
+                {
+                    return new BlockingWaitStrategy ();
+                }
+            });
+        manager.addSymbol ("FOO");
+
+        party = new SimpleParty (manager);
+    }
+
+    @After
+    public void tearDown () throws Exception
+    {
+        if (!manager.isDestroyed ())
+            manager.destroy ();
+        manager = null;
+        party = null;
+    }
+}
@@ -0,0 +1,101 @@
+package com.googlecode.rubex.risk.test.unit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.googlecode.rubex.risk.RiskException;
+import com.googlecode.rubex.risk.RiskLimits;
+import com.googlecode.rubex.risk.SimpleRiskManager;
+
+public class SimpleRiskManagerTest
+{
+    @Test
+    public void testOrderLimits () throws Exception
+    {
+        SimpleRiskManager riskManager =
+            new SimpleRiskManager (new RiskLimits (100L, 5000L, 0L, 0));
+
+        riskManager.checkOrder (1000L, 1L, "FOO", 100L, 50L);
+        assertRejected (riskManager, 1000L, 1L, "FOO", 101L, 1L);
+        assertRejected (riskManager, 1000L, 1L, "FOO", 100L, 51L);
+
+        // Market orders have no notional
+        riskManager.checkOrder (1000L, 1L, "FOO", 100L, 0L);
+
+        // Notional that overflows long is still rejected
+        assertRejected (riskManager, 1000L, 1L, "FOO", 100L, Long.MAX_VALUE / 50L);
+
+        assertEquals (200L, riskManager.getOpenQuantity (1L, "FOO"));
+    }
+
+    @Test
+    public void testOpenQuantity () throws Exception
+    {
+        SimpleRiskManager riskManager =
+            new SimpleRiskManager (new RiskLimits (0L, 0L, 100L, 0));
+
+        riskManager.checkOrder (1000L, 1L, "FOO", 60L, 10L);
+        riskManager.checkOrder (1000L, 1L, "FOO", 40L, 10L);
+        assertRejected (riskManager, 1000L, 1L, "FOO", 1L, 10L);
+
+        // Other symbols and accounts have their own open quantities
+        riskManager.checkOrder (1000L, 1L, "BAR", 100L, 10L);
+        riskManager.checkOrder (1000L, 2L, "FOO", 100L, 10L);
+
+        riskManager.release (1L, "FOO", 30L);
+        assertEquals (70L, riskManager.getOpenQuantity (1L, "FOO"));
+        riskManager.checkOrder (1000L, 1L, "FOO", 30L, 10L);
+        assertRejected (riskManager, 1000L, 1L, "FOO", 1L, 10L);
+        assertEquals (100L, riskManager.getOpenQuantity (1L, "FOO"));
+    }
+
+    @Test
+    public void testMessageRate () throws Exception
+    {
+        SimpleRiskManager riskManager =
+            new SimpleRiskManager (new RiskLimits (0L, 0L, 0L, 2));
+
+        riskManager.checkOrder (1000L, 1L, "FOO", 1L, 10L);
+        riskManager.checkOrder (1500L, 1L, "FOO", 1L, 10L);
+        assertRejected (riskManager, 1999L, 1L, "FOO", 1L, 10L);
+        riskManager.checkOrder (1999L, 2L, "FOO", 1L, 10L);
+
+        riskManager.checkOrder (2000L, 1L, "FOO", 1L, 10L);
+        assertEquals (3L, riskManager.getOpenQuantity (1L, "FOO"));
+    }
+
+    @Test
+    public void testAccountLimits () throws Exception
+    {
+        SimpleRiskManager riskManager = new SimpleRiskManager ();
+
+        riskManager.checkOrder (1000L, 1L, "FOO", 1000L, 10L);
+
+        riskManager.setAccountLimits (1L, new RiskLimits (10L, 0L, 0L, 0));
+        assertRejected (riskManager, 1000L, 1L, "FOO", 1000L, 10L);
+        riskManager.checkOrder (1000L, 2L, "FOO", 1000L, 10L);
+
+        riskManager.setAccountLimits (1L, null);
+        riskManager.checkOrder (1000L, 1L, "FOO", 1000L, 10L);
+    }
+
+    private static void assertRejected (
+        SimpleRiskManager riskManager, long timestamp, long account,
+        String symbol, long quantity, long price)
+    {
+        long openQuantity = riskManager.getOpenQuantity (account, symbol);
+
+        try
+        {
+            riskManager.checkOrder (
+                timestamp, account, symbol, quantity, price);
+            fail ();
+        }
+        catch (RiskException ex)
+        {
+            // Expected
+        }
+
+        assertEquals (openQuantity, riskManager.getOpenQuantity (account, symbol));
+    }
+}
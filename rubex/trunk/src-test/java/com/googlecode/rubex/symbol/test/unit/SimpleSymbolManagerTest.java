@@ -6,6 +6,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.After;
 import org.junit.Before;
@@ -13,7 +14,9 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 
 import com.googlecode.rubex.exchange.Exchange;
+import com.googlecode.rubex.exchange.SimpleExchangeFactory;
 import com.googlecode.rubex.symbol.SimpleSymbolManager;
+import com.googlecode.rubex.symbol.SymbolStatistics;
 
 public class SimpleSymbolManagerTest
 {
@@ -93,6 +96,134 @@ public class SimpleSymbolManagerTest
         assertNotSame ((Thread)events.get (1), (Thread)events.get (3));
     }
     
+    @Test
+    public void testSharedExchangeThread () throws Exception
+    {
+        manager.addSymbol ("FOO");
+        manager.addSymbol ("BAR");
+        manager.addSymbol ("BAZ");
+        
+        MyRunnable r1 = new MyRunnable ();
+        MyRunnable r2 = new MyRunnable ();
+        MyRunnable r3 = new MyRunnable ();
+        manager.executeInSymbolThread ("FOO", r1);
+        manager.executeInSymbolThread ("BAZ", r2);
+        manager.executeInSymbolThread ("FOO", r3);
+        
+        synchronized (r3)
+        {
+            while (!events.contains (r3))
+                r3.wait ();
+        }
+        
+        synchronized (r2)
+        {
+            while (!events.contains (r2))
+                r2.wait ();
+        }
+        
+        // FOO and BAZ share the first of two exchange threads
+        assertEquals (6, events.size ());
+        assertSame (r1, events.get (0));
+        assertSame (r2, events.get (2));
+        assertSame (r3, events.get (4));
+        assertSame (events.get (1), events.get (3));
+        assertSame (events.get (1), events.get (5));
+    }
+    
+    @Test
+    public void testSymbolStatistics () throws Exception
+    {
+        manager.addSymbol ("FOO");
+        manager.addSymbol ("BAR");
+        
+        for (int i = 0; i < 99; i++)
+            manager.executeInSymbolThread ("FOO", new Runnable ()
+            {
+                @Override
+                public void run ()
+                {
+                    // Do nothing
+                }
+            });
+        
+        MyRunnable r = new MyRunnable ();
+        manager.executeInSymbolThread ("FOO", r);
+        
+        synchronized (r)
+        {
+            while (events.isEmpty ())
+                r.wait ();
+        }
+        
+        SymbolStatistics statistics = manager.getSymbolStatistics ("FOO");
+        assertEquals (100L, statistics.getExecutedCount ());
+        assertEquals (0L, statistics.getQueueDepth ());
+        assertTrue (statistics.getMaxTimeInQueue () > 0L);
+        assertTrue (statistics.getTotalTimeInQueue () >= statistics.getMaxTimeInQueue ());
+        
+        // Last batch is counted right after its last runnable
+        Thread.sleep (100);
+        
+        long batches = 0L;
+        long [] histogram = statistics.getBatchSizeHistogram ();
+        assertEquals (SymbolStatistics.BATCH_SIZE_BUCKET_COUNT, histogram.length);
+        for (long count: histogram)
+            batches += count;
+        assertTrue (batches >= 1L);
+        assertTrue (batches <= 100L);
+        
+        assertEquals (0L, manager.getSymbolStatistics ("BAR").getExecutedCount ());
+    }
+    
+    @Test
+    public void testQueueDepth () throws Exception
+    {
+        manager.addSymbol ("FOO");
+        
+        final CountDownLatch started = new CountDownLatch (1);
+        final CountDownLatch release = new CountDownLatch (1);
+        
+        manager.executeInSymbolThread ("FOO", new Runnable ()
+        {
+            @Override
+            public void run ()
+            {
+                started.countDown ();
+                
+                try
+                {
+                    release.await ();
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread ().interrupt ();
+                }
+            }
+        });
+        
+        started.await ();
+        
+        for (int i = 0; i < 5; i++)
+            manager.executeInSymbolThread ("FOO", new MyRunnable ());
+        
+        SymbolStatistics statistics = manager.getSymbolStatistics ("FOO");
+        assertEquals (5L, statistics.getQueueDepth ());
+        
+        release.countDown ();
+        
+        synchronized (this)
+        {
+            long deadline = System.currentTimeMillis () + 10000L;
+            while (statistics.getExecutedCount () < 6L && 
+                System.currentTimeMillis () < deadline)
+                wait (10L);
+        }
+        
+        assertEquals (6L, statistics.getExecutedCount ());
+        assertEquals (0L, statistics.getQueueDepth ());
+    }
+    
     @Test
     public void testGetSymbolExchange () throws Exception
     {
@@ -107,7 +238,64 @@ public class SimpleSymbolManagerTest
         
         assertNotSame (e1, e2);
     }
-    
+
+    @Test
+    public void testSymbolID () throws Exception
+    {
+        // More symbols than initial capacity of symbol array
+        for (int i = 0; i < 40; i++)
+            manager.addSymbol ("S" + i);
+
+        int firstID = manager.getSymbolID ("S0");
+        int lastID = manager.getSymbolID ("S39");
+        assertTrue (firstID != lastID);
+        assertEquals (firstID, manager.getSymbolID ("S0"));
+        assertSame (
+            manager.getSymbolExchange ("S0"),
+            manager.getSymbolExchange (firstID));
+        assertSame (
+            manager.getSymbolExchange ("S39"),
+            manager.getSymbolExchange (lastID));
+
+        MyRunnable r = new MyRunnable ();
+        manager.executeInSymbolThread (lastID, r);
+
+        synchronized (r)
+        {
+            while (events.isEmpty ())
+                r.wait ();
+        }
+
+        assertSame (r, events.get (0));
+
+        manager.removeSymbol ("S0");
+
+        try
+        {
+            manager.getSymbolExchange (firstID);
+            fail ();
+        }
+        catch (IllegalArgumentException ex)
+        {
+            // Expected
+        }
+
+        // IDs of removed symbols are not reused
+        manager.addSymbol ("S0");
+        assertTrue (manager.getSymbolID ("S0") != firstID);
+        assertEquals (lastID, manager.getSymbolID ("S39"));
+
+        try
+        {
+            manager.executeInSymbolThread (-1, new MyRunnable ());
+            fail ();
+        }
+        catch (IllegalArgumentException ex)
+        {
+            // Expected
+        }
+    }
+
     @Test
     public void testDestroy () throws Exception
     {
@@ -138,7 +326,7 @@ public class SimpleSymbolManagerTest
     @Before
     public void setUp () throws Exception
     {
-        manager = new SimpleSymbolManager ();
+        manager = new SimpleSymbolManager (new SimpleExchangeFactory (), 2);
         events = Collections.synchronizedList (new ArrayList <Object> ());
     }
 
@@ -0,0 +1,118 @@
+package com.googlecode.rubex.utils.test.unit;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.googlecode.rubex.utils.LongLongTreeMap;
+
+public class LongLongTreeMapTest
+{
+    @Test
+    public void testAdd () throws Exception
+    {
+        LongLongTreeMap map = new LongLongTreeMap (0);
+
+        assertTrue (map.isEmpty ());
+        assertEquals (0, map.size ());
+        assertEquals (0L, map.get (10L));
+
+        assertEquals (5L, map.add (10L, 5L));
+        assertEquals (7L, map.add (20L, 7L));
+        assertEquals (8L, map.add (10L, 3L));
+        assertEquals (0L, map.add (30L, 0L));
+
+        assertEquals (2, map.size ());
+        assertEquals (15L, map.sum ());
+        assertEquals (8L, map.sumTo (19L));
+        assertEquals (7L, map.sumFrom (11L));
+        assertEquals (8L, map.get (10L));
+        assertEquals (7L, map.get (20L));
+        assertEquals (10L, map.firstKey ());
+        assertEquals (8L, map.firstValue ());
+        assertEquals (20L, map.lastKey ());
+        assertEquals (7L, map.lastValue ());
+
+        assertEquals (0L, map.add (10L, -8L));
+        assertEquals (1, map.size ());
+        assertEquals (20L, map.firstKey ());
+
+        map.clear ();
+        assertTrue (map.isEmpty ());
+    }
+
+    @Test
+    public void testAgainstTreeMap () throws Exception
+    {
+        Random random = new Random (1L);
+        LongLongTreeMap map = new LongLongTreeMap (1);
+        TreeMap <Long, Long> expected = new TreeMap <Long, Long> ();
+
+        for (int i = 0; i < 20000; i++)
+        {
+            long key = random.nextInt (200);
+            long delta = random.nextInt (5) - 2;
+
+            Long oldValue = expected.get (Long.valueOf (key));
+            long newValue = (oldValue == null ? 0L : oldValue.longValue ()) + delta;
+
+            if (newValue == 0L)
+                expected.remove (Long.valueOf (key));
+            else expected.put (Long.valueOf (key), Long.valueOf (newValue));
+
+            assertEquals (newValue, map.add (key, delta));
+            assertEquals (expected.size (), map.size ());
+
+            if (i % 100 == 0)
+            {
+                Iterator <Map.Entry <Long, Long>> iterator =
+                    expected.entrySet ().iterator ();
+
+                for (int rank = 0; rank < map.size (); rank++)
+                {
+                    Map.Entry <Long, Long> entry = iterator.next ();
+
+                    assertEquals (entry.getKey ().longValue (), map.getKey (rank));
+                    assertEquals (entry.getValue ().longValue (), map.getValue (rank));
+                }
+
+                long threshold = random.nextInt (220) - 10;
+                assertEquals (sum (expected.headMap (Long.valueOf (threshold), true)), map.sumTo (threshold));
+                assertEquals (sum (expected.tailMap (Long.valueOf (threshold), true)), map.sumFrom (threshold));
+                assertEquals (sum (expected), map.sum ());
+
+                Map.Entry <Long, Long> higher =
+                    expected.higherEntry (Long.valueOf (threshold));
+                assertEquals (higher == null ? 0L : higher.getValue ().longValue (), map.higherValue (threshold));
+            }
+        }
+    }
+
+    private static long sum (Map <Long, Long> map)
+    {
+        long result = 0L;
+
+        for (Long value: map.values ())
+            result += value.longValue ();
+
+        return result;
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void testFirstKeyOfEmptyMap () throws Exception
+    {
+        new LongLongTreeMap ().firstKey ();
+    }
+
+    @Test (expected = IndexOutOfBoundsException.class)
+    public void testInvalidRank () throws Exception
+    {
+        LongLongTreeMap map = new LongLongTreeMap ();
+        map.add (1L, 1L);
+        map.getKey (1);
+    }
+}
@@ -0,0 +1,77 @@
+package com.googlecode.rubex.utils.test.unit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.googlecode.rubex.utils.TimerWheel;
+
+public class TimerWheelTest
+{
+    @Test
+    public void testExpire () throws Exception
+    {
+        TimerWheel <String> wheel = new TimerWheel <String> (10L, 8);
+        List <String> expired = new ArrayList <String> ();
+
+        wheel.schedule (1005L, "a");
+        wheel.schedule (1015L, "b");
+        wheel.schedule (1019L, "c");
+        wheel.schedule (1500L, "far");
+        assertEquals (4, wheel.size ());
+
+        assertEquals (0, wheel.expire (1000L, expired));
+        assertEquals (1, wheel.expire (1010L, expired));
+        assertEquals ("a", expired.get (0));
+
+        // Deadline is checked exactly, not rounded to tick
+        assertEquals (1, wheel.expire (1016L, expired));
+        assertEquals ("b", expired.get (1));
+        assertEquals (1, wheel.expire (1019L, expired));
+        assertEquals ("c", expired.get (2));
+
+        // Far timeout shares slots with nearer ticks, but waits for its round
+        for (long now = 1020L; now < 1500L; now += 7L)
+            assertEquals (0, wheel.expire (now, expired));
+
+        assertEquals (1, wheel.expire (1500L, expired));
+        assertEquals ("far", expired.get (3));
+        assertEquals (0, wheel.size ());
+    }
+
+    @Test
+    public void testCancel () throws Exception
+    {
+        TimerWheel <String> wheel = new TimerWheel <String> (10L, 8);
+        List <String> expired = new ArrayList <String> ();
+
+        TimerWheel <String>.Timeout a = wheel.schedule (100L, "a");
+        TimerWheel <String>.Timeout b = wheel.schedule (100L, "b");
+
+        assertTrue (a.isActive ());
+        assertTrue (a.cancel ());
+        assertFalse (a.isActive ());
+        assertFalse (a.cancel ());
+        assertEquals (1, wheel.size ());
+
+        assertEquals (1, wheel.expire (200L, expired));
+        assertEquals ("b", expired.get (0));
+        assertFalse (b.isActive ());
+        assertFalse (b.cancel ());
+    }
+
+    @Test
+    public void testPastDeadline () throws Exception
+    {
+        TimerWheel <String> wheel = new TimerWheel <String> (10L, 8);
+        List <String> expired = new ArrayList <String> ();
+
+        assertEquals (0, wheel.expire (1000L, expired));
+
+        wheel.schedule (500L, "past");
+        assertEquals (1, wheel.expire (1001L, expired));
+        assertEquals ("past", expired.get (0));
+    }
+}
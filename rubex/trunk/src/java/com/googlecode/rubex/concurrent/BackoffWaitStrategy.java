@@ -0,0 +1,117 @@
+package com.googlecode.rubex.concurrent;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Implementation of {@link WaitStrategy} interface that spins for a while,
+ * then yields CPU for a while, and then parks waiting thread for periods
+ * doubling on every idle call up to maximum park period.  Reacts to progress
+ * as fast as busy spin when progress is frequent, and gives up CPU almost
+ * completely when idle for long.
+ *
+ * @author Mikhail Vladimirov
+ */
+public class BackoffWaitStrategy implements WaitStrategy
+{
+    /**
+     * Default number of idle calls to spin before starting to yield.
+     */
+    public final static int DEFAULT_SPIN_COUNT = 1000;
+
+    /**
+     * Default number of idle calls to yield before starting to park.
+     */
+    public final static int DEFAULT_YIELD_COUNT = 100;
+
+    /**
+     * Default minimum park period in nanoseconds.
+     */
+    public final static long DEFAULT_MIN_PARK_NANOS = 1000L;
+
+    /**
+     * Default maximum park period in nanoseconds.
+     */
+    public final static long DEFAULT_MAX_PARK_NANOS = 1000000L;
+
+    private final int spinCount;
+    private final int yieldCount;
+    private final long minParkNanos;
+    private final long maxParkNanos;
+
+    /**
+     * Create new backoff wait strategy with default parameters.
+     */
+    public BackoffWaitStrategy ()
+    {
+        this (
+            DEFAULT_SPIN_COUNT, DEFAULT_YIELD_COUNT,
+            DEFAULT_MIN_PARK_NANOS, DEFAULT_MAX_PARK_NANOS);
+    }
+
+    /**
+     * Create new backoff wait strategy with given parameters.
+     *
+     * @param spinCount number of idle calls to spin before starting to yield
+     * @param yieldCount number of idle calls to yield before starting to park
+     * @param minParkNanos first park period in nanoseconds
+     * @param maxParkNanos maximum park period in nanoseconds
+     */
+    public BackoffWaitStrategy (
+        int spinCount, int yieldCount, long minParkNanos, long maxParkNanos)
+    {
+        if (spinCount < 0)
+            throw new IllegalArgumentException ("Spin count < 0");
+
+        if (yieldCount < 0)
+            throw new IllegalArgumentException ("Yield count < 0");
+
+        if (minParkNanos <= 0)
+            throw new IllegalArgumentException ("Min park nanos <= 0");
+
+        if (maxParkNanos < minParkNanos)
+            throw new IllegalArgumentException (
+                "Max park nanos < min park nanos");
+
+        this.spinCount = spinCount;
+        this.yieldCount = yieldCount;
+        this.minParkNanos = minParkNanos;
+        this.maxParkNanos = maxParkNanos;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void idle (int counter) throws InterruptedException
+    {
+        if (Thread.interrupted ())
+            throw new InterruptedException ();
+
+        if (counter < spinCount) return;
+
+        counter -= spinCount;
+
+        if (counter < yieldCount)
+        {
+            Thread.yield ();
+            return;
+        }
+
+        counter -= yieldCount;
+
+        long parkNanos = counter < 63 - Long.numberOfLeadingZeros (
+            maxParkNanos / minParkNanos) ?
+                minParkNanos << counter : maxParkNanos;
+
+        LockSupport.parkNanos (parkNanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void signalAll ()
+    {
+        // Do nothing
+    }
+}
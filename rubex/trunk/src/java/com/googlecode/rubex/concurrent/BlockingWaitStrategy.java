@@ -0,0 +1,90 @@
+package com.googlecode.rubex.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Implementation of {@link WaitStrategy} interface that blocks waiting thread
+ * on a condition until progressing thread signals it or until timeout
+ * elapses.  Uses least CPU, but every signal takes a lock, and waking up
+ * blocked thread costs several microseconds.  Signal that comes while no
+ * thread is waiting is remembered, so next idle call returns immediately
+ * and progress made right before waiting thread blocked is not missed.
+ *
+ * @author Mikhail Vladimirov
+ */
+public class BlockingWaitStrategy implements WaitStrategy
+{
+    /**
+     * Default maximum time to block in one idle call in nanoseconds.
+     */
+    public final static long DEFAULT_TIMEOUT_NANOS = 10000000L;
+
+    private final Lock lock = new ReentrantLock ();
+    private final Condition signal = lock.newCondition ();
+    private final long timeoutNanos;
+
+    private boolean signalled = false;
+
+    /**
+     * Create new blocking wait strategy with default timeout.
+     */
+    public BlockingWaitStrategy ()
+    {
+        this (DEFAULT_TIMEOUT_NANOS);
+    }
+
+    /**
+     * Create new blocking wait strategy with given timeout.
+     *
+     * @param timeoutNanos maximum time to block in one idle call in
+     *        nanoseconds
+     */
+    public BlockingWaitStrategy (long timeoutNanos)
+    {
+        if (timeoutNanos <= 0)
+            throw new IllegalArgumentException ("Timeout nanos <= 0");
+
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void idle (int counter) throws InterruptedException
+    {
+        lock.lockInterruptibly ();
+        try
+        {
+            if (!signalled)
+                signal.await (timeoutNanos, TimeUnit.NANOSECONDS);
+
+            signalled = false;
+        }
+        finally
+        {
+            lock.unlock ();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void signalAll ()
+    {
+        lock.lock ();
+        try
+        {
+            signalled = true;
+            signal.signalAll ();
+        }
+        finally
+        {
+            lock.unlock ();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.googlecode.rubex.concurrent;
+
+/**
+ * Implementation of {@link WaitStrategy} interface that does not give up CPU
+ * at all.  Has the lowest latency, but occupies CPU core even when idle, so
+ * should only be used when there are enough cores for all spinning threads.
+ * 
+ * @author Mikhail Vladimirov
+ */
+public class BusySpinWaitStrategy implements WaitStrategy
+{
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void idle (int counter) throws InterruptedException
+    {
+        if (Thread.interrupted ())
+            throw new InterruptedException ();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void signalAll ()
+    {
+        // Do nothing
+    }
+}
@@ -0,0 +1,75 @@
+package com.googlecode.rubex.concurrent;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Implementation of {@link WaitStrategy} interface that spins for a while and
+ * then parks waiting thread for a fixed period of time on every idle call.
+ * Gives up CPU when idle at the cost of latency up to park period.
+ * 
+ * @author Mikhail Vladimirov
+ */
+public class ParkingWaitStrategy implements WaitStrategy
+{
+    /**
+     * Default number of idle calls to spin before starting to park.
+     */
+    public final static int DEFAULT_SPIN_COUNT = 100;
+    
+    /**
+     * Default park period in nanoseconds.
+     */
+    public final static long DEFAULT_PARK_NANOS = 100000L;
+    
+    private final int spinCount;
+    private final long parkNanos;
+    
+    /**
+     * Create new parking wait strategy with default spin count and park 
+     * period.
+     */
+    public ParkingWaitStrategy ()
+    {
+        this (DEFAULT_SPIN_COUNT, DEFAULT_PARK_NANOS);
+    }
+    
+    /**
+     * Create new parking wait strategy with given spin count and park period.
+     * 
+     * @param spinCount number of idle calls to spin before starting to park
+     * @param parkNanos park period in nanoseconds
+     */
+    public ParkingWaitStrategy (int spinCount, long parkNanos)
+    {
+        if (spinCount < 0)
+            throw new IllegalArgumentException ("Spin count < 0");
+        
+        if (parkNanos <= 0)
+            throw new IllegalArgumentException ("Park nanos <= 0");
+        
+        this.spinCount = spinCount;
+        this.parkNanos = parkNanos;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void idle (int counter) throws InterruptedException
+    {
+        if (Thread.interrupted ())
+            throw new InterruptedException ();
+        
+        if (counter >= spinCount)
+            LockSupport.parkNanos (parkNanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void signalAll ()
+    {
+        // Do nothing
+    }
+}
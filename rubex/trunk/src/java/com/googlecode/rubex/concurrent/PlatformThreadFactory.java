@@ -0,0 +1,26 @@
+package com.googlecode.rubex.concurrent;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Implementation of {@link ThreadFactory} interface that creates ordinary
+ * platform threads, each backed by its own operating system thread and
+ * stack.  Created threads inherit daemon status and priority of the thread
+ * that creates them.
+ *
+ * @author Mikhail Vladimirov
+ */
+public class PlatformThreadFactory implements ThreadFactory
+{
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Thread newThread (Runnable runnable)
+    {
+        if (runnable == null)
+            throw new IllegalArgumentException ("Runnable is null");
+
+        return new Thread (runnable);
+    }
+}
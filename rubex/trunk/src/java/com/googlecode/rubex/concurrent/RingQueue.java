@@ -0,0 +1,335 @@
+package com.googlecode.rubex.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer single-consumer queue backed by pre-allocated ring
+ * buffer.  Producers claim slots by advancing shared tail sequence with
+ * compare and set and then mark claimed slot as published, so adding an
+ * element neither allocates nor takes a lock.  Consumer takes elements in
+ * the order slots were claimed, i.e. elements added by one producer are
+ * taken in the order they were added.  Every element may be accompanied by
+ * context object, e.g. the owner of the element, and slot also remembers
+ * when element was added, so consumer may tell how long element was queued.
+ * <p>
+ * Only one thread may take elements from the queue at a time.  Consumer
+ * waits for new elements using consumer wait strategy, and producers wait
+ * for free slots using producer wait strategy.  Consumer announces that it 
+ * is about to wait, and producers signal consumer wait strategy only if 
+ * consumer is waiting, so adding element to the queue does not take a lock 
+ * of blocking wait strategy while consumer is busy.
+ *
+ * @param <E> type of queue elements
+ *
+ * @author Mikhail Vladimirov
+ */
+public class RingQueue <E>
+{
+    private final int mask;
+    private final Object [] elements;
+    private final Object [] contexts;
+    private final long [] enqueueTimes;
+    private final AtomicLongArray published;
+
+    private final Sequence head = new Sequence (0L);
+    private final Sequence tail = new Sequence (0L);
+
+    private volatile boolean consumerWaiting = false;
+
+    private final WaitStrategy consumerWaitStrategy;
+    private final WaitStrategy producerWaitStrategy;
+
+    /**
+     * Create new queue with given capacity, whose consumer blocks while queue
+     * is empty and producers yield while queue is full.
+     *
+     * @param capacity number of slots in the ring buffer, must be power of
+     *        two
+     */
+    public RingQueue (int capacity)
+    {
+        this (
+            capacity, new BlockingWaitStrategy (),
+            new YieldingWaitStrategy ());
+    }
+
+    /**
+     * Create new queue with given capacity and wait strategies.
+     *
+     * @param capacity number of slots in the ring buffer, must be power of
+     *        two
+     * @param consumerWaitStrategy wait strategy for consumer to wait for new
+     *        elements
+     * @param producerWaitStrategy wait strategy for producers to wait for
+     *        free slots
+     */
+    public RingQueue (
+        int capacity, WaitStrategy consumerWaitStrategy,
+        WaitStrategy producerWaitStrategy)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException ("Capacity <= 0");
+
+        if (Integer.bitCount (capacity) != 1)
+            throw new IllegalArgumentException (
+                "Capacity is not power of two");
+
+        if (consumerWaitStrategy == null)
+            throw new IllegalArgumentException (
+                "Consumer wait strategy is null");
+
+        if (producerWaitStrategy == null)
+            throw new IllegalArgumentException (
+                "Producer wait strategy is null");
+
+        this.consumerWaitStrategy = consumerWaitStrategy;
+        this.producerWaitStrategy = producerWaitStrategy;
+
+        mask = capacity - 1;
+        elements = new Object [capacity];
+        contexts = new Object [capacity];
+        enqueueTimes = new long [capacity];
+        published = new AtomicLongArray (capacity);
+
+        // Slot i is published once it contains sequence i
+        for (int i = 0; i < capacity; i++)
+            published.set (i, Sequence.INITIAL_VALUE);
+    }
+
+    /**
+     * Add given element to the queue if there is free slot.
+     *
+     * @param element element to add
+     * @return <code>true</code> if element was added, <code>false</code> if
+     *         queue is full
+     */
+    public boolean offer (E element)
+    {
+        return offer (element, null);
+    }
+
+    /**
+     * Add given element with given context to the queue if there is free
+     * slot.
+     *
+     * @param element element to add
+     * @param context context of the element or <code>null</code>
+     * @return <code>true</code> if element was added, <code>false</code> if
+     *         queue is full
+     */
+    public boolean offer (E element, Object context)
+    {
+        if (element == null)
+            throw new IllegalArgumentException ("Element is null");
+
+        long sequence;
+
+        do
+        {
+            sequence = tail.get ();
+
+            if (sequence - head.get () > mask)
+                return false;
+        }
+        while (!tail.compareAndSet (sequence, sequence + 1));
+
+        publish (sequence, element, context);
+
+        return true;
+    }
+
+    /**
+     * Add given element to the queue waiting for free slot if queue is full.
+     *
+     * @param element element to add
+     * @throws InterruptedException if thread was interrupted while waiting
+     *         for free slot
+     */
+    public void put (E element) throws InterruptedException
+    {
+        put (element, null);
+    }
+
+    /**
+     * Add given element with given context to the queue waiting for free
+     * slot if queue is full.
+     *
+     * @param element element to add
+     * @param context context of the element or <code>null</code>
+     * @throws InterruptedException if thread was interrupted while waiting
+     *         for free slot
+     */
+    public void put (E element, Object context) throws InterruptedException
+    {
+        if (element == null)
+            throw new IllegalArgumentException ("Element is null");
+
+        int counter = 0;
+
+        while (!offer (element, context))
+            producerWaitStrategy.idle (counter++);
+    }
+
+    /**
+     * Take next element from the queue if there is any.  Should only be
+     * called by consumer thread.
+     *
+     * @return next element or <code>null</code> if queue is empty
+     */
+    @SuppressWarnings ("unchecked")
+    public E poll ()
+    {
+        long sequence = head.get ();
+        int slot = (int)(sequence & mask);
+
+        if (published.get (slot) != sequence)
+            return null;
+
+        E result = (E)elements [slot];
+        elements [slot] = null;
+        contexts [slot] = null;
+        head.set (sequence + 1);
+
+        return result;
+    }
+
+    /**
+     * Take elements available in the queue, at most given number, and pass
+     * them to given handler together with their contexts and times when they
+     * were added.  Elements added while handler runs are taken as well,
+     * unless maximum number is reached.  Should only be called by consumer
+     * thread.
+     *
+     * @param handler handler to pass elements to
+     * @param maximumCount maximum number of elements to take
+     * @return number of elements taken
+     */
+    @SuppressWarnings ("unchecked")
+    public int drain (RingQueueHandler <? super E> handler, int maximumCount)
+    {
+        if (handler == null)
+            throw new IllegalArgumentException ("Handler is null");
+
+        if (maximumCount < 0)
+            throw new IllegalArgumentException ("Maximum count < 0");
+
+        long sequence = head.get ();
+        int count = 0;
+
+        while (count < maximumCount)
+        {
+            int slot = (int)(sequence & mask);
+
+            if (published.get (slot) != sequence)
+                break;
+
+            E element = (E)elements [slot];
+            Object context = contexts [slot];
+            long enqueueTime = enqueueTimes [slot];
+            elements [slot] = null;
+            contexts [slot] = null;
+
+            // Free the slot before handler runs, as handler may add elements
+            head.set (++sequence);
+            count += 1;
+
+            handler.onElement (element, context, enqueueTime);
+        }
+
+        return count;
+    }
+
+    /**
+     * Take next element from the queue waiting for it if queue is empty.
+     * Should only be called by consumer thread.
+     *
+     * @return next element
+     * @throws InterruptedException if thread was interrupted while waiting
+     *         for new element
+     */
+    public E take () throws InterruptedException
+    {
+        int counter = 0;
+
+        while (true)
+        {
+            E result = poll ();
+
+            if (result != null)
+                return result;
+
+            await (counter++);
+        }
+    }
+
+    /**
+     * Wait for new elements once using consumer wait strategy.  Allows
+     * consumer thread to do other work between waits, e.g. to run timers.
+     * Should only be called by consumer thread.
+     *
+     * @param counter number of times this method was called in a row
+     *        without getting new elements, starting from 0
+     * @throws InterruptedException if thread was interrupted while waiting
+     */
+    public void idle (int counter) throws InterruptedException
+    {
+        await (counter);
+    }
+
+    /**
+     * Return number of elements in the queue.  Result is approximate if
+     * queue is concurrently modified.
+     *
+     * @return number of elements
+     */
+    public int size ()
+    {
+        long size = tail.get () - head.get ();
+
+        return size < 0 ? 0 : (int)Math.min (size, elements.length);
+    }
+
+    /**
+     * Return number of slots in the ring buffer.
+     *
+     * @return capacity of the queue
+     */
+    public int getCapacity ()
+    {
+        return elements.length;
+    }
+
+    private void publish (long sequence, E element, Object context)
+    {
+        int slot = (int)(sequence & mask);
+
+        elements [slot] = element;
+        contexts [slot] = context;
+        enqueueTimes [slot] = System.nanoTime ();
+
+        // Volatile write, so either consumer sees the element after it 
+        // announced waiting, or this thread sees consumer waiting
+        published.set (slot, sequence);
+
+        if (consumerWaiting)
+            consumerWaitStrategy.signalAll ();
+    }
+
+    private void await (int counter) throws InterruptedException
+    {
+        consumerWaiting = true;
+        try
+        {
+            // Element published before consumer announced waiting
+            long sequence = head.get ();
+            if (published.get ((int)(sequence & mask)) == sequence)
+                return;
+
+            consumerWaitStrategy.idle (counter);
+        }
+        finally
+        {
+            consumerWaiting = false;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.googlecode.rubex.concurrent;
+
+/**
+ * Receives elements drained from {@link RingQueue}.
+ *
+ * @param <E> type of queue elements
+ *
+ * @author Mikhail Vladimirov
+ */
+public interface RingQueueHandler <E>
+{
+    /**
+     * Called for every element taken from the queue.
+     *
+     * @param element element
+     * @param context context the element was added with or
+     *        <code>null</code>
+     * @param enqueueTime value of {@link System#nanoTime()} when element was
+     *        added
+     */
+    public void onElement (E element, Object context, long enqueueTime);
+}
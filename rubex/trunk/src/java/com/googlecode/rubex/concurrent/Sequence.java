@@ -0,0 +1,107 @@
+package com.googlecode.rubex.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Sequence number shared between threads.  Value is padded on both sides,
+ * so sequences updated by different threads do not share cache line.
+ * 
+ * @author Mikhail Vladimirov
+ */
+public class Sequence
+{
+    /**
+     * Initial value of sequence, meaning that no sequence number was 
+     * reached yet.
+     */
+    public final static long INITIAL_VALUE = -1L;
+    
+    private final static AtomicLongFieldUpdater <Sequence> VALUE_UPDATER =
+        AtomicLongFieldUpdater.newUpdater (Sequence.class, "value");
+    
+    protected long p1, p2, p3, p4, p5, p6, p7;
+    private volatile long value;
+    protected long p9, p10, p11, p12, p13, p14, p15;
+    
+    /**
+     * Create new sequence with initial value.
+     */
+    public Sequence ()
+    {
+        this (INITIAL_VALUE);
+    }
+    
+    /**
+     * Create new sequence with given value.
+     * 
+     * @param value initial value
+     */
+    public Sequence (long value)
+    {
+        this.value = value;
+    }
+    
+    /**
+     * Return current value of the sequence.
+     */
+    public long get ()
+    {
+        return value;
+    }
+    
+    /**
+     * Set new value of the sequence.
+     * 
+     * @param value new value
+     */
+    public void set (long value)
+    {
+        this.value = value;
+    }
+    
+    /**
+     * Atomically set new value of the sequence if current value equals to 
+     * given expected value.
+     * 
+     * @param expectedValue expected current value
+     * @param newValue new value
+     * @return <code>true</code> if value was set, <code>false</code> if 
+     *         current value differs from expected value
+     */
+    public boolean compareAndSet (long expectedValue, long newValue)
+    {
+        return VALUE_UPDATER.compareAndSet (this, expectedValue, newValue);
+    }
+    
+    /**
+     * Return minimum value of given sequences or given default value if there 
+     * is no sequences.
+     * 
+     * @param sequences sequences to find minimum value of
+     * @param defaultValue value to return if there is no sequences
+     * @return minimum value
+     */
+    public static long getMinimum (Sequence [] sequences, long defaultValue)
+    {
+        if (sequences == null)
+            throw new IllegalArgumentException ("Sequences is null");
+        
+        if (sequences.length == 0) return defaultValue;
+        
+        long result = Long.MAX_VALUE;
+        
+        for (int i = 0; i < sequences.length; i++)
+            result = Math.min (result, sequences [i].get ());
+        
+        return result;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString ()
+    {
+        return String.valueOf (value);
+    }
+}
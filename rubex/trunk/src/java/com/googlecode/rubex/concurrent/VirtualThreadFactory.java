@@ -0,0 +1,97 @@
+package com.googlecode.rubex.concurrent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementation of {@link ThreadFactory} interface that creates virtual
+ * threads if Java platform supports them, and platform threads otherwise.
+ * Virtual threads are scheduled by Java runtime on a small pool of carrier
+ * threads and their stacks live in heap, so many threads that spend most of
+ * their time blocked in socket I/O cost little memory.  Virtual threads are
+ * created via reflection, so this class runs on platforms without them.
+ *
+ * @author Mikhail Vladimirov
+ */
+public class VirtualThreadFactory implements ThreadFactory
+{
+    private final static Logger logger =
+        Logger.getLogger (VirtualThreadFactory.class.getName ());
+
+    // Thread.ofVirtual () and Thread.Builder.unstarted (Runnable), or null
+    private final static Method OF_VIRTUAL;
+    private final static Method UNSTARTED;
+
+    static
+    {
+        Method ofVirtual = null;
+        Method unstarted = null;
+
+        try
+        {
+            ofVirtual = Thread.class.getMethod ("ofVirtual");
+            unstarted = Class.forName ("java.lang.Thread$Builder").getMethod (
+                "unstarted", Runnable.class);
+
+            // Fails if virtual threads are preview feature not enabled
+            ofVirtual.invoke (null);
+        }
+        catch (Exception ex)
+        {
+            ofVirtual = null;
+            unstarted = null;
+
+            if (logger.isLoggable (Level.INFO))
+                logger.info (
+                    "Virtual threads are not supported, " +
+                    "platform threads will be used instead");
+        }
+
+        OF_VIRTUAL = ofVirtual;
+        UNSTARTED = unstarted;
+    }
+
+    private final ThreadFactory fallbackThreadFactory =
+        new PlatformThreadFactory ();
+
+    /**
+     * Tells whether Java platform supports virtual threads.
+     *
+     * @return <code>true</code> if this factory creates virtual threads,
+     *         <code>false</code> if it creates platform threads
+     */
+    public static boolean isSupported ()
+    {
+        return UNSTARTED != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Thread newThread (Runnable runnable)
+    {
+        if (runnable == null)
+            throw new IllegalArgumentException ("Runnable is null");
+
+        if (UNSTARTED == null)
+            return fallbackThreadFactory.newThread (runnable);
+
+        try
+        {
+            return (Thread)UNSTARTED.invoke (
+                OF_VIRTUAL.invoke (null), runnable);
+        }
+        catch (IllegalAccessException ex)
+        {
+            throw new Error (ex);
+        }
+        catch (InvocationTargetException ex)
+        {
+            throw new Error (ex.getCause ());
+        }
+    }
+}
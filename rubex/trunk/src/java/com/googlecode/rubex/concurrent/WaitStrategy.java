@@ -0,0 +1,25 @@
+package com.googlecode.rubex.concurrent;
+
+/**
+ * Strategy of a thread waiting for some other thread to make progress, e.g.
+ * consumer thread waiting for new events to be published.
+ * 
+ * @author Mikhail Vladimirov
+ */
+public interface WaitStrategy
+{
+    /**
+     * Called by waiting thread every time it found no progress.
+     * 
+     * @param counter number of times this method was called in a row 
+     *        without progress, starting from 0
+     * @throws InterruptedException if waiting thread was interrupted
+     */
+    public void idle (int counter) throws InterruptedException;
+    
+    /**
+     * Called by progressing thread after it made progress, to wake up threads
+     * waiting with this strategy.
+     */
+    public void signalAll ();
+}
@@ -0,0 +1,17 @@
+package com.googlecode.rubex.concurrent;
+
+/**
+ * Creates wait strategies, e.g. one for each consumer thread, when strategy
+ * keeps state that should not be shared between waiting threads.
+ *
+ * @author Mikhail Vladimirov
+ */
+public interface WaitStrategyFactory
+{
+    /**
+     * Create new wait strategy.
+     *
+     * @return new wait strategy
+     */
+    public WaitStrategy createWaitStrategy ();
+}
@@ -0,0 +1,60 @@
+package com.googlecode.rubex.concurrent;
+
+/**
+ * Implementation of {@link WaitStrategy} interface that spins for a while and
+ * then yields CPU to other threads on every idle call.
+ * 
+ * @author Mikhail Vladimirov
+ */
+public class YieldingWaitStrategy implements WaitStrategy
+{
+    /**
+     * Default number of idle calls to spin before starting to yield.
+     */
+    public final static int DEFAULT_SPIN_COUNT = 100;
+    
+    private final int spinCount;
+    
+    /**
+     * Create new yielding wait strategy with default spin count.
+     */
+    public YieldingWaitStrategy ()
+    {
+        this (DEFAULT_SPIN_COUNT);
+    }
+    
+    /**
+     * Create new yielding wait strategy with given spin count.
+     * 
+     * @param spinCount number of idle calls to spin before starting to yield
+     */
+    public YieldingWaitStrategy (int spinCount)
+    {
+        if (spinCount < 0)
+            throw new IllegalArgumentException ("Spin count < 0");
+        
+        this.spinCount = spinCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void idle (int counter) throws InterruptedException
+    {
+        if (Thread.interrupted ())
+            throw new InterruptedException ();
+        
+        if (counter >= spinCount)
+            Thread.yield ();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void signalAll ()
+    {
+        // Do nothing
+    }
+}
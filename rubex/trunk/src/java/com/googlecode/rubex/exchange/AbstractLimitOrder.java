@@ -10,10 +10,19 @@ public abstract class AbstractLimitOrder
 {
     private final long limitPrice;
     private final OrderTimeInForce timeInForce;
+    private final long expireTime;
     
     public AbstractLimitOrder (OrderSide side, long orderedQuantity,
         long limitPrice, OrderTimeInForce timeInForce,
         OrderCallback callback, Object closure)
+    {
+        this (side, orderedQuantity, limitPrice, timeInForce, 0L, 
+            callback, closure);
+    }
+    
+    public AbstractLimitOrder (OrderSide side, long orderedQuantity,
+        long limitPrice, OrderTimeInForce timeInForce, long expireTime,
+        OrderCallback callback, Object closure)
     {
         super (side, orderedQuantity, callback, closure);
         
@@ -23,8 +32,12 @@ public abstract class AbstractLimitOrder
         if (timeInForce == null)
             throw new IllegalArgumentException ("Time in force is null");
         
+        if (expireTime < 0)
+            throw new IllegalArgumentException ("Expire time < 0");
+        
         this.limitPrice = limitPrice;
         this.timeInForce = timeInForce;
+        this.expireTime = expireTime;
     }
 
     /**
@@ -65,4 +78,13 @@ public abstract class AbstractLimitOrder
     {
         return timeInForce;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getExpireTime ()
+    {
+        return expireTime;
+    }
 }
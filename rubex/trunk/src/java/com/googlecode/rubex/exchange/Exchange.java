@@ -1,5 +1,7 @@
 package com.googlecode.rubex.exchange;
 
+import java.util.Collection;
+
 /**
  * Exchange where orders can be placed.
  * 
@@ -45,6 +47,45 @@ public interface Exchange
         OrderTimeInForce timeInForce, 
         OrderCallback callback, Object closure) throws OrderException;
     
+    /**
+     * Create new limit order with given side, quantity, limit price, time in 
+     * force, expire time, callback and closure.  Expire time must be set for
+     * good till date orders and must be zero for all other orders.
+     * 
+     * @param timestamp time in milliseconds since epoch when order is created.
+     * @param side order side
+     * @param quantity order quantity in quantity units
+     * @param limitPrice limit price in price units
+     * @param timeInForce time in force
+     * @param expireTime expire time of good till date order in milliseconds 
+     *        since epoch or zero for orders with other time in force
+     * @param callback callback to be notified about order events
+     * @param closure closure object to be assigned to the order or 
+     *        <code>null</code> if there is no closure
+     * @return new limit order
+     * @throws OrderException if limit order cannot be created
+     * 
+     * @see OrderTimeInForce#GTD
+     */
+    public LimitOrder createLimitOrder (
+        long timestamp, 
+        OrderSide side, long quantity, long limitPrice, 
+        OrderTimeInForce timeInForce, long expireTime, 
+        OrderCallback callback, Object closure) throws OrderException;
+    
+    /**
+     * Create limit orders for all instructions in given batch, in order, as 
+     * if {@link #createLimitOrder(long, OrderSide, long, long, OrderTimeInForce, OrderCallback, Object)}
+     * was called for each of them, but with single hand-off to the order 
+     * book.  For every instruction either created order or exception is 
+     * stored into the batch.
+     * 
+     * @param timestamp time in milliseconds since epoch when orders are 
+     *        created.
+     * @param batch batch of limit order instructions
+     */
+    public void createLimitOrders (long timestamp, LimitOrderBatch batch);
+    
     /**
      * Create new stop order with given side, quantity, stop price, callback 
      * and closure.
@@ -105,4 +146,101 @@ public interface Exchange
         OrderSide side, 
         long quantity, long limitPrice, long visibleQuantity, 
         OrderCallback callback, Object closure) throws OrderException;
+    
+    /**
+     * Cancel all given orders of this exchange at once.  Orders that are 
+     * already done are skipped.  Order book entries of the orders are 
+     * canceled in one batch, so order book listeners receive at most one 
+     * quote event per price level.
+     * 
+     * @param timestamp time in milliseconds since epoch when orders are
+     *        canceled
+     * @param orders orders to be canceled
+     * @return number of canceled orders
+     */
+    public int cancelOrders (long timestamp, Collection <? extends Order> orders);
+    
+    /**
+     * Cancel all good till date orders whose expire time is at or before 
+     * given time.  Should be called periodically from the thread that places
+     * orders into this exchange.
+     * 
+     * @param timestamp current time in milliseconds since epoch
+     * @return number of expired orders
+     */
+    public int expireOrders (long timestamp);
+    
+    /**
+     * End trading session, i.e. cancel all day orders, including iceberg, 
+     * stop and stop limit orders.  Good till cancel and good till date 
+     * orders are left intact.
+     * 
+     * @param timestamp time in milliseconds since epoch when session ended
+     * @return number of expired orders
+     */
+    public int endSession (long timestamp);
+    
+    /**
+     * Start auction call period.  Until auction is ended, limit orders are
+     * not matched when placed, but rest in the order book and are executed 
+     * at single price by {@link #uncross(long)}.  Market orders, immediate 
+     * or cancel and fill or kill orders are canceled during auction call 
+     * period.  Does nothing if auction is already started.
+     */
+    public void beginAuction ();
+    
+    /**
+     * Tells whether auction call period is in progress.
+     * 
+     * @return <code>true</code> if auction is in progress, 
+     *         <code>false</code> if orders are matched continuously
+     */
+    public boolean isAuction ();
+    
+    /**
+     * Execute all crossing orders at single uncrossing price, that 
+     * maximizes executed quantity.  Auction call period goes on after 
+     * uncross.
+     * 
+     * @param timestamp time in milliseconds since epoch of the uncross
+     * @return uncrossing price in price units or zero if nothing was 
+     *         executed
+     */
+    public long uncross (long timestamp);
+    
+    /**
+     * Uncross and end auction call period, so subsequent orders are matched 
+     * continuously.
+     * 
+     * @param timestamp time in milliseconds since epoch when auction ended
+     * @return uncrossing price in price units or zero if nothing was 
+     *         executed
+     */
+    public long endAuction (long timestamp);
+    
+    /**
+     * Perform periodic work that is due at given time, such as expiring 
+     * good till date orders and periodic auction uncrosses.  Should be 
+     * called periodically from the thread that places orders into this 
+     * exchange.
+     * 
+     * @param timestamp current time in milliseconds since epoch
+     */
+    public void onTimer (long timestamp);
+    
+    /**
+     * Start batch of operations done in one pass of the thread that places 
+     * orders into this exchange.  Outbound work that may be coalesced, such
+     * as quote events of order books that coalesce quotes, is deferred until
+     * matching call to {@link #endBatch()}.  Calls may be nested.
+     */
+    public void beginBatch ();
+    
+    /**
+     * End batch of operations and flush outbound work deferred during the 
+     * batch.
+     * 
+     * @see #beginBatch()
+     */
+    public void endBatch ();
 }
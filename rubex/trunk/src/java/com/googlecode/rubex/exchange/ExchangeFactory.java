@@ -0,0 +1,19 @@
+package com.googlecode.rubex.exchange;
+
+/**
+ * Creates exchanges for symbols.
+ * 
+ * @see Exchange
+ * 
+ * @author Mikhail Vladimirov
+ */
+public interface ExchangeFactory
+{
+    /**
+     * Create new exchange for given symbol.
+     * 
+     * @param symbol symbol to create exchange for
+     * @return new exchange
+     */
+    public Exchange createExchange (String symbol);
+}
@@ -17,6 +17,14 @@ public interface LimitOrder extends Order
      */
     public OrderTimeInForce getTimeInForce ();
     
+    /**
+     * Return expire time of good till date order in milliseconds since epoch
+     * or zero if order does not have expire time.
+     * 
+     * @see OrderTimeInForce#GTD
+     */
+    public long getExpireTime ();
+    
     /**
      * Replace this order with new market order.
      * 
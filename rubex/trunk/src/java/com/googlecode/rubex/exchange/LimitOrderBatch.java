@@ -0,0 +1,283 @@
+package com.googlecode.rubex.exchange;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reusable buffer of limit order instructions for one exchange to be
+ * processed in one call, together with results of processing them.
+ *
+ * @see Exchange#createLimitOrders(long, LimitOrderBatch)
+ *
+ * @author Mikhail Vladimirov
+ */
+public class LimitOrderBatch
+{
+    private final List <Instruction> instructions =
+        new ArrayList <Instruction> ();
+
+    private int size = 0;
+
+    /**
+     * Create new empty batch.
+     */
+    public LimitOrderBatch ()
+    {
+        // Do nothing
+    }
+
+    /**
+     * Add instruction to create limit order with given side, quantity, limit
+     * price, time in force, callback and closure.
+     *
+     * @param side order side
+     * @param quantity order quantity in quantity units
+     * @param limitPrice limit price in price units
+     * @param timeInForce time in force
+     * @param callback callback to be notified about order events
+     * @param closure closure object to be assigned to the order or
+     *        <code>null</code> if there is no closure
+     * @return index of the instruction in the batch
+     *
+     * @see Exchange#createLimitOrder(long, OrderSide, long, long, OrderTimeInForce, OrderCallback, Object)
+     */
+    public int add (
+        OrderSide side, long quantity, long limitPrice,
+        OrderTimeInForce timeInForce,
+        OrderCallback callback, Object closure)
+    {
+        return add (
+            side, quantity, limitPrice, timeInForce, 0L, callback, closure);
+    }
+
+    /**
+     * Add instruction to create limit order with given side, quantity, limit
+     * price, time in force, expire time, callback and closure.
+     *
+     * @param side order side
+     * @param quantity order quantity in quantity units
+     * @param limitPrice limit price in price units
+     * @param timeInForce time in force
+     * @param expireTime expire time of good till date order in milliseconds
+     *        since epoch or zero for orders with other time in force
+     * @param callback callback to be notified about order events
+     * @param closure closure object to be assigned to the order or
+     *        <code>null</code> if there is no closure
+     * @return index of the instruction in the batch
+     *
+     * @see Exchange#createLimitOrder(long, OrderSide, long, long, OrderTimeInForce, long, OrderCallback, Object)
+     */
+    public int add (
+        OrderSide side, long quantity, long limitPrice,
+        OrderTimeInForce timeInForce, long expireTime,
+        OrderCallback callback, Object closure)
+    {
+        if (side == null)
+            throw new IllegalArgumentException ("Side is null");
+
+        if (quantity <= 0)
+            throw new IllegalArgumentException ("Quantity <= 0");
+
+        if (limitPrice <= 0)
+            throw new IllegalArgumentException ("Limit price <= 0");
+
+        if (timeInForce == null)
+            throw new IllegalArgumentException ("Time in force is null");
+
+        if (expireTime < 0)
+            throw new IllegalArgumentException ("Expire time < 0");
+
+        if (callback == null)
+            throw new IllegalArgumentException ("Callback is null");
+
+        Instruction instruction;
+
+        if (size < instructions.size ())
+            instruction = instructions.get (size);
+        else
+        {
+            instruction = new Instruction ();
+            instructions.add (instruction);
+        }
+
+        instruction.side = side;
+        instruction.quantity = quantity;
+        instruction.limitPrice = limitPrice;
+        instruction.timeInForce = timeInForce;
+        instruction.expireTime = expireTime;
+        instruction.callback = callback;
+        instruction.closure = closure;
+        instruction.order = null;
+        instruction.exception = null;
+
+        return size++;
+    }
+
+    /**
+     * Return number of instructions in the batch.
+     */
+    public int size ()
+    {
+        return size;
+    }
+
+    /**
+     * Remove all instructions and results from the batch.
+     */
+    public void clear ()
+    {
+        for (int i = 0; i < size; i++)
+            instructions.get (i).clear ();
+
+        size = 0;
+    }
+
+    /**
+     * Return order side of instruction with given index.
+     *
+     * @param index index of the instruction
+     * @return order side
+     */
+    public OrderSide getSide (int index)
+    {
+        return getInstruction (index).side;
+    }
+
+    /**
+     * Return order quantity of instruction with given index.
+     *
+     * @param index index of the instruction
+     * @return order quantity in quantity units
+     */
+    public long getQuantity (int index)
+    {
+        return getInstruction (index).quantity;
+    }
+
+    /**
+     * Return limit price of instruction with given index.
+     *
+     * @param index index of the instruction
+     * @return limit price in price units
+     */
+    public long getLimitPrice (int index)
+    {
+        return getInstruction (index).limitPrice;
+    }
+
+    /**
+     * Return time in force of instruction with given index.
+     *
+     * @param index index of the instruction
+     * @return time in force
+     */
+    public OrderTimeInForce getTimeInForce (int index)
+    {
+        return getInstruction (index).timeInForce;
+    }
+
+    /**
+     * Return expire time of instruction with given index.
+     *
+     * @param index index of the instruction
+     * @return expire time in milliseconds since epoch or zero if there is no
+     *         expire time
+     */
+    public long getExpireTime (int index)
+    {
+        return getInstruction (index).expireTime;
+    }
+
+    /**
+     * Return callback of instruction with given index.
+     *
+     * @param index index of the instruction
+     * @return order callback
+     */
+    public OrderCallback getCallback (int index)
+    {
+        return getInstruction (index).callback;
+    }
+
+    /**
+     * Return closure of instruction with given index.
+     *
+     * @param index index of the instruction
+     * @return order closure or <code>null</code> if there is no closure
+     */
+    public Object getClosure (int index)
+    {
+        return getInstruction (index).closure;
+    }
+
+    /**
+     * Return order created for instruction with given index.
+     *
+     * @param index index of the instruction
+     * @return created order or <code>null</code> if order was not created
+     */
+    public LimitOrder getOrder (int index)
+    {
+        return getInstruction (index).order;
+    }
+
+    /**
+     * Return exception thrown while creating order for instruction with
+     * given index.
+     *
+     * @param index index of the instruction
+     * @return exception or <code>null</code> if there were no exception
+     */
+    public OrderException getException (int index)
+    {
+        return getInstruction (index).exception;
+    }
+
+    /**
+     * Set result of creating order for instruction with given index.
+     *
+     * @param index index of the instruction
+     * @param order created order or <code>null</code> if order was not
+     *        created
+     * @param exception exception thrown while creating order or
+     *        <code>null</code> if there were no exception
+     */
+    public void setResult (int index, LimitOrder order, OrderException exception)
+    {
+        Instruction instruction = getInstruction (index);
+
+        instruction.order = order;
+        instruction.exception = exception;
+    }
+
+    private Instruction getInstruction (int index)
+    {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException ("Invalid index: " + index);
+
+        return instructions.get (index);
+    }
+
+    private static class Instruction
+    {
+        public OrderSide side;
+        public long quantity;
+        public long limitPrice;
+        public OrderTimeInForce timeInForce;
+        public long expireTime;
+        public OrderCallback callback;
+        public Object closure;
+        public LimitOrder order;
+        public OrderException exception;
+
+        public void clear ()
+        {
+            side = null;
+            timeInForce = null;
+            callback = null;
+            closure = null;
+            order = null;
+            exception = null;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.googlecode.rubex.exchange;
+
+import com.googlecode.rubex.orderbook.event.OrderBookListener;
+
+/**
+ * Creates order book listeners to be attached to order books of exchanges
+ * created by {@link SimpleExchangeFactory}.
+ * 
+ * @see SimpleExchangeFactory#addOrderBookListenerFactory(OrderBookListenerFactory)
+ * 
+ * @author Mikhail Vladimirov
+ */
+public interface OrderBookListenerFactory
+{
+    /**
+     * Create new order book listener for order book of given symbol.
+     * 
+     * @param symbol symbol of the order book
+     * @return new order book listener
+     */
+    public OrderBookListener createOrderBookListener (String symbol);
+}
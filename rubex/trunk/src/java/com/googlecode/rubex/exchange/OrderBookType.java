@@ -0,0 +1,29 @@
+package com.googlecode.rubex.exchange;
+
+/**
+ * Type of order book used by exchanges created by
+ * {@link SimpleExchangeFactory}.
+ * 
+ * @author Mikhail Vladimirov
+ */
+public enum OrderBookType
+{
+    /**
+     * {@link com.googlecode.rubex.orderbook.SimpleOrderBook}, that indexes
+     * price levels by tree map.
+     */
+    SIMPLE,
+    
+    /**
+     * {@link com.googlecode.rubex.orderbook.PriceLevelOrderBook}, that
+     * addresses price levels near the best price by array index.
+     */
+    PRICE_LEVEL,
+    
+    /**
+     * {@link com.googlecode.rubex.orderbook.ArrayOrderBook}, that keeps 
+     * resting entries in primitive arrays and suits books with millions of
+     * entries.
+     */
+    ARRAY
+}
@@ -20,5 +20,18 @@ public enum OrderTimeInForce
     /**
      * Fill or kill order.
      */
-    FOK
+    FOK, 
+    
+    /**
+     * Good till cancel order.  Unlike day order, it is not expired at the 
+     * end of trading session.
+     */
+    GTC, 
+    
+    /**
+     * Good till date order.  Order is expired at its expire time.
+     * 
+     * @see LimitOrder#getExpireTime()
+     */
+    GTD
 }
@@ -1,36 +1,138 @@
 package com.googlecode.rubex.exchange;
 
-import junk.OrderBookWindow;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.googlecode.rubex.marketdata.MarketDataTracker;
-import com.googlecode.rubex.marketdata.SimpleOrderBookMarketDataTracker;
 import com.googlecode.rubex.orderbook.OrderBook;
+import com.googlecode.rubex.orderbook.OrderBookBatch;
 import com.googlecode.rubex.orderbook.OrderBookEntryCallback;
 import com.googlecode.rubex.orderbook.OrderBookEntryHandler;
 import com.googlecode.rubex.orderbook.OrderBookEntrySide;
 import com.googlecode.rubex.orderbook.OrderBookException;
 import com.googlecode.rubex.orderbook.SimpleOrderBook;
+import com.googlecode.rubex.orderbook.event.OrderBookListener;
+import com.googlecode.rubex.orderbook.event.OrderBookQuoteEvent;
+import com.googlecode.rubex.orderbook.event.OrderBookTradeEvent;
+import com.googlecode.rubex.utils.TimerWheel;
 
 /**
  * Simple implementation of {@link Exchange} interface.
+ * <p>
+ * Stop and stop limit orders are held in {@link StopTriggerBook} until trade
+ * price crosses their stop prices.  Trade prices are collected from order 
+ * book trade events while order is being placed, and stops are triggered 
+ * after placement, so stops triggered by trades of triggered stops are 
+ * processed by the same call.  Stop that is already crossed by the last 
+ * trade price when created is triggered immediately.
+ * <p>
+ * Day limit orders are replaced with day limit orders in place via
+ * {@link OrderBookEntryHandler#amend(long, long, long)}, so replace that does
+ * not change limit price nor increase quantity retains queue priority.
+ * <p>
+ * Good till date orders are scheduled in {@link TimerWheel} by their expire
+ * times, and day orders are registered in session order set, so both
+ * {@link #expireOrders(long)} and {@link #endSession(long)} visit only orders
+ * to be expired and cancel their order book entries in one batch.
+ * <p>
+ * When auction interval is set, see {@link #setAuctionInterval(long)}, 
+ * exchange runs periodic batch auctions: orders accumulate in the order book 
+ * during auction call period, and {@link #onTimer(long)} uncrosses the order
+ * book once per interval.
  * 
  * @author Mikhail Vladimirov
  */
 public class SimpleExchange implements Exchange
 {
-    private final OrderBook orderBook = new SimpleOrderBook ();
+    private final static Logger logger = 
+        Logger.getLogger (SimpleExchange.class.getName ());
+    
+    private final OrderBook orderBook;
     private final MarketDataTracker marketDataTracker;
+    private final OrderBookBatch entryBatch = new OrderBookBatch ();
+    private final StopTriggerBook stopTriggerBook = new StopTriggerBook ();
+    
+    private final static long EXPIRY_TICK_DURATION = 100L;
+    private final static int EXPIRY_SLOT_COUNT = 4096;
+    
+    private final TimerWheel <MyLimitOrder> expiryWheel = 
+        new TimerWheel <MyLimitOrder> (EXPIRY_TICK_DURATION, EXPIRY_SLOT_COUNT);
+    private final Set <MyRestingOrder> sessionOrders = 
+        new LinkedHashSet <MyRestingOrder> ();
+    private final List <MyLimitOrder> expiredOrders = 
+        new ArrayList <MyLimitOrder> ();
+    private final List <OrderBookEntryHandler> canceledEntryHandlers = 
+        new ArrayList <OrderBookEntryHandler> ();
+    
+    private long lastTradePrice = 0L;
+    private long highTradePrice = 0L;
+    private long lowTradePrice = 0L;
+    private boolean triggeringStops = false;
+    
+    private long auctionInterval = 0L;
+    private long nextAuctionTime = 0L;
     
     /**
-     * Create new instance of simlpe exchange.
+     * Create new instance of simlpe exchange with new {@link SimpleOrderBook}
+     * and without market data tracker.
      */
     public SimpleExchange ()
     {
-        SimpleOrderBookMarketDataTracker marketDataTracker = new SimpleOrderBookMarketDataTracker ();
-        orderBook.addOrderBookListener (marketDataTracker);
+        this (new SimpleOrderBook (), null);
+    }
+    
+    /**
+     * Create new instance of simple exchange that places orders into given 
+     * order book.  Order book must be empty and must not be used by anything
+     * else but this exchange.  Listeners may be attached to the order book 
+     * before or after exchange is created.
+     * 
+     * @param orderBook order book to place orders into
+     * @param marketDataTracker market data tracker that listens to given 
+     *        order book or <code>null</code> if there is no market data 
+     *        tracker
+     * 
+     * @see SimpleExchangeFactory
+     */
+    public SimpleExchange (
+        OrderBook orderBook, MarketDataTracker marketDataTracker)
+    {
+        if (orderBook == null)
+            throw new IllegalArgumentException ("Order book is null");
+        
+        this.orderBook = orderBook;
         this.marketDataTracker = marketDataTracker;
         
-        orderBook.addOrderBookListener (new OrderBookWindow ());
+        orderBook.addOrderBookListener (new MyOrderBookListener ());
+    }
+    
+    /**
+     * Return order book of this exchange.  Order book is not thread safe, so
+     * it should be accessed only from the thread that places orders into this
+     * exchange.
+     * 
+     * @return order book
+     */
+    public OrderBook getOrderBook ()
+    {
+        return orderBook;
+    }
+    
+    /**
+     * Return market data tracker of this exchange.
+     * 
+     * @return market data tracker or <code>null</code> if there is no market 
+     *         data tracker
+     */
+    public MarketDataTracker getMarketDataTracker ()
+    {
+        return marketDataTracker;
     }
     
     /**
@@ -51,7 +153,14 @@ public class SimpleExchange implements Exchange
             throw new IllegalArgumentException ("Callback is null");
         
         MyMarketOrder order = new MyMarketOrder (side, quantity, callback, closure);
-        order.place (timestamp);
+        try
+        {
+            order.place (timestamp);
+        }
+        finally
+        {
+            triggerStops (timestamp);
+        }
         
         return order;
     }
@@ -63,6 +172,20 @@ public class SimpleExchange implements Exchange
     public LimitOrder createLimitOrder (long timestamp, OrderSide side,
         long quantity, long limitPrice, OrderTimeInForce timeInForce,
         OrderCallback callback, Object closure) throws OrderException
+    {
+        return createLimitOrder (
+            timestamp, side, quantity, limitPrice, timeInForce, 0L, 
+            callback, closure);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LimitOrder createLimitOrder (long timestamp, OrderSide side,
+        long quantity, long limitPrice, OrderTimeInForce timeInForce,
+        long expireTime, OrderCallback callback, Object closure) 
+        throws OrderException
     {
         if (side == null)
             throw new IllegalArgumentException ("Side is null");
@@ -76,53 +199,989 @@ public class SimpleExchange implements Exchange
         if (limitPrice <= 0)
             throw new IllegalArgumentException ("Limit price is null");
         
-        MyLimitOrder order = new MyLimitOrder (side, quantity, limitPrice, timeInForce, callback, closure);
+        if (timeInForce == null)
+            throw new IllegalArgumentException ("Time in force is null");
+        
+        if (expireTime < 0)
+            throw new IllegalArgumentException ("Expire time < 0");
+        
+        checkExpireTime (timestamp, timeInForce, expireTime);
+        
+        MyLimitOrder order = new MyLimitOrder (side, quantity, limitPrice, timeInForce, expireTime, callback, closure);
+        try
+        {
+            order.place (timestamp);
+        }
+        finally
+        {
+            triggerStops (timestamp);
+        }
+        
+        return order;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Consecutive day, good till cancel and good till date orders are placed
+     * into the order book as one {@link OrderBookBatch}, so quote events are
+     * coalesced per run of such orders.  Immediate or cancel and fill or kill
+     * orders never rest in the order book and are placed one by one after 
+     * preceding run is placed.
+     */
+    @Override
+    public void createLimitOrders (long timestamp, LimitOrderBatch batch)
+    {
+        if (batch == null)
+            throw new IllegalArgumentException ("Batch is null");
+        
+        try
+        {
+            createLimitOrders (timestamp, batch, new int [batch.size ()]);
+        }
+        finally
+        {
+            triggerStops (timestamp);
+        }
+    }
+    
+    private void createLimitOrders (
+        long timestamp, LimitOrderBatch batch, int [] batchIndices)
+    {
+        int size = batch.size ();
+        
+        for (int i = 0; i < size; i++)
+        {
+            try
+            {
+                checkExpireTime (
+                    timestamp, batch.getTimeInForce (i), 
+                    batch.getExpireTime (i));
+            }
+            catch (OrderException ex)
+            {
+                batch.setResult (i, null, ex);
+                continue;
+            }
+            
+            MyLimitOrder order = new MyLimitOrder (
+                batch.getSide (i), batch.getQuantity (i), 
+                batch.getLimitPrice (i), batch.getTimeInForce (i), 
+                batch.getExpireTime (i), 
+                batch.getCallback (i), batch.getClosure (i));
+            
+            if (isResting (order.getTimeInForce ()))
+            {
+                batchIndices [entryBatch.add (
+                    timestamp, convertSide (order.getSide ()), 
+                    order.getOrderedQuantity (), order.getLimitPrice (), 
+                    order, order)] = i;
+                
+                batch.setResult (i, order, null);
+            }
+            else
+            {
+                placeEntryBatch (batch, batchIndices);
+                
+                try
+                {
+                    order.place (timestamp);
+                    batch.setResult (i, order, null);
+                }
+                catch (OrderException ex)
+                {
+                    batch.setResult (i, null, ex);
+                }
+            }
+        }
+        
+        placeEntryBatch (batch, batchIndices);
+    }
+    
+    private void placeEntryBatch (LimitOrderBatch batch, int [] batchIndices)
+    {
+        int size = entryBatch.size ();
+        
+        if (size == 0) return;
+        
+        try
+        {
+            orderBook.placeEntries (entryBatch);
+            
+            for (int i = 0; i < size; i++)
+            {
+                OrderBookException exception = entryBatch.getException (i);
+                
+                if (exception == null)
+                {
+                    MyLimitOrder order = 
+                        (MyLimitOrder)entryBatch.getCallback (i);
+                    
+                    order.entryHandler = entryBatch.getEntryHandler (i);
+                    order.rest ();
+                }
+                else
+                    batch.setResult (
+                        batchIndices [i], null, 
+                        new OrderException (
+                            "Cannot place order book entry", exception));
+            }
+        }
+        finally
+        {
+            entryBatch.clear ();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StopOrder createStopOrder (long timestamp, OrderSide side,
+        long quantity, long stopPrice, OrderCallback callback, Object closure)
+        throws OrderException
+    {
+        if (side == null)
+            throw new IllegalArgumentException ("Side is null");
+        
+        if (quantity <= 0)
+            throw new IllegalArgumentException ("Quantity <= 0");
+        
+        if (callback == null)
+            throw new IllegalArgumentException ("Callback is null");
+
+        if (stopPrice <= 0)
+            throw new IllegalArgumentException ("Stop price <= 0");
+        
+        MyStopOrder order = new MyStopOrder (side, quantity, stopPrice, callback, closure);
+        order.place (timestamp);
+        triggerStops (timestamp);
+        
+        return order;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StopLimitOrder createStopLimitOrder (long timestamp, OrderSide side,
+        long quantity, long stopPrice, long limitPrice, OrderCallback callback,
+        Object closure) throws OrderException
+    {
+        if (side == null)
+            throw new IllegalArgumentException ("Side is null");
+        
+        if (quantity <= 0)
+            throw new IllegalArgumentException ("Quantity <= 0");
+        
+        if (callback == null)
+            throw new IllegalArgumentException ("Callback is null");
+
+        if (stopPrice <= 0)
+            throw new IllegalArgumentException ("Stop price <= 0");
+        
+        if (limitPrice <= 0)
+            throw new IllegalArgumentException ("Limit price <= 0");
+        
+        MyStopLimitOrder order = new MyStopLimitOrder (side, quantity, stopPrice, limitPrice, callback, closure);
         order.place (timestamp);
+        triggerStops (timestamp);
+        
+        return order;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IcebergOrder createIcebergOrder (long timestamp, OrderSide side,
+        long quantity, long limitPrice, long visibleQuantity,
+        OrderCallback callback, Object closure) throws OrderException
+    {
+        if (side == null)
+            throw new IllegalArgumentException ("Side is null");
+        
+        if (quantity <= 0)
+            throw new IllegalArgumentException ("Quantity <= 0");
+        
+        if (callback == null)
+            throw new IllegalArgumentException ("Callback is null");
+
+        if (limitPrice <= 0)
+            throw new IllegalArgumentException ("Limit price <= 0");
+        
+        if (visibleQuantity <= 0)
+            throw new IllegalArgumentException ("Visible quantity <= 0");
+        
+        MyIcebergOrder order = new MyIcebergOrder (side, quantity, limitPrice, visibleQuantity, callback, closure);
+        try
+        {
+            order.place (timestamp);
+        }
+        finally
+        {
+            triggerStops (timestamp);
+        }
+        
+        return order;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int cancelOrders (long timestamp, Collection <? extends Order> orders)
+    {
+        if (orders == null)
+            throw new IllegalArgumentException ("Orders is null");
+        
+        try
+        {
+            int result = 0;
+            
+            for (Order order: orders)
+            {
+                if (order instanceof MyRestingOrder)
+                    result += ((MyRestingOrder)order).cancel (
+                        timestamp, canceledEntryHandlers);
+                else if (!(order instanceof MyMarketOrder))
+                    throw new IllegalArgumentException (
+                        "This order is not mine");
+                
+                // Market orders are done as soon as placed
+            }
+            
+            return result + 
+                orderBook.cancelEntries (timestamp, canceledEntryHandlers);
+        }
+        finally
+        {
+            canceledEntryHandlers.clear ();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int expireOrders (long timestamp)
+    {
+        if (expiryWheel.size () == 0) return 0;
+        
+        try
+        {
+            expiryWheel.expire (timestamp, expiredOrders);
+            
+            for (MyLimitOrder order: expiredOrders)
+                order.cancel (timestamp, canceledEntryHandlers);
+            
+            return orderBook.cancelEntries (timestamp, canceledEntryHandlers);
+        }
+        finally
+        {
+            expiredOrders.clear ();
+            canceledEntryHandlers.clear ();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int endSession (long timestamp)
+    {
+        // Canceling untriggered stops removes them from session orders
+        List <MyRestingOrder> orders = 
+            new ArrayList <MyRestingOrder> (sessionOrders);
+        
+        try
+        {
+            int result = 0;
+            
+            for (MyRestingOrder order: orders)
+                result += order.cancel (timestamp, canceledEntryHandlers);
+            
+            return result + 
+                orderBook.cancelEntries (timestamp, canceledEntryHandlers);
+        }
+        finally
+        {
+            canceledEntryHandlers.clear ();
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beginAuction ()
+    {
+        orderBook.beginAuction ();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAuction ()
+    {
+        return orderBook.isAuction ();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long uncross (long timestamp)
+    {
+        try
+        {
+            return orderBook.uncross (timestamp);
+        }
+        finally
+        {
+            triggerStops (timestamp);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long endAuction (long timestamp)
+    {
+        nextAuctionTime = 0L;
+        
+        try
+        {
+            return orderBook.endAuction (timestamp);
+        }
+        finally
+        {
+            triggerStops (timestamp);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onTimer (long timestamp)
+    {
+        expireOrders (timestamp);
+        
+        if (auctionInterval > 0L && orderBook.isAuction ())
+        {
+            if (nextAuctionTime == 0L)
+                nextAuctionTime = timestamp + auctionInterval;
+            else if (timestamp >= nextAuctionTime)
+            {
+                nextAuctionTime = timestamp + auctionInterval;
+                uncross (timestamp);
+            }
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beginBatch ()
+    {
+        orderBook.beginBatch ();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void endBatch ()
+    {
+        orderBook.endBatch ();
+    }
+    
+    /**
+     * Return interval between periodic auction uncrosses.
+     * 
+     * @return auction interval in milliseconds or zero if periodic auctions
+     *         are disabled
+     */
+    public long getAuctionInterval ()
+    {
+        return auctionInterval;
+    }
+    
+    /**
+     * Set interval between periodic auction uncrosses.  Positive interval 
+     * starts auction call period, and order book is then uncrossed by
+     * {@link #onTimer(long)} once per interval until auction is ended by 
+     * {@link #endAuction(long)}.  Zero interval disables periodic uncrosses, 
+     * but does not end auction already started.
+     * 
+     * @param auctionInterval auction interval in milliseconds or zero to 
+     *        disable periodic auctions
+     */
+    public void setAuctionInterval (long auctionInterval)
+    {
+        if (auctionInterval < 0L)
+            throw new IllegalArgumentException ("Auction interval < 0");
+        
+        this.auctionInterval = auctionInterval;
+        nextAuctionTime = 0L;
+        
+        if (auctionInterval > 0L)
+            orderBook.beginAuction ();
+    }
+    
+    private static void checkExpireTime (
+        long timestamp, OrderTimeInForce timeInForce, long expireTime)
+        throws OrderException
+    {
+        if (OrderTimeInForce.GTD.equals (timeInForce))
+        {
+            if (expireTime == 0L)
+                throw new OrderException ("Expire time is not set");
+            
+            if (expireTime <= timestamp)
+                throw new OrderException ("Expire time is in the past");
+        }
+        else if (expireTime != 0L)
+            throw new OrderException (
+                "Expire time is set for time in force: " + timeInForce);
+    }
+    
+    private static boolean isResting (OrderTimeInForce timeInForce)
+    {
+        switch (timeInForce)
+        {
+        case DAY:
+        case GTC:
+        case GTD:
+            return true;
+        case IOC:
+        case FOK:
+            return false;
+        default:
+            throw new Error ("Unknown time in force: " + timeInForce);
+        }
+    }
+    
+    private StopTriggerBook.Entry addStop (
+        OrderSide side, long stopPrice, StopTriggerCallback callback)
+    {
+        StopTriggerBook.Entry entry = 
+            stopTriggerBook.add (side, stopPrice, callback);
+        
+        // All stops crossed by the last trade price were already triggered,
+        // so treating it as new trade triggers only the new stop if crossed
+        if (lastTradePrice > 0L)
+            onTradePrice (lastTradePrice);
+        
+        return entry;
+    }
+    
+    private void onTradePrice (long price)
+    {
+        if (highTradePrice == 0L || price > highTradePrice)
+            highTradePrice = price;
+        
+        if (lowTradePrice == 0L || price < lowTradePrice)
+            lowTradePrice = price;
+    }
+    
+    private void triggerStops (long timestamp)
+    {
+        // Orders placed by callbacks of triggered stops leave their trade
+        // prices to the outermost call
+        if (triggeringStops) return;
+        
+        triggeringStops = true;
+        try
+        {
+            while (highTradePrice > 0L)
+            {
+                long highPrice = highTradePrice;
+                long lowPrice = lowTradePrice;
+                
+                highTradePrice = 0L;
+                lowTradePrice = 0L;
+                
+                if (!stopTriggerBook.isEmpty ())
+                {
+                    stopTriggerBook.triggerBuyStops (timestamp, highPrice);
+                    stopTriggerBook.triggerSellStops (timestamp, lowPrice);
+                }
+            }
+        }
+        finally
+        {
+            triggeringStops = false;
+        }
+    }
+    
+    private class MyOrderBookListener implements OrderBookListener
+    {
+        @Override
+        public void onTrade (OrderBookTradeEvent event)
+        {
+            long price = event.getPrice ();
+            
+            lastTradePrice = price;
+            onTradePrice (price);
+        }
+
+        @Override
+        public void onQuote (OrderBookQuoteEvent event)
+        {
+            // Do nothing
+        }
+    }
+    
+    /**
+     * Order that may rest in the order book or in the trigger book.
+     */
+    private interface MyRestingOrder
+    {
+        /**
+         * Cancel the order as part of batch.  Order book entry of the order,
+         * if any, is not canceled, but added to given list to be canceled in
+         * batch.  Does nothing if order is done.
+         * 
+         * @param timestamp time of the cancel in milliseconds since epoch
+         * @param entryHandlers list to add order book entry handler to
+         * @return number of orders canceled without canceling order book 
+         *         entry
+         */
+        public int cancel (
+            long timestamp, List <OrderBookEntryHandler> entryHandlers);
+    }
+    
+    private class MyMarketOrder extends AbstractMarketOrder implements OrderBookEntryCallback
+    {
+        private OrderBookEntryHandler entryHandler = null;
+        private boolean done = false;
+        
+        public MyMarketOrder (OrderSide side, long orderedQuantity, OrderCallback callback, Object closure)
+        {
+            super (side, orderedQuantity, callback, closure);
+        }
+
+        @Override
+        public void onFill (long timestamp, OrderBookEntryHandler handler,
+            long quantity, long price)
+        {
+            fill (quantity, price);
+            fireOnFill (timestamp, quantity, price);
+        }
+
+        @Override
+        public void onFilled (long timestamp, OrderBookEntryHandler handler)
+        {
+            done = true;
+            fireOnFilled (timestamp);
+        }
+
+        @Override
+        public void onCanceled (long timestamp, OrderBookEntryHandler handler)
+        {
+            done = true;
+            fireOnCanceled (timestamp);
+        }
+        
+        @Override
+        public void cancel (long timestamp) throws OrderException
+        {
+            if (!done)
+            {
+                try
+                {
+                    entryHandler.cancel (timestamp);
+                }
+                catch (OrderBookException ex)
+                {
+                    throw new OrderException ("Cannot cancel order book entry", ex);
+                }
+            }
+        }
+        
+        public void place (long timestamp) throws OrderException
+        {
+            try
+            {
+                entryHandler = orderBook.placeEntry (timestamp, convertSide (getSide ()), getOrderedQuantity (), 0, this, this);
+            }
+            catch (OrderBookException ex)
+            {
+                throw new OrderException ("Cannot place order book entry", ex);
+            }
+        }
+    }
+    
+    private class MyLimitOrder extends AbstractLimitOrder implements OrderBookEntryCallback, MyRestingOrder
+    {
+        private OrderBookEntryHandler entryHandler = null;
+        private boolean done = false;
+        private TimerWheel <MyLimitOrder>.Timeout expiryTimeout = null;
+        
+        // Order that placed the order book entry and receives its callbacks,
+        // and the latest order that replaced it in place
+        private MyLimitOrder origin = this;
+        private MyLimitOrder current = this;
+        
+        // Callbacks the amended entry delivered to this order before replace
+        // was reported, as quantity and price pairs of fills
+        private boolean deferring = false;
+        private long [] deferredFills = null;
+        private int deferredFillCount = 0;
+        private boolean deferredFilled = false;
+        private boolean deferredCanceled = false;
+
+        public MyLimitOrder (OrderSide side, long orderedQuantity, long limitPrice, OrderTimeInForce timeInForce,
+                long expireTime, OrderCallback callback, Object closure)
+        {
+            super (side, orderedQuantity, limitPrice, timeInForce, expireTime, callback, closure);
+        }
+
+        @Override
+        public MarketOrder replaceWithMarketOrder (long timestamp,
+            long newQuantity, OrderCallback callback, Object closure)
+            throws OrderException
+        {
+            throw new OrderException ("Order replace is not supported yet");
+        }
+
+        @Override
+        public LimitOrder replaceWithLimitOrder (long timestamp,
+            long newQuantity, long newLimitPrice,
+            OrderTimeInForce newTimeInForce, OrderCallback callback,
+            Object closure) throws OrderException
+        {
+            if (done)
+                throw new OrderException ("Order is done");
+            
+            if (!OrderTimeInForce.DAY.equals (newTimeInForce) &&
+                !OrderTimeInForce.GTC.equals (newTimeInForce))
+                throw new OrderException (
+                    "Unsupported time in force: " + newTimeInForce);
+            
+            MyLimitOrder newOrder = new MyLimitOrder (
+                getSide (), newQuantity, newLimitPrice, newTimeInForce, 0L,
+                callback, closure);
+            newOrder.entryHandler = entryHandler;
+            newOrder.origin = origin;
+            
+            // Fills of amended entry belong to the new order, but are
+            // reported only after the replace, as amended entry may cross
+            origin.current = newOrder;
+            newOrder.deferring = true;
+            
+            try
+            {
+                try
+                {
+                    entryHandler.amend (timestamp, newQuantity, newLimitPrice);
+                }
+                catch (OrderBookException ex)
+                {
+                    // Entry was not changed, so this order still owns it
+                    origin.current = this;
+                    newOrder.deferring = false;
+                    
+                    throw new OrderException (
+                        "Cannot amend order book entry", ex);
+                }
+                
+                finish ();
+                fireOnReplaced (timestamp, newOrder);
+                
+                newOrder.rest ();
+                newOrder.deliverDeferred (timestamp);
+            }
+            finally
+            {
+                triggerStops (timestamp);
+            }
+            
+            return newOrder;
+        }
+
+        @Override
+        public IcebergOrder replaceWithIcebergOrder (long timestamp,
+            long newQuantity, long newLimitPrice, long newVisibleQuantity,
+            OrderCallback callback, Object closure) throws OrderException
+        {
+            throw new OrderException ("Order replace is not supported yet");
+        }
+
+        @Override
+        public void onFill (long timestamp, OrderBookEntryHandler handler,
+            long quantity, long price)
+        {
+            // Incoming entry is filled before order book returns its handler,
+            // and fill callback may already replace or cancel the order
+            if (entryHandler == null)
+                entryHandler = handler;
+            
+            if (current != this)
+            {
+                current.onFill (timestamp, handler, quantity, price);
+                return;
+            }
+            
+            if (deferring)
+            {
+                deferFill (quantity, price);
+                return;
+            }
+            
+            fill (quantity, price);
+            fireOnFill (timestamp, quantity, price);
+        }
+        
+        private void deferFill (long quantity, long price)
+        {
+            if (deferredFills == null)
+                deferredFills = new long [4];
+            else if (deferredFillCount * 2 == deferredFills.length)
+                deferredFills = Arrays.copyOf (
+                    deferredFills, deferredFills.length * 2);
+            
+            deferredFills [deferredFillCount * 2] = quantity;
+            deferredFills [deferredFillCount * 2 + 1] = price;
+            deferredFillCount += 1;
+        }
+        
+        /**
+         * Report callbacks deferred while the entry was amended on behalf 
+         * of this order.
+         */
+        private void deliverDeferred (long timestamp)
+        {
+            deferring = false;
+            
+            for (int i = 0; i < deferredFillCount; i++)
+            {
+                long quantity = deferredFills [i * 2];
+                long price = deferredFills [i * 2 + 1];
+                
+                fill (quantity, price);
+                fireOnFill (timestamp, quantity, price);
+            }
+            
+            deferredFillCount = 0;
+            deferredFills = null;
+            
+            if (deferredFilled)
+            {
+                finish ();
+                fireOnFilled (timestamp);
+            }
+            else if (deferredCanceled)
+            {
+                finish ();
+                fireOnCanceled (timestamp);
+            }
+        }
+
+        @Override
+        public void onFilled (long timestamp, OrderBookEntryHandler handler)
+        {
+            if (current != this)
+            {
+                current.onFilled (timestamp, handler);
+                return;
+            }
+            
+            if (deferring)
+            {
+                deferredFilled = true;
+                return;
+            }
+            
+            finish ();
+            fireOnFilled (timestamp);
+        }
+
+        @Override
+        public void onCanceled (long timestamp, OrderBookEntryHandler handler)
+        {
+            if (current != this)
+            {
+                current.onCanceled (timestamp, handler);
+                return;
+            }
+            
+            if (deferring)
+            {
+                deferredCanceled = true;
+                return;
+            }
+            
+            finish ();
+            fireOnCanceled (timestamp);
+        }
+        
+        @Override
+        public void cancel (long timestamp) throws OrderException
+        {
+            if (!done)
+            {
+                try
+                {
+                    entryHandler.cancel (timestamp);
+                }
+                catch (OrderBookException ex)
+                {
+                    throw new OrderException ("Cannot cancel order book entry", ex);
+                }
+            }
+        }
+        
+        @Override
+        public int cancel (long timestamp, List <OrderBookEntryHandler> entryHandlers)
+        {
+            if (!done)
+                entryHandlers.add (entryHandler);
+            
+            return 0;
+        }
+        
+        /**
+         * Register order resting in the order book for expiry according to
+         * its time in force.
+         */
+        public void rest ()
+        {
+            if (done) return;
+            
+            OrderTimeInForce timeInForce = getTimeInForce (); 
+            
+            switch (timeInForce)
+            {
+            case DAY:
+                sessionOrders.add (this);
+                break;
+            case GTD:
+                expiryTimeout = expiryWheel.schedule (getExpireTime (), this);
+                break;
+            case GTC:
+                // Good till cancel order rests until canceled
+                break;
+            default:
+                throw new Error ("Order is not resting: " + timeInForce);
+            }
+        }
+        
+        private void finish ()
+        {
+            done = true;
+            
+            if (expiryTimeout != null)
+                expiryTimeout.cancel ();
+            else sessionOrders.remove (this);
+        }
+        
+        public void place (long timestamp) throws OrderException
+        {
+            OrderTimeInForce timeInForce = getTimeInForce (); 
+            
+            switch (timeInForce)
+            {
+            case DAY:
+            case GTC:
+            case GTD:
+                placeResting (timestamp);
+                break;
+            case FOK:
+                placeFillOrKill (timestamp);
+                break;
+            case IOC:
+                placeImmediateOrCancel (timestamp);
+                break;
+            default:
+                throw new OrderException ("Unsupported time in force: " + timeInForce);
+            }
+        }
+        
+        private void placeResting (long timestamp) throws OrderException
+        {
+            try
+            {
+                entryHandler = orderBook.placeEntry (timestamp, convertSide (getSide ()), getOrderedQuantity (), getLimitPrice (), this, this);
+            }
+            catch (OrderBookException ex)
+            {
+                throw new OrderException ("Cannot place order book entry", ex);
+            }
+            
+            rest ();
+        }
+        
+        private void placeFillOrKill (long timestamp) throws OrderException
+        {
+            try
+            {
+                entryHandler = orderBook.placeFillOrKillEntry (timestamp, convertSide (getSide ()), getOrderedQuantity (), getLimitPrice (), this, this);
+            }
+            catch (OrderBookException ex)
+            {
+                throw new OrderException ("Cannot place order book entry", ex);
+            }
+            
+            if (!done)
+                throw new Error ("Order expected to be done");
+        }
         
-        return order;
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public StopOrder createStopOrder (long timestamp, OrderSide side,
-        long quantity, long stopPrice, OrderCallback callback, Object closure)
-        throws OrderException
-    {
-        throw new OrderException ("Stop orders are not supported yet");
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public StopLimitOrder createStopLimitOrder (long timestamp, OrderSide side,
-        long quantity, long stopPrice, long limitPrice, OrderCallback callback,
-        Object closure) throws OrderException
-    {
-        throw new OrderException ("Stop limit order are not supported yet");
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public IcebergOrder createIcebergOrder (long timestamp, OrderSide side,
-        long quantity, long limitPrice, long visibleQuantity,
-        OrderCallback callback, Object closure) throws OrderException
-    {
-        throw new OrderException ("Iceberg orders are not supported yet");
+        private void placeImmediateOrCancel (long timestamp) throws OrderException
+        {
+            try
+            {
+                entryHandler = orderBook.placeEntry (timestamp, convertSide (getSide ()), getOrderedQuantity (), getLimitPrice (), this, this);
+            }
+            catch (OrderBookException ex)
+            {
+                throw new OrderException ("Cannot place order book entry", ex);
+            }
+            
+            if (!done)
+                cancel (timestamp);
+        }
     }
     
-    private class MyMarketOrder extends AbstractMarketOrder implements OrderBookEntryCallback
+    private class MyIcebergOrder extends AbstractIcebergOrder implements OrderBookEntryCallback, MyRestingOrder
     {
         private OrderBookEntryHandler entryHandler = null;
         private boolean done = false;
-        
-        public MyMarketOrder (OrderSide side, long orderedQuantity, OrderCallback callback, Object closure)
+
+        public MyIcebergOrder (OrderSide side, long orderedQuantity, long limitPrice, long visibleQuantity,
+                OrderCallback callback, Object closure)
         {
-            super (side, orderedQuantity, callback, closure);
+            super (side, orderedQuantity, limitPrice, visibleQuantity, callback, closure);
+        }
+
+        @Override
+        public MarketOrder replaceWithMarketOrder (long timestamp,
+            long newQuantity, OrderCallback callback, Object closure)
+            throws OrderException
+        {
+            throw new OrderException ("Order replace is not supported yet");
+        }
+
+        @Override
+        public LimitOrder replaceWithLimitOrder (long timestamp,
+            long newQuantity, long newLimitPrice,
+            OrderTimeInForce newTimeInForce, OrderCallback callback,
+            Object closure) throws OrderException
+        {
+            throw new OrderException ("Order replace is not supported yet");
+        }
+
+        @Override
+        public IcebergOrder replaceWithIcebergOrder (long timestamp,
+            long newQuantity, long newLimitPrice, long newVisibleQuantity,
+            OrderCallback callback, Object closure) throws OrderException
+        {
+            throw new OrderException ("Order replace is not supported yet");
         }
 
         @Override
@@ -136,14 +1195,14 @@ public class SimpleExchange implements Exchange
         @Override
         public void onFilled (long timestamp, OrderBookEntryHandler handler)
         {
-            done = true;
+            finish ();
             fireOnFilled (timestamp);
         }
 
         @Override
         public void onCanceled (long timestamp, OrderBookEntryHandler handler)
         {
-            done = true;
+            finish ();
             fireOnCanceled (timestamp);
         }
         
@@ -163,28 +1222,46 @@ public class SimpleExchange implements Exchange
             }
         }
         
+        @Override
+        public int cancel (long timestamp, List <OrderBookEntryHandler> entryHandlers)
+        {
+            if (!done)
+                entryHandlers.add (entryHandler);
+            
+            return 0;
+        }
+        
+        private void finish ()
+        {
+            done = true;
+            sessionOrders.remove (this);
+        }
+        
         public void place (long timestamp) throws OrderException
         {
             try
             {
-                entryHandler = orderBook.placeEntry (timestamp, convertSide (getSide ()), getOrderedQuantity (), 0, this, this);
+                entryHandler = orderBook.placeIcebergEntry (timestamp, convertSide (getSide ()), getOrderedQuantity (), getLimitPrice (), getVisibleQuantity (), this, this);
             }
             catch (OrderBookException ex)
             {
                 throw new OrderException ("Cannot place order book entry", ex);
             }
+            
+            if (!done)
+                sessionOrders.add (this);
         }
     }
     
-    private class MyLimitOrder extends AbstractLimitOrder implements OrderBookEntryCallback
+    private class MyStopOrder extends AbstractStopOrder implements StopTriggerCallback, OrderBookEntryCallback, MyRestingOrder
     {
+        private StopTriggerBook.Entry triggerEntry = null;
         private OrderBookEntryHandler entryHandler = null;
         private boolean done = false;
-
-        public MyLimitOrder (OrderSide side, long orderedQuantity, long limitPrice, OrderTimeInForce timeInForce,
-                OrderCallback callback, Object closure)
+        
+        public MyStopOrder (OrderSide side, long orderedQuantity, long stopPrice, OrderCallback callback, Object closure)
         {
-            super (side, orderedQuantity, limitPrice, timeInForce, callback, closure);
+            super (side, orderedQuantity, stopPrice, callback, closure);
         }
 
         @Override
@@ -204,6 +1281,22 @@ public class SimpleExchange implements Exchange
             throw new OrderException ("Order replace is not supported yet");
         }
 
+        @Override
+        public StopOrder replaceWithStopOrder (long timestamp,
+            long newQuantity, long newStopPrice, OrderCallback callback,
+            Object closure) throws OrderException
+        {
+            throw new OrderException ("Order replace is not supported yet");
+        }
+
+        @Override
+        public StopLimitOrder replaceWithStopLimitOrder (long timestamp,
+            long newQuantity, long newStopPrice, long newLimitPrice,
+            OrderCallback callback, Object closure) throws OrderException
+        {
+            throw new OrderException ("Order replace is not supported yet");
+        }
+
         @Override
         public IcebergOrder replaceWithIcebergOrder (long timestamp,
             long newQuantity, long newLimitPrice, long newVisibleQuantity,
@@ -212,6 +1305,23 @@ public class SimpleExchange implements Exchange
             throw new OrderException ("Order replace is not supported yet");
         }
 
+        @Override
+        public void onTriggered (long timestamp, StopTriggerBook.Entry entry)
+        {
+            try
+            {
+                entryHandler = orderBook.placeEntry (timestamp, convertSide (getSide ()), getOrderedQuantity (), 0, this, this);
+            }
+            catch (OrderBookException ex)
+            {
+                if (logger.isLoggable (Level.WARNING))
+                    logger.log (Level.WARNING, "Cannot place triggered stop order", ex);
+                
+                finish ();
+                fireOnCanceled (timestamp);
+            }
+        }
+
         @Override
         public void onFill (long timestamp, OrderBookEntryHandler handler,
             long quantity, long price)
@@ -223,14 +1333,14 @@ public class SimpleExchange implements Exchange
         @Override
         public void onFilled (long timestamp, OrderBookEntryHandler handler)
         {
-            done = true;
+            finish ();
             fireOnFilled (timestamp);
         }
 
         @Override
         public void onCanceled (long timestamp, OrderBookEntryHandler handler)
         {
-            done = true;
+            finish ();
             fireOnCanceled (timestamp);
         }
         
@@ -239,38 +1349,109 @@ public class SimpleExchange implements Exchange
         {
             if (!done)
             {
-                try
+                if (triggerEntry.cancel ())
                 {
-                    entryHandler.cancel (timestamp);
+                    finish ();
+                    fireOnCanceled (timestamp);
                 }
-                catch (OrderBookException ex)
+                else
                 {
-                    throw new OrderException ("Cannot cancel order book entry", ex);
+                    try
+                    {
+                        entryHandler.cancel (timestamp);
+                    }
+                    catch (OrderBookException ex)
+                    {
+                        throw new OrderException ("Cannot cancel order book entry", ex);
+                    }
                 }
             }
         }
         
-        public void place (long timestamp) throws OrderException
+        @Override
+        public int cancel (long timestamp, List <OrderBookEntryHandler> entryHandlers)
         {
-            OrderTimeInForce timeInForce = getTimeInForce (); 
+            if (done) return 0;
             
-            switch (timeInForce)
+            if (triggerEntry.cancel ())
             {
-            case DAY:
-                placeDay (timestamp);
-                break;
-            case FOK:
-                placeFillOrKill (timestamp);
-                break;
-            case IOC:
-                placeImmediateOrCancel (timestamp);
-                break;
-            default:
-                throw new OrderException ("Unsupported time in force: " + timeInForce);
+                finish ();
+                fireOnCanceled (timestamp);
+                return 1;
             }
+            
+            entryHandlers.add (entryHandler);
+            return 0;
+        }
+        
+        private void finish ()
+        {
+            done = true;
+            sessionOrders.remove (this);
         }
         
-        private void placeDay (long timestamp) throws OrderException
+        public void place (long timestamp)
+        {
+            triggerEntry = addStop (getSide (), getStopPrice (), this);
+            sessionOrders.add (this);
+        }
+    }
+    
+    private class MyStopLimitOrder extends AbstractStopLimitOrder implements StopTriggerCallback, OrderBookEntryCallback, MyRestingOrder
+    {
+        private StopTriggerBook.Entry triggerEntry = null;
+        private OrderBookEntryHandler entryHandler = null;
+        private boolean done = false;
+        
+        public MyStopLimitOrder (OrderSide side, long orderedQuantity, long stopPrice, long limitPrice,
+                OrderCallback callback, Object closure)
+        {
+            super (side, orderedQuantity, stopPrice, limitPrice, callback, closure);
+        }
+
+        @Override
+        public MarketOrder replaceWithMarketOrder (long timestamp,
+            long newQuantity, OrderCallback callback, Object closure)
+            throws OrderException
+        {
+            throw new OrderException ("Order replace is not supported yet");
+        }
+
+        @Override
+        public LimitOrder replaceWithLimitOrder (long timestamp,
+            long newQuantity, long newLimitPrice,
+            OrderTimeInForce newTimeInForce, OrderCallback callback,
+            Object closure) throws OrderException
+        {
+            throw new OrderException ("Order replace is not supported yet");
+        }
+
+        @Override
+        public StopOrder replaceWithStopOrder (long timestamp,
+            long newQuantity, long newStopPrice, OrderCallback callback,
+            Object closure) throws OrderException
+        {
+            throw new OrderException ("Order replace is not supported yet");
+        }
+
+        @Override
+        public StopLimitOrder replaceWithStopLimitOrder (long timestamp,
+            long newQuantity, long newStopPrice, long newLimitPrice,
+            OrderCallback callback, Object closure) throws OrderException
+        {
+            throw new OrderException ("Order replace is not supported yet");
+        }
+
+        @Override
+        public IcebergOrder replaceWithIcebergOrder (long timestamp,
+            long newQuantity, long newLimitPrice, long newVisibleQuantity,
+            OrderCallback callback, Object closure) throws OrderException
+        {
+            throw new OrderException ("Order replace is not supported yet");
+        }
+
+        @Override
+        public void onTriggered (long timestamp, StopTriggerBook.Entry entry)
         {
             try
             {
@@ -278,59 +1459,86 @@ public class SimpleExchange implements Exchange
             }
             catch (OrderBookException ex)
             {
-                throw new OrderException ("Cannot place order book entry", ex);
+                if (logger.isLoggable (Level.WARNING))
+                    logger.log (Level.WARNING, "Cannot place triggered stop limit order", ex);
+                
+                finish ();
+                fireOnCanceled (timestamp);
             }
         }
+
+        @Override
+        public void onFill (long timestamp, OrderBookEntryHandler handler,
+            long quantity, long price)
+        {
+            fill (quantity, price);
+            fireOnFill (timestamp, quantity, price);
+        }
+
+        @Override
+        public void onFilled (long timestamp, OrderBookEntryHandler handler)
+        {
+            finish ();
+            fireOnFilled (timestamp);
+        }
+
+        @Override
+        public void onCanceled (long timestamp, OrderBookEntryHandler handler)
+        {
+            finish ();
+            fireOnCanceled (timestamp);
+        }
         
-        private void placeFillOrKill (long timestamp) throws OrderException
+        @Override
+        public void cancel (long timestamp) throws OrderException
         {
-            OrderSide side = getSide ();
-            long orderedQuantity = getOrderedQuantity ();
-            long limitPrice = getLimitPrice ();
-            
-            boolean doPlace;
-            switch (side)
-            {
-            case BUY:
-                doPlace = orderedQuantity <= marketDataTracker.getAskQuantityBelow (limitPrice);
-                break;
-            case SELL:
-                doPlace = orderedQuantity <= marketDataTracker.getBidQuantityAbove (limitPrice);
-                break;
-            default:
-                throw new Error ("Unknown order side: " + side);
-            }
-            
-            if (doPlace)
+            if (!done)
             {
-                try
+                if (triggerEntry.cancel ())
                 {
-                    entryHandler = orderBook.placeEntry (timestamp, convertSide (side), orderedQuantity, limitPrice, this, this);
+                    finish ();
+                    fireOnCanceled (timestamp);
                 }
-                catch (OrderBookException ex)
+                else
                 {
-                    throw new OrderException ("Cannot place order book entry", ex);
+                    try
+                    {
+                        entryHandler.cancel (timestamp);
+                    }
+                    catch (OrderBookException ex)
+                    {
+                        throw new OrderException ("Cannot cancel order book entry", ex);
+                    }
                 }
-                
-                if (!done)
-                    throw new Error ("Order expected to be done");
             }
-            else cancel (timestamp);
         }
         
-        private void placeImmediateOrCancel (long timestamp) throws OrderException
+        @Override
+        public int cancel (long timestamp, List <OrderBookEntryHandler> entryHandlers)
         {
-            try
-            {
-                entryHandler = orderBook.placeEntry (timestamp, convertSide (getSide ()), getOrderedQuantity (), getLimitPrice (), this, this);
-            }
-            catch (OrderBookException ex)
+            if (done) return 0;
+            
+            if (triggerEntry.cancel ())
             {
-                throw new OrderException ("Cannot place order book entry", ex);
+                finish ();
+                fireOnCanceled (timestamp);
+                return 1;
             }
             
-            if (!done)
-                cancel (timestamp);
+            entryHandlers.add (entryHandler);
+            return 0;
+        }
+        
+        private void finish ()
+        {
+            done = true;
+            sessionOrders.remove (this);
+        }
+        
+        public void place (long timestamp)
+        {
+            triggerEntry = addStop (getSide (), getStopPrice (), this);
+            sessionOrders.add (this);
         }
     }
     
@@ -0,0 +1,225 @@
+package com.googlecode.rubex.exchange;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.googlecode.rubex.marketdata.SimpleOrderBookMarketDataTracker;
+import com.googlecode.rubex.orderbook.AbstractOrderBook;
+import com.googlecode.rubex.orderbook.ArrayOrderBook;
+import com.googlecode.rubex.orderbook.PriceLevelOrderBook;
+import com.googlecode.rubex.orderbook.SimpleOrderBook;
+
+/**
+ * Implementation of {@link ExchangeFactory} interface that creates 
+ * {@link SimpleExchange} instances.  Every exchange gets its own order book
+ * and, optionally, market data tracker and order book listeners created by
+ * registered listener factories.  By default exchanges are headless, i.e.
+ * nothing but exchange itself listens to the order book.  Factory should be
+ * configured before the first exchange is created.
+ * 
+ * @author Mikhail Vladimirov
+ */
+public class SimpleExchangeFactory implements ExchangeFactory
+{
+    private final List <OrderBookListenerFactory> listenerFactories =
+        new ArrayList <OrderBookListenerFactory> ();
+    
+    private OrderBookType orderBookType = OrderBookType.SIMPLE;
+    private boolean coalesceQuotes = false;
+    private boolean marketDataTracking = false;
+    private long auctionInterval = 0L;
+    
+    /**
+     * Create new factory of headless exchanges.
+     */
+    public SimpleExchangeFactory ()
+    {
+        // Do nothing
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Exchange createExchange (String symbol)
+    {
+        if (symbol == null)
+            throw new IllegalArgumentException ("Symbol is null");
+        
+        AbstractOrderBook orderBook;
+        switch (orderBookType)
+        {
+        case SIMPLE:
+            orderBook = new SimpleOrderBook ();
+            break;
+        case PRICE_LEVEL:
+            orderBook = new PriceLevelOrderBook ();
+            break;
+        case ARRAY:
+            orderBook = new ArrayOrderBook ();
+            break;
+        default:
+            throw new Error ("Unknown order book type: " + orderBookType);
+        }
+        
+        orderBook.setCoalesceQuotes (coalesceQuotes);
+        
+        SimpleOrderBookMarketDataTracker marketDataTracker = null;
+        if (marketDataTracking)
+        {
+            marketDataTracker = new SimpleOrderBookMarketDataTracker ();
+            orderBook.addOrderBookListener (marketDataTracker);
+        }
+        
+        for (OrderBookListenerFactory listenerFactory: listenerFactories)
+            orderBook.addOrderBookListener (
+                listenerFactory.createOrderBookListener (symbol));
+        
+        SimpleExchange exchange = 
+            new SimpleExchange (orderBook, marketDataTracker);
+        
+        if (auctionInterval > 0L)
+            exchange.setAuctionInterval (auctionInterval);
+        
+        return exchange;
+    }
+    
+    /**
+     * Return type of order books used by created exchanges.
+     * 
+     * @return order book type
+     */
+    public synchronized OrderBookType getOrderBookType ()
+    {
+        return orderBookType;
+    }
+    
+    /**
+     * Set type of order books to be used by created exchanges.  By default
+     * {@link OrderBookType#SIMPLE} order books are used.
+     * 
+     * @param orderBookType order book type
+     */
+    public synchronized void setOrderBookType (OrderBookType orderBookType)
+    {
+        if (orderBookType == null)
+            throw new IllegalArgumentException ("Order book type is null");
+        
+        this.orderBookType = orderBookType;
+    }
+    
+    /**
+     * Tells whether order books of created exchanges coalesce quote events.
+     * 
+     * @return <code>true</code> if quote events are coalesced, 
+     *         <code>false</code> otherwise
+     * 
+     * @see AbstractOrderBook#setCoalesceQuotes(boolean)
+     */
+    public synchronized boolean isCoalesceQuotes ()
+    {
+        return coalesceQuotes;
+    }
+    
+    /**
+     * Set whether order books of created exchanges should coalesce quote 
+     * events.
+     * 
+     * @param coalesceQuotes <code>true</code> to coalesce quote events, 
+     *        <code>false</code> otherwise
+     * 
+     * @see AbstractOrderBook#setCoalesceQuotes(boolean)
+     */
+    public synchronized void setCoalesceQuotes (boolean coalesceQuotes)
+    {
+        this.coalesceQuotes = coalesceQuotes;
+    }
+    
+    /**
+     * Tells whether created exchanges have market data trackers.
+     * 
+     * @return <code>true</code> if market data is tracked, 
+     *         <code>false</code> otherwise
+     * 
+     * @see SimpleExchange#getMarketDataTracker()
+     */
+    public synchronized boolean isMarketDataTracking ()
+    {
+        return marketDataTracking;
+    }
+    
+    /**
+     * Set whether created exchanges should have market data trackers.
+     * 
+     * @param marketDataTracking <code>true</code> to track market data, 
+     *        <code>false</code> otherwise
+     * 
+     * @see SimpleExchange#getMarketDataTracker()
+     */
+    public synchronized void setMarketDataTracking (boolean marketDataTracking)
+    {
+        this.marketDataTracking = marketDataTracking;
+    }
+    
+    /**
+     * Return interval between periodic auction uncrosses of created 
+     * exchanges.
+     * 
+     * @return auction interval in milliseconds or zero if created exchanges
+     *         match orders continuously
+     * 
+     * @see SimpleExchange#setAuctionInterval(long)
+     */
+    public synchronized long getAuctionInterval ()
+    {
+        return auctionInterval;
+    }
+    
+    /**
+     * Set interval between periodic auction uncrosses of created exchanges.
+     * 
+     * @param auctionInterval auction interval in milliseconds or zero to
+     *        match orders continuously
+     * 
+     * @see SimpleExchange#setAuctionInterval(long)
+     */
+    public synchronized void setAuctionInterval (long auctionInterval)
+    {
+        if (auctionInterval < 0L)
+            throw new IllegalArgumentException ("Auction interval < 0");
+        
+        this.auctionInterval = auctionInterval;
+    }
+    
+    /**
+     * Add factory of listeners to be attached to order book of every created
+     * exchange.  Listeners are notified from the thread that places orders 
+     * into the exchange, so listeners that do something slow, e.g. update 
+     * user interface, should throttle their work.
+     * 
+     * @param listenerFactory order book listener factory to add
+     */
+    public synchronized void addOrderBookListenerFactory (
+        OrderBookListenerFactory listenerFactory)
+    {
+        if (listenerFactory == null)
+            throw new IllegalArgumentException ("Listener factory is null");
+        
+        listenerFactories.add (listenerFactory);
+    }
+    
+    /**
+     * Remove order book listener factory.  Listeners already attached to 
+     * order books of created exchanges are not affected.
+     * 
+     * @param listenerFactory order book listener factory to remove
+     */
+    public synchronized void removeOrderBookListenerFactory (
+        OrderBookListenerFactory listenerFactory)
+    {
+        if (listenerFactory == null)
+            throw new IllegalArgumentException ("Listener factory is null");
+        
+        listenerFactories.remove (listenerFactory);
+    }
+}
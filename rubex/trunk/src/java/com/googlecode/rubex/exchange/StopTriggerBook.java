@@ -0,0 +1,296 @@
+package com.googlecode.rubex.exchange;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Holds stops of one symbol sorted by stop price.  Buy stops are triggered
+ * by trades at or above their stop prices, sell stops are triggered by trades
+ * at or below their stop prices.  Stops with the same side and stop price
+ * form a level and are triggered in the order they were added.  Triggering
+ * costs one map lookup per crossed level plus constant time per triggered
+ * stop, so stops that are not crossed are never visited.
+ * <p>
+ * Callbacks may add and cancel stops while trigger book is triggering.
+ * Stops added at crossed prices during triggering are triggered by the same
+ * call.
+ *
+ * @see StopTriggerCallback
+ *
+ * @author Mikhail Vladimirov
+ */
+public class StopTriggerBook
+{
+    private final TreeMap <Long, Level> buyLevels =
+        new TreeMap <Long, Level> ();
+
+    private final TreeMap <Long, Level> sellLevels =
+        new TreeMap <Long, Level> (Collections.<Long>reverseOrder ());
+
+    private int size = 0;
+
+    /**
+     * Create new empty trigger book.
+     */
+    public StopTriggerBook ()
+    {
+        // Do nothing
+    }
+
+    /**
+     * Add stop with given side and stop price.
+     *
+     * @param side side of the stop order
+     * @param stopPrice stop price in price units
+     * @param callback callback to be notified when stop is triggered
+     * @return entry of the added stop
+     */
+    public Entry add (
+        OrderSide side, long stopPrice, StopTriggerCallback callback)
+    {
+        if (side == null)
+            throw new IllegalArgumentException ("Side is null");
+
+        if (stopPrice <= 0)
+            throw new IllegalArgumentException ("Stop price <= 0");
+
+        if (callback == null)
+            throw new IllegalArgumentException ("Callback is null");
+
+        TreeMap <Long, Level> levels = getLevels (side);
+
+        Long key = Long.valueOf (stopPrice);
+        Level level = levels.get (key);
+        if (level == null)
+        {
+            level = new Level (levels, key);
+            levels.put (key, level);
+        }
+
+        Entry entry = new Entry (side, stopPrice, callback);
+        level.append (entry);
+        size += 1;
+
+        return entry;
+    }
+
+    /**
+     * Return number of stops in the trigger book.
+     */
+    public int size ()
+    {
+        return size;
+    }
+
+    /**
+     * Tells whether trigger book has no stops.
+     *
+     * @return <code>true</code> if trigger book is empty, <code>false</code>
+     *         otherwise
+     */
+    public boolean isEmpty ()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Trigger all buy stops with stop prices less than or equal to given
+     * trade price.
+     *
+     * @param timestamp time of the trigger in milliseconds since epoch
+     * @param price highest trade price in price units
+     * @return number of triggered stops
+     */
+    public int triggerBuyStops (long timestamp, long price)
+    {
+        return trigger (timestamp, OrderSide.BUY, price);
+    }
+
+    /**
+     * Trigger all sell stops with stop prices greater than or equal to given
+     * trade price.
+     *
+     * @param timestamp time of the trigger in milliseconds since epoch
+     * @param price lowest trade price in price units
+     * @return number of triggered stops
+     */
+    public int triggerSellStops (long timestamp, long price)
+    {
+        return trigger (timestamp, OrderSide.SELL, price);
+    }
+
+    private int trigger (long timestamp, OrderSide side, long price)
+    {
+        if (price <= 0)
+            throw new IllegalArgumentException ("Price <= 0");
+
+        TreeMap <Long, Level> levels = getLevels (side);
+        Map.Entry <Long, Level> first;
+        int result = 0;
+
+        while ((first = levels.firstEntry ()) != null &&
+            isCrossed (side, first.getKey ().longValue (), price))
+        {
+            Level level = first.getValue ();
+
+            Entry entry;
+            while ((entry = level.first) != null)
+            {
+                level.remove (entry);
+                size -= 1;
+                result += 1;
+
+                entry.callback.onTriggered (timestamp, entry);
+            }
+
+            // Callback could cancel the last stop of the level, and then
+            // another callback could create new level with the same price
+            if (levels.get (level.key) == level)
+                levels.remove (level.key);
+        }
+
+        return result;
+    }
+
+    private static boolean isCrossed (
+        OrderSide side, long stopPrice, long price)
+    {
+        switch (side)
+        {
+        case BUY:
+            return stopPrice <= price;
+        case SELL:
+            return stopPrice >= price;
+        default:
+            throw new Error ("Unknown order side: " + side);
+        }
+    }
+
+    private TreeMap <Long, Level> getLevels (OrderSide side)
+    {
+        switch (side)
+        {
+        case BUY:
+            return buyLevels;
+        case SELL:
+            return sellLevels;
+        default:
+            throw new Error ("Unknown order side: " + side);
+        }
+    }
+
+    /**
+     * Stop held in trigger book.
+     */
+    public class Entry
+    {
+        private final OrderSide side;
+        private final long stopPrice;
+        private final StopTriggerCallback callback;
+
+        private Level level = null;
+        private Entry previous = null;
+        private Entry next = null;
+
+        private Entry (
+            OrderSide side, long stopPrice, StopTriggerCallback callback)
+        {
+            this.side = side;
+            this.stopPrice = stopPrice;
+            this.callback = callback;
+        }
+
+        /**
+         * Return side of the stop.
+         */
+        public OrderSide getSide ()
+        {
+            return side;
+        }
+
+        /**
+         * Return stop price in price units.
+         */
+        public long getStopPrice ()
+        {
+            return stopPrice;
+        }
+
+        /**
+         * Tells whether stop is still held in trigger book, i.e. neither
+         * triggered nor canceled.
+         *
+         * @return <code>true</code> if stop is held in trigger book,
+         *         <code>false</code> otherwise
+         */
+        public boolean isActive ()
+        {
+            return level != null;
+        }
+
+        /**
+         * Remove stop from trigger book.  Does nothing if stop is not active.
+         *
+         * @return <code>true</code> if stop was removed, <code>false</code> if
+         *         it was not active
+         */
+        public boolean cancel ()
+        {
+            Level level = this.level;
+
+            if (level == null) return false;
+
+            level.remove (this);
+            size -= 1;
+
+            if (level.first == null && level.levels.get (level.key) == level)
+                level.levels.remove (level.key);
+
+            return true;
+        }
+    }
+
+    private static class Level
+    {
+        public final TreeMap <Long, Level> levels;
+        public final Long key;
+
+        public Entry first = null;
+        public Entry last = null;
+
+        public Level (TreeMap <Long, Level> levels, Long key)
+        {
+            this.levels = levels;
+            this.key = key;
+        }
+
+        public void append (Entry entry)
+        {
+            entry.level = this;
+            entry.previous = last;
+            entry.next = null;
+
+            if (last == null)
+                first = entry;
+            else last.next = entry;
+
+            last = entry;
+        }
+
+        public void remove (Entry entry)
+        {
+            if (entry.previous == null)
+                first = entry.next;
+            else entry.previous.next = entry.next;
+
+            if (entry.next == null)
+                last = entry.previous;
+            else entry.next.previous = entry.previous;
+
+            entry.level = null;
+            entry.previous = null;
+            entry.next = null;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.googlecode.rubex.exchange;
+
+/**
+ * Receives notification when stop held in {@link StopTriggerBook} was
+ * triggered.
+ *
+ * @see StopTriggerBook
+ *
+ * @author Mikhail Vladimirov
+ */
+public interface StopTriggerCallback
+{
+    /**
+     * Called after stop was triggered and removed from the trigger book.
+     *
+     * @param timestamp time when stop was triggered in milliseconds since
+     *        epoch
+     * @param entry triggered entry
+     *
+     * @see System#currentTimeMillis()
+     */
+    public void onTriggered (long timestamp, StopTriggerBook.Entry entry);
+}
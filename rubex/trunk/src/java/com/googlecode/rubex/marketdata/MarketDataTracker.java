@@ -38,6 +38,14 @@ public interface MarketDataTracker
      */
     public long getTotalValue ();
     
+    /**
+     * Return sequence number of the last order book event reflected by this
+     * tracker or 0 if events are not sequenced.
+     * 
+     * @see com.googlecode.rubex.orderbook.event.OrderBookQuoteEvent#getSequenceNumber()
+     */
+    public long getSequenceNumber ();
+    
     /**
      * Return best bid price in price units or 0 if there is no bids.
      */
@@ -58,6 +66,60 @@ public interface MarketDataTracker
      */
     public long getBestAskQuantity ();
     
+    /**
+     * Return number of bid price levels.
+     */
+    public int getBidLevelCount ();
+    
+    /**
+     * Return bid price in price units at given depth, where depth 0 is the 
+     * best bid.
+     * 
+     * @param depth depth of the price level, from 0 to 
+     *        <code>getBidLevelCount () - 1</code>
+     * @return bid price at given depth
+     * @throws IndexOutOfBoundsException if depth is out of range
+     */
+    public long getBidPrice (int depth);
+    
+    /**
+     * Return total bid quantity in quantity units at given depth, where depth
+     * 0 is the best bid.
+     * 
+     * @param depth depth of the price level, from 0 to 
+     *        <code>getBidLevelCount () - 1</code>
+     * @return bid quantity at given depth
+     * @throws IndexOutOfBoundsException if depth is out of range
+     */
+    public long getBidQuantity (int depth);
+    
+    /**
+     * Return number of ask price levels.
+     */
+    public int getAskLevelCount ();
+    
+    /**
+     * Return ask price in price units at given depth, where depth 0 is the 
+     * best ask.
+     * 
+     * @param depth depth of the price level, from 0 to 
+     *        <code>getAskLevelCount () - 1</code>
+     * @return ask price at given depth
+     * @throws IndexOutOfBoundsException if depth is out of range
+     */
+    public long getAskPrice (int depth);
+    
+    /**
+     * Return total ask quantity in quantity units at given depth, where depth
+     * 0 is the best ask.
+     * 
+     * @param depth depth of the price level, from 0 to 
+     *        <code>getAskLevelCount () - 1</code>
+     * @return ask quantity at given depth
+     * @throws IndexOutOfBoundsException if depth is out of range
+     */
+    public long getAskQuantity (int depth);
+    
     /**
      * Get best bid quotes.
      * 
@@ -1,15 +1,11 @@
 package com.googlecode.rubex.marketdata;
 
-import java.util.Iterator;
-import java.util.Map;
-import java.util.NavigableMap;
-import java.util.TreeMap;
-
 import com.googlecode.rubex.orderbook.OrderBook;
 import com.googlecode.rubex.orderbook.OrderBookEntrySide;
 import com.googlecode.rubex.orderbook.event.OrderBookListener;
 import com.googlecode.rubex.orderbook.event.OrderBookQuoteEvent;
 import com.googlecode.rubex.orderbook.event.OrderBookTradeEvent;
+import com.googlecode.rubex.utils.LongLongTreeMap;
 import com.googlecode.rubex.utils.LongUtils;
 
 /**
@@ -23,14 +19,15 @@ import com.googlecode.rubex.utils.LongUtils;
 public class SimpleOrderBookMarketDataTracker 
     implements MarketDataTracker, OrderBookListener
 {
+    private long sequenceNumber = 0;
     private long lastTradePrice = 0;
     private long lastTradeQuantity = 0;
     private long lastTradeTimestamp = 0;
     private long totalVolume = 0;
     private long totalValue = 0;
     
-    private NavigableMap<Long, Long> bids = new TreeMap<Long, Long> ();
-    private NavigableMap<Long, Long> asks = new TreeMap<Long, Long> ();
+    private final LongLongTreeMap bids = new LongLongTreeMap ();
+    private final LongLongTreeMap asks = new LongLongTreeMap ();
 
     /**
      * {@inheritDoc}
@@ -38,6 +35,7 @@ public class SimpleOrderBookMarketDataTracker
     @Override
     public void onTrade (OrderBookTradeEvent event)
     {
+        sequenceNumber = event.getSequenceNumber ();
         lastTradePrice = event.getPrice ();
         lastTradeQuantity = event.getQuantity ();
         lastTradeTimestamp = event.getTimestamp ();
@@ -53,37 +51,32 @@ public class SimpleOrderBookMarketDataTracker
     @Override
     public void onQuote (OrderBookQuoteEvent event)
     {
-        OrderBookEntrySide side = event.getSide ();
-        long price = event.getPrice ();
-        Long priceObject = Long.valueOf (price);
+        sequenceNumber = event.getSequenceNumber ();
         
-        long quantity;
+        OrderBookEntrySide side = event.getSide ();
         
         switch (side)
         {
         case BID:
-            quantity = LongUtils.safeAdd (
-                bids.containsKey (priceObject) ? 
-                    bids.get (priceObject).longValue () : 0, 
-                event.getQuantityDelta ()); 
-            if (quantity > 0)
-                bids.put (priceObject, Long.valueOf (quantity));
-            else bids.remove (priceObject);
+            bids.add (event.getPrice (), event.getQuantityDelta ());
             break;
         case ASK:
-            quantity = LongUtils.safeAdd (
-                asks.containsKey (priceObject) ? 
-                    asks.get (priceObject).longValue () : 0, 
-                event.getQuantityDelta ());
-            if (quantity > 0)
-                asks.put (priceObject, Long.valueOf (quantity));
-            else asks.remove (priceObject);
+            asks.add (event.getPrice (), event.getQuantityDelta ());
             break;
         default:
             throw new Error ("Unknown order book entry side: " + side);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSequenceNumber ()
+    {
+        return sequenceNumber;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -144,7 +137,7 @@ public class SimpleOrderBookMarketDataTracker
     @Override
     public long getBestBidQuantity ()
     {
-        return bids.isEmpty () ? 0 : bids.lastEntry ().getValue ().longValue ();
+        return bids.isEmpty () ? 0 : bids.lastValue ();
     }
 
     /**
@@ -162,8 +155,61 @@ public class SimpleOrderBookMarketDataTracker
     @Override
     public long getBestAskQuantity ()
     {
-        return asks.isEmpty () ? 
-            0 : asks.firstEntry ().getValue ().longValue ();
+        return asks.isEmpty () ? 0 : asks.firstValue ();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getBidLevelCount ()
+    {
+        return bids.size ();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBidPrice (int depth)
+    {
+        return bids.getKey (bids.size () - 1 - depth);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBidQuantity (int depth)
+    {
+        return bids.getValue (bids.size () - 1 - depth);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getAskLevelCount ()
+    {
+        return asks.size ();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getAskPrice (int depth)
+    {
+        return asks.getKey (depth);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getAskQuantity (int depth)
+    {
+        return asks.getValue (depth);
     }
 
     /**
@@ -176,15 +222,8 @@ public class SimpleOrderBookMarketDataTracker
         
         Quote [] result = new Quote [count];
         
-        Iterator<Map.Entry<Long, Long>> iterator = 
-            bids.descendingMap ().entrySet ().iterator ();
         for (int i = 0; i < count; i++)
-        {
-            Map.Entry<Long, Long> entry = iterator.next ();
-            
-            result [i] = new MyQuote (
-                entry.getValue ().longValue (), entry.getKey ().longValue ());
-        }
+            result [i] = new MyQuote (getBidQuantity (i), getBidPrice (i));
         
         return result;
     }
@@ -199,14 +238,8 @@ public class SimpleOrderBookMarketDataTracker
         
         Quote [] result = new Quote [count];
         
-        Iterator<Map.Entry<Long, Long>> iterator = asks.entrySet ().iterator ();
         for (int i = 0; i < count; i++)
-        {
-            Map.Entry<Long, Long> entry = iterator.next ();
-            
-            result [i] = new MyQuote (
-                entry.getValue ().longValue (), entry.getKey ().longValue ());
-        }
+            result [i] = new MyQuote (getAskQuantity (i), getAskPrice (i));
         
         return result;
     }
@@ -217,16 +250,7 @@ public class SimpleOrderBookMarketDataTracker
     @Override
     public long getBidQuantityAbove (long price)
     {
-        long result = 0;
-        
-        for (Map.Entry <Long, Long> entry: bids.descendingMap ().entrySet ())
-        {
-            if (entry.getKey ().longValue () >= price)
-                result = LongUtils.safeAdd (result, entry.getValue ().longValue ());
-            else break;
-        }
-        
-        return result;
+        return bids.sumFrom (price);
     }
 
     /**
@@ -235,16 +259,7 @@ public class SimpleOrderBookMarketDataTracker
     @Override
     public long getAskQuantityBelow (long price)
     {
-        long result = 0;
-        
-        for (Map.Entry <Long, Long> entry: asks.entrySet ())
-        {
-            if (entry.getKey ().longValue () <= price)
-                result = LongUtils.safeAdd (result, entry.getValue ().longValue ());
-            else break;
-        }
-        
-        return result;
+        return asks.sumTo (price);
     }
     
     private static class MyQuote implements Quote
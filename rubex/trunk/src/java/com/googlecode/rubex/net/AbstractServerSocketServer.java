@@ -5,9 +5,11 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.googlecode.rubex.concurrent.PlatformThreadFactory;
 import com.googlecode.rubex.message.Message;
 import com.googlecode.rubex.net.event.ConnectionEvent;
 import com.googlecode.rubex.net.event.MessageEvent;
@@ -15,7 +17,9 @@ import com.googlecode.rubex.net.event.MessageListener;
 
 /**
  * Abstract implementation of {@link Server} interface based on 
- * {@link ServerSocket}.
+ * {@link ServerSocket}.  Server accepts connections in acceptor thread 
+ * created by given {@link ThreadFactory}, and subclasses should use the same
+ * factory for threads of connections they create.
  * 
  * @author Mikhail Vladimirov
  */
@@ -27,6 +31,7 @@ public abstract class AbstractServerSocketServer <MessageType>
     
     private final ServerSocket serverSocket;
     private final String name;
+    private final ThreadFactory threadFactory;
     private final Thread acceptorThread;
     
     private final List <Connection <?>> connections = 
@@ -52,27 +57,45 @@ public abstract class AbstractServerSocketServer <MessageType>
     private boolean shutdown = false;
     
     /**
-     * Create new simple server socket server with given server socket.
+     * Create new simple server socket server with given server socket, that
+     * runs in platform threads.
      * 
      * @param serverSocket server socket to base on
      */
     public AbstractServerSocketServer (ServerSocket serverSocket)
+    {
+        this (serverSocket, new PlatformThreadFactory ());
+    }
+    
+    /**
+     * Create new simple server socket server with given server socket, that
+     * runs in threads created by given thread factory.
+     * 
+     * @param serverSocket server socket to base on
+     * @param threadFactory factory to create acceptor and connection threads
+     */
+    public AbstractServerSocketServer (
+        ServerSocket serverSocket, ThreadFactory threadFactory)
     {
         if (serverSocket == null)
             throw new IllegalArgumentException ("Server socket is null");
         
+        if (threadFactory == null)
+            throw new IllegalArgumentException ("Thread factory is null");
+        
         this.serverSocket = serverSocket;
+        this.threadFactory = threadFactory;
         name = serverSocket.getInetAddress () + ":" + 
             serverSocket.getLocalPort ();
-        acceptorThread = new Thread (
-            "Acceptor [" + name + "]")
+        acceptorThread = threadFactory.newThread (new Runnable ()
         {
             @Override
             public void run() 
             {
                 runAcceptorThread ();
             };
-        };
+        });
+        acceptorThread.setName ("Acceptor [" + name + "]");
     }
 
     /**
@@ -148,6 +171,16 @@ public abstract class AbstractServerSocketServer <MessageType>
             toArray (new Connection <?> [connections.size ()]);
     }
     
+    /**
+     * Return factory to create threads of this server and its connections.
+     * 
+     * @return thread factory
+     */
+    protected ThreadFactory getThreadFactory ()
+    {
+        return threadFactory;
+    }
+    
     /**
      * Create connection for socket.
      * 
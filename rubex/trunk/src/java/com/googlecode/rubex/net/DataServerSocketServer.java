@@ -2,6 +2,7 @@ package com.googlecode.rubex.net;
 
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.ThreadFactory;
 
 import com.googlecode.rubex.data.DataObject;
 
@@ -13,10 +14,16 @@ public class DataServerSocketServer
         super (serverSocket);
     }
 
+    public DataServerSocketServer (
+        ServerSocket serverSocket, ThreadFactory threadFactory)
+    {
+        super (serverSocket, threadFactory);
+    }
+
     @Override
     protected Connection <DataObject> createConnection (Socket socket)
     {
         return new SimpleDataConnection (
-            new SimpleSocketConnection (socket));
+            new SimpleSocketConnection (socket, getThreadFactory ()));
     }
 }
@@ -2,6 +2,7 @@ package com.googlecode.rubex.net;
 
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.ThreadFactory;
 
 import com.googlecode.rubex.protocol.ProtocolMessage;
 
@@ -13,11 +14,17 @@ public class ProtocolServerSocketServer
         super (serverSocket);
     }
 
+    public ProtocolServerSocketServer (
+        ServerSocket serverSocket, ThreadFactory threadFactory)
+    {
+        super (serverSocket, threadFactory);
+    }
+
     @Override
     protected Connection <ProtocolMessage> createConnection (Socket socket)
     {
         return new SimpleProtocolConnection (
             new SimpleDataConnection (
-                new SimpleSocketConnection (socket)));
+                new SimpleSocketConnection (socket, getThreadFactory ())));
     }
 }
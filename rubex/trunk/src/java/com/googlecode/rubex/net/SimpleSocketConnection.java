@@ -5,15 +5,20 @@ import java.io.UnsupportedEncodingException;
 import java.net.Socket;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.googlecode.rubex.concurrent.PlatformThreadFactory;
 import com.googlecode.rubex.message.Message;
 import com.googlecode.rubex.message.MessageReader;
 import com.googlecode.rubex.message.MessageWriter;
 
 /**
  * Simple implementation of {@link Connection} interface based on {@link Socket}.
+ * Connection receives and sends messages in two threads of its own, that 
+ * block in socket I/O.  Threads are created by given {@link ThreadFactory},
+ * so connections may run on virtual threads when there are many of them.
  * 
  * @author Mikhail Vladimirov
  */
@@ -36,33 +41,51 @@ public class SimpleSocketConnection
     private boolean shutdown = false;
     
     /**
-     * Create new simple socket connection with given socket.
+     * Create new simple socket connection with given socket, that receives 
+     * and sends messages in platform threads.
      * 
      * @param socket socket to base on
      */
     public SimpleSocketConnection (Socket socket)
+    {
+        this (socket, new PlatformThreadFactory ());
+    }
+    
+    /**
+     * Create new simple socket connection with given socket, that receives 
+     * and sends messages in threads created by given thread factory.
+     * 
+     * @param socket socket to base on
+     * @param threadFactory factory to create receiver and sender threads
+     */
+    public SimpleSocketConnection (Socket socket, ThreadFactory threadFactory)
     {
         if (socket == null)
             throw new IllegalArgumentException ("Socket is null");
         
+        if (threadFactory == null)
+            throw new IllegalArgumentException ("Thread factory is null");
+        
         this.socket = socket;
         name = socket.getInetAddress () + ":" + socket.getPort ();
-        receiverThread = new Thread ("Receiver [" + name + "]")
+        receiverThread = threadFactory.newThread (new Runnable ()
         {
             @Override
             public void run() 
             {
                 runReceiverThread ();
             };
-        };
-        senderThread = new Thread ("Sender [" + name + "]")
+        });
+        receiverThread.setName ("Receiver [" + name + "]");
+        senderThread = threadFactory.newThread (new Runnable ()
         {
             @Override
             public void run() 
             {
                 runSenderThread ();
             };
-        };
+        });
+        senderThread.setName ("Sender [" + name + "]");
     }
 
     /**
@@ -1,11 +1,13 @@
 package com.googlecode.rubex.orderbook;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import com.googlecode.rubex.orderbook.event.OrderBookListener;
 import com.googlecode.rubex.orderbook.event.OrderBookQuoteEvent;
 import com.googlecode.rubex.orderbook.event.OrderBookTradeEvent;
+import com.googlecode.rubex.utils.LongLongTreeMap;
 
 /**
  * Abstract base class for implementations of {@link OrderBook} interface.
@@ -16,6 +18,22 @@ public abstract class AbstractOrderBook implements OrderBook
 {
     private final List <OrderBookListener> listeners = 
         new ArrayList <OrderBookListener> ();
+    
+    private boolean reuseEvents = false;
+    private MyTradeEvent tradeEvent = null;
+    private MyQuoteEvent quoteEvent = null;
+    
+    private long sequenceNumber = 0L;
+    
+    private boolean coalesceQuotes = false;
+    private int coalescingDepth = 0;
+    private long coalescedTimestamp = 0L;
+    private final LongLongTreeMap coalescedBids = new LongLongTreeMap ();
+    private final LongLongTreeMap coalescedAsks = new LongLongTreeMap ();
+    private boolean flushBeforeTrade = false;
+    
+    private int batchDepth = 0;
+    private boolean batchCoalescing = false;
 
     /**
      * Create new abstract order book.
@@ -60,6 +78,239 @@ public abstract class AbstractOrderBook implements OrderBook
         return listeners.toArray (new OrderBookListener[listeners.size ()]);
     }
     
+    /**
+     * Tells whether this order book reuses event objects.
+     * 
+     * @return <code>true</code> if event objects are reused, 
+     *         <code>false</code> otherwise
+     */
+    public boolean isReuseEvents ()
+    {
+        return reuseEvents;
+    }
+    
+    /**
+     * Set whether this order book should reuse event objects.  When events
+     * are reused, the same mutable event object is passed to listeners 
+     * again and again, so event is valid only until listener returns.
+     * 
+     * @param reuseEvents <code>true</code> to reuse event objects, 
+     *        <code>false</code> to create new event object for each event
+     */
+    public void setReuseEvents (boolean reuseEvents)
+    {
+        this.reuseEvents = reuseEvents;
+    }
+    
+    /**
+     * Return sequence number of the last event of this order book or zero if
+     * there were no events yet.  Events are numbered starting from one, 
+     * without gaps, whether or not there are listeners to deliver them to, 
+     * so listener added after a snapshot was taken can tell by a gap that it
+     * missed some changes.
+     */
+    public long getSequenceNumber ()
+    {
+        return sequenceNumber;
+    }
+    
+    /**
+     * Tells whether this order book coalesces quote events produced by single
+     * operation, such as placing or canceling an entry.
+     * 
+     * @return <code>true</code> if quote events are coalesced per operation,
+     *         <code>false</code> otherwise
+     */
+    public boolean isCoalesceQuotes ()
+    {
+        return coalesceQuotes;
+    }
+    
+    /**
+     * Set whether this order book should coalesce quote events produced by 
+     * single operation.  When quotes are coalesced, listeners receive one 
+     * quote event with net quantity delta per price level touched by the 
+     * operation after the operation is finished, rather than one event per
+     * filled entry.  Trades are still delivered immediately, so quote events
+     * of an operation are numbered after its trades, just like quote event
+     * reflecting a fill is numbered after the trade when quotes are not 
+     * coalesced.  Subclasses are responsible for bracketing their 
+     * operations with {@link #beginQuoteCoalescing()} and 
+     * {@link #endQuoteCoalescing()} when this flag is set.
+     * 
+     * @param coalesceQuotes <code>true</code> to coalesce quote events, 
+     *        <code>false</code> to deliver them immediately
+     */
+    public void setCoalesceQuotes (boolean coalesceQuotes)
+    {
+        this.coalesceQuotes = coalesceQuotes;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void placeEntries (OrderBookBatch batch)
+    {
+        if (batch == null)
+            throw new IllegalArgumentException ("Batch is null");
+        
+        beginQuoteCoalescing ();
+        try
+        {
+            int size = batch.size ();
+            for (int i = 0; i < size; i++)
+            {
+                try
+                {
+                    batch.setResult (
+                        i, 
+                        placeEntry (
+                            batch.getTimestamp (i), batch.getSide (i), 
+                            batch.getQuantity (i), batch.getLimitPrice (i), 
+                            batch.getCallback (i), batch.getClosure (i)), 
+                        null);
+                }
+                catch (OrderBookException ex)
+                {
+                    batch.setResult (i, null, ex);
+                }
+                
+                flushBeforeTrade = true;
+            }
+        }
+        finally
+        {
+            endQuoteCoalescing ();
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int cancelEntries (
+        long timestamp, Collection <OrderBookEntryHandler> entryHandlers)
+    {
+        if (entryHandlers == null)
+            throw new IllegalArgumentException ("Entry handlers is null");
+        
+        int result = 0;
+        
+        beginQuoteCoalescing ();
+        try
+        {
+            for (OrderBookEntryHandler entryHandler: entryHandlers)
+            {
+                try
+                {
+                    entryHandler.cancel (timestamp);
+                    result += 1;
+                }
+                catch (OrderBookException ex)
+                {
+                    // Entry became inactive, nothing to cancel
+                }
+            }
+        }
+        finally
+        {
+            endQuoteCoalescing ();
+        }
+        
+        return result;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beginBatch ()
+    {
+        if (batchDepth++ == 0 && coalesceQuotes)
+        {
+            batchCoalescing = true;
+            beginQuoteCoalescing ();
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void endBatch ()
+    {
+        if (batchDepth <= 0)
+            throw new IllegalStateException ("Batch not started");
+        
+        if (--batchDepth == 0 && batchCoalescing)
+        {
+            batchCoalescing = false;
+            endQuoteCoalescing ();
+        }
+    }
+    
+    /**
+     * Start coalescing quote events.  Until matching call to 
+     * {@link #endQuoteCoalescing()}, quote deltas are accumulated per side and
+     * price instead of being delivered to listeners.  Calls may be nested,
+     * and end of nested coalescing is treated as end of an operation: quotes
+     * coalesced by finished operations are delivered before the next trade, 
+     * so they are never numbered after trades of later operations.
+     */
+    protected void beginQuoteCoalescing ()
+    {
+        coalescingDepth += 1;
+    }
+    
+    /**
+     * Stop coalescing quote events.  When the outermost coalescing is 
+     * finished, one quote event with net quantity delta is delivered for 
+     * every price level whose quantity was changed, bids first, both sides 
+     * starting from the best price.  Levels whose net delta is zero are not 
+     * reported.
+     * 
+     * @see #beginQuoteCoalescing()
+     */
+    protected void endQuoteCoalescing ()
+    {
+        if (coalescingDepth <= 0)
+            throw new IllegalStateException ("Quote coalescing not started");
+        
+        if (--coalescingDepth > 0)
+        {
+            flushBeforeTrade = true;
+            return;
+        }
+        
+        flushCoalescedQuotes ();
+    }
+    
+    /**
+     * Deliver quote events coalesced so far without stopping coalescing, so
+     * listeners are up to date with the state of the order book, e.g. 
+     * before snapshot is taken in the middle of a batch.
+     * 
+     * @see #beginBatch()
+     */
+    protected void flushCoalescedQuotes ()
+    {
+        flushBeforeTrade = false;
+        
+        for (int i = coalescedBids.size () - 1; i >= 0; i--)
+            deliverQuote (
+                coalescedTimestamp, OrderBookEntrySide.BID, 
+                coalescedBids.getKey (i), coalescedBids.getValue (i));
+        coalescedBids.clear ();
+        
+        int count = coalescedAsks.size ();
+        for (int i = 0; i < count; i++)
+            deliverQuote (
+                coalescedTimestamp, OrderBookEntrySide.ASK, 
+                coalescedAsks.getKey (i), coalescedAsks.getValue (i));
+        coalescedAsks.clear ();
+    }
+    
     /**
      * Notify all order book listeners about trade.
      * 
@@ -96,18 +347,38 @@ public abstract class AbstractOrderBook implements OrderBook
         if (price <= 0)
             throw new IllegalArgumentException ("Price <= 0");
         
-        OrderBookTradeEvent event = null;
+        if (flushBeforeTrade)
+            flushCoalescedQuotes ();
+        
+        long sequenceNumber = ++this.sequenceNumber;
         
-        for (OrderBookListener listener: listeners)
+        int count = listeners.size ();
+        
+        if (count == 0) return;
+        
+        OrderBookTradeEvent event;
+        
+        if (!reuseEvents)
+            event = new OrderBookTradeEvent (
+                this, sequenceNumber, timestamp, 
+                bidEntryHandler, askEntryHandler, 
+                quantity, price);
+        else if (tradeEvent == null)
+            event = tradeEvent = new MyTradeEvent (
+                this, sequenceNumber, timestamp, 
+                bidEntryHandler, askEntryHandler, 
+                quantity, price);
+        else
         {
-            if (event == null)
-                event = new OrderBookTradeEvent (
-                    this, timestamp, 
-                    bidEntryHandler, askEntryHandler, 
-                    quantity, price);
-            
-            listener.onTrade (event);
+            tradeEvent.update (
+                sequenceNumber, timestamp, 
+                bidEntryHandler, askEntryHandler, 
+                quantity, price);
+            event = tradeEvent;
         }
+        
+        for (int i = 0; i < count; i++)
+            listeners.get (i).onTrade (event);
     }
     
     /**
@@ -130,15 +401,94 @@ public abstract class AbstractOrderBook implements OrderBook
         if (price <= 0)
             throw new IllegalArgumentException ("Price <= 0");
         
-        OrderBookQuoteEvent event = null;
-        
-        for (OrderBookListener listener: listeners)
+        if (coalescingDepth > 0)
         {
-            if (event == null)
-                event = new OrderBookQuoteEvent (
-                    this, timestamp, side, price, quantityDelta);
+            switch (side)
+            {
+            case BID:
+                coalescedBids.add (price, quantityDelta);
+                break;
+            case ASK:
+                coalescedAsks.add (price, quantityDelta);
+                break;
+            default:
+                throw new Error ("Unknown order book entry side: " + side);
+            }
             
-            listener.onQuote (event);
+            coalescedTimestamp = timestamp;
+        }
+        else deliverQuote (timestamp, side, price, quantityDelta);
+    }
+    
+    private void deliverQuote (
+        long timestamp, OrderBookEntrySide side, long price, long quantityDelta)
+    {
+        long sequenceNumber = ++this.sequenceNumber;
+        
+        int count = listeners.size ();
+        
+        if (count == 0) return;
+        
+        OrderBookQuoteEvent event;
+        
+        if (!reuseEvents)
+            event = new OrderBookQuoteEvent (
+                this, sequenceNumber, timestamp, side, price, quantityDelta);
+        else if (quoteEvent == null)
+            event = quoteEvent = new MyQuoteEvent (
+                this, sequenceNumber, timestamp, side, price, quantityDelta);
+        else
+        {
+            quoteEvent.update (
+                sequenceNumber, timestamp, side, price, quantityDelta);
+            event = quoteEvent;
+        }
+        
+        for (int i = 0; i < count; i++)
+            listeners.get (i).onQuote (event);
+    }
+    
+    private static class MyTradeEvent extends OrderBookTradeEvent
+    {
+        public MyTradeEvent (
+            Object source, long sequenceNumber, long timestamp, 
+            OrderBookEntryHandler bidEntryHandler, 
+            OrderBookEntryHandler askEntryHandler, 
+            long quantity, long price)
+        {
+            super (
+                source, sequenceNumber, timestamp, 
+                bidEntryHandler, askEntryHandler, 
+                quantity, price);
+        }
+        
+        public void update (
+            long sequenceNumber, long timestamp, 
+            OrderBookEntryHandler bidEntryHandler, 
+            OrderBookEntryHandler askEntryHandler, 
+            long quantity, long price)
+        {
+            set (
+                sequenceNumber, timestamp, 
+                bidEntryHandler, askEntryHandler, 
+                quantity, price);
+        }
+    }
+    
+    private static class MyQuoteEvent extends OrderBookQuoteEvent
+    {
+        public MyQuoteEvent (
+            Object source, long sequenceNumber, long timestamp, 
+            OrderBookEntrySide side, long price, long quantityDelta)
+        {
+            super (source, sequenceNumber, timestamp, side, price, quantityDelta);
+        }
+        
+        public void update (
+            long sequenceNumber, long timestamp, 
+            OrderBookEntrySide side, long price, long quantityDelta)
+        {
+            set (sequenceNumber, timestamp, side, price, quantityDelta);
         }
     }
 }
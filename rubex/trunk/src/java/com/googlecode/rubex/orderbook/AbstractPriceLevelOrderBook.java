@@ -0,0 +1,1222 @@
+package com.googlecode.rubex.orderbook;
+
+/**
+ * Abstract base class for implementations of {@link OrderBook} interface that
+ * keep entries in FIFO queues, one queue per price level.  Every entry keeps
+ * reference to its price level, so entry is unlinked from the queue in
+ * constant time as soon as it is filled or canceled.  Subclasses decide how
+ * price levels are indexed by price.
+ * <p>
+ * Optionally, entries may be taken from a pool of recycled entries, see
+ * {@link #setPoolEntries(boolean)}.  Together with reused events, see
+ * {@link #setReuseEvents(boolean)}, this makes steady-state placing, filling
+ * and canceling of entries free of allocations.
+ * <p>
+ * During auction, see {@link #beginAuction()}, entries rest in their price
+ * levels without being matched, and {@link #uncross(long)} walks crossing 
+ * price levels once to build aggregated demand and supply curves, then 
+ * fills all crossing quantity at the single price found.
+ *
+ * @author Mikhail Vladimirov
+ */
+public abstract class AbstractPriceLevelOrderBook extends AbstractOrderBook
+{
+    private final PriceLevels bids;
+    private final PriceLevels asks;
+
+    private long sequentialNumber = 0L;
+
+    private boolean poolEntries = false;
+    private OrderBookEntry freeEntries = null;
+    private OrderBookEntry retiredEntries = null;
+    private int depth = 0;
+    private boolean coalescing = false;
+
+    private boolean auction = false;
+    private long [] crossingBidPrices = new long [16];
+    private long [] crossingBidQuantities = new long [16];
+
+    /**
+     * Create new empty order book with given bid and ask price levels.
+     *
+     * @param bids price levels to hold bid entries
+     * @param asks price levels to hold ask entries
+     */
+    protected AbstractPriceLevelOrderBook (PriceLevels bids, PriceLevels asks)
+    {
+        if (bids == null)
+            throw new IllegalArgumentException ("Bids is null");
+
+        if (asks == null)
+            throw new IllegalArgumentException ("Asks is null");
+
+        this.bids = bids;
+        this.asks = asks;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OrderBookEntryHandler placeEntry (long timestamp,
+        OrderBookEntrySide side, long quantity, long limitPrice,
+        OrderBookEntryCallback callback, Object closure)
+        throws OrderBookException
+    {
+        if (side == null)
+            throw new IllegalArgumentException ("Side is null");
+
+        if (quantity <= 0)
+            throw new IllegalArgumentException ("Quantity <= 0");
+
+        if (limitPrice < 0)
+            throw new IllegalArgumentException ("Limit price < 0");
+
+        if (callback == null)
+            throw new IllegalArgumentException ("Callback is null");
+
+        enter ();
+        try
+        {
+            return doPlaceEntry (
+                timestamp, side, quantity, limitPrice, 0L, callback, closure);
+        }
+        finally
+        {
+            leave ();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OrderBookEntryHandler placeIcebergEntry (long timestamp,
+        OrderBookEntrySide side, long quantity, long limitPrice,
+        long visibleQuantity, OrderBookEntryCallback callback, Object closure)
+        throws OrderBookException
+    {
+        if (side == null)
+            throw new IllegalArgumentException ("Side is null");
+
+        if (quantity <= 0)
+            throw new IllegalArgumentException ("Quantity <= 0");
+
+        if (limitPrice <= 0)
+            throw new IllegalArgumentException ("Limit price <= 0");
+
+        if (visibleQuantity <= 0)
+            throw new IllegalArgumentException ("Visible quantity <= 0");
+
+        if (callback == null)
+            throw new IllegalArgumentException ("Callback is null");
+
+        enter ();
+        try
+        {
+            return doPlaceEntry (
+                timestamp, side, quantity, limitPrice, visibleQuantity,
+                callback, closure);
+        }
+        finally
+        {
+            leave ();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OrderBookEntryHandler placeFillOrKillEntry (long timestamp,
+        OrderBookEntrySide side, long quantity, long limitPrice,
+        OrderBookEntryCallback callback, Object closure)
+        throws OrderBookException
+    {
+        if (side == null)
+            throw new IllegalArgumentException ("Side is null");
+
+        if (quantity <= 0)
+            throw new IllegalArgumentException ("Quantity <= 0");
+
+        if (limitPrice < 0)
+            throw new IllegalArgumentException ("Limit price < 0");
+
+        if (callback == null)
+            throw new IllegalArgumentException ("Callback is null");
+
+        enter ();
+        try
+        {
+            OrderBookEntry entry = newEntry (
+                side, quantity, limitPrice, 0L, callback, closure);
+
+            if (!auction && isFillable (side, quantity, limitPrice))
+                match (timestamp, entry, false);
+            else cancelEntry (timestamp, entry);
+
+            return entry;
+        }
+        finally
+        {
+            leave ();
+        }
+    }
+
+    private boolean isFillable (
+        OrderBookEntrySide side, long quantity, long limitPrice)
+    {
+        PriceLevels oppositeLevels;
+
+        switch (side)
+        {
+        case BID:
+            oppositeLevels = asks;
+            break;
+        case ASK:
+            oppositeLevels = bids;
+            break;
+        default:
+            throw new Error ("Unknown order book entry side: " + side);
+        }
+
+        long remainingQuantity = quantity;
+
+        for (PriceLevel level = oppositeLevels.getBestLevel ();
+            level != null; level = oppositeLevels.getNextLevel (level))
+        {
+            if (limitPrice > 0)
+            {
+                boolean fits;
+
+                switch (side)
+                {
+                case BID:
+                    fits = limitPrice >= level.price;
+                    break;
+                case ASK:
+                    fits = limitPrice <= level.price;
+                    break;
+                default:
+                    throw new Error (
+                        "Unknown order book entry side: " + side);
+                }
+
+                if (!fits) return false;
+            }
+
+            remainingQuantity -= level.unfilledQuantity;
+
+            if (remainingQuantity <= 0) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Tells whether this order book takes entries from a pool of recycled
+     * entries.
+     *
+     * @return <code>true</code> if entries are pooled, <code>false</code>
+     *         otherwise
+     */
+    public boolean isPoolEntries ()
+    {
+        return poolEntries;
+    }
+
+    /**
+     * Set whether this order book should take entries from a pool of recycled
+     * entries.  When entries are pooled, entry is returned to the pool once
+     * it is filled or canceled, so its handler must not be used after
+     * {@link OrderBookEntryCallback#onFilled(long, OrderBookEntryHandler)} or
+     * {@link OrderBookEntryCallback#onCanceled(long, OrderBookEntryHandler)}
+     * was called for it.
+     *
+     * @param poolEntries <code>true</code> to pool entries,
+     *        <code>false</code> to create new entry for each placement
+     */
+    public void setPoolEntries (boolean poolEntries)
+    {
+        this.poolEntries = poolEntries;
+    }
+
+    private OrderBookEntryHandler doPlaceEntry (long timestamp,
+        OrderBookEntrySide side, long quantity, long limitPrice,
+        long visibleQuantity, OrderBookEntryCallback callback, Object closure)
+        throws OrderBookException
+    {
+        OrderBookEntry newEntry = newEntry (
+            side, quantity, limitPrice, visibleQuantity, callback, closure);
+
+        match (timestamp, newEntry, true);
+
+        return newEntry;
+    }
+
+    private OrderBookEntry newEntry (
+        OrderBookEntrySide side, long quantity, long limitPrice,
+        long visibleQuantity, OrderBookEntryCallback callback, Object closure)
+    {
+        OrderBookEntry newEntry = freeEntries;
+
+        if (newEntry == null)
+            newEntry = new OrderBookEntry ();
+        else
+        {
+            freeEntries = newEntry.next;
+            newEntry.next = null;
+        }
+
+        newEntry.init (
+            sequentialNumber++,
+            side, limitPrice, quantity, visibleQuantity,
+            callback, closure);
+
+        return newEntry;
+    }
+
+    /**
+     * Match given active entry that does not rest in the order book against
+     * opposite entries, then put the rest of it into the order book or
+     * cancel it if it is market entry or must not rest.
+     */
+    private void match (long timestamp, OrderBookEntry newEntry, boolean rest)
+        throws OrderBookException
+    {
+        OrderBookEntrySide side = newEntry.side;
+        long limitPrice = newEntry.limitPrice;
+
+        PriceLevels levels;
+        PriceLevels oppositeLevels;
+
+        switch (side)
+        {
+        case BID:
+            levels = bids;
+            oppositeLevels = asks;
+            break;
+        case ASK:
+            levels = asks;
+            oppositeLevels = bids;
+            break;
+        default:
+            throw new Error ("Unknown order book entry side: " + side);
+        }
+
+        while (newEntry.active && !auction)
+        {
+            PriceLevel level = oppositeLevels.getBestLevel ();
+
+            if (level == null) break;
+
+            long levelPrice = level.price;
+
+            if (limitPrice > 0)
+            {
+                boolean fits;
+
+                switch (side)
+                {
+                case BID:
+                    fits = limitPrice >= levelPrice;
+                    break;
+                case ASK:
+                    fits = limitPrice <= levelPrice;
+                    break;
+                default:
+                    throw new Error (
+                        "Unknown order book entry side: " + side);
+                }
+
+                if (!fits) break;
+            }
+
+            OrderBookEntry entry = level.head;
+
+            long tradeQuantity =
+                Math.min (newEntry.unfilledQuantity, entry.displayedQuantity);
+
+            switch (side)
+            {
+            case BID:
+                fill (timestamp, newEntry, entry, tradeQuantity, levelPrice);
+                break;
+            case ASK:
+                fill (timestamp, entry, newEntry, tradeQuantity, levelPrice);
+                break;
+            default:
+                throw new Error (
+                    "Unknown order book entry side: " + side);
+            }
+
+            fireOnQuote (timestamp, entry.side, levelPrice, -tradeQuantity);
+
+            replenishIfExhausted (timestamp, entry, levelPrice);
+        }
+
+        if (newEntry.active)
+        {
+            if (rest && limitPrice > 0)
+            {
+                levels.append (newEntry);
+                fireOnQuote (timestamp, side, limitPrice, newEntry.displayedQuantity);
+            }
+            else
+                cancelEntry (timestamp, newEntry);
+        }
+    }
+
+    private void replenishIfExhausted (
+        long timestamp, OrderBookEntry entry, long levelPrice)
+    {
+        if (entry.active && entry.level != null &&
+            entry.displayedQuantity == 0)
+        {
+            getPriceLevels (entry.side).replenish (entry);
+            fireOnQuote (
+                timestamp, entry.side, levelPrice, entry.displayedQuantity);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beginAuction ()
+    {
+        auction = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAuction ()
+    {
+        return auction;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long uncross (long timestamp)
+    {
+        if (depth > 0)
+            throw new IllegalStateException (
+                "Cannot uncross while order book is being updated");
+
+        long result = 0L;
+
+        enter ();
+        beginQuoteCoalescing ();
+        try
+        {
+            long price;
+
+            // Single pass normally leaves the book uncrossed, but callbacks
+            // may place crossing entries while it is being uncrossed
+            while ((price = getUncrossingPrice ()) > 0L)
+            {
+                execute (timestamp, price);
+                result = price;
+            }
+        }
+        finally
+        {
+            endQuoteCoalescing ();
+            leave ();
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long endAuction (long timestamp)
+    {
+        long result = uncross (timestamp);
+
+        auction = false;
+
+        return result;
+    }
+
+    /**
+     * Find price that maximizes executable quantity.  Candidate prices are
+     * prices of crossing levels, visited in ascending order: supply grows as
+     * ask levels are passed, while demand shrinks as bid levels are passed.
+     * Crossing bid levels are visited from the best one, so they are copied
+     * into arrays to be visited backwards.
+     */
+    private long getUncrossingPrice ()
+    {
+        PriceLevel bestBid = bids.getBestLevel ();
+        PriceLevel bestAsk = asks.getBestLevel ();
+
+        if (bestBid == null || bestAsk == null ||
+            bestBid.price < bestAsk.price) return 0L;
+
+        long bestBidPrice = bestBid.price;
+        long bestAskPrice = bestAsk.price;
+
+        int bidCount = 0;
+        long demand = 0L;
+
+        for (PriceLevel level = bestBid;
+            level != null && level.price >= bestAskPrice;
+            level = bids.getNextLevel (level))
+        {
+            if (bidCount == crossingBidPrices.length)
+            {
+                crossingBidPrices = grow (crossingBidPrices);
+                crossingBidQuantities = grow (crossingBidQuantities);
+            }
+
+            crossingBidPrices [bidCount] = level.price;
+            crossingBidQuantities [bidCount] = level.unfilledQuantity;
+            bidCount += 1;
+            demand += level.unfilledQuantity;
+        }
+
+        int bidIndex = bidCount - 1;
+        PriceLevel ask = bestAsk;
+        long supply = 0L;
+
+        long result = 0L;
+        long resultVolume = 0L;
+        long resultImbalance = 0L;
+
+        while (true)
+        {
+            boolean hasAsk = ask != null && ask.price <= bestBidPrice;
+
+            if (!hasAsk && bidIndex < 0) break;
+
+            long price = hasAsk &&
+                (bidIndex < 0 || ask.price <= crossingBidPrices [bidIndex]) ?
+                ask.price : crossingBidPrices [bidIndex];
+
+            while (ask != null && ask.price <= price)
+            {
+                supply += ask.unfilledQuantity;
+                ask = asks.getNextLevel (ask);
+            }
+
+            long volume = Math.min (demand, supply);
+            long imbalance = demand - supply;
+
+            if (volume > resultVolume ||
+                volume == resultVolume &&
+                (Math.abs (imbalance) < Math.abs (resultImbalance) ||
+                Math.abs (imbalance) == Math.abs (resultImbalance) &&
+                imbalance > 0))
+            {
+                result = price;
+                resultVolume = volume;
+                resultImbalance = imbalance;
+            }
+
+            while (bidIndex >= 0 && crossingBidPrices [bidIndex] <= price)
+            {
+                demand -= crossingBidQuantities [bidIndex];
+                bidIndex -= 1;
+            }
+        }
+
+        return result;
+    }
+
+    private static long [] grow (long [] array)
+    {
+        long [] result = new long [array.length * 2];
+        System.arraycopy (array, 0, result, 0, array.length);
+        return result;
+    }
+
+    /**
+     * Fill best bid and ask entries against each other at given price while
+     * both cross it.  Iceberg entries are filled clip by clip, so their 
+     * hidden quantity is executed after entries that were ahead of them.
+     */
+    private void execute (long timestamp, long price)
+    {
+        while (true)
+        {
+            PriceLevel bidLevel = bids.getBestLevel ();
+            PriceLevel askLevel = asks.getBestLevel ();
+
+            if (bidLevel == null || askLevel == null ||
+                bidLevel.price < price || askLevel.price > price) break;
+
+            long bidPrice = bidLevel.price;
+            long askPrice = askLevel.price;
+            OrderBookEntry bidEntry = bidLevel.head;
+            OrderBookEntry askEntry = askLevel.head;
+
+            long tradeQuantity = Math.min (
+                bidEntry.displayedQuantity, askEntry.displayedQuantity);
+
+            fill (timestamp, bidEntry, askEntry, tradeQuantity, price);
+
+            fireOnQuote (
+                timestamp, OrderBookEntrySide.BID, bidPrice, -tradeQuantity);
+            fireOnQuote (
+                timestamp, OrderBookEntrySide.ASK, askPrice, -tradeQuantity);
+
+            replenishIfExhausted (timestamp, bidEntry, bidPrice);
+            replenishIfExhausted (timestamp, askEntry, askPrice);
+        }
+    }
+
+    private void amendEntry (
+        long timestamp, OrderBookEntry entry,
+        long newQuantity, long newLimitPrice)
+        throws OrderBookException
+    {
+        if (entry == null)
+            throw new IllegalArgumentException ("Entry is null");
+
+        if (newQuantity <= 0)
+            throw new IllegalArgumentException ("New quantity <= 0");
+
+        if (newLimitPrice <= 0)
+            throw new IllegalArgumentException ("New limit price <= 0");
+
+        if (entry.getOrderBook () != this)
+            throw new IllegalArgumentException (
+                "This order book entry is not mine");
+
+        if (!entry.active)
+            throw new OrderBookException ("Entry is not active");
+
+        if (entry.level == null)
+            throw new OrderBookException ("Entry is being matched");
+
+        OrderBookEntrySide side = entry.side;
+        PriceLevels levels = getPriceLevels (side);
+        long limitPrice = entry.limitPrice;
+        long displayedQuantity = entry.displayedQuantity;
+
+        if (newLimitPrice == limitPrice &&
+            newQuantity <= entry.unfilledQuantity)
+        {
+            levels.reduce (entry, newQuantity);
+
+            if (entry.displayedQuantity != displayedQuantity)
+                fireOnQuote (
+                    timestamp, side, limitPrice,
+                    entry.displayedQuantity - displayedQuantity);
+        }
+        else
+        {
+            levels.unlink (entry);
+            fireOnQuote (timestamp, side, limitPrice, -displayedQuantity);
+
+            entry.sequentialNumber = sequentialNumber++;
+            entry.limitPrice = newLimitPrice;
+            entry.unfilledQuantity = newQuantity;
+
+            match (timestamp, entry, true);
+        }
+    }
+
+    /**
+     * Return number of entries resting in the order book on given side.
+     * Filled and canceled entries are removed from the order book
+     * immediately, so this is also the number of entries order book keeps
+     * references to.
+     *
+     * @param side side of the order book
+     * @return number of resting entries
+     */
+    public int getEntryCount (OrderBookEntrySide side)
+    {
+        return getPriceLevels (side).entryCount;
+    }
+
+    /**
+     * Return number of non-empty price levels on given side of the order book.
+     *
+     * @param side side of the order book
+     * @return number of price levels
+     */
+    public int getPriceLevelCount (OrderBookEntrySide side)
+    {
+        return getPriceLevels (side).levelCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OrderBookSnapshot getSnapshot (int maximumDepth)
+    {
+        if (maximumDepth < 0)
+            throw new IllegalArgumentException ("Maximum depth < 0");
+
+        if (depth > 0)
+            throw new IllegalStateException (
+                "Cannot take snapshot while order book is being updated");
+
+        // Listeners should see all changes included into the snapshot
+        flushCoalescedQuotes ();
+
+        int bidCount = Math.min (bids.levelCount, maximumDepth);
+        long [] bidPrices = new long [bidCount];
+        long [] bidQuantities = new long [bidCount];
+        copyLevels (bids, bidPrices, bidQuantities);
+
+        int askCount = Math.min (asks.levelCount, maximumDepth);
+        long [] askPrices = new long [askCount];
+        long [] askQuantities = new long [askCount];
+        copyLevels (asks, askPrices, askQuantities);
+
+        return new OrderBookSnapshot (
+            getSequenceNumber (),
+            bidPrices, bidQuantities, askPrices, askQuantities);
+    }
+
+    private static void copyLevels (
+        PriceLevels levels, long [] prices, long [] quantities)
+    {
+        PriceLevel level = levels.getBestLevel ();
+
+        for (int i = 0; i < prices.length; i++)
+        {
+            prices [i] = level.getPrice ();
+            quantities [i] = level.getQuantity ();
+            level = levels.getNextLevel (level);
+        }
+    }
+
+    private PriceLevels getPriceLevels (OrderBookEntrySide side)
+    {
+        if (side == null)
+            throw new IllegalArgumentException ("Side is null");
+
+        switch (side)
+        {
+        case BID:
+            return bids;
+        case ASK:
+            return asks;
+        default:
+            throw new Error ("Unknown order book entry side: " + side);
+        }
+    }
+
+    private void fill (long timestamp, OrderBookEntry bidEntry, OrderBookEntry askEntry, long quantity, long price)
+    {
+        if (bidEntry == null)
+            throw new IllegalArgumentException ("Bid entry is null");
+
+        if (askEntry == null)
+            throw new IllegalArgumentException ("Ask entry is null");
+
+        if (!OrderBookEntrySide.BID.equals (bidEntry.getEntrySide ()))
+            throw new IllegalArgumentException ("Bid entry is not bid");
+
+        if (!OrderBookEntrySide.ASK.equals (askEntry.getEntrySide ()))
+            throw new IllegalArgumentException ("Ask entry is not ask");
+
+        if (quantity <= 0)
+            throw new IllegalArgumentException ("Quantity <= 0");
+
+        if (price <= 0)
+            throw new IllegalArgumentException ("Price <= 0");
+
+        if (bidEntry.getOrderBook () != this)
+            throw new IllegalArgumentException (
+                "This order book entry is not mine");
+
+        if (askEntry.getOrderBook () != this)
+            throw new IllegalArgumentException (
+                "This order book entry is not mine");
+
+        if (!bidEntry.active)
+            throw new IllegalStateException ("Bid entry is not active");
+
+        if (!askEntry.active)
+            throw new IllegalStateException ("Ask entry is not active");
+
+        if (quantity > bidEntry.unfilledQuantity)
+            throw new IllegalStateException ("Not enough unfilled quantity in bid entry");
+
+        if (quantity > askEntry.unfilledQuantity)
+            throw new IllegalStateException ("Not enough unfilled quantity in ask entry");
+
+        fillEntry (
+            timestamp, bidEntry, quantity, price);
+        fillEntry (
+            timestamp, askEntry, quantity, price);
+
+        fireOnTrade (timestamp, bidEntry, askEntry, quantity, price);
+    }
+
+    private void fillEntry (
+        long timestamp, OrderBookEntry entry, long quantity, long price)
+    {
+        if (entry == null)
+            throw new IllegalArgumentException ("Entry is null");
+
+        if (quantity <= 0)
+            throw new IllegalArgumentException ("Quantity <= 0");
+
+        if (price <= 0)
+            throw new IllegalArgumentException ("Price <= 0");
+
+        if (entry.getOrderBook () != this)
+            throw new IllegalArgumentException (
+                "This order book entry is not mine");
+
+        if (!entry.active)
+            throw new IllegalStateException ("Entry is not active");
+
+        if (quantity > entry.unfilledQuantity)
+            throw new IllegalStateException ("Not enough unfilled quantity");
+
+        entry.unfilledQuantity -= quantity;
+
+        PriceLevel level = entry.level;
+        if (level != null)
+        {
+            level.quantity -= quantity;
+            level.unfilledQuantity -= quantity;
+            entry.displayedQuantity -= quantity;
+        }
+
+        entry.callback.onFill (timestamp, entry, quantity, price);
+
+        if (entry.unfilledQuantity == 0)
+        {
+            entry.active = false;
+
+            if (entry.level != null)
+                unlink (entry);
+
+            entry.callback.onFilled (timestamp, entry);
+
+            retire (entry);
+        }
+    }
+
+    private void cancelEntry (long timestamp, OrderBookEntry entry)
+        throws OrderBookException
+    {
+        if (entry == null)
+            throw new IllegalArgumentException ("Entry is null");
+
+        if (entry.getOrderBook () != this)
+            throw new IllegalArgumentException (
+                "This order book entry is not mine");
+
+        if (!entry.active)
+            throw new OrderBookException ("Entry is not active");
+
+        entry.active = false;
+
+        if (entry.level != null)
+            unlink (entry);
+
+        entry.callback.onCanceled (timestamp, entry);
+
+        retire (entry);
+    }
+
+    private void retire (OrderBookEntry entry)
+    {
+        if (poolEntries)
+        {
+            entry.next = retiredEntries;
+            retiredEntries = entry;
+        }
+    }
+
+    private void enter ()
+    {
+        if (depth++ == 0 && isCoalesceQuotes ())
+        {
+            beginQuoteCoalescing ();
+            coalescing = true;
+        }
+    }
+
+    private void leave ()
+    {
+        if (--depth == 0)
+        {
+            releaseRetiredEntries ();
+
+            if (coalescing)
+            {
+                coalescing = false;
+                endQuoteCoalescing ();
+            }
+        }
+    }
+
+    private void releaseRetiredEntries ()
+    {
+        while (retiredEntries != null)
+        {
+            OrderBookEntry entry = retiredEntries;
+            retiredEntries = entry.next;
+
+            entry.callback = null;
+            entry.closure = null;
+            entry.next = freeEntries;
+            freeEntries = entry;
+        }
+    }
+
+    private void unlink (OrderBookEntry entry)
+    {
+        getPriceLevels (entry.side).unlink (entry);
+    }
+
+    private class OrderBookEntry implements OrderBookEntryHandler
+    {
+        public OrderBookEntrySide side;
+        public long sequentialNumber;
+        public long limitPrice;
+        public long unfilledQuantity;
+        public long visibleQuantity;
+        public long displayedQuantity;
+        public OrderBookEntryCallback callback;
+        public Object closure;
+        public boolean active;
+
+        public PriceLevel level = null;
+        public OrderBookEntry previous = null;
+        public OrderBookEntry next = null;
+
+        public void init (
+            long sequentialNumber,
+            OrderBookEntrySide side, long limitPrice, long unfilledQuantity,
+            long visibleQuantity,
+            OrderBookEntryCallback callback, Object closure)
+        {
+            if (side == null)
+                throw new IllegalArgumentException ("Side is null");
+
+            if (limitPrice < 0)
+                throw new IllegalArgumentException ("Price < 0");
+
+            if (unfilledQuantity <= 0)
+                throw new IllegalArgumentException ("Unfilled quantity <= 0");
+
+            if (visibleQuantity < 0)
+                throw new IllegalArgumentException ("Visible quantity < 0");
+
+            if (callback == null)
+                throw new IllegalArgumentException ("Callback is null");
+
+            this.sequentialNumber = sequentialNumber;
+            this.side = side;
+            this.limitPrice = limitPrice;
+            this.unfilledQuantity = unfilledQuantity;
+            this.visibleQuantity = visibleQuantity;
+            this.displayedQuantity = 0L;
+            this.closure = closure;
+            this.callback = callback;
+            this.active = true;
+        }
+
+        @Override
+        public OrderBookEntrySide getEntrySide ()
+        {
+            return side;
+        }
+
+        @Override
+        public long getUnfilledQuantity ()
+        {
+            return unfilledQuantity;
+        }
+
+        @Override
+        public long getLimitPrice ()
+        {
+            return limitPrice;
+        }
+
+        @Override
+        public Object getClosure ()
+        {
+            return closure;
+        }
+
+        @Override
+        public void cancel (long timestamp) throws OrderBookException
+        {
+            enter ();
+            try
+            {
+                long quantityDelta = -displayedQuantity;
+
+                cancelEntry (timestamp, this);
+                fireOnQuote (timestamp, side, limitPrice, quantityDelta);
+            }
+            finally
+            {
+                leave ();
+            }
+        }
+
+        @Override
+        public void amend (
+            long timestamp, long newQuantity, long newLimitPrice)
+            throws OrderBookException
+        {
+            enter ();
+            try
+            {
+                amendEntry (timestamp, this, newQuantity, newLimitPrice);
+            }
+            finally
+            {
+                leave ();
+            }
+        }
+
+        public AbstractPriceLevelOrderBook getOrderBook ()
+        {
+            return AbstractPriceLevelOrderBook.this;
+        }
+    }
+
+    /**
+     * FIFO queue of entries having the same side and limit price.
+     */
+    protected final static class PriceLevel
+    {
+        private long price;
+        private long quantity;
+        private long unfilledQuantity;
+        private int entryCount;
+        private OrderBookEntry head;
+        private OrderBookEntry tail;
+        private PriceLevel nextFree = null;
+
+        /**
+         * Key of the price level, reserved for use by {@link PriceLevels}
+         * implementation.
+         */
+        public long key;
+
+        /**
+         * Index of the price level, reserved for use by {@link PriceLevels}
+         * implementation.
+         */
+        public int index;
+
+        private PriceLevel ()
+        {
+            // Do nothing
+        }
+
+        /**
+         * Return limit price of entries at this price level in price units.
+         */
+        public long getPrice ()
+        {
+            return price;
+        }
+
+        /**
+         * Return total visible quantity of entries at this price level in
+         * quantity units.  This is unfilled quantity of ordinary entries plus
+         * displayed clips of iceberg entries.
+         */
+        public long getQuantity ()
+        {
+            return quantity;
+        }
+
+        /**
+         * Return number of entries at this price level.
+         */
+        public int getEntryCount ()
+        {
+            return entryCount;
+        }
+    }
+
+    /**
+     * Price levels of one side of the order book.  Implementations index
+     * non-empty price levels by price, while queues inside price levels are
+     * maintained by this class.
+     */
+    protected abstract static class PriceLevels
+    {
+        private int entryCount = 0;
+        private int levelCount = 0;
+        private PriceLevel freeLevels = null;
+
+        /**
+         * Return best (highest for bids, lowest for asks) non-empty price
+         * level or <code>null</code> if there are no price levels.
+         *
+         * @return best price level or <code>null</code>
+         */
+        protected abstract PriceLevel getBestLevel ();
+
+        /**
+         * Return price level with given price, creating it via
+         * {@link #newLevel(long)} if there is no such level yet.
+         *
+         * @param price price in price units
+         * @return price level with given price
+         */
+        protected abstract PriceLevel getOrCreateLevel (long price);
+
+        /**
+         * Remove given empty price level from the index.  Price level is
+         * recycled after this method returns.
+         *
+         * @param level price level to remove
+         */
+        protected abstract void removeLevel (PriceLevel level);
+
+        /**
+         * Return price level next to given level, i.e. the best level that
+         * is worse than given one.  Called only after {@link #getBestLevel()}
+         * without intermediate modifications.
+         *
+         * @param level price level to find next level for
+         * @return next price level or <code>null</code> if given level is the
+         *         worst one
+         */
+        protected abstract PriceLevel getNextLevel (PriceLevel level);
+
+        /**
+         * Create new empty price level with given price.  Price levels
+         * removed from the index are reused.
+         *
+         * @param price price in price units
+         * @return new price level
+         */
+        protected final PriceLevel newLevel (long price)
+        {
+            PriceLevel level = freeLevels;
+
+            if (level == null)
+                level = new PriceLevel ();
+            else
+            {
+                freeLevels = level.nextFree;
+                level.nextFree = null;
+            }
+
+            level.price = price;
+            level.key = 0L;
+            level.index = -1;
+            levelCount += 1;
+
+            return level;
+        }
+
+        private void append (OrderBookEntry entry)
+        {
+            PriceLevel level = getOrCreateLevel (entry.limitPrice);
+
+            entry.level = level;
+            entry.previous = level.tail;
+            entry.next = null;
+
+            if (level.tail == null)
+                level.head = entry;
+            else level.tail.next = entry;
+
+            level.tail = entry;
+            entry.displayedQuantity = getClip (entry);
+            level.quantity += entry.displayedQuantity;
+            level.unfilledQuantity += entry.unfilledQuantity;
+            level.entryCount += 1;
+            entryCount += 1;
+        }
+
+        private void replenish (OrderBookEntry entry)
+        {
+            PriceLevel level = entry.level;
+
+            if (entry != level.tail)
+            {
+                if (entry.previous == null)
+                    level.head = entry.next;
+                else entry.previous.next = entry.next;
+
+                entry.next.previous = entry.previous;
+
+                entry.previous = level.tail;
+                entry.next = null;
+                level.tail.next = entry;
+                level.tail = entry;
+            }
+
+            entry.displayedQuantity = getClip (entry);
+            level.quantity += entry.displayedQuantity;
+        }
+
+        private void reduce (OrderBookEntry entry, long newQuantity)
+        {
+            PriceLevel level = entry.level;
+
+            level.quantity -= entry.displayedQuantity;
+            level.unfilledQuantity -= entry.unfilledQuantity - newQuantity;
+            entry.unfilledQuantity = newQuantity;
+            entry.displayedQuantity =
+                Math.min (entry.displayedQuantity, newQuantity);
+            level.quantity += entry.displayedQuantity;
+        }
+
+        private static long getClip (OrderBookEntry entry)
+        {
+            long visibleQuantity = entry.visibleQuantity;
+
+            return visibleQuantity > 0L ?
+                Math.min (visibleQuantity, entry.unfilledQuantity) :
+                entry.unfilledQuantity;
+        }
+
+        private void unlink (OrderBookEntry entry)
+        {
+            PriceLevel level = entry.level;
+
+            if (entry.previous == null)
+                level.head = entry.next;
+            else entry.previous.next = entry.next;
+
+            if (entry.next == null)
+                level.tail = entry.previous;
+            else entry.next.previous = entry.previous;
+
+            level.quantity -= entry.displayedQuantity;
+            level.unfilledQuantity -= entry.unfilledQuantity;
+            level.entryCount -= 1;
+            entryCount -= 1;
+
+            entry.level = null;
+            entry.previous = null;
+            entry.next = null;
+            entry.displayedQuantity = 0L;
+
+            if (level.head == null)
+            {
+                removeLevel (level);
+
+                levelCount -= 1;
+                level.price = 0L;
+                level.quantity = 0L;
+                level.unfilledQuantity = 0L;
+                level.tail = null;
+                level.nextFree = freeLevels;
+                freeLevels = level;
+            }
+        }
+    }
+}
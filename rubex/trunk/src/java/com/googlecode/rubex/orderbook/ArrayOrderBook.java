@@ -0,0 +1,1183 @@
+package com.googlecode.rubex.orderbook;
+
+import java.util.Arrays;
+
+import com.googlecode.rubex.utils.LongLongTreeMap;
+
+/**
+ * Implementation of {@link OrderBook} interface that keeps entries and price
+ * levels in parallel primitive arrays rather than in objects.  Entries are
+ * addressed by <code>int</code> slots, FIFO queues of price levels are linked
+ * by slot numbers, and price levels are indexed by {@link LongLongTreeMap},
+ * so garbage collector does not have to trace resting entries, and the only
+ * object per entry is its small handler that keeps callback, closure and
+ * slot number.  Slots of filled and canceled entries are put into a free list
+ * and reused, and arrays grow only when there are more resting entries than
+ * ever before.
+ * <p>
+ * Resting entry costs 49 bytes in slot arrays plus its handler, which takes
+ * 48 bytes with compressed references, so handler is about half of the
+ * footprint of a resting entry, see <code>OrderBookFootprintBenchmark</code>.
+ * By default, new handler is allocated for every placed entry, and handler
+ * of released entry is left to garbage collector.  Optionally, handlers may
+ * be pooled as well, see {@link #setPoolEntries(boolean)}, which makes
+ * steady-state placing, filling and canceling of entries free of
+ * allocations, but then handler must not be used once its entry is released.
+ * <p>
+ * Slot of an entry is released once the outermost call into the order book
+ * returns after the entry was filled or canceled.  Handler of released entry
+ * that is not pooled still reports its side, closure, and unfilled quantity
+ * and limit price the entry had when it was released.
+ * <p>
+ * Matching rules, including iceberg entries, fill or kill entries and
+ * auctions, are the same as in {@link AbstractPriceLevelOrderBook}.
+ *
+ * @author Mikhail Vladimirov
+ */
+public class ArrayOrderBook extends AbstractOrderBook
+{
+    /**
+     * Default number of entry slots allocated in advance.
+     */
+    public final static int DEFAULT_CAPACITY = 1024;
+
+    private final static int INITIAL_LEVEL_CAPACITY = 64;
+
+    private final static int NONE = -1;
+
+    // Slot numbers of released handlers, that remember side of the entry
+    private final static int RELEASED_BID = -1;
+    private final static int RELEASED_ASK = -2;
+
+    private final static byte ASK_FLAG = 1;
+    private final static byte ACTIVE_FLAG = 2;
+
+    private long [] entryLimitPrices;
+    private long [] entryUnfilledQuantities;
+    private long [] entryVisibleQuantities;
+    private long [] entryDisplayedQuantities;
+    private int [] entryLevels;
+    private int [] entryPrevious;
+    private int [] entryNext;
+    private byte [] entryFlags;
+    private MyEntryHandler [] entryHandlers;
+    private int entrySlotCount = 0;
+    private int freeEntries = NONE;
+    private int retiredEntries = NONE;
+
+    private boolean poolEntries = false;
+    private MyEntryHandler freeHandlers = null;
+
+    private long [] levelPrices;
+    private long [] levelQuantities;
+    private long [] levelUnfilledQuantities;
+    private int [] levelHeads;
+    private int [] levelTails;
+    private int levelSlotCount = 0;
+    private int freeLevels = NONE;
+
+    private final MySide bids = new MySide (OrderBookEntrySide.BID);
+    private final MySide asks = new MySide (OrderBookEntrySide.ASK);
+
+    private int depth = 0;
+    private boolean coalescing = false;
+
+    private boolean auction = false;
+    private long [] crossingBidPrices = new long [16];
+    private long [] crossingBidQuantities = new long [16];
+
+    /**
+     * Create new empty order book with default capacity.
+     */
+    public ArrayOrderBook ()
+    {
+        this (DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create new empty order book with given capacity.  Order book holds
+     * given number of entries without growing its arrays.
+     *
+     * @param capacity number of entry slots to allocate in advance
+     */
+    public ArrayOrderBook (int capacity)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException ("Capacity <= 0");
+
+        entryLimitPrices = new long [capacity];
+        entryUnfilledQuantities = new long [capacity];
+        entryVisibleQuantities = new long [capacity];
+        entryDisplayedQuantities = new long [capacity];
+        entryLevels = new int [capacity];
+        entryPrevious = new int [capacity];
+        entryNext = new int [capacity];
+        entryFlags = new byte [capacity];
+        entryHandlers = new MyEntryHandler [capacity];
+
+        levelPrices = new long [INITIAL_LEVEL_CAPACITY];
+        levelQuantities = new long [INITIAL_LEVEL_CAPACITY];
+        levelUnfilledQuantities = new long [INITIAL_LEVEL_CAPACITY];
+        levelHeads = new int [INITIAL_LEVEL_CAPACITY];
+        levelTails = new int [INITIAL_LEVEL_CAPACITY];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OrderBookEntryHandler placeEntry (long timestamp,
+        OrderBookEntrySide side, long quantity, long limitPrice,
+        OrderBookEntryCallback callback, Object closure)
+        throws OrderBookException
+    {
+        if (side == null)
+            throw new IllegalArgumentException ("Side is null");
+
+        if (quantity <= 0)
+            throw new IllegalArgumentException ("Quantity <= 0");
+
+        if (limitPrice < 0)
+            throw new IllegalArgumentException ("Limit price < 0");
+
+        if (callback == null)
+            throw new IllegalArgumentException ("Callback is null");
+
+        enter ();
+        try
+        {
+            int slot = newEntry (
+                side, quantity, limitPrice, 0L, callback, closure);
+            MyEntryHandler handler = entryHandlers [slot];
+
+            match (timestamp, slot, true);
+
+            return handler;
+        }
+        finally
+        {
+            leave ();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OrderBookEntryHandler placeIcebergEntry (long timestamp,
+        OrderBookEntrySide side, long quantity, long limitPrice,
+        long visibleQuantity, OrderBookEntryCallback callback, Object closure)
+        throws OrderBookException
+    {
+        if (side == null)
+            throw new IllegalArgumentException ("Side is null");
+
+        if (quantity <= 0)
+            throw new IllegalArgumentException ("Quantity <= 0");
+
+        if (limitPrice <= 0)
+            throw new IllegalArgumentException ("Limit price <= 0");
+
+        if (visibleQuantity <= 0)
+            throw new IllegalArgumentException ("Visible quantity <= 0");
+
+        if (callback == null)
+            throw new IllegalArgumentException ("Callback is null");
+
+        enter ();
+        try
+        {
+            int slot = newEntry (
+                side, quantity, limitPrice, visibleQuantity, callback,
+                closure);
+            MyEntryHandler handler = entryHandlers [slot];
+
+            match (timestamp, slot, true);
+
+            return handler;
+        }
+        finally
+        {
+            leave ();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OrderBookEntryHandler placeFillOrKillEntry (long timestamp,
+        OrderBookEntrySide side, long quantity, long limitPrice,
+        OrderBookEntryCallback callback, Object closure)
+        throws OrderBookException
+    {
+        if (side == null)
+            throw new IllegalArgumentException ("Side is null");
+
+        if (quantity <= 0)
+            throw new IllegalArgumentException ("Quantity <= 0");
+
+        if (limitPrice < 0)
+            throw new IllegalArgumentException ("Limit price < 0");
+
+        if (callback == null)
+            throw new IllegalArgumentException ("Callback is null");
+
+        enter ();
+        try
+        {
+            int slot = newEntry (
+                side, quantity, limitPrice, 0L, callback, closure);
+            MyEntryHandler handler = entryHandlers [slot];
+
+            if (!auction && isFillable (side, quantity, limitPrice))
+                match (timestamp, slot, false);
+            else cancelEntry (timestamp, slot);
+
+            return handler;
+        }
+        finally
+        {
+            leave ();
+        }
+    }
+
+    /**
+     * Tells whether this order book reuses handlers of released entries.
+     *
+     * @return <code>true</code> if handlers are pooled, <code>false</code>
+     *         otherwise
+     */
+    public boolean isPoolEntries ()
+    {
+        return poolEntries;
+    }
+
+    /**
+     * Set whether this order book should reuse handlers of released entries
+     * for new entries.  When handlers are pooled, handler must not be used
+     * once its entry is released, i.e. after
+     * {@link OrderBookEntryCallback#onFilled(long, OrderBookEntryHandler)} or
+     * {@link OrderBookEntryCallback#onCanceled(long, OrderBookEntryHandler)}
+     * was called for it and the outermost call into the order book returned.
+     *
+     * @param poolEntries <code>true</code> to pool handlers,
+     *        <code>false</code> to create new handler for each placement
+     */
+    public void setPoolEntries (boolean poolEntries)
+    {
+        this.poolEntries = poolEntries;
+
+        if (!poolEntries)
+            freeHandlers = null;
+    }
+
+    private boolean isFillable (
+        OrderBookEntrySide side, long quantity, long limitPrice)
+    {
+        boolean isBid = isBid (side);
+        MySide oppositeSide = isBid ? asks : bids;
+        LongLongTreeMap index = oppositeSide.index;
+
+        long remainingQuantity = quantity;
+
+        for (int rank = 0; rank < index.size (); rank++)
+        {
+            int level = (int)index.getValue (rank) - 1;
+            long levelPrice = levelPrices [level];
+
+            if (limitPrice > 0 &&
+                (isBid ? limitPrice < levelPrice : limitPrice > levelPrice))
+                return false;
+
+            remainingQuantity -= levelUnfilledQuantities [level];
+
+            if (remainingQuantity <= 0) return true;
+        }
+
+        return false;
+    }
+
+    private int newEntry (
+        OrderBookEntrySide side, long quantity, long limitPrice,
+        long visibleQuantity, OrderBookEntryCallback callback, Object closure)
+    {
+        int slot = freeEntries;
+
+        if (slot == NONE)
+        {
+            if (entrySlotCount == entryFlags.length)
+                growEntries ();
+
+            slot = entrySlotCount++;
+        }
+        else freeEntries = entryNext [slot];
+
+        entryLimitPrices [slot] = limitPrice;
+        entryUnfilledQuantities [slot] = quantity;
+        entryVisibleQuantities [slot] = visibleQuantity;
+        entryDisplayedQuantities [slot] = 0L;
+        entryLevels [slot] = NONE;
+        entryPrevious [slot] = NONE;
+        entryNext [slot] = NONE;
+        entryFlags [slot] = isBid (side) ? ACTIVE_FLAG : ASK_FLAG | ACTIVE_FLAG;
+        entryHandlers [slot] = newHandler (slot, callback, closure);
+
+        return slot;
+    }
+
+    private MyEntryHandler newHandler (
+        int slot, OrderBookEntryCallback callback, Object closure)
+    {
+        MyEntryHandler handler = freeHandlers;
+
+        if (handler == null)
+            return new MyEntryHandler (slot, callback, closure);
+
+        freeHandlers = handler.next;
+
+        handler.slot = slot;
+        handler.callback = callback;
+        handler.closure = closure;
+        handler.next = null;
+
+        return handler;
+    }
+
+    private void growEntries ()
+    {
+        int capacity = entryFlags.length * 2;
+
+        entryLimitPrices = Arrays.copyOf (entryLimitPrices, capacity);
+        entryUnfilledQuantities =
+            Arrays.copyOf (entryUnfilledQuantities, capacity);
+        entryVisibleQuantities =
+            Arrays.copyOf (entryVisibleQuantities, capacity);
+        entryDisplayedQuantities =
+            Arrays.copyOf (entryDisplayedQuantities, capacity);
+        entryLevels = Arrays.copyOf (entryLevels, capacity);
+        entryPrevious = Arrays.copyOf (entryPrevious, capacity);
+        entryNext = Arrays.copyOf (entryNext, capacity);
+        entryFlags = Arrays.copyOf (entryFlags, capacity);
+        entryHandlers = Arrays.copyOf (entryHandlers, capacity);
+    }
+
+    private boolean isActive (int slot)
+    {
+        return (entryFlags [slot] & ACTIVE_FLAG) != 0;
+    }
+
+    private MySide getSide (int slot)
+    {
+        return (entryFlags [slot] & ASK_FLAG) != 0 ? asks : bids;
+    }
+
+    /**
+     * Match given active entry that does not rest in the order book against
+     * opposite entries, then put the rest of it into the order book or
+     * cancel it if it is market entry or must not rest.  Arrays may be
+     * replaced by callbacks that place new entries, so they are never cached
+     * in local variables.
+     */
+    private void match (long timestamp, int slot, boolean rest)
+        throws OrderBookException
+    {
+        MySide side = getSide (slot);
+        MySide oppositeSide = side.isBid ? asks : bids;
+        long limitPrice = entryLimitPrices [slot];
+
+        while (isActive (slot) && !auction)
+        {
+            int level = oppositeSide.getBestLevel ();
+
+            if (level == NONE) break;
+
+            long levelPrice = levelPrices [level];
+
+            if (limitPrice > 0 && (side.isBid ?
+                limitPrice < levelPrice : limitPrice > levelPrice)) break;
+
+            int entry = levelHeads [level];
+
+            long tradeQuantity = Math.min (
+                entryUnfilledQuantities [slot],
+                entryDisplayedQuantities [entry]);
+
+            if (side.isBid)
+                fill (timestamp, slot, entry, tradeQuantity, levelPrice);
+            else
+                fill (timestamp, entry, slot, tradeQuantity, levelPrice);
+
+            fireOnQuote (
+                timestamp, oppositeSide.side, levelPrice, -tradeQuantity);
+
+            replenishIfExhausted (timestamp, entry, levelPrice);
+        }
+
+        if (isActive (slot))
+        {
+            if (rest && limitPrice > 0)
+            {
+                append (slot);
+                fireOnQuote (
+                    timestamp, side.side, limitPrice,
+                    entryDisplayedQuantities [slot]);
+            }
+            else
+                cancelEntry (timestamp, slot);
+        }
+    }
+
+    private void replenishIfExhausted (
+        long timestamp, int slot, long levelPrice)
+    {
+        if (isActive (slot) && entryLevels [slot] != NONE &&
+            entryDisplayedQuantities [slot] == 0)
+        {
+            replenish (slot);
+            fireOnQuote (
+                timestamp, getSide (slot).side, levelPrice,
+                entryDisplayedQuantities [slot]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beginAuction ()
+    {
+        auction = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAuction ()
+    {
+        return auction;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long uncross (long timestamp)
+    {
+        if (depth > 0)
+            throw new IllegalStateException (
+                "Cannot uncross while order book is being updated");
+
+        long result = 0L;
+
+        enter ();
+        beginQuoteCoalescing ();
+        try
+        {
+            long price;
+
+            // Single pass normally leaves the book uncrossed, but callbacks
+            // may place crossing entries while it is being uncrossed
+            while ((price = getUncrossingPrice ()) > 0L)
+            {
+                execute (timestamp, price);
+                result = price;
+            }
+        }
+        finally
+        {
+            endQuoteCoalescing ();
+            leave ();
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long endAuction (long timestamp)
+    {
+        long result = uncross (timestamp);
+
+        auction = false;
+
+        return result;
+    }
+
+    /**
+     * Find price that maximizes executable quantity, the same way
+     * {@link AbstractPriceLevelOrderBook} does.
+     */
+    private long getUncrossingPrice ()
+    {
+        int bestBid = bids.getBestLevel ();
+        int bestAsk = asks.getBestLevel ();
+
+        if (bestBid == NONE || bestAsk == NONE ||
+            levelPrices [bestBid] < levelPrices [bestAsk]) return 0L;
+
+        long bestBidPrice = levelPrices [bestBid];
+        long bestAskPrice = levelPrices [bestAsk];
+
+        int bidCount = 0;
+        long demand = 0L;
+
+        for (int rank = 0; rank < bids.index.size (); rank++)
+        {
+            int level = (int)bids.index.getValue (rank) - 1;
+
+            if (levelPrices [level] < bestAskPrice) break;
+
+            if (bidCount == crossingBidPrices.length)
+            {
+                crossingBidPrices = Arrays.copyOf (
+                    crossingBidPrices, bidCount * 2);
+                crossingBidQuantities = Arrays.copyOf (
+                    crossingBidQuantities, bidCount * 2);
+            }
+
+            crossingBidPrices [bidCount] = levelPrices [level];
+            crossingBidQuantities [bidCount] = levelUnfilledQuantities [level];
+            bidCount += 1;
+            demand += levelUnfilledQuantities [level];
+        }
+
+        int bidIndex = bidCount - 1;
+        int askRank = 0;
+        int askCount = asks.index.size ();
+        long supply = 0L;
+
+        long result = 0L;
+        long resultVolume = 0L;
+        long resultImbalance = 0L;
+
+        while (true)
+        {
+            long askPrice = askRank < askCount ?
+                levelPrices [(int)asks.index.getValue (askRank) - 1] : 0L;
+            boolean hasAsk = askRank < askCount && askPrice <= bestBidPrice;
+
+            if (!hasAsk && bidIndex < 0) break;
+
+            long price = hasAsk &&
+                (bidIndex < 0 || askPrice <= crossingBidPrices [bidIndex]) ?
+                askPrice : crossingBidPrices [bidIndex];
+
+            while (askRank < askCount)
+            {
+                int level = (int)asks.index.getValue (askRank) - 1;
+
+                if (levelPrices [level] > price) break;
+
+                supply += levelUnfilledQuantities [level];
+                askRank += 1;
+            }
+
+            long volume = Math.min (demand, supply);
+            long imbalance = demand - supply;
+
+            if (volume > resultVolume ||
+                volume == resultVolume &&
+                (Math.abs (imbalance) < Math.abs (resultImbalance) ||
+                Math.abs (imbalance) == Math.abs (resultImbalance) &&
+                imbalance > 0))
+            {
+                result = price;
+                resultVolume = volume;
+                resultImbalance = imbalance;
+            }
+
+            while (bidIndex >= 0 && crossingBidPrices [bidIndex] <= price)
+            {
+                demand -= crossingBidQuantities [bidIndex];
+                bidIndex -= 1;
+            }
+        }
+
+        return result;
+    }
+
+    private void execute (long timestamp, long price)
+    {
+        while (true)
+        {
+            int bidLevel = bids.getBestLevel ();
+            int askLevel = asks.getBestLevel ();
+
+            if (bidLevel == NONE || askLevel == NONE ||
+                levelPrices [bidLevel] < price ||
+                levelPrices [askLevel] > price) break;
+
+            long bidPrice = levelPrices [bidLevel];
+            long askPrice = levelPrices [askLevel];
+            int bidEntry = levelHeads [bidLevel];
+            int askEntry = levelHeads [askLevel];
+
+            long tradeQuantity = Math.min (
+                entryDisplayedQuantities [bidEntry],
+                entryDisplayedQuantities [askEntry]);
+
+            fill (timestamp, bidEntry, askEntry, tradeQuantity, price);
+
+            fireOnQuote (
+                timestamp, OrderBookEntrySide.BID, bidPrice, -tradeQuantity);
+            fireOnQuote (
+                timestamp, OrderBookEntrySide.ASK, askPrice, -tradeQuantity);
+
+            replenishIfExhausted (timestamp, bidEntry, bidPrice);
+            replenishIfExhausted (timestamp, askEntry, askPrice);
+        }
+    }
+
+    private void amendEntry (
+        long timestamp, int slot, long newQuantity, long newLimitPrice)
+        throws OrderBookException
+    {
+        if (newQuantity <= 0)
+            throw new IllegalArgumentException ("New quantity <= 0");
+
+        if (newLimitPrice <= 0)
+            throw new IllegalArgumentException ("New limit price <= 0");
+
+        if (slot < 0 || !isActive (slot))
+            throw new OrderBookException ("Entry is not active");
+
+        if (entryLevels [slot] == NONE)
+            throw new OrderBookException ("Entry is being matched");
+
+        OrderBookEntrySide side = getSide (slot).side;
+        long limitPrice = entryLimitPrices [slot];
+        long displayedQuantity = entryDisplayedQuantities [slot];
+
+        if (newLimitPrice == limitPrice &&
+            newQuantity <= entryUnfilledQuantities [slot])
+        {
+            reduce (slot, newQuantity);
+
+            if (entryDisplayedQuantities [slot] != displayedQuantity)
+                fireOnQuote (
+                    timestamp, side, limitPrice,
+                    entryDisplayedQuantities [slot] - displayedQuantity);
+        }
+        else
+        {
+            unlink (slot);
+            fireOnQuote (timestamp, side, limitPrice, -displayedQuantity);
+
+            entryLimitPrices [slot] = newLimitPrice;
+            entryUnfilledQuantities [slot] = newQuantity;
+
+            match (timestamp, slot, true);
+        }
+    }
+
+    /**
+     * Return number of entries resting in the order book on given side.
+     *
+     * @param side side of the order book
+     * @return number of resting entries
+     */
+    public int getEntryCount (OrderBookEntrySide side)
+    {
+        return getSide (side).entryCount;
+    }
+
+    /**
+     * Return number of non-empty price levels on given side of the order book.
+     *
+     * @param side side of the order book
+     * @return number of price levels
+     */
+    public int getPriceLevelCount (OrderBookEntrySide side)
+    {
+        return getSide (side).index.size ();
+    }
+
+    /**
+     * Return number of entry slots the order book holds without growing its
+     * arrays.
+     *
+     * @return entry capacity
+     */
+    public int getCapacity ()
+    {
+        return entryFlags.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OrderBookSnapshot getSnapshot (int maximumDepth)
+    {
+        if (maximumDepth < 0)
+            throw new IllegalArgumentException ("Maximum depth < 0");
+
+        if (depth > 0)
+            throw new IllegalStateException (
+                "Cannot take snapshot while order book is being updated");
+
+        // Listeners should see all changes included into the snapshot
+        flushCoalescedQuotes ();
+
+        int bidCount = Math.min (bids.index.size (), maximumDepth);
+        long [] bidPrices = new long [bidCount];
+        long [] bidQuantities = new long [bidCount];
+        copyLevels (bids, bidPrices, bidQuantities);
+
+        int askCount = Math.min (asks.index.size (), maximumDepth);
+        long [] askPrices = new long [askCount];
+        long [] askQuantities = new long [askCount];
+        copyLevels (asks, askPrices, askQuantities);
+
+        return new OrderBookSnapshot (
+            getSequenceNumber (),
+            bidPrices, bidQuantities, askPrices, askQuantities);
+    }
+
+    private void copyLevels (MySide side, long [] prices, long [] quantities)
+    {
+        for (int i = 0; i < prices.length; i++)
+        {
+            int level = (int)side.index.getValue (i) - 1;
+
+            prices [i] = levelPrices [level];
+            quantities [i] = levelQuantities [level];
+        }
+    }
+
+    private MySide getSide (OrderBookEntrySide side)
+    {
+        return isBid (side) ? bids : asks;
+    }
+
+    private static boolean isBid (OrderBookEntrySide side)
+    {
+        if (side == null)
+            throw new IllegalArgumentException ("Side is null");
+
+        switch (side)
+        {
+        case BID:
+            return true;
+        case ASK:
+            return false;
+        default:
+            throw new Error ("Unknown order book entry side: " + side);
+        }
+    }
+
+    private void fill (
+        long timestamp, int bidEntry, int askEntry, long quantity, long price)
+    {
+        if (quantity <= 0)
+            throw new IllegalArgumentException ("Quantity <= 0");
+
+        if (price <= 0)
+            throw new IllegalArgumentException ("Price <= 0");
+
+        if (!isActive (bidEntry))
+            throw new IllegalStateException ("Bid entry is not active");
+
+        if (!isActive (askEntry))
+            throw new IllegalStateException ("Ask entry is not active");
+
+        MyEntryHandler bidHandler = entryHandlers [bidEntry];
+        MyEntryHandler askHandler = entryHandlers [askEntry];
+
+        fillEntry (timestamp, bidEntry, quantity, price);
+        fillEntry (timestamp, askEntry, quantity, price);
+
+        fireOnTrade (timestamp, bidHandler, askHandler, quantity, price);
+    }
+
+    private void fillEntry (
+        long timestamp, int slot, long quantity, long price)
+    {
+        if (quantity > entryUnfilledQuantities [slot])
+            throw new IllegalStateException ("Not enough unfilled quantity");
+
+        entryUnfilledQuantities [slot] -= quantity;
+
+        int level = entryLevels [slot];
+        if (level != NONE)
+        {
+            levelQuantities [level] -= quantity;
+            levelUnfilledQuantities [level] -= quantity;
+            entryDisplayedQuantities [slot] -= quantity;
+        }
+
+        MyEntryHandler handler = entryHandlers [slot];
+
+        handler.callback.onFill (timestamp, handler, quantity, price);
+
+        if (entryUnfilledQuantities [slot] == 0 && isActive (slot))
+        {
+            entryFlags [slot] &= ~ACTIVE_FLAG;
+
+            if (entryLevels [slot] != NONE)
+                unlink (slot);
+
+            handler.callback.onFilled (timestamp, handler);
+
+            retire (slot);
+        }
+    }
+
+    private void cancelEntry (long timestamp, int slot)
+        throws OrderBookException
+    {
+        if (!isActive (slot))
+            throw new OrderBookException ("Entry is not active");
+
+        entryFlags [slot] &= ~ACTIVE_FLAG;
+
+        if (entryLevels [slot] != NONE)
+            unlink (slot);
+
+        MyEntryHandler handler = entryHandlers [slot];
+        handler.callback.onCanceled (timestamp, handler);
+
+        retire (slot);
+    }
+
+    private void retire (int slot)
+    {
+        entryNext [slot] = retiredEntries;
+        retiredEntries = slot;
+    }
+
+    private void enter ()
+    {
+        if (depth++ == 0 && isCoalesceQuotes ())
+        {
+            beginQuoteCoalescing ();
+            coalescing = true;
+        }
+    }
+
+    private void leave ()
+    {
+        if (--depth == 0)
+        {
+            releaseRetiredEntries ();
+
+            if (coalescing)
+            {
+                coalescing = false;
+                endQuoteCoalescing ();
+            }
+        }
+    }
+
+    private void releaseRetiredEntries ()
+    {
+        while (retiredEntries != NONE)
+        {
+            int slot = retiredEntries;
+            retiredEntries = entryNext [slot];
+
+            MyEntryHandler handler = entryHandlers [slot];
+            handler.slot =
+                (entryFlags [slot] & ASK_FLAG) != 0 ?
+                    RELEASED_ASK : RELEASED_BID;
+            handler.unfilledQuantity = entryUnfilledQuantities [slot];
+            handler.limitPrice = entryLimitPrices [slot];
+
+            if (poolEntries)
+            {
+                handler.next = freeHandlers;
+                freeHandlers = handler;
+            }
+
+            entryHandlers [slot] = null;
+            entryNext [slot] = freeEntries;
+            freeEntries = slot;
+        }
+    }
+
+    private void append (int slot)
+    {
+        MySide side = getSide (slot);
+        int level = side.getOrCreateLevel (entryLimitPrices [slot]);
+        int tail = levelTails [level];
+
+        entryLevels [slot] = level;
+        entryPrevious [slot] = tail;
+        entryNext [slot] = NONE;
+
+        if (tail == NONE)
+            levelHeads [level] = slot;
+        else entryNext [tail] = slot;
+
+        levelTails [level] = slot;
+
+        long clip = getClip (slot);
+        entryDisplayedQuantities [slot] = clip;
+        levelQuantities [level] += clip;
+        levelUnfilledQuantities [level] += entryUnfilledQuantities [slot];
+        side.entryCount += 1;
+    }
+
+    private void replenish (int slot)
+    {
+        int level = entryLevels [slot];
+        int tail = levelTails [level];
+
+        if (slot != tail)
+        {
+            int previous = entryPrevious [slot];
+            int next = entryNext [slot];
+
+            if (previous == NONE)
+                levelHeads [level] = next;
+            else entryNext [previous] = next;
+
+            entryPrevious [next] = previous;
+
+            entryPrevious [slot] = tail;
+            entryNext [slot] = NONE;
+            entryNext [tail] = slot;
+            levelTails [level] = slot;
+        }
+
+        long clip = getClip (slot);
+        entryDisplayedQuantities [slot] = clip;
+        levelQuantities [level] += clip;
+    }
+
+    private void reduce (int slot, long newQuantity)
+    {
+        int level = entryLevels [slot];
+
+        levelQuantities [level] -= entryDisplayedQuantities [slot];
+        levelUnfilledQuantities [level] -=
+            entryUnfilledQuantities [slot] - newQuantity;
+        entryUnfilledQuantities [slot] = newQuantity;
+        entryDisplayedQuantities [slot] =
+            Math.min (entryDisplayedQuantities [slot], newQuantity);
+        levelQuantities [level] += entryDisplayedQuantities [slot];
+    }
+
+    private long getClip (int slot)
+    {
+        long visibleQuantity = entryVisibleQuantities [slot];
+
+        return visibleQuantity > 0L ?
+            Math.min (visibleQuantity, entryUnfilledQuantities [slot]) :
+            entryUnfilledQuantities [slot];
+    }
+
+    private void unlink (int slot)
+    {
+        MySide side = getSide (slot);
+        int level = entryLevels [slot];
+        int previous = entryPrevious [slot];
+        int next = entryNext [slot];
+
+        if (previous == NONE)
+            levelHeads [level] = next;
+        else entryNext [previous] = next;
+
+        if (next == NONE)
+            levelTails [level] = previous;
+        else entryPrevious [next] = previous;
+
+        levelQuantities [level] -= entryDisplayedQuantities [slot];
+        levelUnfilledQuantities [level] -= entryUnfilledQuantities [slot];
+        side.entryCount -= 1;
+
+        entryLevels [slot] = NONE;
+        entryPrevious [slot] = NONE;
+        entryNext [slot] = NONE;
+        entryDisplayedQuantities [slot] = 0L;
+
+        if (levelHeads [level] == NONE)
+            side.removeLevel (level);
+    }
+
+    private class MyEntryHandler implements OrderBookEntryHandler
+    {
+        private OrderBookEntryCallback callback;
+        private Object closure;
+
+        private int slot;
+
+        // Values of released entry
+        private long unfilledQuantity;
+        private long limitPrice;
+
+        // Next free handler in the pool
+        private MyEntryHandler next;
+
+        public MyEntryHandler (
+            int slot, OrderBookEntryCallback callback, Object closure)
+        {
+            this.slot = slot;
+            this.callback = callback;
+            this.closure = closure;
+        }
+
+        @Override
+        public OrderBookEntrySide getEntrySide ()
+        {
+            switch (slot)
+            {
+            case RELEASED_BID:
+                return OrderBookEntrySide.BID;
+            case RELEASED_ASK:
+                return OrderBookEntrySide.ASK;
+            default:
+                return getSide (slot).side;
+            }
+        }
+
+        @Override
+        public long getUnfilledQuantity ()
+        {
+            return slot < 0 ? unfilledQuantity : entryUnfilledQuantities [slot];
+        }
+
+        @Override
+        public long getLimitPrice ()
+        {
+            return slot < 0 ? limitPrice : entryLimitPrices [slot];
+        }
+
+        @Override
+        public Object getClosure ()
+        {
+            return closure;
+        }
+
+        @Override
+        public void cancel (long timestamp) throws OrderBookException
+        {
+            enter ();
+            try
+            {
+                if (slot < 0)
+                    throw new OrderBookException ("Entry is not active");
+
+                int s = slot;
+                long limitPrice = entryLimitPrices [s];
+                long quantityDelta = -entryDisplayedQuantities [s];
+
+                cancelEntry (timestamp, s);
+                fireOnQuote (
+                    timestamp, getSide (s).side, limitPrice, quantityDelta);
+            }
+            finally
+            {
+                leave ();
+            }
+        }
+
+        @Override
+        public void amend (
+            long timestamp, long newQuantity, long newLimitPrice)
+            throws OrderBookException
+        {
+            enter ();
+            try
+            {
+                amendEntry (timestamp, slot, newQuantity, newLimitPrice);
+            }
+            finally
+            {
+                leave ();
+            }
+        }
+    }
+
+    /**
+     * Price levels of one side of the order book.  Levels are indexed by
+     * keys, such that better price always has smaller key, mapped to level
+     * slot plus one, because zero value means absent key.
+     */
+    private class MySide
+    {
+        private final OrderBookEntrySide side;
+        private final boolean isBid;
+        private final LongLongTreeMap index = new LongLongTreeMap ();
+
+        private int entryCount = 0;
+        private int bestLevel = NONE;
+
+        public MySide (OrderBookEntrySide side)
+        {
+            this.side = side;
+            this.isBid = ArrayOrderBook.isBid (side);
+        }
+
+        public int getBestLevel ()
+        {
+            return bestLevel;
+        }
+
+        public int getOrCreateLevel (long price)
+        {
+            long key = isBid ? -price : price;
+            long value = index.get (key);
+
+            if (value != 0L) return (int)value - 1;
+
+            int level = freeLevels;
+
+            if (level == NONE)
+            {
+                if (levelSlotCount == levelPrices.length)
+                    growLevels ();
+
+                level = levelSlotCount++;
+            }
+            else freeLevels = levelHeads [level];
+
+            levelPrices [level] = price;
+            levelQuantities [level] = 0L;
+            levelUnfilledQuantities [level] = 0L;
+            levelHeads [level] = NONE;
+            levelTails [level] = NONE;
+
+            index.add (key, level + 1);
+
+            if (bestLevel == NONE ||
+                (isBid ?
+                    price > levelPrices [bestLevel] :
+                    price < levelPrices [bestLevel]))
+                bestLevel = level;
+
+            return level;
+        }
+
+        public void removeLevel (int level)
+        {
+            long price = levelPrices [level];
+
+            index.add (isBid ? -price : price, -(level + 1));
+
+            if (level == bestLevel)
+                bestLevel = index.isEmpty () ?
+                    NONE : (int)index.firstValue () - 1;
+
+            // Free levels are linked through their heads
+            levelHeads [level] = freeLevels;
+            freeLevels = level;
+        }
+
+        private void growLevels ()
+        {
+            int capacity = levelPrices.length * 2;
+
+            levelPrices = Arrays.copyOf (levelPrices, capacity);
+            levelQuantities = Arrays.copyOf (levelQuantities, capacity);
+            levelUnfilledQuantities =
+                Arrays.copyOf (levelUnfilledQuantities, capacity);
+            levelHeads = Arrays.copyOf (levelHeads, capacity);
+            levelTails = Arrays.copyOf (levelTails, capacity);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.googlecode.rubex.orderbook;
 
+import java.util.Collection;
+
 import com.googlecode.rubex.orderbook.event.OrderBookListener;
 
 /**
@@ -43,4 +45,167 @@ public interface OrderBook
         long quantity, long limitPrice, 
         OrderBookEntryCallback callback, Object closure) 
         throws OrderBookException;
+    
+    /**
+     * Place an iceberg order book entry with given timestamp, entry side, 
+     * quantity, limit price, visible quantity, callback and closure.  Entry
+     * matches against opposite entries with its whole quantity, but while it
+     * rests in the order book only a clip of up to given visible quantity is
+     * shown in quote events and may be filled by incoming entries.  Once clip
+     * is filled, next clip is shown and entry moves to the back of its price
+     * level, all within the same matching pass and without notifying entry 
+     * callback about anything but fills.
+     * 
+     * @param timestamp time of the entry in milliseconds since epoch
+     * @param side side of the order book entry
+     * @param quantity entry quantity in quantity units
+     * @param limitPrice limit price in price units
+     * @param visibleQuantity maximum visible quantity in quantity units
+     * @param callback callback to be notified about entry events
+     * @param closure closure to be passed to the callback
+     * @return order book entry handler
+     * @throws OrderBookException if entry could not be placed
+     * 
+     * @see System#currentTimeMillis()
+     */
+    public OrderBookEntryHandler placeIcebergEntry (
+        long timestamp, OrderBookEntrySide side,
+        long quantity, long limitPrice, long visibleQuantity,
+        OrderBookEntryCallback callback, Object closure) 
+        throws OrderBookException;
+    
+    /**
+     * Place an all-or-none order book entry with given timestamp, entry side,
+     * quantity, limit price, callback and closure.  Entry is matched only if 
+     * opposite entries at prices that fit limit price, including hidden 
+     * quantity of iceberg entries, are enough to fill it completely, 
+     * otherwise it is canceled without any trades.  Check stops as soon as 
+     * enough quantity is found, and entry is matched in the same call, so 
+     * no separately maintained market data is needed.  Entry never rests in 
+     * the order book: if callbacks withdraw opposite liquidity while entry is
+     * being matched, unfilled rest of the entry is canceled.
+     * 
+     * @param timestamp time of the entry in milliseconds since epoch
+     * @param side side of the order book entry
+     * @param quantity entry quantity in quantity units
+     * @param limitPrice limit price in price units or zero for market order
+     * @param callback callback to be notified about entry events
+     * @param closure closure to be passed to the callback
+     * @return order book entry handler
+     * @throws OrderBookException if entry could not be placed
+     * 
+     * @see System#currentTimeMillis()
+     */
+    public OrderBookEntryHandler placeFillOrKillEntry (
+        long timestamp, OrderBookEntrySide side,
+        long quantity, long limitPrice, 
+        OrderBookEntryCallback callback, Object closure) 
+        throws OrderBookException;
+    
+    /**
+     * Place all order book entries described by given batch, in order.  For
+     * every instruction in the batch, either entry handler or exception is 
+     * stored into the batch, so failure to place one entry does not prevent
+     * other entries from being placed.  Quote events produced while placing
+     * the batch are coalesced, so listeners receive at most one quote event
+     * per price level per batch, carrying net quantity delta.  Trade events
+     * are delivered immediately.
+     * 
+     * @param batch batch of order book entry instructions
+     */
+    public void placeEntries (OrderBookBatch batch);
+    
+    /**
+     * Cancel all given order book entries, in order.  Entries that are not 
+     * active any more are skipped.  Quote events produced while canceling 
+     * are coalesced, so listeners receive at most one quote event per price 
+     * level per call, carrying net quantity delta.
+     * 
+     * @param timestamp time of the cancel in milliseconds since epoch
+     * @param entryHandlers handlers of the entries to be canceled
+     * @return number of canceled entries
+     * 
+     * @see System#currentTimeMillis()
+     */
+    public int cancelEntries (
+        long timestamp, Collection <OrderBookEntryHandler> entryHandlers);
+    
+    /**
+     * Start batch of operations, e.g. all operations done in one pass of 
+     * exchange thread.  If order book coalesces quote events, quote events 
+     * produced by all operations until matching call to {@link #endBatch()}
+     * are coalesced, so listeners receive at most one quote event per price 
+     * level per batch.  Otherwise does nothing.  Calls may be nested.
+     */
+    public void beginBatch ();
+    
+    /**
+     * End batch of operations and deliver quote events coalesced during the
+     * batch.
+     * 
+     * @see #beginBatch()
+     */
+    public void endBatch ();
+    
+    /**
+     * Start auction.  Until auction is ended, entries are not matched on
+     * placement, but rest in the order book even if they cross opposite 
+     * entries, and are matched only by {@link #uncross(long)}.  Market and 
+     * fill or kill entries placed during auction are canceled without trades.
+     * Does nothing if auction is already started.
+     */
+    public void beginAuction ();
+    
+    /**
+     * Tells whether auction is in progress.
+     * 
+     * @return <code>true</code> if auction is in progress, 
+     *         <code>false</code> if entries are matched continuously
+     */
+    public boolean isAuction ();
+    
+    /**
+     * Match all crossing entries at single uncrossing price.  Uncrossing 
+     * price is the price that maximizes quantity executable against 
+     * aggregated bid and ask entries, then minimizes quantity left 
+     * unexecuted at that price.  If there is still a tie, the highest such 
+     * price is chosen when bids exceed asks, and the lowest otherwise.  
+     * Entries are filled in price then time priority, trades and fills are
+     * reported through the same listeners and callbacks as for continuous 
+     * matching, and quote events are coalesced.  May be called whether or 
+     * not auction is in progress and does not start or end the auction.
+     * Must not be called from order book listeners or entry callbacks.
+     * 
+     * @param timestamp time of the uncross in milliseconds since epoch
+     * @return uncrossing price in price units or zero if order book was not 
+     *         crossed
+     */
+    public long uncross (long timestamp);
+    
+    /**
+     * Uncross the order book and end auction, so subsequent entries are 
+     * matched continuously.
+     * 
+     * @param timestamp time of the uncross in milliseconds since epoch
+     * @return uncrossing price in price units or zero if order book was not
+     *         crossed
+     * 
+     * @see #uncross(long)
+     */
+    public long endAuction (long timestamp);
+    
+    /**
+     * Take snapshot of up to given number of the best price levels on each
+     * side of the order book.  Snapshot carries sequence number of the last
+     * event delivered to order book listeners, so it may be combined with 
+     * subsequent events.  Order book is not thread safe, so this method should
+     * be called from the thread that places entries into the order book, 
+     * e.g. via {@link com.googlecode.rubex.symbol.SymbolManager#executeInSymbolThread(String, Runnable)}.
+     * It takes time proportional to the number of levels returned and must 
+     * not be called from order book listeners or entry callbacks.
+     * 
+     * @param maximumDepth maximum number of price levels on each side
+     * @return order book snapshot
+     */
+    public OrderBookSnapshot getSnapshot (int maximumDepth);
 }
@@ -0,0 +1,295 @@
+package com.googlecode.rubex.orderbook;
+
+/**
+ * Reusable buffer of order book entry instructions to be placed into
+ * {@link OrderBook} in one call, together with results of placing them.
+ * Instructions are stored in parallel arrays that grow as needed, so
+ * reusing the same batch object does not allocate memory once batch reached
+ * its maximum size.
+ *
+ * @see OrderBook#placeEntries(OrderBookBatch)
+ *
+ * @author Mikhail Vladimirov
+ */
+public class OrderBookBatch
+{
+    private int size = 0;
+
+    private long [] timestamps;
+    private OrderBookEntrySide [] sides;
+    private long [] quantities;
+    private long [] limitPrices;
+    private OrderBookEntryCallback [] callbacks;
+    private Object [] closures;
+
+    private OrderBookEntryHandler [] entryHandlers;
+    private OrderBookException [] exceptions;
+
+    /**
+     * Create new empty batch.
+     */
+    public OrderBookBatch ()
+    {
+        this (16);
+    }
+
+    /**
+     * Create new empty batch with given initial capacity.
+     *
+     * @param capacity number of instructions batch may hold before its
+     *        arrays grow
+     */
+    public OrderBookBatch (int capacity)
+    {
+        if (capacity < 0)
+            throw new IllegalArgumentException ("Capacity < 0");
+
+        timestamps = new long [capacity];
+        sides = new OrderBookEntrySide [capacity];
+        quantities = new long [capacity];
+        limitPrices = new long [capacity];
+        callbacks = new OrderBookEntryCallback [capacity];
+        closures = new Object [capacity];
+        entryHandlers = new OrderBookEntryHandler [capacity];
+        exceptions = new OrderBookException [capacity];
+    }
+
+    /**
+     * Add instruction to place an order book entry with given timestamp,
+     * entry side, quantity, limit price, callback and closure.
+     *
+     * @param timestamp time of the entry in milliseconds since epoch
+     * @param side side of the order book entry
+     * @param quantity entry quantity in quantity units
+     * @param limitPrice limit price in price units or zero for market order
+     * @param callback callback to be notified about entry events
+     * @param closure closure to be passed to the callback
+     * @return index of the instruction in the batch
+     *
+     * @see OrderBook#placeEntry(long, OrderBookEntrySide, long, long, OrderBookEntryCallback, Object)
+     */
+    public int add (
+        long timestamp, OrderBookEntrySide side,
+        long quantity, long limitPrice,
+        OrderBookEntryCallback callback, Object closure)
+    {
+        if (side == null)
+            throw new IllegalArgumentException ("Side is null");
+
+        if (quantity <= 0)
+            throw new IllegalArgumentException ("Quantity <= 0");
+
+        if (limitPrice < 0)
+            throw new IllegalArgumentException ("Limit price < 0");
+
+        if (callback == null)
+            throw new IllegalArgumentException ("Callback is null");
+
+        if (size == timestamps.length)
+            grow ();
+
+        int index = size++;
+
+        timestamps [index] = timestamp;
+        sides [index] = side;
+        quantities [index] = quantity;
+        limitPrices [index] = limitPrice;
+        callbacks [index] = callback;
+        closures [index] = closure;
+        entryHandlers [index] = null;
+        exceptions [index] = null;
+
+        return index;
+    }
+
+    /**
+     * Return number of instructions in the batch.
+     */
+    public int size ()
+    {
+        return size;
+    }
+
+    /**
+     * Remove all instructions and results from the batch.
+     */
+    public void clear ()
+    {
+        for (int i = 0; i < size; i++)
+        {
+            sides [i] = null;
+            callbacks [i] = null;
+            closures [i] = null;
+            entryHandlers [i] = null;
+            exceptions [i] = null;
+        }
+
+        size = 0;
+    }
+
+    /**
+     * Return timestamp of instruction with given index.
+     *
+     * @param index index of the instruction
+     * @return timestamp of the instruction
+     */
+    public long getTimestamp (int index)
+    {
+        checkIndex (index);
+
+        return timestamps [index];
+    }
+
+    /**
+     * Return entry side of instruction with given index.
+     *
+     * @param index index of the instruction
+     * @return entry side of the instruction
+     */
+    public OrderBookEntrySide getSide (int index)
+    {
+        checkIndex (index);
+
+        return sides [index];
+    }
+
+    /**
+     * Return quantity of instruction with given index.
+     *
+     * @param index index of the instruction
+     * @return quantity of the instruction in quantity units
+     */
+    public long getQuantity (int index)
+    {
+        checkIndex (index);
+
+        return quantities [index];
+    }
+
+    /**
+     * Return limit price of instruction with given index.
+     *
+     * @param index index of the instruction
+     * @return limit price in price units or zero for market order
+     */
+    public long getLimitPrice (int index)
+    {
+        checkIndex (index);
+
+        return limitPrices [index];
+    }
+
+    /**
+     * Return callback of instruction with given index.
+     *
+     * @param index index of the instruction
+     * @return callback of the instruction
+     */
+    public OrderBookEntryCallback getCallback (int index)
+    {
+        checkIndex (index);
+
+        return callbacks [index];
+    }
+
+    /**
+     * Return closure of instruction with given index.
+     *
+     * @param index index of the instruction
+     * @return closure of the instruction
+     */
+    public Object getClosure (int index)
+    {
+        checkIndex (index);
+
+        return closures [index];
+    }
+
+    /**
+     * Return handler of the entry placed for instruction with given index.
+     *
+     * @param index index of the instruction
+     * @return order book entry handler or <code>null</code> if entry was not
+     *         placed
+     */
+    public OrderBookEntryHandler getEntryHandler (int index)
+    {
+        checkIndex (index);
+
+        return entryHandlers [index];
+    }
+
+    /**
+     * Return exception thrown while placing entry for instruction with given
+     * index.
+     *
+     * @param index index of the instruction
+     * @return exception or <code>null</code> if there were no exception
+     */
+    public OrderBookException getException (int index)
+    {
+        checkIndex (index);
+
+        return exceptions [index];
+    }
+
+    /**
+     * Set result of placing entry for instruction with given index.
+     *
+     * @param index index of the instruction
+     * @param entryHandler handler of placed entry or <code>null</code> if
+     *        entry was not placed
+     * @param exception exception thrown while placing entry or
+     *        <code>null</code> if there were no exception
+     */
+    public void setResult (
+        int index, OrderBookEntryHandler entryHandler,
+        OrderBookException exception)
+    {
+        checkIndex (index);
+
+        entryHandlers [index] = entryHandler;
+        exceptions [index] = exception;
+    }
+
+    private void checkIndex (int index)
+    {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException ("Invalid index: " + index);
+    }
+
+    private void grow ()
+    {
+        int capacity = Math.max (size * 2, 16);
+
+        long [] newTimestamps = new long [capacity];
+        OrderBookEntrySide [] newSides = new OrderBookEntrySide [capacity];
+        long [] newQuantities = new long [capacity];
+        long [] newLimitPrices = new long [capacity];
+        OrderBookEntryCallback [] newCallbacks =
+            new OrderBookEntryCallback [capacity];
+        Object [] newClosures = new Object [capacity];
+        OrderBookEntryHandler [] newEntryHandlers =
+            new OrderBookEntryHandler [capacity];
+        OrderBookException [] newExceptions =
+            new OrderBookException [capacity];
+
+        System.arraycopy (timestamps, 0, newTimestamps, 0, size);
+        System.arraycopy (sides, 0, newSides, 0, size);
+        System.arraycopy (quantities, 0, newQuantities, 0, size);
+        System.arraycopy (limitPrices, 0, newLimitPrices, 0, size);
+        System.arraycopy (callbacks, 0, newCallbacks, 0, size);
+        System.arraycopy (closures, 0, newClosures, 0, size);
+        System.arraycopy (entryHandlers, 0, newEntryHandlers, 0, size);
+        System.arraycopy (exceptions, 0, newExceptions, 0, size);
+
+        timestamps = newTimestamps;
+        sides = newSides;
+        quantities = newQuantities;
+        limitPrices = newLimitPrices;
+        callbacks = newCallbacks;
+        closures = newClosures;
+        entryHandlers = newEntryHandlers;
+        exceptions = newExceptions;
+    }
+}
@@ -39,4 +39,23 @@ public interface OrderBookEntryHandler
      * @see System#currentTimeMillis()
      */
     public void cancel (long timestamp) throws OrderBookException;
+    
+    /**
+     * Change unfilled quantity and limit price of corresponding order book
+     * entry in place.  If limit price stays the same and quantity does not
+     * increase, entry keeps its position in the queue of its price level.
+     * Otherwise entry is removed from the order book and put into it again,
+     * matching against opposite entries if new limit price crosses them, as
+     * one operation, so it is queued behind entries that are already at the
+     * new price level.
+     * 
+     * @param timestamp time when amend occurred in milliseconds since epoch
+     * @param newQuantity new unfilled quantity in quantity units
+     * @param newLimitPrice new limit price in price units
+     * @throws OrderBookException if entry could not be amended
+     * 
+     * @see System#currentTimeMillis()
+     */
+    public void amend (long timestamp, long newQuantity, long newLimitPrice) 
+        throws OrderBookException;
 }
@@ -0,0 +1,137 @@
+package com.googlecode.rubex.orderbook;
+
+/**
+ * Immutable snapshot of the best price levels of {@link OrderBook} together
+ * with sequence number of the last order book event it reflects.  Consumer
+ * that loaded snapshot should apply only events with greater sequence 
+ * numbers to keep its view of the order book up to date.
+ * 
+ * @see OrderBook#getSnapshot(int)
+ * 
+ * @author Mikhail Vladimirov
+ */
+public class OrderBookSnapshot
+{
+    private final long sequenceNumber;
+    private final long [] bidPrices;
+    private final long [] bidQuantities;
+    private final long [] askPrices;
+    private final long [] askQuantities;
+    
+    /**
+     * Create new snapshot with given sequence number and price levels.
+     * Arrays are copied.
+     * 
+     * @param sequenceNumber sequence number of the last event reflected by 
+     *        the snapshot
+     * @param bidPrices bid prices, best first
+     * @param bidQuantities total bid quantities at corresponding prices
+     * @param askPrices ask prices, best first
+     * @param askQuantities total ask quantities at corresponding prices
+     */
+    public OrderBookSnapshot (
+        long sequenceNumber, 
+        long [] bidPrices, long [] bidQuantities, 
+        long [] askPrices, long [] askQuantities)
+    {
+        if (sequenceNumber < 0)
+            throw new IllegalArgumentException ("Sequence number < 0");
+        
+        if (bidPrices == null)
+            throw new IllegalArgumentException ("Bid prices is null");
+        
+        if (bidQuantities == null)
+            throw new IllegalArgumentException ("Bid quantities is null");
+        
+        if (askPrices == null)
+            throw new IllegalArgumentException ("Ask prices is null");
+        
+        if (askQuantities == null)
+            throw new IllegalArgumentException ("Ask quantities is null");
+        
+        if (bidPrices.length != bidQuantities.length)
+            throw new IllegalArgumentException (
+                "Bid prices and quantities have different lengths");
+        
+        if (askPrices.length != askQuantities.length)
+            throw new IllegalArgumentException (
+                "Ask prices and quantities have different lengths");
+        
+        this.sequenceNumber = sequenceNumber;
+        this.bidPrices = bidPrices.clone ();
+        this.bidQuantities = bidQuantities.clone ();
+        this.askPrices = askPrices.clone ();
+        this.askQuantities = askQuantities.clone ();
+    }
+    
+    /**
+     * Return sequence number of the last order book event reflected by this
+     * snapshot or zero if snapshot was taken before the first event.
+     */
+    public long getSequenceNumber ()
+    {
+        return sequenceNumber;
+    }
+    
+    /**
+     * Return number of bid price levels in the snapshot.
+     */
+    public int getBidLevelCount ()
+    {
+        return bidPrices.length;
+    }
+    
+    /**
+     * Return bid price at given depth, where depth 0 is the best bid.
+     * 
+     * @param depth depth of the price level
+     * @return bid price in price units
+     */
+    public long getBidPrice (int depth)
+    {
+        return bidPrices [depth];
+    }
+    
+    /**
+     * Return total bid quantity at given depth, where depth 0 is the best 
+     * bid.
+     * 
+     * @param depth depth of the price level
+     * @return bid quantity in quantity units
+     */
+    public long getBidQuantity (int depth)
+    {
+        return bidQuantities [depth];
+    }
+    
+    /**
+     * Return number of ask price levels in the snapshot.
+     */
+    public int getAskLevelCount ()
+    {
+        return askPrices.length;
+    }
+    
+    /**
+     * Return ask price at given depth, where depth 0 is the best ask.
+     * 
+     * @param depth depth of the price level
+     * @return ask price in price units
+     */
+    public long getAskPrice (int depth)
+    {
+        return askPrices [depth];
+    }
+    
+    /**
+     * Return total ask quantity at given depth, where depth 0 is the best 
+     * ask.
+     * 
+     * @param depth depth of the price level
+     * @return ask quantity in quantity units
+     */
+    public long getAskQuantity (int depth)
+    {
+        return askQuantities [depth];
+    }
+}
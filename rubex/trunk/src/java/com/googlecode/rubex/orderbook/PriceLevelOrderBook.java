@@ -0,0 +1,273 @@
+package com.googlecode.rubex.orderbook;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Implementation of {@link OrderBook} interface that keeps entries in FIFO
+ * queues, one queue per price level.  Price levels within a window of
+ * prices around the best price are addressed directly by array index, while
+ * levels outside of the window are kept in {@link TreeMap}.  When best price
+ * moves outside of the window, the window is moved to the new best price.
+ *
+ * @author Mikhail Vladimirov
+ */
+public class PriceLevelOrderBook extends AbstractPriceLevelOrderBook
+{
+    /**
+     * Default number of price levels addressed by array index on each side of
+     * the order book.
+     */
+    public final static int DEFAULT_LADDER_SIZE = 1024;
+
+    /**
+     * Create new empty order book with default ladder size.
+     */
+    public PriceLevelOrderBook ()
+    {
+        this (DEFAULT_LADDER_SIZE);
+    }
+
+    /**
+     * Create new empty order book with given ladder size.
+     *
+     * @param ladderSize number of price levels addressed by array index on
+     *        each side of the order book
+     */
+    public PriceLevelOrderBook (int ladderSize)
+    {
+        super (
+            new Ladder (OrderBookEntrySide.BID, ladderSize),
+            new Ladder (OrderBookEntrySide.ASK, ladderSize));
+    }
+
+    /**
+     * Price levels of one side of the order book.  Prices are mapped to keys
+     * so that better price always has smaller key.  Levels with keys inside
+     * the window <code>[baseKey, baseKey + size)</code> are stored in array,
+     * other levels are stored in sorted map of outliers.
+     */
+    private static class Ladder extends PriceLevels
+    {
+        private final boolean isBid;
+        private final int size;
+        private final PriceLevel [] levels;
+        private final long [] occupied;
+        private final NavigableMap <Long, PriceLevel> outliers =
+            new TreeMap <Long, PriceLevel> ();
+
+        private long baseKey = 0L;
+        private int windowLevelCount = 0;
+        private int firstIndex;
+        private int betterOutlierCount = 0;
+
+        public Ladder (OrderBookEntrySide side, int size)
+        {
+            if (side == null)
+                throw new IllegalArgumentException ("Side is null");
+
+            if (size <= 0)
+                throw new IllegalArgumentException ("Size <= 0");
+
+            switch (side)
+            {
+            case BID:
+                isBid = true;
+                break;
+            case ASK:
+                isBid = false;
+                break;
+            default:
+                throw new Error ("Unknown order book entry side: " + side);
+            }
+
+            this.size = size;
+            levels = new PriceLevel [size];
+            occupied = new long [(size + 63) >>> 6];
+            firstIndex = size;
+        }
+
+        @Override
+        protected PriceLevel getBestLevel ()
+        {
+            if (betterOutlierCount > 0 ||
+                windowLevelCount == 0 && !outliers.isEmpty ())
+                moveWindow (outliers.firstKey ().longValue () - size / 4);
+
+            if (windowLevelCount == 0) return null;
+
+            firstIndex = nextOccupiedIndex (firstIndex);
+            return levels [firstIndex];
+        }
+
+        @Override
+        protected PriceLevel getOrCreateLevel (long price)
+        {
+            long key = isBid ? -price : price;
+
+            if (windowLevelCount == 0 && outliers.isEmpty ())
+                baseKey = key - size / 4;
+
+            long offset = key - baseKey;
+
+            if (offset >= 0 && offset < size)
+            {
+                int index = (int)offset;
+                PriceLevel level = levels [index];
+
+                if (level == null)
+                {
+                    level = newLevel (price);
+                    level.key = key;
+                    level.index = index;
+                    store (level);
+                }
+
+                return level;
+            }
+            else
+            {
+                Long keyObject = Long.valueOf (key);
+                PriceLevel level = outliers.get (keyObject);
+
+                if (level == null)
+                {
+                    level = newLevel (price);
+                    level.key = key;
+                    outliers.put (keyObject, level);
+
+                    if (key < baseKey)
+                        betterOutlierCount += 1;
+                }
+
+                return level;
+            }
+        }
+
+        @Override
+        protected void removeLevel (PriceLevel level)
+        {
+            if (level.index >= 0)
+            {
+                int index = level.index;
+
+                levels [index] = null;
+                occupied [index >>> 6] &= ~(1L << index);
+                windowLevelCount -= 1;
+            }
+            else
+            {
+                outliers.remove (Long.valueOf (level.key));
+
+                if (level.key < baseKey)
+                    betterOutlierCount -= 1;
+            }
+        }
+
+        @Override
+        protected PriceLevel getNextLevel (PriceLevel level)
+        {
+            // After getBestLevel () there are no outliers better than the
+            // window, so window levels go first and then outliers
+            if (level.index >= 0)
+            {
+                int index = findOccupiedIndex (level.index + 1);
+
+                if (index >= 0)
+                    return levels [index];
+                else if (outliers.isEmpty ())
+                    return null;
+                else
+                    return outliers.firstEntry ().getValue ();
+            }
+            else
+            {
+                Map.Entry <Long, PriceLevel> entry =
+                    outliers.higherEntry (Long.valueOf (level.key));
+
+                return entry == null ? null : entry.getValue ();
+            }
+        }
+
+        private void store (PriceLevel level)
+        {
+            int index = level.index;
+
+            levels [index] = level;
+            occupied [index >>> 6] |= 1L << index;
+            windowLevelCount += 1;
+
+            if (index < firstIndex)
+                firstIndex = index;
+        }
+
+        private int nextOccupiedIndex (int fromIndex)
+        {
+            int wordIndex = fromIndex >>> 6;
+            long word = occupied [wordIndex] & (-1L << fromIndex);
+
+            while (word == 0L)
+                word = occupied [++wordIndex];
+
+            return (wordIndex << 6) + Long.numberOfTrailingZeros (word);
+        }
+
+        private int findOccupiedIndex (int fromIndex)
+        {
+            if (fromIndex >= size) return -1;
+
+            int wordIndex = fromIndex >>> 6;
+            long word = occupied [wordIndex] & (-1L << fromIndex);
+
+            while (word == 0L)
+            {
+                if (++wordIndex == occupied.length) return -1;
+
+                word = occupied [wordIndex];
+            }
+
+            return (wordIndex << 6) + Long.numberOfTrailingZeros (word);
+        }
+
+        private void moveWindow (long newBaseKey)
+        {
+            for (int index = 0; index < size; index++)
+            {
+                PriceLevel level = levels [index];
+
+                if (level != null)
+                {
+                    levels [index] = null;
+                    level.index = -1;
+                    outliers.put (Long.valueOf (level.key), level);
+                }
+            }
+
+            for (int i = 0; i < occupied.length; i++)
+                occupied [i] = 0L;
+
+            windowLevelCount = 0;
+            firstIndex = size;
+            baseKey = newBaseKey;
+
+            Iterator <PriceLevel> i =
+                outliers.subMap (
+                    Long.valueOf (baseKey), true,
+                    Long.valueOf (baseKey + size), false).values ().iterator ();
+
+            while (i.hasNext ())
+            {
+                PriceLevel level = i.next ();
+                i.remove ();
+
+                level.index = (int)(level.key - baseKey);
+                store (level);
+            }
+
+            betterOutlierCount =
+                outliers.headMap (Long.valueOf (baseKey), false).size ();
+        }
+    }
+}
@@ -1,411 +1,131 @@
 package com.googlecode.rubex.orderbook;
 
-import java.util.Comparator;
-import java.util.Iterator;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import com.googlecode.rubex.utils.LongLongTreeMap;
 
 /**
- * Simple implementation of {@link OrderBook} interface based on 
- * {@link TreeSet}.
- * 
+ * Simple implementation of {@link OrderBook} interface based on
+ * {@link LongLongTreeMap} of price levels.  Tree maps price keys to slots
+ * of array holding price levels, so price lookups neither box prices nor
+ * allocate map entries.
+ *
  * @author Mikhail Vladimirov
  */
-public class SimpleOrderBook extends AbstractOrderBook
+public class SimpleOrderBook extends AbstractPriceLevelOrderBook
 {
-    private final SortedSet<OrderBookEntry> bids = 
-        new TreeSet <OrderBookEntry> (
-            new EntryComparator (OrderBookEntrySide.BID));
-    
-    private final SortedSet<OrderBookEntry> asks = 
-        new TreeSet <OrderBookEntry> (
-            new EntryComparator (OrderBookEntrySide.ASK));
-    
-    private long sequentialNumber = 0L;
-    
     /**
      * Create new empty order book.
      */
     public SimpleOrderBook ()
     {
-        // Do nothing
+        super (
+            new TreePriceLevels (OrderBookEntrySide.BID),
+            new TreePriceLevels (OrderBookEntrySide.ASK));
     }
-    
+
     /**
-     * {@inheritDoc}
+     * Price levels of one side of the order book.  Prices are mapped to keys
+     * so that better price always has smaller key, and keys are mapped by
+     * tree to slot indexes plus one.  Slots of removed levels are reused.
      */
-    @Override
-    public OrderBookEntryHandler placeEntry (long timestamp,
-        OrderBookEntrySide side, long quantity, long limitPrice,
-        OrderBookEntryCallback callback, Object closure)
-        throws OrderBookException
+    private static class TreePriceLevels extends PriceLevels
     {
-        if (side == null)
-            throw new IllegalArgumentException ("Side is null");
-        
-        if (quantity <= 0)
-            throw new IllegalArgumentException ("Quantity <= 0");
-        
-        if (limitPrice < 0)
-            throw new IllegalArgumentException ("Limit price < 0");
-        
-        if (callback == null)
-            throw new IllegalArgumentException ("Callback is null");
-        
-        OrderBookEntry newEntry = 
-            new OrderBookEntry (
-                sequentialNumber++, 
-                side, limitPrice, quantity, 
-                callback, closure);
-        
-        Iterator <OrderBookEntry> i;
-        
-        switch (side)
-        {
-        case BID:
-            i = asks.iterator ();
-            break;
-        case ASK:
-            i = bids.iterator ();
-            break;
-        default:
-            throw new Error ("Unknown order book entry side: " + side);
-        }
-        
-        while (i.hasNext () && newEntry.active)
-        {
-            OrderBookEntry entry = i.next ();
-            long entryLimitPrice = entry.limitPrice; 
-            
-            boolean fits;
-            
-            if (limitPrice > 0)
-            {
-                switch (side)
-                {
-                case BID:
-                    fits = limitPrice >= entryLimitPrice; 
-                    break;
-                case ASK:
-                    fits = limitPrice <= entryLimitPrice; 
-                    break;
-                default:
-                    throw new Error (
-                        "Unknown order book entry side: " + side);
-                }
-            }
-            else fits = true;
-            
-            if (fits)
-            {
-                long tradeQuantity = 
-                    Math.min (
-                        newEntry.unfilledQuantity, entry.unfilledQuantity);
-
-                switch (side)
-                {
-                case BID:
-                    fill (timestamp, newEntry, entry, tradeQuantity, entryLimitPrice);
-                    break;
-                case ASK:
-                    fill (timestamp, entry, newEntry, tradeQuantity, entryLimitPrice);
-                    break;
-                default:
-                    throw new Error (
-                        "Unknown order book entry side: " + side);
-                }
-                
-                fireOnQuote (timestamp, entry.side, entryLimitPrice, -tradeQuantity);
-            }
-            else break;
-        }
-        
-        if (newEntry.active)
-        {
-            if (limitPrice > 0)
-            {
-                switch (side)
-                {
-                case BID:
-                    bids.add (newEntry); 
-                    fireOnQuote (timestamp, OrderBookEntrySide.BID, limitPrice, newEntry.unfilledQuantity);
-                    break;
-                case ASK:
-                    asks.add (newEntry); 
-                    fireOnQuote (timestamp, OrderBookEntrySide.ASK, limitPrice, newEntry.unfilledQuantity);
-                    break;
-                default:
-                    throw new Error ("Unknown order book entry side: " + side);
-                }
-            }
-            else 
-                cancelEntry (timestamp, newEntry);
-        }
-
-        switch (side)
-        {
-        case BID:
-            cleanup (asks); 
-            break;
-        case ASK:
-            cleanup (bids); 
-            break;
-        default:
-            throw new Error ("Unknown order book entry side: " + side);
-        }
-        
-        return newEntry;
-    }
-    
-    private void fill (long timestamp, OrderBookEntry bidEntry, OrderBookEntry askEntry, long quantity, long price)
-    {
-        if (bidEntry == null)
-            throw new IllegalArgumentException ("Bid entry is null");
-        
-        if (askEntry == null)
-            throw new IllegalArgumentException ("Ask entry is null");
-
-        if (!OrderBookEntrySide.BID.equals (bidEntry.getEntrySide ()))
-            throw new IllegalArgumentException ("Bid entry is not bid");
-
-        if (!OrderBookEntrySide.ASK.equals (askEntry.getEntrySide ()))
-            throw new IllegalArgumentException ("Ask entry is not ask");
-        
-        if (quantity <= 0)
-            throw new IllegalArgumentException ("Quantity <= 0");
-        
-        if (price <= 0)
-            throw new IllegalArgumentException ("Price <= 0");
-            
-        if (bidEntry.getOrderBook () != this)
-            throw new IllegalArgumentException (
-                "This order book entry is not mine");
-        
-        if (askEntry.getOrderBook () != this)
-            throw new IllegalArgumentException (
-                "This order book entry is not mine");
-
-        if (!bidEntry.active)
-            throw new IllegalStateException ("Bid entry is not active");
-
-        if (!askEntry.active)
-            throw new IllegalStateException ("Ask entry is not active");
+        private final LongLongTreeMap slotsByKey = new LongLongTreeMap ();
 
-        if (quantity > bidEntry.unfilledQuantity)
-            throw new IllegalStateException ("Not enough unfilled quantity in bid entry");
+        private final boolean isBid;
 
-        if (quantity > askEntry.unfilledQuantity)
-            throw new IllegalStateException ("Not enough unfilled quantity in ask entry");
-        
-        fillEntry (
-            timestamp, bidEntry, quantity, price);
-        fillEntry (
-            timestamp, askEntry, quantity, price);
-        
-        fireOnTrade (timestamp, bidEntry, askEntry, quantity, price);
-    }
-    
-    private void fillEntry (
-        long timestamp, OrderBookEntry entry, long quantity, long price)
-    {
-        if (entry == null)
-            throw new IllegalArgumentException ("Bid entry is null");
-        
-        if (quantity <= 0)
-            throw new IllegalArgumentException ("Quantity <= 0");
-        
-        if (price <= 0)
-            throw new IllegalArgumentException ("Price <= 0");
-            
-        if (entry.getOrderBook () != this)
-            throw new IllegalArgumentException (
-                "This order book entry is not mine");
+        private PriceLevel [] slots = new PriceLevel [16];
+        private int [] freeSlots = new int [16];
+        private int freeSlotCount = 0;
+        private int slotCount = 0;
 
-        if (!entry.active)
-            throw new IllegalStateException ("Entry is not active");
+        private PriceLevel bestLevel = null;
 
-        if (quantity > entry.unfilledQuantity)
-            throw new IllegalStateException ("Not enough unfilled quantity");
-        
-        entry.unfilledQuantity -= quantity;
-        
-        entry.callback.onFill (timestamp, entry, quantity, price);
-        
-        if (entry.unfilledQuantity == 0)
-        {
-            entry.active = false;
-            entry.callback.onFilled (timestamp, entry);
-        }
-    }
-    
-    private void cancelEntry (long timestamp, OrderBookEntry entry) 
-        throws OrderBookException
-    {
-        if (entry == null)
-            throw new IllegalArgumentException ("Entry is null");
-        
-        if (entry.getOrderBook () != this)
-            throw new IllegalArgumentException (
-                "This order book entry is not mine");
-
-        if (!entry.active)
-            throw new OrderBookException ("Entry is not active");
-        
-        entry.active = false;
-        entry.callback.onCanceled (timestamp, entry);
-    }
-    
-    private static void cleanup (SortedSet<OrderBookEntry> set)
-    {
-        if (set == null)
-            throw new IllegalArgumentException ("Set is null");
-        
-        Iterator<OrderBookEntry> i = set.iterator ();
-        while (i.hasNext ())
-        {
-            OrderBookEntry entry = i.next ();
-            
-            if (!entry.active)
-                i.remove ();
-            else break;
-        }
-    }
-    
-    private class OrderBookEntry implements OrderBookEntryHandler
-    {
-        public final OrderBookEntrySide side;
-        public final long sequentialNumber;
-        public final long limitPrice;
-        public long unfilledQuantity;
-        public final OrderBookEntryCallback callback;
-        public final Object closure;
-        public boolean active = true;
-        
-        public OrderBookEntry (
-            long sequentialNumber, 
-            OrderBookEntrySide side, long limitPrice, long unfilledQuantity, 
-            OrderBookEntryCallback callback, Object closure)
+        public TreePriceLevels (OrderBookEntrySide side)
         {
             if (side == null)
                 throw new IllegalArgumentException ("Side is null");
-            
-            if (limitPrice < 0)
-                throw new IllegalArgumentException ("Price < 0");
-            
-            if (unfilledQuantity <= 0)
-                throw new IllegalArgumentException ("Unfilled quantity <= 0");
-            
-            if (callback == null)
-                throw new IllegalArgumentException ("Callback is null");
-            
-            this.sequentialNumber = sequentialNumber;
-            this.side = side;
-            this.limitPrice = limitPrice;
-            this.unfilledQuantity = unfilledQuantity;
-            this.closure = closure;
-            this.callback = callback;
-        }
 
-        @Override
-        public OrderBookEntrySide getEntrySide ()
-        {
-            return side;
+            switch (side)
+            {
+            case BID:
+                isBid = true;
+                break;
+            case ASK:
+                isBid = false;
+                break;
+            default:
+                throw new Error ("Unknown order book entry side: " + side);
+            }
         }
 
         @Override
-        public long getUnfilledQuantity ()
+        protected PriceLevel getBestLevel ()
         {
-            return unfilledQuantity;
+            return bestLevel;
         }
 
         @Override
-        public long getLimitPrice ()
+        protected PriceLevel getOrCreateLevel (long price)
         {
-            return limitPrice;
-        }
+            long key = isBid ? -price : price;
 
-        @Override
-        public Object getClosure ()
-        {
-            return closure;
+            long slot = slotsByKey.get (key);
+            if (slot != 0L)
+                return slots [(int)slot - 1];
+
+            PriceLevel level = newLevel (price);
+            level.key = key;
+            level.index = allocateSlot ();
+            slots [level.index] = level;
+            slotsByKey.add (key, level.index + 1);
+
+            if (bestLevel == null || key < bestLevel.key)
+                bestLevel = level;
+
+            return level;
         }
 
         @Override
-        public void cancel (long timestamp) throws OrderBookException
+        protected void removeLevel (PriceLevel level)
         {
-            cancelEntry (timestamp, this);
-            
-            switch (side)
+            slotsByKey.add (level.key, -(level.index + 1));
+            slots [level.index] = null;
+            freeSlots [freeSlotCount++] = level.index;
+
+            if (level == bestLevel)
             {
-            case BID:
-                cleanup (bids);
-                fireOnQuote (timestamp, OrderBookEntrySide.BID, limitPrice, -unfilledQuantity);
-                break;
-            case ASK:
-                cleanup (asks);
-                fireOnQuote (timestamp, OrderBookEntrySide.ASK, limitPrice, -unfilledQuantity);
-                break;
-            default:
-                throw new Error ("Unknown order book entry side: " + side);
+                if (slotsByKey.isEmpty ())
+                    bestLevel = null;
+                else
+                    bestLevel = slots [(int)slotsByKey.firstValue () - 1];
             }
         }
-        
-        public SimpleOrderBook getOrderBook ()
-        {
-            return SimpleOrderBook.this;
-        }
-    }
-    
-    private static class EntryComparator implements Comparator<OrderBookEntry>
-    {
-        private final boolean isBid;
-        
-        public EntryComparator (OrderBookEntrySide side)
+
+        @Override
+        protected PriceLevel getNextLevel (PriceLevel level)
         {
-            if (side == null)
-                throw new IllegalArgumentException ();
-            
-            switch (side)
-            {
-            case BID:
-                isBid = true;
-                break;
-            case ASK:
-                isBid = false;
-                break;
-            default:
-                throw new Error ("Unknown order book entry side: " + side);
-            }
+            long slot = slotsByKey.higherValue (level.key);
+
+            return slot == 0L ? null : slots [(int)slot - 1];
         }
-        
-        @Override
-        public int compare (
-            OrderBookEntry leftEntry, OrderBookEntry rightEntry)
+
+        private int allocateSlot ()
         {
-            if (leftEntry == null)
-                throw new IllegalArgumentException ("Left entry is null");
-            
-            if (rightEntry == null)
-                throw new IllegalArgumentException ("Right entry is null");
-            
-            if (leftEntry == rightEntry) return 0;
-            
-            long leftPrice = leftEntry.limitPrice;
-            long rightPrice = rightEntry.limitPrice;
-            
-            if (leftPrice > rightPrice) return isBid ? -1 : 1;
-            else if (leftPrice < rightPrice) return isBid ? 1 : -1;
-            else
+            if (freeSlotCount > 0)
+                return freeSlots [--freeSlotCount];
+
+            if (slotCount == slots.length)
             {
-                long leftSequentialNumber = leftEntry.sequentialNumber;
-                long rightSequentialNumber = rightEntry.sequentialNumber;
-                
-                if (leftSequentialNumber < rightSequentialNumber) 
-                    return -1;
-                else if (leftSequentialNumber > rightSequentialNumber) 
-                    return 1;
-                else return 0;
+                PriceLevel [] newSlots = new PriceLevel [slotCount * 2];
+                System.arraycopy (slots, 0, newSlots, 0, slotCount);
+                slots = newSlots;
+
+                int [] newFreeSlots = new int [slotCount * 2];
+                System.arraycopy (freeSlots, 0, newFreeSlots, 0, slotCount);
+                freeSlots = newFreeSlots;
             }
+
+            return slotCount++;
         }
     }
 }
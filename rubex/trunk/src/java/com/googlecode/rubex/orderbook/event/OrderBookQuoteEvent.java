@@ -14,10 +14,11 @@ import com.googlecode.rubex.orderbook.OrderBookEntrySide;
  */
 public class OrderBookQuoteEvent extends EventObject
 {
-    private final long timestamp;
-    private final OrderBookEntrySide side;
-    private final long price;
-    private final long quantityDelta;
+    private long sequenceNumber;
+    private long timestamp;
+    private OrderBookEntrySide side;
+    private long price;
+    private long quantityDelta;
 
     /**
      * Create new quote event with given source, timestamp, side, price and quantity delta.
@@ -33,21 +34,80 @@ public class OrderBookQuoteEvent extends EventObject
     public OrderBookQuoteEvent (
         Object source, 
         long timestamp, OrderBookEntrySide side, long price, long quantityDelta)
+    {
+        this (source, 0L, timestamp, side, price, quantityDelta);
+    }
+
+    /**
+     * Create new quote event with given source, sequence number, timestamp, 
+     * side, price and quantity delta.
+     * 
+     * @param source event source
+     * @param sequenceNumber sequence number of the event within its source or
+     *        zero if event is not sequenced
+     * @param timestamp time when event occurred in milliseconds since epoch.
+     * @param side quote side
+     * @param price quote price
+     * @param quantityDelta quote quantity delta
+     * 
+     * @see System#currentTimeMillis()
+     */
+    public OrderBookQuoteEvent (
+        Object source, long sequenceNumber,
+        long timestamp, OrderBookEntrySide side, long price, long quantityDelta)
     {
         super (source);
         
+        set (sequenceNumber, timestamp, side, price, quantityDelta);
+    }
+
+    /**
+     * Set sequence number, timestamp, side, price and quantity delta of this
+     * event.  Order books that reuse event objects call this method before 
+     * passing the event to listeners, so listeners must not keep references
+     * to events after they return.
+     * 
+     * @param sequenceNumber sequence number of the event within its source or
+     *        zero if event is not sequenced
+     * @param timestamp time when event occurred in milliseconds since epoch.
+     * @param side quote side
+     * @param price quote price
+     * @param quantityDelta quote quantity delta
+     * 
+     * @see System#currentTimeMillis()
+     */
+    protected final void set (
+        long sequenceNumber, 
+        long timestamp, OrderBookEntrySide side, long price, long quantityDelta)
+    {
+        if (sequenceNumber < 0)
+            throw new IllegalArgumentException ("Sequence number < 0");
+        
         if (side == null)
             throw new IllegalArgumentException ("Side is null");
         
         if (price <= 0)
             throw new IllegalArgumentException ("Price <= 0");
         
+        this.sequenceNumber = sequenceNumber;
         this.timestamp = timestamp;
         this.side = side;
         this.price = price;
         this.quantityDelta = quantityDelta;
     }
 
+    /**
+     * Return sequence number of this event within its source or zero if event
+     * is not sequenced.  Sequenced order books number their events starting 
+     * from one, without gaps.
+     * 
+     * @see com.googlecode.rubex.orderbook.OrderBookSnapshot#getSequenceNumber()
+     */
+    public long getSequenceNumber ()
+    {
+        return sequenceNumber;
+    }
+
     /**
      * Return event timestamp as milliseconds since epoch.
      * 
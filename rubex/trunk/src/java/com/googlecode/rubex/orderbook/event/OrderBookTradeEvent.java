@@ -15,11 +15,12 @@ import com.googlecode.rubex.orderbook.OrderBookEntrySide;
  */
 public class OrderBookTradeEvent extends EventObject
 {
-    private final long timestamp;
-    private final OrderBookEntryHandler bidEntryHandler;
-    private final OrderBookEntryHandler askEntryHandler;
-    private final long quantity;
-    private final long price;
+    private long sequenceNumber;
+    private long timestamp;
+    private OrderBookEntryHandler bidEntryHandler;
+    private OrderBookEntryHandler askEntryHandler;
+    private long quantity;
+    private long price;
 
     /**
      * Create new trade event with given source, timestamp, quantity and price.
@@ -38,9 +39,67 @@ public class OrderBookTradeEvent extends EventObject
         OrderBookEntryHandler bidEntryHandler, 
         OrderBookEntryHandler askEntryHandler, 
         long quantity, long price)
+    {
+        this (
+            source, 0L, timestamp, 
+            bidEntryHandler, askEntryHandler, 
+            quantity, price);
+    }
+
+    /**
+     * Create new trade event with given source, sequence number, timestamp, 
+     * quantity and price.
+     * 
+     * @param source event source
+     * @param sequenceNumber sequence number of the event within its source or
+     *        zero if event is not sequenced
+     * @param timestamp time when event occurred in milliseconds since epoch
+     * @param bidEntryHandler handler of bid entry participated in trade
+     * @param askEntryHandler handler of ask entry participated in trade
+     * @param quantity trade quantity in quantity units
+     * @param price trade price in price units
+     * 
+     * @see System#currentTimeMillis()
+     */
+    public OrderBookTradeEvent (
+        Object source, long sequenceNumber, long timestamp, 
+        OrderBookEntryHandler bidEntryHandler, 
+        OrderBookEntryHandler askEntryHandler, 
+        long quantity, long price)
     {
         super (source);
         
+        set (
+            sequenceNumber, timestamp, 
+            bidEntryHandler, askEntryHandler, 
+            quantity, price);
+    }
+
+    /**
+     * Set sequence number, timestamp, entry handlers, quantity and price of 
+     * this event.  Order books that reuse event objects call this method 
+     * before passing the event to listeners, so listeners must not keep 
+     * references to events after they return.
+     * 
+     * @param sequenceNumber sequence number of the event within its source or
+     *        zero if event is not sequenced
+     * @param timestamp time when event occurred in milliseconds since epoch
+     * @param bidEntryHandler handler of bid entry participated in trade
+     * @param askEntryHandler handler of ask entry participated in trade
+     * @param quantity trade quantity in quantity units
+     * @param price trade price in price units
+     * 
+     * @see System#currentTimeMillis()
+     */
+    protected final void set (
+        long sequenceNumber, long timestamp, 
+        OrderBookEntryHandler bidEntryHandler, 
+        OrderBookEntryHandler askEntryHandler, 
+        long quantity, long price)
+    {
+        if (sequenceNumber < 0)
+            throw new IllegalArgumentException ("Sequence number < 0");
+        
         if (bidEntryHandler == null)
             throw new IllegalArgumentException ("Bid entry handler is null");
         
@@ -59,6 +118,7 @@ public class OrderBookTradeEvent extends EventObject
         if (price <= 0)
             throw new IllegalArgumentException ("Price <= 0");
         
+        this.sequenceNumber = sequenceNumber;
         this.timestamp = timestamp;
         this.bidEntryHandler = bidEntryHandler;
         this.askEntryHandler = askEntryHandler;
@@ -66,6 +126,18 @@ public class OrderBookTradeEvent extends EventObject
         this.price = price;
     }
 
+    /**
+     * Return sequence number of this event within its source or zero if event
+     * is not sequenced.  Sequenced order books number their events starting 
+     * from one, without gaps.
+     * 
+     * @see com.googlecode.rubex.orderbook.OrderBookSnapshot#getSequenceNumber()
+     */
+    public long getSequenceNumber ()
+    {
+        return sequenceNumber;
+    }
+
     /**
      * Return event timestamp as milliseconds since epoch.
      * 
@@ -0,0 +1,570 @@
+package com.googlecode.rubex.orderbook.journal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.rubex.concurrent.Sequence;
+import com.googlecode.rubex.concurrent.WaitStrategy;
+import com.googlecode.rubex.concurrent.YieldingWaitStrategy;
+import com.googlecode.rubex.orderbook.OrderBookEntryHandler;
+import com.googlecode.rubex.orderbook.OrderBookEntrySide;
+import com.googlecode.rubex.orderbook.event.OrderBookListener;
+import com.googlecode.rubex.orderbook.event.OrderBookQuoteEvent;
+import com.googlecode.rubex.orderbook.event.OrderBookTradeEvent;
+
+/**
+ * Order book listener that publishes order book events into pre-allocated 
+ * ring buffer, from where they are delivered to consumer listeners, each 
+ * running in its own thread.  Publishing thread only copies event fields 
+ * into buffer slot and never calls consumer listeners, so slow listeners do
+ * not delay matching unless buffer becomes full.  Consumer may declare 
+ * dependencies on other consumers, and then will see event only after all 
+ * its dependencies processed it.
+ * <p>
+ * Consumer announces when it is about to wait, and wait strategy of the 
+ * consumer is signalled only then, either by publishing thread or by 
+ * consumers it depends on, so publishing does not touch wait strategies 
+ * while consumers keep up.
+ * <p>
+ * Events are published by single thread, i.e. journal should be added as 
+ * listener to order books served by the same thread only.  Consumers should
+ * be added and journal should be started before any events are published.
+ * Entry handlers of trade events delivered to consumers may already be 
+ * changed by matching thread, so consumers should not rely on their state.
+ * Order books that recycle entry handlers, such as 
+ * {@link com.googlecode.rubex.orderbook.AbstractPriceLevelOrderBook} with 
+ * entry pooling enabled, should not publish into a journal, because 
+ * recycled handler may change its side before event is delivered.
+ * 
+ * @author Mikhail Vladimirov
+ */
+public class OrderBookEventJournal implements OrderBookListener
+{
+    private final static Logger logger =
+        Logger.getLogger (OrderBookEventJournal.class.getName ());
+    
+    private final static int TRADE = 1;
+    private final static int QUOTE = 2;
+    
+    private final int mask;
+    private final int [] types;
+    private final Object [] sources;
+    private final long [] sequenceNumbers;
+    private final long [] timestamps;
+    private final OrderBookEntrySide [] sides;
+    private final long [] prices;
+    private final long [] quantities;
+    private final OrderBookEntryHandler [] bidEntryHandlers;
+    private final OrderBookEntryHandler [] askEntryHandlers;
+    
+    private final Sequence cursor = new Sequence ();
+    private final WaitStrategy producerWaitStrategy;
+    
+    private final List <MyConsumer> consumers = new ArrayList <MyConsumer> ();
+    private volatile Sequence [] gatingSequences = new Sequence [0];
+    private volatile MyConsumer [] runningConsumers = new MyConsumer [0];
+    private volatile boolean stopped = false;
+    private boolean started = false;
+    
+    private long nextSequence = 0L;
+    private long gatingValue = Sequence.INITIAL_VALUE;
+    
+    /**
+     * Create new journal with given buffer size, that yields when buffer is
+     * full.
+     * 
+     * @param bufferSize number of slots in the ring buffer, must be power of
+     *        two
+     */
+    public OrderBookEventJournal (int bufferSize)
+    {
+        this (bufferSize, new YieldingWaitStrategy ());
+    }
+    
+    /**
+     * Create new journal with given buffer size and wait strategy to be used
+     * when buffer is full.
+     * 
+     * @param bufferSize number of slots in the ring buffer, must be power of
+     *        two
+     * @param producerWaitStrategy wait strategy for publishing thread to wait
+     *        for free slot
+     */
+    public OrderBookEventJournal (
+        int bufferSize, WaitStrategy producerWaitStrategy)
+    {
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException ("Buffer size <= 0");
+        
+        if (Integer.bitCount (bufferSize) != 1)
+            throw new IllegalArgumentException (
+                "Buffer size is not power of two");
+        
+        if (producerWaitStrategy == null)
+            throw new IllegalArgumentException (
+                "Producer wait strategy is null");
+        
+        this.producerWaitStrategy = producerWaitStrategy;
+        
+        mask = bufferSize - 1;
+        types = new int [bufferSize];
+        sources = new Object [bufferSize];
+        sequenceNumbers = new long [bufferSize];
+        timestamps = new long [bufferSize];
+        sides = new OrderBookEntrySide [bufferSize];
+        prices = new long [bufferSize];
+        quantities = new long [bufferSize];
+        bidEntryHandlers = new OrderBookEntryHandler [bufferSize];
+        askEntryHandlers = new OrderBookEntryHandler [bufferSize];
+    }
+    
+    /**
+     * Add consumer that will deliver events to given listener in its own 
+     * thread using given wait strategy.
+     * 
+     * @param listener listener to deliver events to
+     * @param waitStrategy wait strategy for consumer thread to wait for new
+     *        events
+     * @param dependencies sequences of consumers that should process event
+     *        before this consumer
+     * @return sequence of the last event processed by new consumer
+     */
+    public synchronized Sequence addConsumer (
+        OrderBookListener listener, WaitStrategy waitStrategy, 
+        Sequence ... dependencies)
+    {
+        if (listener == null)
+            throw new IllegalArgumentException ("Listener is null");
+        
+        if (waitStrategy == null)
+            throw new IllegalArgumentException ("Wait strategy is null");
+        
+        if (dependencies == null)
+            throw new IllegalArgumentException ("Dependencies is null");
+        
+        if (started)
+            throw new IllegalStateException ("Already started");
+        
+        for (Sequence dependency: dependencies)
+        {
+            if (dependency == null)
+                throw new IllegalArgumentException ("Dependency is null");
+            
+            if (findConsumer (dependency) == null)
+                throw new IllegalArgumentException (
+                    "Dependency is not a consumer of this journal");
+        }
+        
+        MyConsumer consumer = 
+            new MyConsumer (listener, waitStrategy, dependencies.clone ());
+        consumers.add (consumer);
+        
+        return consumer.sequence;
+    }
+    
+    /**
+     * Start consumer threads.
+     */
+    public synchronized void start ()
+    {
+        if (started)
+            throw new IllegalStateException ("Already started");
+        
+        started = true;
+        
+        int count = consumers.size ();
+        Sequence [] sequences = new Sequence [count];
+        
+        for (int i = 0; i < count; i++)
+            sequences [i] = consumers.get (i).sequence;
+        
+        gatingSequences = sequences;
+        runningConsumers = consumers.toArray (new MyConsumer [count]);
+        
+        for (MyConsumer consumer: consumers)
+        {
+            List <MyConsumer> dependents = new ArrayList <MyConsumer> ();
+            
+            for (MyConsumer c: consumers)
+            {
+                for (Sequence dependency: c.dependencies)
+                {
+                    if (dependency == consumer.sequence)
+                    {
+                        dependents.add (c);
+                        break;
+                    }
+                }
+            }
+            
+            consumer.dependents = 
+                dependents.toArray (new MyConsumer [dependents.size ()]);
+        }
+        
+        for (MyConsumer consumer: consumers)
+            consumer.thread.start ();
+    }
+    
+    /**
+     * Stop consumer threads and wait for them to finish.  Events published 
+     * after journal was stopped are ignored.
+     */
+    public synchronized void stop ()
+    {
+        if (stopped) return;
+        
+        stopped = true;
+        
+        if (!started) return;
+        
+        for (MyConsumer consumer: consumers)
+            consumer.thread.interrupt ();
+        
+        for (MyConsumer consumer: consumers)
+        {
+            try
+            {
+                consumer.thread.join ();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread ().interrupt ();
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Return sequence of the last published event.
+     */
+    public long getPublishedSequence ()
+    {
+        return cursor.get ();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onTrade (OrderBookTradeEvent event)
+    {
+        if (event == null)
+            throw new IllegalArgumentException ("Event is null");
+        
+        if (stopped) return;
+        
+        int slot = claim ();
+        if (slot < 0) return;
+        
+        types [slot] = TRADE;
+        sources [slot] = event.getSource ();
+        sequenceNumbers [slot] = event.getSequenceNumber ();
+        timestamps [slot] = event.getTimestamp ();
+        sides [slot] = null;
+        prices [slot] = event.getPrice ();
+        quantities [slot] = event.getQuantity ();
+        bidEntryHandlers [slot] = event.getBidEntryHandler ();
+        askEntryHandlers [slot] = event.getAskEntryHandler ();
+        
+        publish ();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onQuote (OrderBookQuoteEvent event)
+    {
+        if (event == null)
+            throw new IllegalArgumentException ("Event is null");
+        
+        if (stopped) return;
+        
+        int slot = claim ();
+        if (slot < 0) return;
+        
+        types [slot] = QUOTE;
+        sources [slot] = event.getSource ();
+        sequenceNumbers [slot] = event.getSequenceNumber ();
+        timestamps [slot] = event.getTimestamp ();
+        sides [slot] = event.getSide ();
+        prices [slot] = event.getPrice ();
+        quantities [slot] = event.getQuantityDelta ();
+        bidEntryHandlers [slot] = null;
+        askEntryHandlers [slot] = null;
+        
+        publish ();
+    }
+    
+    /**
+     * Wait for free slot for the next event.
+     * 
+     * @return index of the slot or -1 if event should be dropped, because 
+     *         journal was stopped or publishing thread was interrupted while
+     *         waiting
+     */
+    private int claim ()
+    {
+        long sequence = nextSequence;
+        long wrapPoint = sequence - types.length;
+        
+        if (wrapPoint > gatingValue)
+        {
+            int counter = 0;
+            
+            while (wrapPoint > (gatingValue = 
+                Sequence.getMinimum (gatingSequences, sequence - 1)))
+            {
+                // Stopped consumers will never free the slot
+                if (stopped) return -1;
+                
+                try
+                {
+                    producerWaitStrategy.idle (counter++);
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread ().interrupt ();
+                    
+                    if (logger.isLoggable (Level.WARNING))
+                        logger.warning (
+                            "Interrupted while waiting for free slot, " + 
+                            "event dropped");
+                    
+                    return -1;
+                }
+            }
+        }
+        
+        return (int)(sequence & mask);
+    }
+    
+    private void publish ()
+    {
+        // Volatile write, so either consumer sees the event after it 
+        // announced waiting, or this thread sees consumer waiting
+        cursor.set (nextSequence++);
+        
+        MyConsumer [] consumers = runningConsumers;
+        for (int i = 0; i < consumers.length; i++)
+            consumers [i].signalIfWaiting ();
+    }
+    
+    private MyConsumer findConsumer (Sequence sequence)
+    {
+        for (MyConsumer consumer: consumers)
+        {
+            if (consumer.sequence == sequence)
+                return consumer;
+        }
+        
+        return null;
+    }
+    
+    private class MyConsumer implements Runnable
+    {
+        public final OrderBookListener listener;
+        public final WaitStrategy waitStrategy;
+        public final Sequence [] dependencies;
+        public final Sequence sequence = new Sequence ();
+        public final Thread thread;
+        
+        // Consumers that depend on this one, set before thread is started
+        public MyConsumer [] dependents = new MyConsumer [0];
+        
+        private volatile boolean waiting = false;
+        
+        private MyTradeEvent tradeEvent = null;
+        private MyQuoteEvent quoteEvent = null;
+        
+        public MyConsumer (
+            OrderBookListener listener, WaitStrategy waitStrategy, 
+            Sequence [] dependencies)
+        {
+            if (listener == null)
+                throw new IllegalArgumentException ("Listener is null");
+            
+            if (waitStrategy == null)
+                throw new IllegalArgumentException ("Wait strategy is null");
+            
+            if (dependencies == null)
+                throw new IllegalArgumentException ("Dependencies is null");
+            
+            this.listener = listener;
+            this.waitStrategy = waitStrategy;
+            this.dependencies = dependencies;
+            
+            thread = new Thread (this, "Journal consumer: " + listener);
+            thread.setDaemon (true);
+        }
+        
+        @Override
+        public void run ()
+        {
+            long next = sequence.get () + 1;
+            int counter = 0;
+            
+            try
+            {
+                while (!stopped)
+                {
+                    long available = getAvailable ();
+                    
+                    if (available < next)
+                    {
+                        await (next, counter++);
+                        continue;
+                    }
+                    
+                    counter = 0;
+                    
+                    while (next <= available)
+                        dispatch ((int)(next++ & mask));
+                    
+                    // Volatile write, the same way as in publish
+                    sequence.set (available);
+                    
+                    for (int i = 0; i < dependents.length; i++)
+                        dependents [i].signalIfWaiting ();
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                // Stopped
+            }
+            
+            if (logger.isLoggable (Level.INFO))
+                logger.info ("Journal consumer stopped: " + listener);
+        }
+        
+        public void signalIfWaiting ()
+        {
+            if (waiting)
+                waitStrategy.signalAll ();
+        }
+        
+        private long getAvailable ()
+        {
+            return dependencies.length == 0 ?
+                cursor.get () : 
+                Sequence.getMinimum (dependencies, cursor.get ());
+        }
+        
+        private void await (long next, int counter) 
+            throws InterruptedException
+        {
+            waiting = true;
+            try
+            {
+                // Event published before consumer announced waiting
+                if (getAvailable () >= next) return;
+                
+                waitStrategy.idle (counter);
+            }
+            finally
+            {
+                waiting = false;
+            }
+        }
+        
+        private void dispatch (int slot)
+        {
+            try
+            {
+                switch (types [slot])
+                {
+                case TRADE:
+                    if (tradeEvent == null)
+                        tradeEvent = new MyTradeEvent (
+                            sources [slot], 
+                            sequenceNumbers [slot], timestamps [slot], 
+                            bidEntryHandlers [slot], askEntryHandlers [slot], 
+                            quantities [slot], prices [slot]);
+                    else
+                        tradeEvent.update (
+                            sources [slot], 
+                            sequenceNumbers [slot], timestamps [slot], 
+                            bidEntryHandlers [slot], askEntryHandlers [slot], 
+                            quantities [slot], prices [slot]);
+                    
+                    listener.onTrade (tradeEvent);
+                    break;
+                case QUOTE:
+                    if (quoteEvent == null)
+                        quoteEvent = new MyQuoteEvent (
+                            sources [slot], 
+                            sequenceNumbers [slot], timestamps [slot], 
+                            sides [slot], prices [slot], quantities [slot]);
+                    else
+                        quoteEvent.update (
+                            sources [slot], 
+                            sequenceNumbers [slot], timestamps [slot], 
+                            sides [slot], prices [slot], quantities [slot]);
+                    
+                    listener.onQuote (quoteEvent);
+                    break;
+                default:
+                    throw new Error ("Unknown event type: " + types [slot]);
+                }
+            }
+            catch (Throwable ex)
+            {
+                if (logger.isLoggable (Level.SEVERE))
+                    logger.log (
+                        Level.SEVERE, 
+                        "Exception while delivering event to listener", ex);
+            }
+        }
+    }
+    
+    private static class MyTradeEvent extends OrderBookTradeEvent
+    {
+        public MyTradeEvent (
+            Object source, long sequenceNumber, long timestamp, 
+            OrderBookEntryHandler bidEntryHandler, 
+            OrderBookEntryHandler askEntryHandler, 
+            long quantity, long price)
+        {
+            super (
+                source, sequenceNumber, timestamp, 
+                bidEntryHandler, askEntryHandler, 
+                quantity, price);
+        }
+        
+        public void update (
+            Object source, long sequenceNumber, long timestamp, 
+            OrderBookEntryHandler bidEntryHandler, 
+            OrderBookEntryHandler askEntryHandler, 
+            long quantity, long price)
+        {
+            // Journal may be shared by several order books
+            this.source = source;
+            
+            set (
+                sequenceNumber, timestamp, 
+                bidEntryHandler, askEntryHandler, 
+                quantity, price);
+        }
+    }
+    
+    private static class MyQuoteEvent extends OrderBookQuoteEvent
+    {
+        public MyQuoteEvent (
+            Object source, long sequenceNumber, long timestamp, 
+            OrderBookEntrySide side, long price, long quantityDelta)
+        {
+            super (source, sequenceNumber, timestamp, side, price, quantityDelta);
+        }
+        
+        public void update (
+            Object source, long sequenceNumber, long timestamp, 
+            OrderBookEntrySide side, long price, long quantityDelta)
+        {
+            this.source = source;
+            
+            set (sequenceNumber, timestamp, side, price, quantityDelta);
+        }
+    }
+}
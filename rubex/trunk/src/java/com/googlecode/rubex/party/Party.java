@@ -2,6 +2,7 @@ package com.googlecode.rubex.party;
 
 import com.googlecode.rubex.party.event.PartyListener;
 import com.googlecode.rubex.protocol.CancelOrderProtocolMessage;
+import com.googlecode.rubex.protocol.MassCancelProtocolMessage;
 import com.googlecode.rubex.protocol.NewOrderProtocolMessage;
 import com.googlecode.rubex.protocol.ReplaceOrderProtocolMessage;
 
@@ -33,6 +34,20 @@ public interface Party
      */
     public void processNewOrderMessage (NewOrderProtocolMessage newOrder);
     
+    /**
+     * Process several new order messages at once.  Messages are processed in 
+     * order within each symbol, and orders for the same symbol are handed to
+     * the exchange together.
+     * <p>
+     * This method is API only: protocol has no batch message, and server 
+     * session passes messages received from clients to 
+     * {@link #processNewOrderMessage(NewOrderProtocolMessage)} one by one, so
+     * batches may only be submitted by applications that embed the party.
+     * 
+     * @param newOrders new order messages to be processed
+     */
+    public void processNewOrderMessages (NewOrderProtocolMessage [] newOrders);
+    
     /**
      * Process replace order message.
      * 
@@ -47,6 +62,13 @@ public interface Party
      */
     public void processCancelOrderMessage (CancelOrderProtocolMessage cancelOrder);
     
+    /**
+     * Process mass cancel message.
+     * 
+     * @param massCancel mass cancel message to be processed
+     */
+    public void processMassCancelMessage (MassCancelProtocolMessage massCancel);
+    
     /**
      * Get all orders for this party.
      * 
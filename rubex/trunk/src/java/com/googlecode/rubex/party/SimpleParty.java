@@ -1,9 +1,19 @@
 package com.googlecode.rubex.party;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.googlecode.rubex.exchange.Exchange;
+import com.googlecode.rubex.exchange.LimitOrder;
+import com.googlecode.rubex.exchange.LimitOrderBatch;
 import com.googlecode.rubex.exchange.Order;
 import com.googlecode.rubex.exchange.OrderCallback;
 import com.googlecode.rubex.exchange.OrderException;
@@ -11,53 +21,293 @@ import com.googlecode.rubex.exchange.OrderSide;
 import com.googlecode.rubex.exchange.OrderTimeInForce;
 import com.googlecode.rubex.exchange.OrderType;
 import com.googlecode.rubex.protocol.CancelOrderProtocolMessage;
+import com.googlecode.rubex.protocol.MassCancelProtocolMessage;
 import com.googlecode.rubex.protocol.NewOrderProtocolMessage;
 import com.googlecode.rubex.protocol.ReplaceOrderProtocolMessage;
+import com.googlecode.rubex.risk.RiskException;
+import com.googlecode.rubex.risk.RiskManager;
+import com.googlecode.rubex.risk.SimpleRiskManager;
 import com.googlecode.rubex.symbol.SymbolManager;
 
 /**
  * Simple implementation of {@link Party} interface based on 
  * {@link SymbolManager}.
+ * <p>
+ * New and replacing orders are checked by {@link RiskManager} before party 
+ * lock is taken, and orders that violate risk limits are rejected without 
+ * being sent to exchange.  Open quantity reserved by accepted orders is 
+ * released from order callbacks as orders are filled, canceled, replaced or
+ * rejected by exchange.
+ * <p>
+ * Runnables are sent to symbol threads outside party lock, as sending may
+ * wait for free slot in the queue of symbol thread, while symbol thread 
+ * takes party lock to update orders.  Orders that could not be sent to 
+ * symbol thread are rejected and their open quantity is released.
  * 
  * @author Mikhail Vladimirov
  */
 public class SimpleParty extends AbstractParty
 {
+    private final static Logger logger = 
+        Logger.getLogger (SimpleParty.class.getName ());
+    
     private final OrderCallback orderCallback = 
         new MyOrderCallback ();
     private final Map <Long, MyPartyOrder> orders =
         new HashMap <Long, MyPartyOrder> ();
     
+    // IDs of orders that are not done yet, by account and symbol
+    private final Map <Long, Map <String, Set <Long>>> activeOrderIDs =
+        new HashMap <Long, Map <String, Set <Long>>> ();
+    
     private final SymbolManager symbolManager;
+    private final RiskManager riskManager;
     
     /**
-     * Create new party based on given {@link SymbolManager} object.
+     * Create new party based on given {@link SymbolManager} object, that does
+     * not enforce any risk limits.
      * 
      * @param symbolManager symbol manager to base on
      */
     public SimpleParty (SymbolManager symbolManager)
+    {
+        this (symbolManager, new SimpleRiskManager ());
+    }
+    
+    /**
+     * Create new party based on given {@link SymbolManager} object, that 
+     * checks orders by given {@link RiskManager}.
+     * 
+     * @param symbolManager symbol manager to base on
+     * @param riskManager risk manager to check orders by
+     */
+    public SimpleParty (SymbolManager symbolManager, RiskManager riskManager)
     {
         if (symbolManager == null)
             throw new IllegalArgumentException ("Symbol manager is null");
         
+        if (riskManager == null)
+            throw new IllegalArgumentException ("Risk manager is null");
+        
         this.symbolManager = symbolManager;
+        this.riskManager = riskManager;
     }
     
     /**
      * {@inheritDoc}
      */
     @Override
-    public synchronized void processNewOrderMessage (
-        NewOrderProtocolMessage newOrder)
+    public void processNewOrderMessage (NewOrderProtocolMessage newOrder)
     {
         if (newOrder == null)
             throw new IllegalArgumentException ("New order is null");
         
-        MyPartyOrder partyOrder = new MyPartyOrder (
+        MyPartyOrder partyOrder = createOrder (newOrder);
+        boolean accepted = checkRisk (partyOrder);
+        
+        synchronized (this)
+        {
+            if (!registerOrder (partyOrder, accepted)) return;
+        }
+        
+        try
+        {
+            symbolManager.executeInSymbolThread (
+                partyOrder.getSymbolID (), new NewOrderRunnable (partyOrder));
+        }
+        catch (RuntimeException ex)
+        {
+            rejectOrder (partyOrder);
+            throw ex;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void processNewOrderMessages (NewOrderProtocolMessage [] newOrders)
+    {
+        if (newOrders == null)
+            throw new IllegalArgumentException ("New orders is null");
+        
+        for (NewOrderProtocolMessage newOrder: newOrders)
+        {
+            if (newOrder == null)
+                throw new IllegalArgumentException ("New order is null");
+        }
+        
+        MyPartyOrder [] partyOrders = new MyPartyOrder [newOrders.length];
+        boolean [] accepted = new boolean [newOrders.length];
+        
+        for (int i = 0; i < newOrders.length; i++)
+        {
+            partyOrders [i] = createOrder (newOrders [i]);
+            accepted [i] = checkRisk (partyOrders [i]);
+        }
+        
+        Map <Integer, List <MyPartyOrder>> ordersBySymbol = 
+            new LinkedHashMap <Integer, List <MyPartyOrder>> ();
+        
+        synchronized (this)
+        {
+            int i = 0;
+            try
+            {
+                for (; i < partyOrders.length; i++)
+                {
+                    MyPartyOrder partyOrder = partyOrders [i];
+                    
+                    if (!registerOrder (partyOrder, accepted [i])) continue;
+                    
+                    Integer symbolID = 
+                        Integer.valueOf (partyOrder.getSymbolID ());
+                    List <MyPartyOrder> symbolOrders = 
+                        ordersBySymbol.get (symbolID);
+                    
+                    if (symbolOrders == null)
+                    {
+                        symbolOrders = new ArrayList <MyPartyOrder> ();
+                        ordersBySymbol.put (symbolID, symbolOrders);
+                    }
+                    
+                    symbolOrders.add (partyOrder);
+                }
+            }
+            catch (RuntimeException ex)
+            {
+                // Orders registered so far are not sent to exchange either
+                for (List <MyPartyOrder> symbolOrders: ordersBySymbol.values ())
+                    for (MyPartyOrder partyOrder: symbolOrders)
+                        rejectOrder (partyOrder);
+                
+                // Order that failed to register was already released by
+                // registerOrder, and following orders were never registered
+                for (int j = i + 1; j < partyOrders.length; j++)
+                    if (accepted [j])
+                        releaseOrder (partyOrders [j]);
+                
+                throw ex;
+            }
+        }
+        
+        List <List <MyPartyOrder>> batches = 
+            new ArrayList <List <MyPartyOrder>> (ordersBySymbol.values ());
+        
+        for (int i = 0; i < batches.size (); i++)
+        {
+            List <MyPartyOrder> symbolOrders = batches.get (i);
+            
+            try
+            {
+                symbolManager.executeInSymbolThread (
+                    symbolOrders.get (0).getSymbolID (), 
+                    new NewOrdersRunnable (symbolOrders));
+            }
+            catch (RuntimeException ex)
+            {
+                // Neither this batch nor the following ones were sent
+                for (int j = i; j < batches.size (); j++)
+                    for (MyPartyOrder partyOrder: batches.get (j))
+                        rejectOrder (partyOrder);
+                
+                throw ex;
+            }
+        }
+    }
+    
+    /**
+     * Add order to order maps, and reject it immediately if it was not 
+     * accepted by risk manager.  Open quantity of accepted order is released
+     * if order cannot be added.
+     * 
+     * @return <code>true</code> if order should be sent to exchange, 
+     *         <code>false</code> if it was rejected
+     */
+    private boolean registerOrder (MyPartyOrder partyOrder, boolean accepted)
+    {
+        try
+        {
+            addOrder (partyOrder);
+        }
+        catch (RuntimeException ex)
+        {
+            if (accepted)
+                releaseOrder (partyOrder);
+            
+            throw ex;
+        }
+        
+        if (!accepted)
+            updateOrder (partyOrder, rejectedOrder (partyOrder));
+        
+        return accepted;
+    }
+    
+    private boolean checkRisk (PartyOrder order)
+    {
+        long price;
+        OrderType type = order.getOrderType ();
+        switch (type)
+        {
+        case MARKET:
+            price = 0L;
+            break;
+        case STOP:
+            price = order.getStopPrice ();
+            break;
+        case LIMIT:
+        case STOP_LIMIT:
+        case ICEBERG:
+            price = order.getLimitPrice ();
+            break;
+        default:
+            throw new Error ("Unknown order type: " + type);
+        }
+        
+        try
+        {
+            riskManager.checkOrder (
+                System.currentTimeMillis (), order.getAccount (), 
+                order.getSymbol (), order.getQuantity (), price);
+            
+            return true;
+        }
+        catch (RiskException ex)
+        {
+            if (logger.isLoggable (Level.FINE))
+                logger.fine (
+                    "Order " + order.getOrderID () + " rejected: " + 
+                    ex.getMessage ());
+            
+            return false;
+        }
+    }
+    
+    private void releaseOrder (PartyOrder order)
+    {
+        riskManager.release (
+            order.getAccount (), order.getSymbol (), order.getQuantity ());
+    }
+    
+    private void release (PartyOrder partyOrder, Order order)
+    {
+        riskManager.release (
+            partyOrder.getAccount (), partyOrder.getSymbol (),
+            order.getOrderedQuantity () - order.getFilledQuantity ());
+    }
+    
+    private MyPartyOrder createOrder (NewOrderProtocolMessage newOrder)
+    {
+        if (newOrder == null)
+            throw new IllegalArgumentException ("New order is null");
+        
+        return new MyPartyOrder (
             newOrder.getOrderID (),
             PartyOrderState.NEW,
             newOrder.getAccount (),
             newOrder.getSymbol (),
+            symbolManager.getSymbolID (newOrder.getSymbol ()),
             newOrder.getSide (),
             newOrder.getQuantity (),
             0, // Filled quantity
@@ -69,30 +319,30 @@ public class SimpleParty extends AbstractParty
             newOrder.getVisibleQuantity (),
             null // Order
         );
-        
-        addOrder (partyOrder);
-        
-        symbolManager.executeInSymbolThread (
-            partyOrder.getSymbol (), new NewOrderRunnable (partyOrder));
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Replacing order reserves its full quantity until open quantity of 
+     * original order is released on replace.
      */
     @Override
-    public synchronized void processReplaceOrderMessage (
+    public void processReplaceOrderMessage (
         ReplaceOrderProtocolMessage replaceOrder)
     {
         if (replaceOrder == null)
             throw new IllegalArgumentException ("Replace order is null");
         
-        PartyOrder originalOrder = getOrder (replaceOrder.getOriginalOrderID ());
+        MyPartyOrder originalOrder = 
+            getOrder (replaceOrder.getOriginalOrderID ());
         
         MyPartyOrder partyOrder = new MyPartyOrder (
             replaceOrder.getOrderID (),
             PartyOrderState.NEW,
             originalOrder.getAccount (),
             originalOrder.getSymbol (),
+            originalOrder.getSymbolID (),
             originalOrder.getSide (),
             replaceOrder.getQuantity (),
             0, // Filled quantity
@@ -105,27 +355,110 @@ public class SimpleParty extends AbstractParty
             null // Order
         );
         
-        addOrder (partyOrder);
+        boolean accepted = checkRisk (partyOrder);
         
-        symbolManager.executeInSymbolThread (
-            originalOrder.getSymbol (), 
-            new ReplaceOrderRunnable (originalOrder, partyOrder));
+        synchronized (this)
+        {
+            if (!registerOrder (partyOrder, accepted)) return;
+        }
+        
+        try
+        {
+            symbolManager.executeInSymbolThread (
+                originalOrder.getSymbolID (), 
+                new ReplaceOrderRunnable (originalOrder, partyOrder));
+        }
+        catch (RuntimeException ex)
+        {
+            rejectOrder (partyOrder);
+            throw ex;
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public synchronized void processCancelOrderMessage (
+    public void processCancelOrderMessage (
         CancelOrderProtocolMessage cancelOrder)
     {
         if (cancelOrder == null)
             throw new IllegalArgumentException ("Cancel order is null");
         
-        PartyOrder partyOrder = getOrder (cancelOrder.getOrderID ());
+        MyPartyOrder partyOrder = getOrder (cancelOrder.getOrderID ());
         
         symbolManager.executeInSymbolThread (
-            partyOrder.getSymbol (), new CancelOrderRunnable (partyOrder));
+            partyOrder.getSymbolID (), new CancelOrderRunnable (partyOrder));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Active orders are looked up in per account index, and orders of each 
+     * symbol are canceled by single call to 
+     * {@link Exchange#cancelOrders(long, java.util.Collection)} in symbol 
+     * thread.
+     */
+    @Override
+    public void processMassCancelMessage (
+        MassCancelProtocolMessage massCancel)
+    {
+        if (massCancel == null)
+            throw new IllegalArgumentException ("Mass cancel is null");
+        
+        String symbol = massCancel.getSymbol ();
+        
+        // Reject unknown symbol even if there are no orders for it
+        if (symbol != null)
+            symbolManager.getSymbolExchange (symbol);
+        
+        List <List <MyPartyOrder>> ordersBySymbol = 
+            new ArrayList <List <MyPartyOrder>> ();
+        
+        synchronized (this)
+        {
+            Map <String, Set <Long>> accountOrderIDs = 
+                activeOrderIDs.get (Long.valueOf (massCancel.getAccount ()));
+            
+            if (accountOrderIDs == null) return;
+            
+            if (symbol != null)
+                collectOrders (
+                    accountOrderIDs.get (symbol), massCancel.getSide (), 
+                    ordersBySymbol);
+            else
+            {
+                for (Set <Long> orderIDs: accountOrderIDs.values ())
+                    collectOrders (
+                        orderIDs, massCancel.getSide (), ordersBySymbol);
+            }
+        }
+        
+        // All orders in every list share the same symbol
+        for (List <MyPartyOrder> symbolOrders: ordersBySymbol)
+            symbolManager.executeInSymbolThread (
+                symbolOrders.get (0).getSymbolID (), 
+                new CancelOrdersRunnable (symbolOrders));
+    }
+    
+    private void collectOrders (
+        Set <Long> orderIDs, OrderSide side, 
+        List <List <MyPartyOrder>> ordersBySymbol)
+    {
+        if (orderIDs == null) return;
+        
+        List <MyPartyOrder> symbolOrders = new ArrayList <MyPartyOrder> ();
+        
+        for (Long orderID: orderIDs)
+        {
+            MyPartyOrder order = orders.get (orderID);
+            
+            if (side == null || side.equals (order.getSide ()))
+                symbolOrders.add (order);
+        }
+        
+        if (!symbolOrders.isEmpty ())
+            ordersBySymbol.add (symbolOrders);
     }
 
     /**
@@ -137,13 +470,13 @@ public class SimpleParty extends AbstractParty
         return orders.values ().toArray (new PartyOrder [orders.size ()]);
     }
     
-    private void placeOrder (PartyOrder order)
+    private void placeOrder (MyPartyOrder order)
     {
         if (order == null)
             throw new IllegalArgumentException ("Order is null");
         
         Exchange exchange = 
-            symbolManager.getSymbolExchange (order.getSymbol ());
+            symbolManager.getSymbolExchange (order.getSymbolID ());
         
         Long orderID = order.getOrderID ();
         Order o;
@@ -187,25 +520,101 @@ public class SimpleParty extends AbstractParty
         }
         catch (OrderException ex)
         {
-            updateOrder (order, new MyPartyOrder (
-                order.getOrderID (), PartyOrderState.REJECTED, order.getAccount (), 
-                order.getSymbol (), order.getSide (), order.getQuantity (), 
-                0, 0, order.getOrderType (), order.getTimeInForce (), 
-                order.getLimitPrice (), order.getStopPrice (), 
-                order.getVisibleQuantity (), null));
+            rejectOrder (order);
             
             return;
         }
         
+        openOrder (order, o);
+    }
+    
+    private void placeOrders (List <MyPartyOrder> orders)
+    {
+        if (orders == null)
+            throw new IllegalArgumentException ("Orders is null");
+        
+        if (orders.isEmpty ()) return;
+        
+        Exchange exchange = 
+            symbolManager.getSymbolExchange (orders.get (0).getSymbolID ());
+        
+        LimitOrderBatch batch = new LimitOrderBatch ();
+        List <MyPartyOrder> batchOrders = new ArrayList <MyPartyOrder> ();
+        
+        for (MyPartyOrder order: orders)
+        {
+            if (OrderType.LIMIT.equals (order.getOrderType ()) &&
+                order.getTimeInForce () != null)
+            {
+                batch.add (
+                    order.getSide (), order.getQuantity (), 
+                    order.getLimitPrice (), order.getTimeInForce (), 
+                    orderCallback, Long.valueOf (order.getOrderID ()));
+                batchOrders.add (order);
+            }
+            else
+            {
+                placeLimitOrders (exchange, batch, batchOrders);
+                placeOrder (order);
+            }
+        }
+        
+        placeLimitOrders (exchange, batch, batchOrders);
+    }
+    
+    private void placeLimitOrders (
+        Exchange exchange, LimitOrderBatch batch, 
+        List <MyPartyOrder> batchOrders)
+    {
+        int size = batch.size ();
+        
+        if (size == 0) return;
+        
+        exchange.createLimitOrders (System.currentTimeMillis (), batch);
+        
+        for (int i = 0; i < size; i++)
+        {
+            MyPartyOrder order = batchOrders.get (i);
+            
+            if (batch.getException (i) != null)
+                rejectOrder (order);
+            else openOrder (order, batch.getOrder (i));
+        }
+        
+        batch.clear ();
+        batchOrders.clear ();
+    }
+    
+    private void rejectOrder (MyPartyOrder order)
+    {
+        releaseOrder (order);
+        
+        updateOrder (order, rejectedOrder (order));
+    }
+    
+    private MyPartyOrder rejectedOrder (MyPartyOrder order)
+    {
+        return new MyPartyOrder (
+            order.getOrderID (), PartyOrderState.REJECTED, order.getAccount (), 
+            order.getSymbol (), order.getSymbolID (), order.getSide (), 
+            order.getQuantity (), 
+            0, 0, order.getOrderType (), order.getTimeInForce (), 
+            order.getLimitPrice (), order.getStopPrice (), 
+            order.getVisibleQuantity (), null);
+    }
+    
+    private void openOrder (MyPartyOrder order, Order o)
+    {
         updateOrder (order, new MyPartyOrder (
             order.getOrderID (), PartyOrderState.OPEN, order.getAccount (), 
-            order.getSymbol (), order.getSide (), order.getQuantity (), 
+            order.getSymbol (), order.getSymbolID (), order.getSide (), 
+            order.getQuantity (), 
             0, 0, order.getOrderType (), order.getTimeInForce (), 
             order.getLimitPrice (), order.getStopPrice (), 
             order.getVisibleQuantity (), o));
     }
 
-    private void replaceOrder (PartyOrder originalOrder, PartyOrder order)
+    private void replaceOrder (MyPartyOrder originalOrder, MyPartyOrder order)
     {
         if (originalOrder == null)
             throw new IllegalArgumentException ("Original order is null");
@@ -213,13 +622,64 @@ public class SimpleParty extends AbstractParty
         if (order == null)
             throw new IllegalArgumentException ("Order is null");
         
+        Order o = getOrder (originalOrder.getOrderID ()).order;
+        
+        if (!(o instanceof LimitOrder) || 
+            !OrderType.LIMIT.equals (order.getOrderType ()))
+        {
+            rejectOrder (order);
+            
+            return;
+        }
+        
+        Order newOrder;
+        try
+        {
+            newOrder = ((LimitOrder)o).replaceWithLimitOrder (
+                System.currentTimeMillis (), order.getQuantity (), 
+                order.getLimitPrice (), order.getTimeInForce (), 
+                orderCallback, Long.valueOf (order.getOrderID ()));
+        }
+        catch (OrderException ex)
+        {
+            rejectOrder (order);
+            
+            return;
+        }
+        
+        openOrder (order, newOrder);
     }
 
-    private void cancelOrder (PartyOrder order)
+    private void cancelOrder (MyPartyOrder order)
     {
         if (order == null)
             throw new IllegalArgumentException ("Order is null");
         
+        cancelOrders (Collections.singletonList (order));
+    }
+    
+    private void cancelOrders (List <MyPartyOrder> orders)
+    {
+        if (orders == null)
+            throw new IllegalArgumentException ("Orders is null");
+        
+        if (orders.isEmpty ()) return;
+        
+        Exchange exchange = 
+            symbolManager.getSymbolExchange (orders.get (0).getSymbolID ());
+        
+        List <Order> exchangeOrders = new ArrayList <Order> (orders.size ());
+        
+        for (MyPartyOrder order: orders)
+        {
+            // Order is null if it was rejected
+            Order o = getOrder (order.getOrderID ()).getOrder ();
+            
+            if (o != null)
+                exchangeOrders.add (o);
+        }
+        
+        exchange.cancelOrders (System.currentTimeMillis (), exchangeOrders);
     }
     
     private synchronized void addOrder (MyPartyOrder order)
@@ -233,6 +693,23 @@ public class SimpleParty extends AbstractParty
         
         orders.put (orderID, order);
         
+        Long account = Long.valueOf (order.getAccount ());
+        Map <String, Set <Long>> accountOrderIDs = activeOrderIDs.get (account);
+        if (accountOrderIDs == null)
+        {
+            accountOrderIDs = new HashMap <String, Set <Long>> ();
+            activeOrderIDs.put (account, accountOrderIDs);
+        }
+        
+        Set <Long> symbolOrderIDs = accountOrderIDs.get (order.getSymbol ());
+        if (symbolOrderIDs == null)
+        {
+            symbolOrderIDs = new LinkedHashSet <Long> ();
+            accountOrderIDs.put (order.getSymbol (), symbolOrderIDs);
+        }
+        
+        symbolOrderIDs.add (orderID);
+        
         fireOnOrderCreated (order);
     }
     
@@ -250,12 +727,49 @@ public class SimpleParty extends AbstractParty
         
         orders.put (orderID, newOrder);
         
+        if (isDone (newOrder.getOrderState ()))
+        {
+            Long account = Long.valueOf (newOrder.getAccount ());
+            Map <String, Set <Long>> accountOrderIDs = 
+                activeOrderIDs.get (account);
+            Set <Long> symbolOrderIDs = accountOrderIDs == null ? null :
+                accountOrderIDs.get (newOrder.getSymbol ());
+            
+            // Order may already be removed by previous update
+            if (symbolOrderIDs != null && 
+                symbolOrderIDs.remove (orderID) && symbolOrderIDs.isEmpty ())
+            {
+                accountOrderIDs.remove (newOrder.getSymbol ());
+                
+                if (accountOrderIDs.isEmpty ())
+                    activeOrderIDs.remove (account);
+            }
+        }
+        
         fireOnOrderChanged (oldOrder, newOrder);
     }
     
-    private synchronized PartyOrder getOrder (long orderID)
+    private static boolean isDone (PartyOrderState orderState)
+    {
+        switch (orderState)
+        {
+        case NEW:
+        case OPEN:
+        case PARTIALLY_FILLED:
+            return false;
+        case FILLED:
+        case REPLACED:
+        case CANCELED:
+        case REJECTED:
+            return true;
+        default:
+            throw new Error ("Unknown order state: " + orderState);
+        }
+    }
+    
+    private synchronized MyPartyOrder getOrder (long orderID)
     {
-        PartyOrder result = orders.get (Long.valueOf (orderID));
+        MyPartyOrder result = orders.get (Long.valueOf (orderID));
         
         if (result == null)
             throw new IllegalArgumentException ("No order with such ID: " + orderID);
@@ -269,6 +783,7 @@ public class SimpleParty extends AbstractParty
         private final PartyOrderState orderState;
         private final long account;
         private final String symbol;
+        private final int symbolID;
         private final OrderSide side;
         private final long quantity;
         private final long filledQuantity;
@@ -281,7 +796,8 @@ public class SimpleParty extends AbstractParty
         private final Order order;
         
         public MyPartyOrder (long orderID, PartyOrderState orderState,
-            long account, String symbol, OrderSide side, long quantity,
+            long account, String symbol, int symbolID, OrderSide side, 
+            long quantity,
             long filledQuantity, long filledValue, OrderType orderType,
             OrderTimeInForce timeInForce, long limitPrice, long stopPrice,
             long visibleQuantity, Order order)
@@ -326,6 +842,7 @@ public class SimpleParty extends AbstractParty
             this.orderState = orderState;
             this.account = account;
             this.symbol = symbol;
+            this.symbolID = symbolID;
             this.side = side;
             this.quantity = quantity;
             this.filledQuantity = filledQuantity;
@@ -420,13 +937,23 @@ public class SimpleParty extends AbstractParty
         {
             return order;
         }
+        
+        /**
+         * Return ID of order symbol in symbol manager.
+         * 
+         * @return symbol ID
+         */
+        public int getSymbolID ()
+        {
+            return symbolID;
+        }
     }
     
     private class NewOrderRunnable implements Runnable
     {
-        private final PartyOrder order;
+        private final MyPartyOrder order;
         
-        public NewOrderRunnable (PartyOrder order)
+        public NewOrderRunnable (MyPartyOrder order)
         {
             if (order == null)
                 throw new IllegalArgumentException ("Order is null");
@@ -441,12 +968,32 @@ public class SimpleParty extends AbstractParty
         }
     }
     
+    private class NewOrdersRunnable implements Runnable
+    {
+        private final List <MyPartyOrder> orders;
+        
+        public NewOrdersRunnable (List <MyPartyOrder> orders)
+        {
+            if (orders == null)
+                throw new IllegalArgumentException ("Orders is null");
+            
+            this.orders = orders;
+        }
+        
+        @Override
+        public void run ()
+        {
+            placeOrders (orders);
+        }
+    }
+    
     private class ReplaceOrderRunnable implements Runnable
     {
-        private final PartyOrder originalOrder;
-        private final PartyOrder order;
+        private final MyPartyOrder originalOrder;
+        private final MyPartyOrder order;
         
-        public ReplaceOrderRunnable (PartyOrder originalOrder, PartyOrder order)
+        public ReplaceOrderRunnable (
+            MyPartyOrder originalOrder, MyPartyOrder order)
         {
             if (originalOrder == null)
                 throw new IllegalArgumentException ("Original order is null");
@@ -467,9 +1014,9 @@ public class SimpleParty extends AbstractParty
     
     private class CancelOrderRunnable implements Runnable
     {
-        private final PartyOrder order;
+        private final MyPartyOrder order;
         
-        public CancelOrderRunnable (PartyOrder order)
+        public CancelOrderRunnable (MyPartyOrder order)
         {
             if (order == null)
                 throw new IllegalArgumentException ("Order is null");
@@ -484,17 +1031,39 @@ public class SimpleParty extends AbstractParty
         }
     }
     
+    private class CancelOrdersRunnable implements Runnable
+    {
+        private final List <MyPartyOrder> orders;
+        
+        public CancelOrdersRunnable (List <MyPartyOrder> orders)
+        {
+            if (orders == null)
+                throw new IllegalArgumentException ("Orders is null");
+            
+            this.orders = orders;
+        }
+        
+        @Override
+        public void run ()
+        {
+            cancelOrders (orders);
+        }
+    }
+    
     private class MyOrderCallback implements OrderCallback
     {
         @Override
         public void onFill (long timestamp, Order order, long quantity,
             long price)
         {
-            PartyOrder oldOrder = getOrder (((Long)order.getClosure ()).longValue ());
+            MyPartyOrder oldOrder = getOrder (((Long)order.getClosure ()).longValue ());
+            
+            riskManager.release (
+                oldOrder.getAccount (), oldOrder.getSymbol (), quantity);
             
             updateOrder (oldOrder, new MyPartyOrder (
                 oldOrder.getOrderID (), PartyOrderState.PARTIALLY_FILLED, oldOrder.getAccount (), 
-                oldOrder.getSymbol (), oldOrder.getSide (), oldOrder.getQuantity (), 
+                oldOrder.getSymbol (), oldOrder.getSymbolID (), oldOrder.getSide (), oldOrder.getQuantity (), 
                 order.getFilledQuantity (), order.getFilledValue (), oldOrder.getOrderType (), oldOrder.getTimeInForce (), 
                 oldOrder.getLimitPrice (), oldOrder.getStopPrice (), 
                 oldOrder.getVisibleQuantity (), order));
@@ -503,11 +1072,11 @@ public class SimpleParty extends AbstractParty
         @Override
         public void onFilled (long timestamp, Order order)
         {
-            PartyOrder oldOrder = getOrder (((Long)order.getClosure ()).longValue ());
+            MyPartyOrder oldOrder = getOrder (((Long)order.getClosure ()).longValue ());
             
             updateOrder (oldOrder, new MyPartyOrder (
                 oldOrder.getOrderID (), PartyOrderState.FILLED, oldOrder.getAccount (), 
-                oldOrder.getSymbol (), oldOrder.getSide (), oldOrder.getQuantity (), 
+                oldOrder.getSymbol (), oldOrder.getSymbolID (), oldOrder.getSide (), oldOrder.getQuantity (), 
                 order.getFilledQuantity (), order.getFilledValue (), oldOrder.getOrderType (), oldOrder.getTimeInForce (), 
                 oldOrder.getLimitPrice (), oldOrder.getStopPrice (), 
                 oldOrder.getVisibleQuantity (), order));
@@ -516,11 +1085,13 @@ public class SimpleParty extends AbstractParty
         @Override
         public void onCanceled (long timestamp, Order order)
         {
-            PartyOrder oldOrder = getOrder (((Long)order.getClosure ()).longValue ());
+            MyPartyOrder oldOrder = getOrder (((Long)order.getClosure ()).longValue ());
+            
+            release (oldOrder, order);
             
             updateOrder (oldOrder, new MyPartyOrder (
                 oldOrder.getOrderID (), PartyOrderState.CANCELED, oldOrder.getAccount (), 
-                oldOrder.getSymbol (), oldOrder.getSide (), oldOrder.getQuantity (), 
+                oldOrder.getSymbol (), oldOrder.getSymbolID (), oldOrder.getSide (), oldOrder.getQuantity (), 
                 order.getFilledQuantity (), order.getFilledValue (), oldOrder.getOrderType (), oldOrder.getTimeInForce (), 
                 oldOrder.getLimitPrice (), oldOrder.getStopPrice (), 
                 oldOrder.getVisibleQuantity (), order));
@@ -529,11 +1100,13 @@ public class SimpleParty extends AbstractParty
         @Override
         public void onReplaced (long timestamp, Order order, Order newOrder)
         {
-            PartyOrder oldOrder = getOrder (((Long)order.getClosure ()).longValue ());
+            MyPartyOrder oldOrder = getOrder (((Long)order.getClosure ()).longValue ());
+            
+            release (oldOrder, order);
             
             updateOrder (oldOrder, new MyPartyOrder (
                 oldOrder.getOrderID (), PartyOrderState.REPLACED, oldOrder.getAccount (), 
-                oldOrder.getSymbol (), oldOrder.getSide (), oldOrder.getQuantity (), 
+                oldOrder.getSymbol (), oldOrder.getSymbolID (), oldOrder.getSide (), oldOrder.getQuantity (), 
                 order.getFilledQuantity (), order.getFilledValue (), oldOrder.getOrderType (), oldOrder.getTimeInForce (), 
                 oldOrder.getLimitPrice (), oldOrder.getStopPrice (), 
                 oldOrder.getVisibleQuantity (), order));
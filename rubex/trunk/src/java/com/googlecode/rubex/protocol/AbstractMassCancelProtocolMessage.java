@@ -0,0 +1,29 @@
+package com.googlecode.rubex.protocol;
+
+/**
+ * Abstract base class for implementations of {@link MassCancelProtocolMessage} 
+ * interface.
+ * 
+ * @author Mikhail Vladimirov
+ */
+public abstract class AbstractMassCancelProtocolMessage 
+    implements MassCancelProtocolMessage
+{
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ProtocolMessageType getType ()
+    {
+        return ProtocolMessageType.MASS_CANCEL;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T accept (ProtocolMessageVisitor <T> visitor)
+    {
+        return visitor.visitMassCancel (this);
+    }
+}
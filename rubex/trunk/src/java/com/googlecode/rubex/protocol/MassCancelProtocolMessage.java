@@ -0,0 +1,45 @@
+package com.googlecode.rubex.protocol;
+
+import com.googlecode.rubex.exchange.OrderSide;
+
+/**
+ * Mass cancel request.  Cancels all active orders of given account, 
+ * optionally restricted to one symbol and/or one side.
+ * 
+ * @author Mikhail Vladimirov
+ */
+public interface MassCancelProtocolMessage extends ProtocolMessage
+{
+    /**
+     * Name of the account field.
+     */
+    public final static String ACCOUNT = "account";
+    
+    /**
+     * Name of the symbol field.
+     */
+    public final static String SYMBOL = "symbol";
+    
+    /**
+     * Name of the side field.
+     */
+    public final static String SIDE = "side";
+    
+    /**
+     * Return account ID whose orders are to be canceled or 0 for default 
+     * account.
+     */
+    public long getAccount ();
+    
+    /**
+     * Return symbol whose orders are to be canceled or <code>null</code> to
+     * cancel orders for all symbols.
+     */
+    public String getSymbol ();
+    
+    /**
+     * Return side of orders to be canceled or <code>null</code> to cancel 
+     * orders of both sides.
+     */
+    public OrderSide getSide ();
+}
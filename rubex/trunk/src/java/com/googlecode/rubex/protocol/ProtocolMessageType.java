@@ -22,6 +22,11 @@ public enum ProtocolMessageType
      */
     CANCEL_ORDER,
     
+    /**
+     * Mass cancel request.
+     */
+    MASS_CANCEL,
+    
     /**
      * Order status message.
      */
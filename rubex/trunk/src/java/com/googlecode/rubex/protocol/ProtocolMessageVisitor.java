@@ -41,6 +41,14 @@ public interface ProtocolMessageVisitor <T>
      */
     public T visitCancelOrder (CancelOrderProtocolMessage cancelOrder);
     
+    /**
+     * Visit mass cancel request.
+     * 
+     * @param massCancel mass cancel request to be visited
+     * @return visit result
+     */
+    public T visitMassCancel (MassCancelProtocolMessage massCancel);
+    
     /**
      * Visit order status message.
      * 
@@ -70,6 +70,8 @@ public class ProtocolUtils
             return new MyReplaceOrder (dataObject);
         case CANCEL_ORDER:
             return new MyCancelOrder (dataObject);
+        case MASS_CANCEL:
+            return new MyMassCancel (dataObject);
         case ORDER_STATUS:
             return new MyOrderStatus (dataObject);
         default:
@@ -221,6 +223,25 @@ public class ProtocolUtils
         return new MyCancelOrder (orderID);
     }
     
+    /**
+     * Create mass cancel message with given account, symbol and side.
+     * 
+     * @param account account or 0 for default account
+     * @param symbol symbol or <code>null</code> to cancel orders for all 
+     *        symbols
+     * @param side order side or <code>null</code> to cancel orders of both
+     *        sides
+     * @return mass cancel message
+     */
+    public static MassCancelProtocolMessage createMassCancel (
+        long account, String symbol, OrderSide side)
+    {
+        if (account < 0)
+            throw new IllegalArgumentException ("Account < 0");
+        
+        return new MyMassCancel (account, symbol, side);
+    }
+    
     /**
      * Create order status message with given order ID, order state, account,
      * symbol, side, quantity, filled quantity, filled value, order type,
@@ -416,6 +437,34 @@ public class ProtocolUtils
             
             return builder.getStructureDataObject ();
         }
+
+        @Override
+        public DataObject visitMassCancel (
+            MassCancelProtocolMessage massCancel)
+        {
+            if (massCancel == null)
+                throw new IllegalArgumentException ("Mass cancel is null");
+            
+            StructureDataObjectBuilder builder = 
+                new StructureDataObjectBuilder ();
+            
+            long account = massCancel.getAccount ();
+            if (account != 0)
+                builder.addIntegerField (
+                    MassCancelProtocolMessage.ACCOUNT, account);
+            
+            String symbol = massCancel.getSymbol ();
+            if (symbol != null)
+                builder.addStringField (
+                    MassCancelProtocolMessage.SYMBOL, symbol);
+            
+            OrderSide side = massCancel.getSide ();
+            if (side != null)
+                builder.addStringField (
+                    MassCancelProtocolMessage.SIDE, side.name ());
+            
+            return builder.getStructureDataObject ();
+        }
         
         @Override
         public DataObject visitOrderStatus (
@@ -710,6 +759,12 @@ public class ProtocolUtils
         {
             return cancelOrder;
         }
+
+        @Override
+        public ProtocolMessage visitMassCancel (MassCancelProtocolMessage massCancel)
+        {
+            return massCancel;
+        }
         
         @Override
         public ProtocolMessage visitOrderStatus (
@@ -1371,6 +1426,92 @@ public class ProtocolUtils
         }
     }
     
+    @SuppressWarnings ("unused")
+    private static class MyMassCancel 
+        extends AbstractMassCancelProtocolMessage
+    {
+        private long account = 0;
+        private String symbol = null;
+        private OrderSide side = null;
+
+        public MyMassCancel (DataObject dataObject)
+        {
+            if (dataObject == null)
+                throw new IllegalArgumentException ("Data object is null");
+            
+            String [] unusedFields = DataObjectUtils.mapFields (dataObject, this);
+            
+            if (unusedFields.length > 0)
+                throw new IllegalArgumentException ("Unknown fields: " + Arrays.asList (unusedFields));
+            
+            accept (VALIDATING_VISITOR);
+        }
+        
+        public MyMassCancel (long account, String symbol, OrderSide side)
+        {
+            if (account < 0)
+                throw new IllegalArgumentException ("Account < 0");
+            
+            this.account = account;
+            this.symbol = symbol;
+            this.side = side;
+            
+            accept (VALIDATING_VISITOR);
+        }
+        
+        @StructureField (name = ACCOUNT, optional = true)
+        public void setAccount (long account)
+        {
+            if (account <= 0)
+                throw new IllegalArgumentException ("Account <= 0");
+            
+            this.account = account;
+        }
+
+        @StructureField (name = SYMBOL, optional = true)
+        public void setSymbol (String symbol)
+        {
+            if (symbol == null)
+                throw new IllegalArgumentException ("Symbol is null");
+            
+            this.symbol = symbol;
+        }
+
+        @StructureField (name = SIDE, optional = true)
+        public void setSide (String side)
+        {
+            if (side == null)
+                throw new IllegalArgumentException ("Side is null");
+            
+            try
+            {
+                this.side = OrderSide.valueOf (side);
+            }
+            catch (IllegalArgumentException ex)
+            {
+                throw new IllegalArgumentException ("Unknown side: " + side);
+            }
+        }
+        
+        @Override
+        public long getAccount ()
+        {
+            return account;
+        }
+
+        @Override
+        public String getSymbol ()
+        {
+            return symbol;
+        }
+
+        @Override
+        public OrderSide getSide ()
+        {
+            return side;
+        }
+    }
+    
     @SuppressWarnings ("unused")
     private static class MyOrderStatus 
         extends AbstractOrderStatusProtocolMessage
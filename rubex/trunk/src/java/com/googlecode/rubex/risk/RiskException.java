@@ -0,0 +1,41 @@
+package com.googlecode.rubex.risk;
+
+/**
+ * Signals that order violates pre-trade risk limits.
+ * 
+ * @author Mikhail Vladimirov
+ */
+public class RiskException extends Exception
+{
+    /**
+     * @see Exception#Exception()
+     */
+    public RiskException ()
+    {
+        super ();
+    }
+
+    /**
+     * @see Exception#Exception(String, Throwable)
+     */
+    public RiskException (String message, Throwable cause)
+    {
+        super (message, cause);
+    }
+
+    /**
+     * @see Exception#Exception(String)
+     */
+    public RiskException (String message)
+    {
+        super (message);
+    }
+
+    /**
+     * @see Exception#Exception(Throwable)
+     */
+    public RiskException (Throwable cause)
+    {
+        super (cause);
+    }
+}
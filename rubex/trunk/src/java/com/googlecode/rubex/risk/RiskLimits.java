@@ -0,0 +1,103 @@
+package com.googlecode.rubex.risk;
+
+/**
+ * Pre-trade risk limits of an account.  Zero value of any limit means that
+ * the limit is not enforced.  Instances of this class are immutable.
+ *
+ * @author Mikhail Vladimirov
+ */
+public class RiskLimits
+{
+    /**
+     * Limits that do not enforce anything.
+     */
+    public final static RiskLimits NONE = new RiskLimits (0L, 0L, 0L, 0);
+
+    private final long maxOrderQuantity;
+    private final long maxOrderNotional;
+    private final long maxOpenQuantity;
+    private final int maxMessageRate;
+
+    /**
+     * Create new risk limits.
+     *
+     * @param maxOrderQuantity maximum quantity of single order or zero
+     * @param maxOrderNotional maximum notional, i.e. quantity times price,
+     *        of single order or zero
+     * @param maxOpenQuantity maximum total unfilled quantity of open orders
+     *        in one symbol or zero
+     * @param maxMessageRate maximum number of order messages per second or
+     *        zero
+     */
+    public RiskLimits (
+        long maxOrderQuantity, long maxOrderNotional, long maxOpenQuantity,
+        int maxMessageRate)
+    {
+        if (maxOrderQuantity < 0)
+            throw new IllegalArgumentException ("Max order quantity < 0");
+
+        if (maxOrderNotional < 0)
+            throw new IllegalArgumentException ("Max order notional < 0");
+
+        if (maxOpenQuantity < 0)
+            throw new IllegalArgumentException ("Max open quantity < 0");
+
+        if (maxMessageRate < 0)
+            throw new IllegalArgumentException ("Max message rate < 0");
+
+        this.maxOrderQuantity = maxOrderQuantity;
+        this.maxOrderNotional = maxOrderNotional;
+        this.maxOpenQuantity = maxOpenQuantity;
+        this.maxMessageRate = maxMessageRate;
+    }
+
+    /**
+     * Return maximum quantity of single order.
+     *
+     * @return maximum order quantity or zero if not limited
+     */
+    public long getMaxOrderQuantity ()
+    {
+        return maxOrderQuantity;
+    }
+
+    /**
+     * Return maximum notional, i.e. quantity times price, of single order.
+     *
+     * @return maximum order notional or zero if not limited
+     */
+    public long getMaxOrderNotional ()
+    {
+        return maxOrderNotional;
+    }
+
+    /**
+     * Return maximum total unfilled quantity of open orders of an account in
+     * one symbol.
+     *
+     * @return maximum open quantity or zero if not limited
+     */
+    public long getMaxOpenQuantity ()
+    {
+        return maxOpenQuantity;
+    }
+
+    /**
+     * Return maximum number of order messages per second.
+     *
+     * @return maximum message rate or zero if not limited
+     */
+    public int getMaxMessageRate ()
+    {
+        return maxMessageRate;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "RiskLimits [maxOrderQuantity=" + maxOrderQuantity +
+            ", maxOrderNotional=" + maxOrderNotional +
+            ", maxOpenQuantity=" + maxOpenQuantity +
+            ", maxMessageRate=" + maxMessageRate + "]";
+    }
+}
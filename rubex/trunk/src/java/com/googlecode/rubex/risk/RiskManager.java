@@ -0,0 +1,52 @@
+package com.googlecode.rubex.risk;
+
+/**
+ * Pre-trade risk stage that checks orders against per account limits before
+ * they are sent to exchange and keeps track of open quantity of accepted
+ * orders.  Methods of this interface may be called concurrently from
+ * different threads.
+ *
+ * @author Mikhail Vladimirov
+ */
+public interface RiskManager
+{
+    /**
+     * Check new order against risk limits of given account.  If order is
+     * accepted, its quantity is added to open quantity of the account in
+     * given symbol and should be released via
+     * {@link #release(long, String, long)} as order is filled, canceled or
+     * rejected.
+     *
+     * @param timestamp time in milliseconds since epoch when order was
+     *        received
+     * @param account account of the order
+     * @param symbol symbol of the order
+     * @param quantity order quantity
+     * @param price order price in price units or zero if order has no price,
+     *        e.g. market order
+     * @throws RiskException if order violates risk limits
+     */
+    public void checkOrder (
+        long timestamp, long account, String symbol, long quantity,
+        long price)
+        throws RiskException;
+
+    /**
+     * Release given quantity from open quantity of given account in given
+     * symbol.
+     *
+     * @param account account
+     * @param symbol symbol
+     * @param quantity quantity to release
+     */
+    public void release (long account, String symbol, long quantity);
+
+    /**
+     * Return open quantity of given account in given symbol.
+     *
+     * @param account account
+     * @param symbol symbol
+     * @return open quantity
+     */
+    public long getOpenQuantity (long account, String symbol);
+}
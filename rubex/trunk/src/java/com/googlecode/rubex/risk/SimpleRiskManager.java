@@ -0,0 +1,249 @@
+package com.googlecode.rubex.risk;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simple implementation of {@link RiskManager} interface.  State of every
+ * account is kept in atomic counters: open quantities are reserved by
+ * compare and set loops, and message rate is counted in one second windows
+ * packed into single atomic long together with window number, so checks
+ * never block and concurrent checks for different accounts do not contend
+ * with each other.
+ *
+ * @author Mikhail Vladimirov
+ */
+public class SimpleRiskManager implements RiskManager
+{
+    private final ConcurrentMap <Long, MyAccount> accounts =
+        new ConcurrentHashMap <Long, MyAccount> ();
+
+    private volatile RiskLimits defaultLimits;
+
+    /**
+     * Create new risk manager that does not enforce any limits by default.
+     */
+    public SimpleRiskManager ()
+    {
+        this (RiskLimits.NONE);
+    }
+
+    /**
+     * Create new risk manager with given default limits.
+     *
+     * @param defaultLimits limits for accounts that do not have own limits
+     */
+    public SimpleRiskManager (RiskLimits defaultLimits)
+    {
+        if (defaultLimits == null)
+            throw new IllegalArgumentException ("Default limits is null");
+
+        this.defaultLimits = defaultLimits;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkOrder (
+        long timestamp, long account, String symbol, long quantity,
+        long price)
+        throws RiskException
+    {
+        if (symbol == null)
+            throw new IllegalArgumentException ("Symbol is null");
+
+        if (quantity <= 0)
+            throw new IllegalArgumentException ("Quantity <= 0");
+
+        if (price < 0)
+            throw new IllegalArgumentException ("Price < 0");
+
+        MyAccount a = getAccount (account);
+        RiskLimits limits = a.limits;
+        if (limits == null)
+            limits = defaultLimits;
+
+        int maxMessageRate = limits.getMaxMessageRate ();
+        if (maxMessageRate > 0 && !a.countMessage (timestamp, maxMessageRate))
+            throw new RiskException (
+                "Message rate exceeds limit: " + maxMessageRate);
+
+        long maxOrderQuantity = limits.getMaxOrderQuantity ();
+        if (maxOrderQuantity > 0 && quantity > maxOrderQuantity)
+            throw new RiskException (
+                "Order quantity exceeds limit: " + maxOrderQuantity);
+
+        // Quantity times price is compared via division to avoid overflow
+        long maxOrderNotional = limits.getMaxOrderNotional ();
+        if (maxOrderNotional > 0 && price > 0 &&
+            quantity > maxOrderNotional / price)
+            throw new RiskException (
+                "Order notional exceeds limit: " + maxOrderNotional);
+
+        AtomicLong openQuantity = a.getOpenQuantity (symbol);
+        long maxOpenQuantity = limits.getMaxOpenQuantity ();
+        if (maxOpenQuantity > 0)
+        {
+            while (true)
+            {
+                long current = openQuantity.get ();
+
+                if (quantity > maxOpenQuantity - current)
+                    throw new RiskException (
+                        "Open quantity exceeds limit: " + maxOpenQuantity);
+
+                if (openQuantity.compareAndSet (current, current + quantity))
+                    break;
+            }
+        }
+        else openQuantity.addAndGet (quantity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void release (long account, String symbol, long quantity)
+    {
+        if (symbol == null)
+            throw new IllegalArgumentException ("Symbol is null");
+
+        if (quantity < 0)
+            throw new IllegalArgumentException ("Quantity < 0");
+
+        if (quantity == 0) return;
+
+        getAccount (account).getOpenQuantity (symbol).addAndGet (-quantity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getOpenQuantity (long account, String symbol)
+    {
+        if (symbol == null)
+            throw new IllegalArgumentException ("Symbol is null");
+
+        MyAccount a = accounts.get (Long.valueOf (account));
+        if (a == null) return 0L;
+
+        AtomicLong openQuantity = a.openQuantities.get (symbol);
+        return openQuantity == null ? 0L : openQuantity.get ();
+    }
+
+    /**
+     * Return limits for accounts that do not have own limits.
+     *
+     * @return default limits
+     */
+    public RiskLimits getDefaultLimits ()
+    {
+        return defaultLimits;
+    }
+
+    /**
+     * Set limits for accounts that do not have own limits.  New limits apply
+     * to orders checked after this call.
+     *
+     * @param defaultLimits default limits
+     */
+    public void setDefaultLimits (RiskLimits defaultLimits)
+    {
+        if (defaultLimits == null)
+            throw new IllegalArgumentException ("Default limits is null");
+
+        this.defaultLimits = defaultLimits;
+    }
+
+    /**
+     * Return own limits of given account.
+     *
+     * @param account account
+     * @return own limits of the account or <code>null</code> if account uses
+     *         default limits
+     */
+    public RiskLimits getAccountLimits (long account)
+    {
+        MyAccount a = accounts.get (Long.valueOf (account));
+
+        return a == null ? null : a.limits;
+    }
+
+    /**
+     * Set own limits of given account.  New limits apply to orders checked
+     * after this call.  Open quantity already reserved is not affected.
+     *
+     * @param account account
+     * @param limits own limits of the account or <code>null</code> to use
+     *        default limits
+     */
+    public void setAccountLimits (long account, RiskLimits limits)
+    {
+        getAccount (account).limits = limits;
+    }
+
+    private MyAccount getAccount (long account)
+    {
+        Long key = Long.valueOf (account);
+        MyAccount result = accounts.get (key);
+
+        if (result == null)
+        {
+            MyAccount newAccount = new MyAccount ();
+            result = accounts.putIfAbsent (key, newAccount);
+            if (result == null)
+                result = newAccount;
+        }
+
+        return result;
+    }
+
+    private static class MyAccount
+    {
+        private final ConcurrentMap <String, AtomicLong> openQuantities =
+            new ConcurrentHashMap <String, AtomicLong> ();
+
+        // Second number in upper half, message count in lower half
+        private final AtomicLong messageWindow = new AtomicLong ();
+
+        private volatile RiskLimits limits = null;
+
+        public AtomicLong getOpenQuantity (String symbol)
+        {
+            AtomicLong result = openQuantities.get (symbol);
+
+            if (result == null)
+            {
+                AtomicLong newOpenQuantity = new AtomicLong ();
+                result = openQuantities.putIfAbsent (symbol, newOpenQuantity);
+                if (result == null)
+                    result = newOpenQuantity;
+            }
+
+            return result;
+        }
+
+        public boolean countMessage (long timestamp, int maxMessageRate)
+        {
+            long second = timestamp / 1000L;
+
+            while (true)
+            {
+                long window = messageWindow.get ();
+                long newWindow;
+
+                if (window >>> 32 != second)
+                    newWindow = second << 32 | 1L;
+                else if ((window & 0xFFFFFFFFL) >= maxMessageRate)
+                    return false;
+                else newWindow = window + 1L;
+
+                if (messageWindow.compareAndSet (window, newWindow))
+                    return true;
+            }
+        }
+    }
+}
@@ -1,32 +1,66 @@
 package com.googlecode.rubex.server;
 
 import java.net.ServerSocket;
+import java.util.concurrent.ThreadFactory;
 
+import junk.OrderBookWindow;
+
+import com.googlecode.rubex.concurrent.PlatformThreadFactory;
+import com.googlecode.rubex.concurrent.VirtualThreadFactory;
+import com.googlecode.rubex.exchange.OrderBookListenerFactory;
+import com.googlecode.rubex.exchange.SimpleExchangeFactory;
 import com.googlecode.rubex.net.Connection;
 import com.googlecode.rubex.net.ProtocolServerSocketServer;
 import com.googlecode.rubex.net.event.ConnectionEvent;
 import com.googlecode.rubex.net.event.ConnectionListener;
+import com.googlecode.rubex.orderbook.event.OrderBookListener;
 import com.googlecode.rubex.party.Party;
 import com.googlecode.rubex.party.SimpleParty;
 import com.googlecode.rubex.protocol.ProtocolMessage;
+import com.googlecode.rubex.risk.RiskLimits;
+import com.googlecode.rubex.risk.SimpleRiskManager;
 import com.googlecode.rubex.symbol.SimpleSymbolManager;
 
 public class RubexServer
 {
+    private final SimpleExchangeFactory exchangeFactory =
+        new SimpleExchangeFactory ();
+    
     private final SimpleSymbolManager symbolManager =
-        new SimpleSymbolManager ();
+        new SimpleSymbolManager (
+            exchangeFactory, 
+            Integer.getInteger (
+                "rubex.exchangeThreads", 
+                Runtime.getRuntime ().availableProcessors ()).intValue ());
+    
+    private final SimpleRiskManager riskManager = 
+        new SimpleRiskManager (new RiskLimits (
+            Long.getLong ("rubex.risk.maxOrderQuantity", 0L).longValue (),
+            Long.getLong ("rubex.risk.maxOrderNotional", 0L).longValue (),
+            Long.getLong ("rubex.risk.maxOpenQuantity", 0L).longValue (),
+            Integer.getInteger ("rubex.risk.maxMessageRate", 0).intValue ()));
     
-    private final Party party = new SimpleParty (symbolManager);
+    private final Party party = new SimpleParty (symbolManager, riskManager);
     
     public RubexServer (String [] args) throws Exception
     {
+        if (Boolean.getBoolean ("rubex.orderBookWindow"))
+            exchangeFactory.addOrderBookListenerFactory (
+                new MyOrderBookListenerFactory ());
+        
         symbolManager.addSymbol ("BTC");
     }
     
     public void run () throws Exception
     {
+        // Many mostly idle client connections are cheaper on virtual threads
+        ThreadFactory threadFactory = 
+            Boolean.getBoolean ("rubex.virtualThreads") ? 
+                new VirtualThreadFactory () : new PlatformThreadFactory ();
+        
         ProtocolServerSocketServer server =
-            new ProtocolServerSocketServer (new ServerSocket (1234));
+            new ProtocolServerSocketServer (
+                new ServerSocket (1234), threadFactory);
         
         server.addConnectionListener (new MyConnectionListener ());
         server.start ();
@@ -45,6 +79,16 @@ public class RubexServer
         }
     }
     
+    private static class MyOrderBookListenerFactory
+        implements OrderBookListenerFactory
+    {
+        @Override
+        public OrderBookListener createOrderBookListener (String symbol)
+        {
+            return new OrderBookWindow ("Order Book: " + symbol);
+        }
+    }
+    
     public static void main (String [] args) throws Exception
     {
         RubexServer rubexServer = new RubexServer (args);
@@ -12,6 +12,7 @@ import com.googlecode.rubex.party.PartyOrder;
 import com.googlecode.rubex.party.event.PartyEvent;
 import com.googlecode.rubex.party.event.PartyListener;
 import com.googlecode.rubex.protocol.CancelOrderProtocolMessage;
+import com.googlecode.rubex.protocol.MassCancelProtocolMessage;
 import com.googlecode.rubex.protocol.NewOrderProtocolMessage;
 import com.googlecode.rubex.protocol.OrderStatusProtocolMessage;
 import com.googlecode.rubex.protocol.ProtocolMessage;
@@ -137,6 +138,30 @@ public class RubexServerSession
                     
                     return null;
                 }
+
+                @Override
+                public Object visitMassCancel (
+                    MassCancelProtocolMessage massCancel)
+                {
+                    try
+                    {
+                        party.processMassCancelMessage (massCancel);
+                    }
+                    catch (Exception ex)
+                    {
+                        if (logger.isLoggable (Level.WARNING))
+                            logger.log (
+                                Level.WARNING, 
+                                "Error processing mass cancel message", ex);
+                        
+                        connection.sendMessage (
+                            ProtocolUtils.createReject (
+                                ex.getMessage (), 
+                                ProtocolUtils.marshal (massCancel)));
+                    }
+                    
+                    return null;
+                }
                 
                 @Override
                 public Object visitOrderStatus (
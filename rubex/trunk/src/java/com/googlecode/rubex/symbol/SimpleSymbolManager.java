@@ -1,18 +1,53 @@
 package com.googlecode.rubex.symbol;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.googlecode.rubex.concurrent.BlockingWaitStrategy;
+import com.googlecode.rubex.concurrent.RingQueue;
+import com.googlecode.rubex.concurrent.RingQueueHandler;
+import com.googlecode.rubex.concurrent.WaitStrategy;
+import com.googlecode.rubex.concurrent.WaitStrategyFactory;
+import com.googlecode.rubex.concurrent.YieldingWaitStrategy;
 import com.googlecode.rubex.exchange.Exchange;
-import com.googlecode.rubex.exchange.SimpleExchange;
+import com.googlecode.rubex.exchange.ExchangeFactory;
+import com.googlecode.rubex.exchange.SimpleExchangeFactory;
 
 /**
- * Simple implementation of {@link SymbolManager} interface that assigns
- * separate exchange thread to each symbol.
+ * Simple implementation of {@link SymbolManager} interface that runs symbols
+ * on a fixed pool of exchange threads, by default one per available 
+ * processor.  Each symbol is pinned to one exchange thread for its whole 
+ * life, so all runnables of a symbol are executed by single thread in the 
+ * order they were submitted, while many symbols may share one thread.  New 
+ * symbol is assigned to the exchange thread that serves fewest symbols, and 
+ * exchange threads are started lazily as symbols are added.  Exchange thread
+ * calls {@link Exchange#onTimer(long)} of all its exchanges every 
+ * {@link #TIMER_INTERVAL} milliseconds between runnables, so good till date 
+ * orders are expired and periodic auctions are run in exchange thread.
+ * <p>
+ * Every exchange thread takes runnables from its own bounded 
+ * {@link RingQueue}, so submitting runnable neither allocates nor takes a
+ * lock, and waits for new runnables using wait strategy created by given
+ * {@link WaitStrategyFactory}.  Threads submitting runnables yield while 
+ * queue is full.  Runnables submitted by exchange thread itself are kept in
+ * separate local queue, so exchange thread never waits for its own queue.
+ * <p>
+ * Exchange thread drains all runnables available in its queue in one pass
+ * and brackets runnables of every symbol touched by the pass with 
+ * {@link Exchange#beginBatch()} and {@link Exchange#endBatch()}, so 
+ * coalesced outbound work is flushed once per pass.  Live counters of every
+ * symbol are available via {@link #getSymbolStatistics(String)}.
+ * <p>
+ * Symbols are looked up without locking: names are kept in concurrent map 
+ * and IDs index an array of symbols, that is replaced by a larger copy when 
+ * full.  Only adding and removing symbols takes the lock of symbol manager.
+ * IDs of removed symbols are never reused.
  * 
  * @author Mikhail Vladimirov
  */
@@ -21,10 +56,117 @@ public class SimpleSymbolManager implements SymbolManager
     private final static Logger logger =
         Logger.getLogger (SimpleSymbolManager.class.getName ());
     
-    private final Map <String, SymbolInfo> symbols =
-        new HashMap <String, SymbolInfo> ();
+    /**
+     * Interval between exchange timer calls in milliseconds.
+     */
+    public final static long TIMER_INTERVAL = 100L;
+    
+    /**
+     * Default number of runnables each exchange thread may have queued.
+     */
+    public final static int DEFAULT_QUEUE_CAPACITY = 65536;
+    
+    private final static WaitStrategy PRODUCER_WAIT_STRATEGY = 
+        new YieldingWaitStrategy ();
+    
+    private final static int INITIAL_SYMBOL_CAPACITY = 16;
+    
+    private final ConcurrentMap <String, SymbolInfo> symbols =
+        new ConcurrentHashMap <String, SymbolInfo> ();
+    
+    // Elements are written under lock of symbol manager before symbol is put
+    // into symbol map, so ID obtained from the map always sees its symbol
+    private volatile SymbolInfo [] symbolsByID = 
+        new SymbolInfo [INITIAL_SYMBOL_CAPACITY];
+    
+    private final List <ExchangeThread> exchangeThreads = 
+        new ArrayList <ExchangeThread> ();
+    
+    private final ExchangeFactory exchangeFactory;
+    private final int threadCount;
+    private final int queueCapacity;
+    private final WaitStrategyFactory waitStrategyFactory;
+    
+    // Guarded by symbol manager
+    private int nextSymbolID = 0;
+    
+    private volatile boolean destroyed = false;
+    
+    /**
+     * Create new symbol manager with headless exchanges created by default
+     * {@link SimpleExchangeFactory}.
+     */
+    public SimpleSymbolManager ()
+    {
+        this (new SimpleExchangeFactory ());
+    }
+    
+    /**
+     * Create new symbol manager that uses given factory to create exchanges
+     * for added symbols and runs one exchange thread per available 
+     * processor.
+     * 
+     * @param exchangeFactory exchange factory
+     */
+    public SimpleSymbolManager (ExchangeFactory exchangeFactory)
+    {
+        this (exchangeFactory, Runtime.getRuntime ().availableProcessors ());
+    }
+    
+    /**
+     * Create new symbol manager that uses given factory to create exchanges
+     * for added symbols and runs at most given number of exchange threads,
+     * that block while idle.
+     * 
+     * @param exchangeFactory exchange factory
+     * @param threadCount maximum number of exchange threads
+     */
+    public SimpleSymbolManager (
+        ExchangeFactory exchangeFactory, int threadCount)
+    {
+        this (
+            exchangeFactory, threadCount, DEFAULT_QUEUE_CAPACITY, 
+            new MyBlockingWaitStrategyFactory ());
+    }
     
-    private boolean destroyed = false;
+    /**
+     * Create new symbol manager that uses given factory to create exchanges
+     * for added symbols and runs at most given number of exchange threads
+     * with queues of given capacity.
+     * 
+     * @param exchangeFactory exchange factory
+     * @param threadCount maximum number of exchange threads
+     * @param queueCapacity number of runnables each exchange thread may have
+     *        queued, must be power of two
+     * @param waitStrategyFactory factory of wait strategies for exchange 
+     *        threads to wait for new runnables
+     */
+    public SimpleSymbolManager (
+        ExchangeFactory exchangeFactory, int threadCount, int queueCapacity,
+        WaitStrategyFactory waitStrategyFactory)
+    {
+        if (exchangeFactory == null)
+            throw new IllegalArgumentException ("Exchange factory is null");
+        
+        if (threadCount <= 0)
+            throw new IllegalArgumentException ("Thread count <= 0");
+        
+        if (queueCapacity <= 0)
+            throw new IllegalArgumentException ("Queue capacity <= 0");
+        
+        if (Integer.bitCount (queueCapacity) != 1)
+            throw new IllegalArgumentException (
+                "Queue capacity is not power of two");
+        
+        if (waitStrategyFactory == null)
+            throw new IllegalArgumentException (
+                "Wait strategy factory is null");
+        
+        this.exchangeFactory = exchangeFactory;
+        this.threadCount = threadCount;
+        this.queueCapacity = queueCapacity;
+        this.waitStrategyFactory = waitStrategyFactory;
+    }
     
     /**
      * Add given symbol to the symbol manager.
@@ -44,11 +186,30 @@ public class SimpleSymbolManager implements SymbolManager
             throw new IllegalStateException (
                 "Symbol already exists: " + symbol);
         
-        symbols.put (symbol, new SymbolInfo (symbol));
+        Exchange exchange = exchangeFactory.createExchange (symbol);
+        ExchangeThread exchangeThread = getLeastLoadedExchangeThread ();
+        
+        int id = nextSymbolID;
+        SymbolInfo info = new SymbolInfo (id, exchange, exchangeThread);
+        
+        SymbolInfo [] byID = symbolsByID;
+        if (id >= byID.length)
+        {
+            SymbolInfo [] newByID = new SymbolInfo [byID.length * 2];
+            System.arraycopy (byID, 0, newByID, 0, byID.length);
+            byID = newByID;
+        }
+        byID [id] = info;
+        symbolsByID = byID;
+        nextSymbolID = id + 1;
+        
+        exchangeThread.addSymbol (info);
+        symbols.put (symbol, info);
     }
     
     /**
-     * Remove given symbol and stop corresponding eschange thread.
+     * Remove given symbol.  Runnables already submitted for the symbol are
+     * still executed, but its exchange no longer receives timer calls.
      * 
      * @param symbol symbol to be removed
      */
@@ -65,7 +226,93 @@ public class SimpleSymbolManager implements SymbolManager
         if (info == null)
             throw new IllegalArgumentException ("No such symbol: " + symbol);
         
-        info.stop ();
+        symbolsByID [info.getID ()] = null;
+        info.getExchangeThread ().removeSymbol (info);
+    }
+    
+    /**
+     * Return maximum number of exchange threads.
+     * 
+     * @return maximum number of exchange threads
+     */
+    public int getThreadCount ()
+    {
+        return threadCount;
+    }
+    
+    /**
+     * End trading session for all symbols, i.e. expire day orders of all 
+     * exchanges.  Session is ended asynchronously in exchange threads.
+     * 
+     * @see Exchange#endSession(long)
+     */
+    public void endSession ()
+    {
+        executeForAllExchanges (new MyExchangeTask ()
+        {
+            @Override
+            public void run (Exchange exchange, long timestamp)
+            {
+                exchange.endSession (timestamp);
+            }
+        });
+    }
+    
+    /**
+     * Start auction call period for all symbols.  Auction is started 
+     * asynchronously in exchange threads.
+     * 
+     * @see Exchange#beginAuction()
+     */
+    public void beginAuction ()
+    {
+        executeForAllExchanges (new MyExchangeTask ()
+        {
+            @Override
+            public void run (Exchange exchange, long timestamp)
+            {
+                exchange.beginAuction ();
+            }
+        });
+    }
+    
+    /**
+     * Uncross and end auction call period for all symbols.  Auction is ended
+     * asynchronously in exchange threads.
+     * 
+     * @see Exchange#endAuction(long)
+     */
+    public void endAuction ()
+    {
+        executeForAllExchanges (new MyExchangeTask ()
+        {
+            @Override
+            public void run (Exchange exchange, long timestamp)
+            {
+                exchange.endAuction (timestamp);
+            }
+        });
+    }
+    
+    private synchronized void executeForAllExchanges (final MyExchangeTask task)
+    {
+        if (destroyed)
+            throw new IllegalStateException (
+                "Symbol manager already destroyed");
+        
+        for (SymbolInfo info: symbols.values ())
+        {
+            final Exchange exchange = info.getExchange ();
+            
+            info.execute (new Runnable ()
+            {
+                @Override
+                public void run ()
+                {
+                    task.run (exchange, System.currentTimeMillis ());
+                }
+            });
+        }
     }
     
     /**
@@ -74,7 +321,7 @@ public class SimpleSymbolManager implements SymbolManager
      * @return <code>true</code> if this symbol manager is destroyed, 
      *         <code>false</code> otherwise.
      */
-    public synchronized boolean isDestroyed ()
+    public boolean isDestroyed ()
     {
         return destroyed;
     }
@@ -84,7 +331,7 @@ public class SimpleSymbolManager implements SymbolManager
      */
     public void destroy ()
     {
-        SymbolInfo [] infos;
+        ExchangeThread [] threads;
         
         synchronized (this)
         {
@@ -94,12 +341,22 @@ public class SimpleSymbolManager implements SymbolManager
             
             destroyed = true;
             
-            infos = symbols.values ().toArray (new SymbolInfo [symbols.size ()]);
+            threads = exchangeThreads.toArray (
+                new ExchangeThread [exchangeThreads.size ()]);
         }
             
-        for (SymbolInfo info: infos)
+        for (ExchangeThread thread: threads)
         {
-            info.stop ();
+            thread.interrupt ();
+            
+            try
+            {
+                thread.join ();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread ().interrupt ();
+            }
         }
     }
     
@@ -107,35 +364,88 @@ public class SimpleSymbolManager implements SymbolManager
      * {@inheritDoc}
      */
     @Override
-    public synchronized String[] getAllSymbols ()
+    public String[] getAllSymbols ()
     {
-        return symbols.keySet ().toArray (new String [symbols.size ()]);
+        return symbols.keySet ().toArray (new String [0]);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public synchronized Exchange getSymbolExchange (String symbol)
+    public int getSymbolID (String symbol)
         throws IllegalArgumentException
     {
-        if (symbol == null)
-            throw new IllegalArgumentException ("Symbol is null");
-        
-        SymbolInfo info = symbols.get (symbol);
-        if (info == null)
-            throw new IllegalArgumentException ("No such symbol");
-        
-        return info.getExchange ();
+        return getSymbolInfo (symbol).getID ();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Exchange getSymbolExchange (String symbol)
+        throws IllegalArgumentException
+    {
+        return getSymbolInfo (symbol).getExchange ();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Exchange getSymbolExchange (int symbolID)
+        throws IllegalArgumentException
+    {
+        return getSymbolInfo (symbolID).getExchange ();
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public synchronized void executeInSymbolThread (
+    public void executeInSymbolThread (
         String symbol, Runnable runnable)
         throws IllegalArgumentException
+    {
+        SymbolInfo info = getSymbolInfo (symbol);
+
+        if (runnable == null)
+            throw new IllegalArgumentException ("Runnable is null");
+        
+        info.execute (runnable);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void executeInSymbolThread (
+        int symbolID, Runnable runnable)
+        throws IllegalArgumentException
+    {
+        SymbolInfo info = getSymbolInfo (symbolID);
+
+        if (runnable == null)
+            throw new IllegalArgumentException ("Runnable is null");
+        
+        info.execute (runnable);
+    }
+    
+    /**
+     * Return live counters of runnables executed in the thread of given 
+     * symbol.
+     * 
+     * @param symbol symbol to get statistics of
+     * @return statistics of given symbol
+     * @throws IllegalArgumentException if given symbol does not exists
+     */
+    public SymbolStatistics getSymbolStatistics (String symbol)
+        throws IllegalArgumentException
+    {
+        return getSymbolInfo (symbol).getStatistics ();
+    }
+    
+    private SymbolInfo getSymbolInfo (String symbol)
     {
         if (symbol == null)
             throw new IllegalArgumentException ("Symbol is null");
@@ -143,24 +453,82 @@ public class SimpleSymbolManager implements SymbolManager
         SymbolInfo info = symbols.get (symbol);
         if (info == null)
             throw new IllegalArgumentException ("No such symbol");
-
-        if (runnable == null)
-            throw new IllegalArgumentException ("Runnable is null");
         
-        info.executeInSymbolThread (runnable);
+        return info;
+    }
+    
+    private SymbolInfo getSymbolInfo (int symbolID)
+    {
+        SymbolInfo [] byID = symbolsByID;
+        
+        if (symbolID < 0 || symbolID >= byID.length)
+            throw new IllegalArgumentException ("No such symbol");
+        
+        SymbolInfo info = byID [symbolID];
+        if (info == null)
+            throw new IllegalArgumentException ("No such symbol");
+        
+        return info;
+    }
+    
+    private ExchangeThread getLeastLoadedExchangeThread ()
+    {
+        if (exchangeThreads.size () < threadCount)
+        {
+            ExchangeThread exchangeThread = new ExchangeThread (
+                "Exchange: " + exchangeThreads.size (), 
+                new RingQueue <Runnable> (
+                    queueCapacity, 
+                    waitStrategyFactory.createWaitStrategy (), 
+                    PRODUCER_WAIT_STRATEGY));
+            exchangeThreads.add (exchangeThread);
+            exchangeThread.start ();
+            
+            return exchangeThread;
+        }
+        
+        ExchangeThread result = null;
+        
+        for (ExchangeThread exchangeThread: exchangeThreads)
+        {
+            if (result == null || 
+                exchangeThread.getExchangeCount () < 
+                    result.getExchangeCount ())
+                result = exchangeThread;
+        }
+        
+        return result;
     }
 
     private static class SymbolInfo
     {
-        private final Exchange exchange = new SimpleExchange ();
-        private final BlockingQueue <Runnable> queue =
-            new LinkedBlockingQueue <Runnable> ();
-        private final Thread exchangeThread;
+        private final int id;
+        private final Exchange exchange;
+        private final ExchangeThread exchangeThread;
+        private final SymbolStatistics statistics;
         
-        public SymbolInfo (String symbol)
+        // Accessed by exchange thread only
+        private int batchSize = 0;
+        
+        public SymbolInfo (
+            int id, Exchange exchange, ExchangeThread exchangeThread)
         {
-            exchangeThread = new ExchangeThread ("Exchange: " + symbol, queue);
-            exchangeThread.start ();
+            if (exchange == null)
+                throw new IllegalArgumentException ("Exchange is null");
+            
+            if (exchangeThread == null)
+                throw new IllegalArgumentException ("Exchange thread is null");
+            
+            this.id = id;
+            this.exchange = exchange;
+            this.exchangeThread = exchangeThread;
+            
+            statistics = new SymbolStatistics (exchangeThread.getQueue ());
+        }
+        
+        public int getID ()
+        {
+            return id;
         }
         
         public Exchange getExchange ()
@@ -168,14 +536,107 @@ public class SimpleSymbolManager implements SymbolManager
             return exchange;
         }
         
-        public void executeInSymbolThread (Runnable runnable)
+        public ExchangeThread getExchangeThread ()
+        {
+            return exchangeThread;
+        }
+        
+        public SymbolStatistics getStatistics ()
+        {
+            return statistics;
+        }
+        
+        public void execute (Runnable runnable)
+        {
+            exchangeThread.execute (runnable, this);
+        }
+    }
+    
+    /**
+     * Exchange thread runs in passes.  Every pass drains all runnables 
+     * available in the queue and runs them, starting batch of every symbol 
+     * at its first runnable, and then ends batches of all symbols touched by
+     * the pass, so exchanges flush their deferred outbound work once per 
+     * pass rather than once per runnable.
+     */
+    private static class ExchangeThread extends Thread
+        implements RingQueueHandler <Runnable>
+    {
+        private final RingQueue <Runnable> queue;
+        
+        // Accessed only by this thread
+        private final List <SymbolInfo> symbols = new ArrayList <SymbolInfo> ();
+        private final List <SymbolInfo> batchSymbols = 
+            new ArrayList <SymbolInfo> ();
+        private final Queue <MyLocalTask> localQueue = 
+            new ArrayDeque <MyLocalTask> ();
+        
+        // Guarded by symbol manager
+        private int exchangeCount = 0;
+        
+        public ExchangeThread (String name, RingQueue <Runnable> queue)
+        {
+            super (name);
+            
+            if (queue == null)
+                throw new IllegalArgumentException ("Queue is null");
+            
+            this.queue = queue;
+        }
+        
+        public int getExchangeCount ()
+        {
+            return exchangeCount;
+        }
+        
+        public RingQueue <Runnable> getQueue ()
+        {
+            return queue;
+        }
+        
+        public void addSymbol (final SymbolInfo info)
+        {
+            exchangeCount += 1;
+            
+            execute (new Runnable ()
+            {
+                @Override
+                public void run ()
+                {
+                    symbols.add (info);
+                }
+            }, null);
+        }
+        
+        public void removeSymbol (final SymbolInfo info)
+        {
+            exchangeCount -= 1;
+            
+            execute (new Runnable ()
+            {
+                @Override
+                public void run ()
+                {
+                    symbols.remove (info);
+                }
+            }, null);
+        }
+        
+        public void execute (Runnable runnable, SymbolInfo info)
         {
             if (runnable == null)
                 throw new IllegalArgumentException ("Runnable is null");
             
+            if (Thread.currentThread () == this)
+            {
+                localQueue.add (
+                    new MyLocalTask (runnable, info, System.nanoTime ()));
+                return;
+            }
+            
             try
             {
-                queue.put (runnable);
+                queue.put (runnable, info);
             }
             catch (InterruptedException ex)
             {
@@ -188,67 +649,173 @@ public class SimpleSymbolManager implements SymbolManager
             }
         }
         
-        public void stop ()
+        @Override
+        public void run ()
         {
-            exchangeThread.interrupt ();
+            long nextTimerTime = System.currentTimeMillis () + TIMER_INTERVAL;
+            int capacity = queue.getCapacity ();
+            int counter = 0;
             
-            try
-            {
-                exchangeThread.join ();
-            }
-            catch (InterruptedException ex)
+            while (!interrupted ())
             {
-                Thread.currentThread ().interrupt ();
+                long now = System.currentTimeMillis ();
+                
+                if (now >= nextTimerTime)
+                {
+                    onTimer (now);
+                    nextTimerTime = now + TIMER_INTERVAL;
+                }
+                
+                // At most one queue length per pass, so timer is not starved
+                int count = queue.drain (this, capacity);
+                
+                // Only runnables queued so far, as they may queue more
+                int localCount = localQueue.size ();
+                
+                for (int i = 0; i < localCount; i++)
+                {
+                    MyLocalTask task = localQueue.poll ();
+                    onElement (task.runnable, task.info, task.enqueueTime);
+                }
+                
+                endBatches ();
+                
+                if (count > 0 || localCount > 0)
+                {
+                    counter = 0;
+                    continue;
+                }
+                
+                try
+                {
+                    queue.idle (counter++);
+                }
+                catch (InterruptedException ex)
+                {
+                    break;
+                }
             }
+            
+            if (logger.isLoggable (Level.INFO))
+                logger.info ("Exchange thread interrupted: " + getName ());
         }
-    }
-    
-    private static class ExchangeThread extends Thread
-    {
-        private final BlockingQueue <Runnable> queue;
         
-        public ExchangeThread (String name, BlockingQueue <Runnable> queue)
+        @Override
+        public void onElement (
+            Runnable runnable, Object context, long enqueueTime)
         {
-            super (name);
+            SymbolInfo info = (SymbolInfo)context;
             
-            if (queue == null)
-                throw new IllegalArgumentException ("Queue is null");
+            if (info != null)
+            {
+                if (info.batchSize++ == 0)
+                {
+                    batchSymbols.add (info);
+                    
+                    try
+                    {
+                        info.getExchange ().beginBatch ();
+                    }
+                    catch (Throwable ex)
+                    {
+                        if (logger.isLoggable (Level.SEVERE))
+                            logger.log (
+                                Level.SEVERE, "Exception in exchange batch", 
+                                ex);
+                    }
+                }
+                
+                info.getStatistics ().onExecuted (
+                    System.nanoTime () - enqueueTime);
+            }
             
-            this.queue = queue;
+            try
+            {
+                runnable.run ();
+            }
+            catch (Throwable ex)
+            {
+                if (logger.isLoggable (Level.SEVERE))
+                    logger.log (
+                        Level.SEVERE, 
+                        "Exception while executing runnable", ex);
+            }
         }
         
-        @Override
-        public void run ()
+        private void endBatches ()
         {
-            while (true)
+            int count = batchSymbols.size ();
+            
+            for (int i = 0; i < count; i++)
             {
-                Runnable runnable;
+                SymbolInfo info = batchSymbols.get (i);
                 
                 try
                 {
-                    runnable = queue.take ();
+                    info.getExchange ().endBatch ();
                 }
-                catch (InterruptedException ex)
+                catch (Throwable ex)
                 {
-                    if (logger.isLoggable (Level.INFO))
-                        logger.info (
-                            "Exchange thread interrupted: " + getName ());
-                    
-                    break;
+                    if (logger.isLoggable (Level.SEVERE))
+                        logger.log (
+                            Level.SEVERE, "Exception in exchange batch", ex);
                 }
                 
+                info.getStatistics ().onBatch (info.batchSize);
+                info.batchSize = 0;
+            }
+            
+            batchSymbols.clear ();
+        }
+        
+        private void onTimer (long now)
+        {
+            for (int i = 0; i < symbols.size (); i++)
+            {
+                SymbolInfo info = symbols.get (i);
+                
                 try
                 {
-                    runnable.run ();
+                    info.getExchange ().onTimer (now);
                 }
                 catch (Throwable ex)
                 {
                     if (logger.isLoggable (Level.SEVERE))
                         logger.log (
-                            Level.SEVERE, 
-                            "Exception while executing runnable", ex);
+                            Level.SEVERE, "Exception in exchange timer", ex);
                 }
+                
+                info.getStatistics ().onTimer (now);
             }
-        }        
+        }
+    }
+    
+    private static class MyLocalTask
+    {
+        public final Runnable runnable;
+        public final SymbolInfo info;
+        public final long enqueueTime;
+        
+        public MyLocalTask (Runnable runnable, SymbolInfo info, long enqueueTime)
+        {
+            this.runnable = runnable;
+            this.info = info;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+    
+    private static class MyBlockingWaitStrategyFactory
+        implements WaitStrategyFactory
+    {
+        @Override
+        public WaitStrategy createWaitStrategy ()
+        {
+            return new BlockingWaitStrategy ();
+        }
+    }
+    
+    private interface MyExchangeTask
+    {
+        public void run (Exchange exchange, long timestamp);
     }
 }
@@ -3,7 +3,10 @@ package com.googlecode.rubex.symbol;
 import com.googlecode.rubex.exchange.Exchange;
 
 /**
- * Manages symbols allowed for trading.
+ * Manages symbols allowed for trading.  Every symbol has integer ID that is
+ * assigned when symbol is added and stays the same for the whole life of the
+ * symbol, so callers may resolve symbol name to ID once and then use ID for 
+ * faster lookups.
  * 
  * @author Mikhail Vladimirov
  */
@@ -26,6 +29,26 @@ public interface SymbolManager
     public Exchange getSymbolExchange (String symbol)
         throws IllegalArgumentException;
     
+    /**
+     * Get ID of given symbol.
+     * 
+     * @param symbol symbol to get ID of
+     * @return ID of given symbol
+     * @throws IllegalArgumentException if given symbol does not exists
+     */
+    public int getSymbolID (String symbol)
+        throws IllegalArgumentException;
+    
+    /**
+     * Get exchange for symbol with given ID.
+     * 
+     * @param symbolID ID of symbol to get exchange to
+     * @return exchange for given symbol
+     * @throws IllegalArgumentException if given symbol does not exists
+     */
+    public Exchange getSymbolExchange (int symbolID)
+        throws IllegalArgumentException;
+    
     /**
      * Execute given runnable in a thread that belongs to given symbol.
      * 
@@ -36,4 +59,15 @@ public interface SymbolManager
     public void executeInSymbolThread (
         String symbol, Runnable runnable)
         throws IllegalArgumentException;
+    
+    /**
+     * Execute given runnable in a thread that belongs to symbol with given ID.
+     * 
+     * @param symbolID ID of symbol to use to choose proper thread
+     * @param runnable runnable to be executed
+     * @throws IllegalArgumentException if given symbol does not exists
+     */
+    public void executeInSymbolThread (
+        int symbolID, Runnable runnable)
+        throws IllegalArgumentException;
 }
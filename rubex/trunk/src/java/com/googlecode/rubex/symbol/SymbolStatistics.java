@@ -0,0 +1,185 @@
+package com.googlecode.rubex.symbol;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.googlecode.rubex.concurrent.RingQueue;
+
+/**
+ * Live counters of runnables executed in the thread of a symbol.  Counters
+ * are updated by the exchange thread of the symbol and may be read from any
+ * thread.  Batch is a group of runnables of the symbol executed in one pass
+ * of exchange thread, between which exchange of the symbol defers its
+ * outbound work.  Producers of runnables update no counters, so submitting
+ * runnable does not contend on shared counter, and queue depth is taken 
+ * from the queue of the exchange thread.
+ *
+ * @author Mikhail Vladimirov
+ */
+public class SymbolStatistics
+{
+    /**
+     * Number of buckets in batch size histogram.  Bucket <code>i</code>
+     * counts batches of <code>2^i</code> to <code>2^(i+1) - 1</code>
+     * runnables, and the last bucket also counts all larger batches.
+     */
+    public final static int BATCH_SIZE_BUCKET_COUNT = 17;
+
+    private final static long RATE_INTERVAL = 1000L;
+
+    private final RingQueue <?> queue;
+    private final AtomicLongArray batchSizeHistogram =
+        new AtomicLongArray (BATCH_SIZE_BUCKET_COUNT);
+
+    // Written by exchange thread only
+    private volatile long executedCount = 0L;
+    private volatile long totalTimeInQueue = 0L;
+    private volatile long maxTimeInQueue = 0L;
+    private volatile long taskRate = 0L;
+
+    // Accessed by exchange thread only
+    private long rateTime = 0L;
+    private long rateExecutedCount = 0L;
+
+    /**
+     * Create new statistics with all counters set to zero.
+     *
+     * @param queue queue of the exchange thread of the symbol
+     */
+    SymbolStatistics (RingQueue <?> queue)
+    {
+        if (queue == null)
+            throw new IllegalArgumentException ("Queue is null");
+
+        this.queue = queue;
+    }
+
+    /**
+     * Return number of runnables executed for the symbol.
+     *
+     * @return number of executed runnables
+     */
+    public long getExecutedCount ()
+    {
+        return executedCount;
+    }
+
+    /**
+     * Return number of runnables waiting in the queue of the exchange thread
+     * of the symbol.  Runnables of all symbols sharing the exchange thread
+     * are counted.
+     *
+     * @return queue depth
+     */
+    public long getQueueDepth ()
+    {
+        return queue.size ();
+    }
+
+    /**
+     * Return number of runnables of the symbol executed per second, measured
+     * over the last whole second.
+     *
+     * @return tasks per second
+     */
+    public long getTaskRate ()
+    {
+        return taskRate;
+    }
+
+    /**
+     * Return total time runnables of the symbol spent in queue before being
+     * executed.
+     *
+     * @return total time in queue in nanoseconds
+     */
+    public long getTotalTimeInQueue ()
+    {
+        return totalTimeInQueue;
+    }
+
+    /**
+     * Return average time runnables of the symbol spent in queue before
+     * being executed.
+     *
+     * @return average time in queue in nanoseconds or zero if nothing was
+     *         executed yet
+     */
+    public long getAverageTimeInQueue ()
+    {
+        long count = executedCount;
+
+        return count == 0L ? 0L : totalTimeInQueue / count;
+    }
+
+    /**
+     * Return maximum time runnable of the symbol spent in queue before being
+     * executed.
+     *
+     * @return maximum time in queue in nanoseconds
+     */
+    public long getMaxTimeInQueue ()
+    {
+        return maxTimeInQueue;
+    }
+
+    /**
+     * Return copy of batch size histogram.
+     *
+     * @return array of {@link #BATCH_SIZE_BUCKET_COUNT} batch counts
+     */
+    public long [] getBatchSizeHistogram ()
+    {
+        long [] result = new long [BATCH_SIZE_BUCKET_COUNT];
+
+        for (int i = 0; i < BATCH_SIZE_BUCKET_COUNT; i++)
+            result [i] = batchSizeHistogram.get (i);
+
+        return result;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "SymbolStatistics [queueDepth=" + getQueueDepth () +
+            ", executedCount=" + executedCount +
+            ", taskRate=" + taskRate +
+            ", averageTimeInQueue=" + getAverageTimeInQueue () +
+            ", maxTimeInQueue=" + maxTimeInQueue + "]";
+    }
+
+    void onExecuted (long timeInQueue)
+    {
+        executedCount = executedCount + 1L;
+        totalTimeInQueue = totalTimeInQueue + timeInQueue;
+
+        if (timeInQueue > maxTimeInQueue)
+            maxTimeInQueue = timeInQueue;
+    }
+
+    void onBatch (int size)
+    {
+        int bucket = Math.min (
+            31 - Integer.numberOfLeadingZeros (size),
+            BATCH_SIZE_BUCKET_COUNT - 1);
+
+        batchSizeHistogram.lazySet (
+            bucket, batchSizeHistogram.get (bucket) + 1L);
+    }
+
+    void onTimer (long now)
+    {
+        if (rateTime == 0L)
+        {
+            rateTime = now;
+            rateExecutedCount = executedCount;
+        }
+        else if (now - rateTime >= RATE_INTERVAL)
+        {
+            long count = executedCount;
+
+            taskRate = (count - rateExecutedCount) * 1000L / (now - rateTime);
+            rateTime = now;
+            rateExecutedCount = count;
+        }
+    }
+}
@@ -0,0 +1,525 @@
+package com.googlecode.rubex.utils;
+
+/**
+ * Sorted map from primitive <code>long</code> keys to primitive
+ * <code>long</code> values.  Map is implemented as AVL tree stored in
+ * parallel arrays, so neither keys nor values are boxed and no objects are
+ * allocated except when arrays grow.  Entries whose value becomes zero are
+ * removed from the map, so absent key is equivalent to key mapped to zero.
+ * <p>
+ * Every node keeps the size of its subtree and the sum of values in its
+ * subtree, so entries can be accessed by rank and sums of values over key
+ * ranges can be calculated in logarithmic time.
+ *
+ * @author Mikhail Vladimirov
+ */
+public class LongLongTreeMap
+{
+    private final static int NIL = 0;
+
+    private long [] keys;
+    private long [] values;
+    private int [] left;
+    private int [] right;
+    private int [] heights;
+    private int [] sizes;
+    private long [] sums;
+
+    private int root = NIL;
+    private int freeNodes = NIL;
+    private int nodeCount = 1;
+
+    private long lastValue;
+    private int removedMinimum;
+
+    /**
+     * Create new empty map.
+     */
+    public LongLongTreeMap ()
+    {
+        this (16);
+    }
+
+    /**
+     * Create new empty map with given initial capacity.
+     *
+     * @param capacity number of entries map may hold before its arrays grow
+     */
+    public LongLongTreeMap (int capacity)
+    {
+        if (capacity < 0)
+            throw new IllegalArgumentException ("Capacity < 0");
+
+        keys = new long [capacity + 1];
+        values = new long [capacity + 1];
+        left = new int [capacity + 1];
+        right = new int [capacity + 1];
+        heights = new int [capacity + 1];
+        sizes = new int [capacity + 1];
+        sums = new long [capacity + 1];
+    }
+
+    /**
+     * Return number of entries in the map.
+     */
+    public int size ()
+    {
+        return sizes [root];
+    }
+
+    /**
+     * Tells whether map is empty.
+     *
+     * @return <code>true</code> if map is empty, <code>false</code> otherwise
+     */
+    public boolean isEmpty ()
+    {
+        return root == NIL;
+    }
+
+    /**
+     * Return sum of all values in the map.
+     */
+    public long sum ()
+    {
+        return sums [root];
+    }
+
+    /**
+     * Return sum of values mapped to keys that are less than or equal to
+     * given key.
+     *
+     * @param key the largest key to include
+     * @return sum of values mapped to keys <code>&lt;= key</code>
+     */
+    public long sumTo (long key)
+    {
+        long result = 0L;
+        int node = root;
+
+        while (node != NIL)
+        {
+            if (keys [node] <= key)
+            {
+                result += sums [left [node]] + values [node];
+                node = right [node];
+            }
+            else node = left [node];
+        }
+
+        return result;
+    }
+
+    /**
+     * Return sum of values mapped to keys that are greater than or equal to
+     * given key.
+     *
+     * @param key the smallest key to include
+     * @return sum of values mapped to keys <code>&gt;= key</code>
+     */
+    public long sumFrom (long key)
+    {
+        long result = 0L;
+        int node = root;
+
+        while (node != NIL)
+        {
+            if (keys [node] >= key)
+            {
+                result += sums [right [node]] + values [node];
+                node = left [node];
+            }
+            else node = right [node];
+        }
+
+        return result;
+    }
+
+    /**
+     * Return value mapped to given key or zero if there is no such key.
+     *
+     * @param key key to get value for
+     * @return value mapped to the key or zero
+     */
+    public long get (long key)
+    {
+        int node = root;
+
+        while (node != NIL)
+        {
+            long nodeKey = keys [node];
+
+            if (key < nodeKey) node = left [node];
+            else if (key > nodeKey) node = right [node];
+            else return values [node];
+        }
+
+        return 0L;
+    }
+
+    /**
+     * Add given delta to the value mapped to given key in one pass over the
+     * tree.  Entry is created if there is no such key yet and removed if its
+     * value becomes zero.
+     *
+     * @param key key to add delta to
+     * @param delta delta to add
+     * @return new value mapped to the key
+     * @throws RuntimeException if value overflows
+     */
+    public long add (long key, long delta)
+    {
+        root = add (root, key, delta);
+
+        return lastValue;
+    }
+
+    /**
+     * Remove all entries from the map.
+     */
+    public void clear ()
+    {
+        root = NIL;
+        freeNodes = NIL;
+        nodeCount = 1;
+    }
+
+    /**
+     * Return the smallest key in the map.
+     *
+     * @return the smallest key
+     * @throws IllegalStateException if map is empty
+     */
+    public long firstKey ()
+    {
+        return keys [firstNode ()];
+    }
+
+    /**
+     * Return value mapped to the smallest key in the map.
+     *
+     * @return value mapped to the smallest key
+     * @throws IllegalStateException if map is empty
+     */
+    public long firstValue ()
+    {
+        return values [firstNode ()];
+    }
+
+    /**
+     * Return the largest key in the map.
+     *
+     * @return the largest key
+     * @throws IllegalStateException if map is empty
+     */
+    public long lastKey ()
+    {
+        return keys [lastNode ()];
+    }
+
+    /**
+     * Return value mapped to the largest key in the map.
+     *
+     * @return value mapped to the largest key
+     * @throws IllegalStateException if map is empty
+     */
+    public long lastValue ()
+    {
+        return values [lastNode ()];
+    }
+
+    /**
+     * Return value mapped to the smallest key that is greater than given key
+     * or zero if there is no such key.
+     *
+     * @param key key to find next key for
+     * @return value mapped to the smallest key <code>&gt; key</code> or zero
+     */
+    public long higherValue (long key)
+    {
+        long result = 0L;
+        int node = root;
+
+        while (node != NIL)
+        {
+            if (keys [node] > key)
+            {
+                result = values [node];
+                node = left [node];
+            }
+            else node = right [node];
+        }
+
+        return result;
+    }
+
+    /**
+     * Return key with given rank, i.e. key that has exactly <code>rank</code>
+     * smaller keys in the map.
+     *
+     * @param rank rank of the key, from 0 to <code>size () - 1</code>
+     * @return key with given rank
+     * @throws IndexOutOfBoundsException if rank is out of range
+     */
+    public long getKey (int rank)
+    {
+        return keys [nodeByRank (rank)];
+    }
+
+    /**
+     * Return value mapped to the key with given rank.
+     *
+     * @param rank rank of the key, from 0 to <code>size () - 1</code>
+     * @return value mapped to the key with given rank
+     * @throws IndexOutOfBoundsException if rank is out of range
+     */
+    public long getValue (int rank)
+    {
+        return values [nodeByRank (rank)];
+    }
+
+    private int firstNode ()
+    {
+        if (root == NIL)
+            throw new IllegalStateException ("Map is empty");
+
+        int node = root;
+        while (left [node] != NIL)
+            node = left [node];
+
+        return node;
+    }
+
+    private int lastNode ()
+    {
+        if (root == NIL)
+            throw new IllegalStateException ("Map is empty");
+
+        int node = root;
+        while (right [node] != NIL)
+            node = right [node];
+
+        return node;
+    }
+
+    private int nodeByRank (int rank)
+    {
+        if (rank < 0 || rank >= sizes [root])
+            throw new IndexOutOfBoundsException ("Invalid rank: " + rank);
+
+        int node = root;
+
+        while (true)
+        {
+            int leftSize = sizes [left [node]];
+
+            if (rank < leftSize) node = left [node];
+            else if (rank == leftSize) return node;
+            else
+            {
+                rank -= leftSize + 1;
+                node = right [node];
+            }
+        }
+    }
+
+    private int add (int node, long key, long delta)
+    {
+        if (node == NIL)
+        {
+            lastValue = delta;
+
+            return delta == 0L ? NIL : newNode (key, delta);
+        }
+
+        long nodeKey = keys [node];
+
+        // Child is stored via local variable because recursive call may
+        // reallocate arrays
+        if (key < nodeKey)
+        {
+            int child = add (left [node], key, delta);
+            left [node] = child;
+        }
+        else if (key > nodeKey)
+        {
+            int child = add (right [node], key, delta);
+            right [node] = child;
+        }
+        else
+        {
+            long value = LongUtils.safeAdd (values [node], delta);
+            lastValue = value;
+
+            if (value != 0L)
+            {
+                values [node] = value;
+                sums [node] = sums [left [node]] + sums [right [node]] + value;
+                return node;
+            }
+            else return removeNode (node);
+        }
+
+        return balance (node);
+    }
+
+    private int removeNode (int node)
+    {
+        int result;
+
+        if (left [node] == NIL)
+            result = right [node];
+        else if (right [node] == NIL)
+            result = left [node];
+        else
+        {
+            int newRight = removeMinimum (right [node]);
+
+            result = removedMinimum;
+            left [result] = left [node];
+            right [result] = newRight;
+            result = balance (result);
+        }
+
+        freeNode (node);
+
+        return result;
+    }
+
+    private int removeMinimum (int node)
+    {
+        if (left [node] == NIL)
+        {
+            removedMinimum = node;
+            return right [node];
+        }
+
+        left [node] = removeMinimum (left [node]);
+
+        return balance (node);
+    }
+
+    private int balance (int node)
+    {
+        update (node);
+
+        int balance = heights [left [node]] - heights [right [node]];
+
+        if (balance > 1)
+        {
+            int l = left [node];
+
+            if (heights [left [l]] < heights [right [l]])
+                left [node] = rotateLeft (l);
+
+            return rotateRight (node);
+        }
+        else if (balance < -1)
+        {
+            int r = right [node];
+
+            if (heights [right [r]] < heights [left [r]])
+                right [node] = rotateRight (r);
+
+            return rotateLeft (node);
+        }
+        else return node;
+    }
+
+    private int rotateLeft (int node)
+    {
+        int r = right [node];
+
+        right [node] = left [r];
+        left [r] = node;
+
+        update (node);
+        update (r);
+
+        return r;
+    }
+
+    private int rotateRight (int node)
+    {
+        int l = left [node];
+
+        left [node] = right [l];
+        right [l] = node;
+
+        update (node);
+        update (l);
+
+        return l;
+    }
+
+    private void update (int node)
+    {
+        int l = left [node];
+        int r = right [node];
+
+        heights [node] = Math.max (heights [l], heights [r]) + 1;
+        sizes [node] = sizes [l] + sizes [r] + 1;
+        sums [node] = sums [l] + sums [r] + values [node];
+    }
+
+    private int newNode (long key, long value)
+    {
+        int node;
+
+        if (freeNodes != NIL)
+        {
+            node = freeNodes;
+            freeNodes = left [node];
+        }
+        else
+        {
+            if (nodeCount == keys.length)
+                grow ();
+
+            node = nodeCount++;
+        }
+
+        keys [node] = key;
+        values [node] = value;
+        left [node] = NIL;
+        right [node] = NIL;
+        heights [node] = 1;
+        sizes [node] = 1;
+        sums [node] = value;
+
+        return node;
+    }
+
+    private void freeNode (int node)
+    {
+        left [node] = freeNodes;
+        freeNodes = node;
+    }
+
+    private void grow ()
+    {
+        int capacity = Math.max (keys.length * 2, 2);
+
+        keys = copyOf (keys, capacity);
+        values = copyOf (values, capacity);
+        left = copyOf (left, capacity);
+        right = copyOf (right, capacity);
+        heights = copyOf (heights, capacity);
+        sizes = copyOf (sizes, capacity);
+        sums = copyOf (sums, capacity);
+    }
+
+    private static long [] copyOf (long [] array, int length)
+    {
+        long [] result = new long [length];
+        System.arraycopy (array, 0, result, 0, array.length);
+        return result;
+    }
+
+    private static int [] copyOf (int [] array, int length)
+    {
+        int [] result = new int [length];
+        System.arraycopy (array, 0, result, 0, array.length);
+        return result;
+    }
+}
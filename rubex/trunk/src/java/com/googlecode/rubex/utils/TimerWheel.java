@@ -0,0 +1,226 @@
+package com.googlecode.rubex.utils;
+
+import java.util.List;
+
+/**
+ * Hashed timer wheel.  Time is divided into ticks of fixed duration, and
+ * timeouts are kept in slots of a circular array by their deadline tick, so
+ * scheduling and canceling timeouts take constant time, while expiring takes
+ * time proportional to the number of elapsed ticks plus number of timeouts
+ * in visited slots.  Timeouts that are more than one wheel rotation away stay
+ * in their slots until their deadline tick is reached.  Timer wheel does not
+ * have its own thread: timeouts are expired by explicit calls to
+ * {@link #expire(long, List)}, so timer wheel may be driven by the thread
+ * that owns objects being expired.  This class is not thread safe.
+ *
+ * @param <T> type of items associated with timeouts
+ *
+ * @author Mikhail Vladimirov
+ */
+public class TimerWheel <T>
+{
+    private final long tickDuration;
+    private final int mask;
+    private final Timeout [] slots;
+
+    private long currentTick = 0L;
+    private int size = 0;
+
+    /**
+     * Create new timer wheel with given tick duration and number of slots.
+     *
+     * @param tickDuration tick duration in milliseconds
+     * @param slotCount number of slots, must be power of two
+     */
+    @SuppressWarnings ({"unchecked", "rawtypes"})
+    public TimerWheel (long tickDuration, int slotCount)
+    {
+        if (tickDuration <= 0)
+            throw new IllegalArgumentException ("Tick duration <= 0");
+
+        if (slotCount <= 0 || (slotCount & (slotCount - 1)) != 0)
+            throw new IllegalArgumentException (
+                "Slot count is not power of two");
+
+        this.tickDuration = tickDuration;
+        this.mask = slotCount - 1;
+        this.slots = (Timeout [])new TimerWheel.Timeout [slotCount];
+    }
+
+    /**
+     * Schedule timeout with given deadline for given item.  Timeout with
+     * deadline in the past expires on the next call to
+     * {@link #expire(long, List)}.
+     *
+     * @param deadline deadline in milliseconds since epoch
+     * @param item item associated with the timeout
+     * @return scheduled timeout
+     */
+    public Timeout schedule (long deadline, T item)
+    {
+        if (deadline < 0)
+            throw new IllegalArgumentException ("Deadline < 0");
+
+        Timeout timeout = new Timeout (deadline, item);
+        long tick = Math.max (deadline / tickDuration, currentTick);
+
+        int index = (int)(tick & mask);
+        Timeout head = slots [index];
+
+        timeout.slot = index;
+        timeout.next = head;
+        if (head != null)
+            head.previous = timeout;
+        slots [index] = timeout;
+
+        size += 1;
+
+        return timeout;
+    }
+
+    /**
+     * Expire all timeouts with deadlines at or before given time, adding
+     * their items to given list.
+     *
+     * @param now current time in milliseconds since epoch
+     * @param expired list to add items of expired timeouts to
+     * @return number of expired timeouts
+     */
+    public int expire (long now, List <? super T> expired)
+    {
+        if (expired == null)
+            throw new IllegalArgumentException ("Expired is null");
+
+        long nowTick = now / tickDuration;
+
+        if (nowTick < currentTick) return 0;
+
+        int result = 0;
+
+        if (size > 0)
+        {
+            if (nowTick - currentTick >= slots.length)
+            {
+                for (int i = 0; i < slots.length; i++)
+                    result += expireSlot (i, now, expired);
+            }
+            else
+            {
+                for (long tick = currentTick; tick <= nowTick; tick++)
+                    result += expireSlot ((int)(tick & mask), now, expired);
+            }
+        }
+
+        // Current tick is not over yet, so its slot is visited again
+        currentTick = nowTick;
+
+        return result;
+    }
+
+    private int expireSlot (int index, long now, List <? super T> expired)
+    {
+        int result = 0;
+        Timeout timeout = slots [index];
+
+        while (timeout != null)
+        {
+            Timeout next = timeout.next;
+
+            if (timeout.deadline <= now)
+            {
+                timeout.unlink ();
+                expired.add (timeout.item);
+                result += 1;
+            }
+
+            timeout = next;
+        }
+
+        return result;
+    }
+
+    /**
+     * Return number of scheduled timeouts.
+     */
+    public int size ()
+    {
+        return size;
+    }
+
+    /**
+     * Timeout scheduled in timer wheel.
+     */
+    public class Timeout
+    {
+        private final long deadline;
+        private final T item;
+
+        private int slot = -1;
+        private Timeout previous = null;
+        private Timeout next = null;
+
+        private Timeout (long deadline, T item)
+        {
+            this.deadline = deadline;
+            this.item = item;
+        }
+
+        /**
+         * Return deadline of the timeout in milliseconds since epoch.
+         */
+        public long getDeadline ()
+        {
+            return deadline;
+        }
+
+        /**
+         * Return item associated with the timeout.
+         */
+        public T getItem ()
+        {
+            return item;
+        }
+
+        /**
+         * Tells whether timeout is still scheduled, i.e. neither expired nor
+         * canceled.
+         *
+         * @return <code>true</code> if timeout is scheduled,
+         *         <code>false</code> otherwise
+         */
+        public boolean isActive ()
+        {
+            return slot >= 0;
+        }
+
+        /**
+         * Cancel the timeout.  Does nothing if timeout is not active.
+         *
+         * @return <code>true</code> if timeout was canceled,
+         *         <code>false</code> if it was not active
+         */
+        public boolean cancel ()
+        {
+            if (slot < 0) return false;
+
+            unlink ();
+
+            return true;
+        }
+
+        private void unlink ()
+        {
+            if (previous == null)
+                slots [slot] = next;
+            else previous.next = next;
+
+            if (next != null)
+                next.previous = previous;
+
+            slot = -1;
+            previous = null;
+            next = null;
+            size -= 1;
+        }
+    }
+}
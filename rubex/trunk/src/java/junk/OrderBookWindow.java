@@ -3,6 +3,8 @@ import java.awt.BorderLayout;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import javax.swing.JFrame;
 import javax.swing.JScrollPane;
@@ -21,9 +23,19 @@ public class OrderBookWindow implements OrderBookListener
     private final JTable table;
     private final OrderBookTableModel tableModel;
     
+    // Net quantity deltas not shown yet, guarded by this
+    private final Map<Long, Long> pendingBids = new TreeMap <Long, Long> ();
+    private final Map<Long, Long> pendingAsks = new TreeMap <Long, Long> ();
+    private boolean updateScheduled = false;
+    
     public OrderBookWindow ()
     {
-        frame = new JFrame ("Order Book");
+        this ("Order Book");
+    }
+    
+    public OrderBookWindow (String title)
+    {
+        frame = new JFrame (title);
         frame.setDefaultCloseOperation (JFrame.DO_NOTHING_ON_CLOSE);
         frame.getContentPane ().setLayout (new BorderLayout ());
         
@@ -43,17 +55,67 @@ public class OrderBookWindow implements OrderBookListener
     }
 
     @Override
-    public void onQuote (final OrderBookQuoteEvent event)
+    public void onQuote (OrderBookQuoteEvent event)
     {
+        // Deltas are accumulated and shown by at most one pending runnable,
+        // so order book thread never floods event dispatch thread
+        synchronized (this)
+        {
+            Map<Long, Long> pending;
+            switch (event.getSide ())
+            {
+            case BID:
+                pending = pendingBids;
+                break;
+            case ASK:
+                pending = pendingAsks;
+                break;
+            default:
+                throw new Error ("Unknown order book entry side");
+            }
+            
+            Long price = Long.valueOf (event.getPrice ());
+            Long delta = pending.get (price);
+            pending.put (price, Long.valueOf (
+                (delta == null ? 0L : delta.longValue ()) + event.getQuantityDelta ()));
+            
+            if (updateScheduled) return;
+            
+            updateScheduled = true;
+        }
+        
         SwingUtilities.invokeLater (new Runnable()
         {
             @Override
             public void run ()
             {
-                tableModel.updateQuote (event.getSide (), event.getPrice (), event.getQuantityDelta ());
+                showPendingQuotes ();
             }
         });
     }
+    
+    private void showPendingQuotes ()
+    {
+        Map<Long, Long> bids;
+        Map<Long, Long> asks;
+        
+        synchronized (this)
+        {
+            bids = new TreeMap <Long, Long> (pendingBids);
+            asks = new TreeMap <Long, Long> (pendingAsks);
+            pendingBids.clear ();
+            pendingAsks.clear ();
+            updateScheduled = false;
+        }
+        
+        for (Map.Entry<Long, Long> entry: bids.entrySet ())
+            if (entry.getValue ().longValue () != 0)
+                tableModel.updateQuote (OrderBookEntrySide.BID, entry.getKey ().longValue (), entry.getValue ().longValue ());
+        
+        for (Map.Entry<Long, Long> entry: asks.entrySet ())
+            if (entry.getValue ().longValue () != 0)
+                tableModel.updateQuote (OrderBookEntrySide.ASK, entry.getKey ().longValue (), entry.getValue ().longValue ());
+    }
 
     private static class OrderBookTableModel extends AbstractTableModel
     {